@@ -34,7 +34,7 @@ import icy.resource.icon.IcyIcon;
 import icy.roi.ROI;
 import icy.sequence.DimensionId;
 import icy.sequence.Sequence;
-import icy.sequence.SequenceDataIterator;
+import icy.sequence.SequenceDataSpanIterator;
 import icy.sequence.SequenceUtil;
 import icy.system.SystemUtil;
 import icy.system.thread.ThreadUtil;
@@ -1022,7 +1022,7 @@ public class SequenceOperationActions
                     final double value = mainFrame.getMainRibbon().getSequenceOperationTask().getFillValue();
 
                     for (ROI roi : sequence.getSelectedROIs())
-                        DataIteratorUtil.set(new SequenceDataIterator(sequence, roi), value);
+                        DataIteratorUtil.set(new SequenceDataSpanIterator(sequence, roi), value);
 
                     sequence.dataChanged();
 
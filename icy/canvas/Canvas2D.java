@@ -28,6 +28,7 @@ import icy.gui.viewer.Viewer;
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
 import icy.image.ImageUtil;
+import icy.image.cache.ARGBTileCache;
 import icy.main.Icy;
 import icy.math.Interpolator;
 import icy.math.MathUtil;
@@ -83,7 +84,9 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import javax.swing.BorderFactory;
@@ -140,7 +143,19 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             final BufferedImage img = canvasView.imageCache.getImage();
 
             if (img != null)
-                g.drawImage(img, null, 0, 0);
+            {
+                final int level = canvasView.imageCache.getImageLevel();
+
+                if (level == 0)
+                    g.drawImage(img, null, 0, 0);
+                else
+                {
+                    // low resolution image of the whole plane
+                    g.drawImage(img, 0, 0, img.getWidth() << level, img.getHeight() << level, null);
+                    // then visible tiles
+                    canvasView.imageCache.paintTiles(g);
+                }
+            }
             else
             {
                 final Graphics2D g2 = (Graphics2D) g.create();
@@ -533,7 +548,20 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
 
                 // draw image
                 if (img != null)
-                    g2.drawImage(img, trans, null);
+                {
+                    final int level = canvasView.imageCache.getImageLevel();
+
+                    // low resolution image ? --> adjust scale
+                    if (level != 0)
+                    {
+                        final AffineTransform imgTrans = new AffineTransform(trans);
+
+                        imgTrans.scale(1 << level, 1 << level);
+                        g2.drawImage(img, imgTrans, null);
+                    }
+                    else
+                        g2.drawImage(img, trans, null);
+                }
 
                 // then apply canvas inverse transformation
                 trans.scale(1 / getScaleX(), 1 / getScaleY());
@@ -599,9 +627,28 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
         public class ImageCache implements Runnable
         {
             /**
-             * image cache
+             * Image plane size (in pixel) from which we use tiled rendering
+             */
+            static final int TILED_RENDERING_SIZE = 2048 * 2048;
+            /**
+             * Maximum size of the low resolution image used in tiled rendering
+             */
+            static final int OVERVIEW_SIZE = 1024;
+
+            /**
+             * image cache (low resolution image of the whole plane in tiled rendering)
              */
             private BufferedImage image;
+            private int imageLevel;
+
+            /**
+             * tiles cache (tiled rendering)
+             */
+            private final ARGBTileCache tileCache;
+            private IcyBufferedImage plane;
+            private int planeC;
+            private Rectangle wantedRegion;
+            private int wantedLevel;
 
             /**
              * processor
@@ -622,6 +669,12 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                 processor.setKeepAliveTime(3, TimeUnit.SECONDS);
 
                 image = null;
+                imageLevel = 0;
+                tileCache = new ARGBTileCache();
+                plane = null;
+                planeC = -1;
+                wantedRegion = null;
+                wantedLevel = 0;
                 needRebuild = true;
                 notEnoughMemory = false;
 
@@ -634,6 +687,17 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                 needRebuild = true;
             }
 
+            /**
+             * Invalid cached tiles of the specified image plane (all tiles if <code>null</code>).
+             */
+            public void invalidTiles(IcyBufferedImage image)
+            {
+                if (image == null)
+                    tileCache.clear();
+                else
+                    tileCache.invalid(image);
+            }
+
             public boolean isValid()
             {
                 return !needRebuild;
@@ -659,6 +723,98 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                 return image;
             }
 
+            /**
+             * Returns the resolution level of the cached image (0 = full resolution, 1 = resolution
+             * / 2...).<br>
+             * A level > 0 means we are using tiled rendering.
+             */
+            public int getImageLevel()
+            {
+                return imageLevel;
+            }
+
+            /**
+             * Draw the cached tiles of the visible region at the current zoom resolution and request
+             * the missing ones.
+             */
+            void paintTiles(Graphics2D g)
+            {
+                final IcyBufferedImage p = plane;
+                final int c = planeC;
+
+                if (p == null)
+                    return;
+
+                final int level = ARGBTileCache.getLevel(Math.min(getScaleX(), getScaleY()));
+
+                // low resolution image is enough
+                if (level >= imageLevel)
+                    return;
+
+                final Rectangle clip = g.getClipBounds();
+                Rectangle region = p.getBounds();
+
+                if (clip != null)
+                    region = region.intersection(clip);
+                if (region.isEmpty())
+                    return;
+
+                final int size = tileCache.getTileSize() << level;
+                boolean missing = false;
+
+                for (int ty = region.y / size; ty <= ((region.y + region.height - 1) / size); ty++)
+                {
+                    for (int tx = region.x / size; tx <= ((region.x + region.width - 1) / size); tx++)
+                    {
+                        final BufferedImage tile = tileCache.getTile(p, c, level, tx, ty);
+
+                        if (tile != null)
+                            g.drawImage(tile, tx * size, ty * size, tile.getWidth() << level,
+                                    tile.getHeight() << level, null);
+                        else
+                            missing = true;
+                    }
+                }
+
+                wantedRegion = region;
+                wantedLevel = level;
+
+                // build missing tiles
+                if (missing && !notEnoughMemory)
+                    processor.submit(this);
+            }
+
+            /**
+             * Build missing tiles of the visible region.
+             */
+            private void buildTiles(IcyBufferedImage p, int c, IcyBufferedImage source)
+            {
+                final Rectangle region = wantedRegion;
+                final int level = wantedLevel;
+
+                if ((region == null) || (level >= imageLevel))
+                    return;
+
+                final int size = tileCache.getTileSize() << level;
+
+                for (int ty = region.y / size; ty <= ((region.y + region.height - 1) / size); ty++)
+                {
+                    for (int tx = region.x / size; tx <= ((region.x + region.width - 1) / size); tx++)
+                    {
+                        // image changed --> stop here (a new rebuild is coming)
+                        if (needRebuild)
+                            return;
+
+                        if (tileCache.getTile(p, c, level, tx, ty) == null)
+                        {
+                            tileCache.buildTile(p, c, source, getLut(), level, tx, ty);
+                            // display tile
+                            getViewComponent().repaint();
+                        }
+                    }
+                }
+            }
+
             public boolean getNotEnoughMemory()
             {
                 return notEnoughMemory;
@@ -668,12 +824,50 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             public void run()
             {
                 // important to set it to false at beginning
+                final boolean rebuild = needRebuild;
                 needRebuild = false;
 
                 try
                 {
-                    // build image
-                    image = Canvas2D.this.getARGBImage(getPositionT(), getPositionZ(), getPositionC(), image);
+                    final int t = getPositionT();
+                    final int z = getPositionZ();
+                    final int c = getPositionC();
+                    final IcyBufferedImage img = Canvas2D.this.getImage(t, z, -1);
+
+                    // large image --> tiled rendering
+                    if ((img != null) && (((long) img.getSizeX() * (long) img.getSizeY()) > TILED_RENDERING_SIZE))
+                    {
+                        final IcyBufferedImage source = Canvas2D.this.getImage(t, z, c);
+
+                        // rebuild low resolution image if needed
+                        if (rebuild || (image == null) || (plane != img) || (planeC != c))
+                        {
+                            int level = 0;
+                            while ((Math.max(img.getSizeX(), img.getSizeY()) >> level) > OVERVIEW_SIZE)
+                                level++;
+
+                            final BufferedImage overview = ARGBTileCache.getARGBImage(source, getLut(), null, level);
+
+                            plane = img;
+                            planeC = c;
+                            imageLevel = level;
+                            image = overview;
+
+                            // display it now
+                            getViewComponent().repaint();
+                        }
+
+                        // then build visible tiles
+                        buildTiles(img, c, source);
+                    }
+                    else
+                    {
+                        // build image
+                        image = Canvas2D.this.getARGBImage(t, z, c, (imageLevel == 0) ? image : null);
+                        imageLevel = 0;
+                        plane = null;
+                    }
+
                     notEnoughMemory = false;
                 }
                 catch (OutOfMemoryError e)
@@ -1028,11 +1222,14 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
                                 getPositionT(), Double.NEGATIVE_INFINITY, area.getWidth(), area.getHeight(), 1d, 1d,
                                 Double.POSITIVE_INFINITY);
 
+                        // use sequence spatial index to find intersected ROIs
+                        final Set<ROI> selected = new HashSet<ROI>(seq.getROIs(area5d));
+
                         seq.beginUpdate();
                         try
                         {
                             for (ROI roi : rois)
-                                roi.setSelected(roi.intersects(area5d));
+                                roi.setSelected(selected.contains(roi));
                         }
                         finally
                         {
@@ -1658,6 +1855,15 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
             imageCache.invalidCache();
         }
 
+        /**
+         * Image data (or LUT if <code>image</code> is <code>null</code>) changed.
+         */
+        public void imageDataChanged(IcyBufferedImage image)
+        {
+            imageCache.invalidTiles(image);
+            imageCache.invalidCache();
+        }
+
         public void layersChanged()
         {
 
@@ -2697,7 +2903,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
     @Override
     public void refresh()
     {
-        canvasView.imageChanged();
+        canvasView.imageDataChanged(null);
         canvasView.layersChanged();
         canvasView.refresh();
     }
@@ -3056,7 +3262,8 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
         // refresh image
         if (canvasView != null)
         {
-            canvasView.imageChanged();
+            // all tiles need to be rebuilt
+            canvasView.imageDataChanged(null);
             canvasView.refresh();
         }
     }
@@ -3099,7 +3306,7 @@ public class Canvas2D extends IcyCanvas2D implements ToolRibbonTaskListener
         // refresh image
         if (canvasView != null)
         {
-            canvasView.imageChanged();
+            canvasView.imageDataChanged(image);
             canvasView.refresh();
         }
     }
@@ -28,6 +28,8 @@ import icy.image.ChannelPosition;
 import icy.image.IcyBufferedImage;
 import icy.image.ImagePosition;
 import icy.image.ImageProvider;
+import icy.image.cache.DirectPlaneStore;
+import icy.image.cache.VirtualPlaneStore;
 import icy.main.Icy;
 import icy.plugin.PluginDescriptor;
 import icy.plugin.PluginLauncher;
@@ -39,6 +41,7 @@ import icy.sequence.Sequence;
 import icy.sequence.SequenceIdImporter;
 import icy.sequence.SequenceImporter;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
 import icy.system.thread.ThreadUtil;
 import icy.type.collection.CollectionUtil;
 import icy.util.OMEUtil;
@@ -298,6 +301,20 @@ public class Loader
         }
     }
 
+    /**
+     * Exception thrown when a multi serie file can't be loaded without displaying the serie
+     * selection dialog (internal use only).
+     */
+    static class SerieSelectionException extends IOException
+    {
+        private static final long serialVersionUID = -4118622187430376466L;
+
+        SerieSelectionException(String path)
+        {
+            super("Serie selection needed to load '" + path + "'");
+        }
+    }
+
     public static class FilePosition extends ChannelPosition
     {
         public final String path;
@@ -2115,6 +2132,8 @@ public class Loader
         else
             loadingFrame = null;
 
+        ParallelFileLoader parallelLoader = null;
+
         try
         {
             final List<String> remainingFiles = new ArrayList<String>(paths);
@@ -2171,12 +2190,41 @@ public class Loader
                     loadingFrame.setPosition(0d);
                 }
 
+                // several files --> load them in parallel (assembly is still done in file order).
+                // Loading threads never display the serie selection dialog, multi serie files
+                // needing it are loaded from here (see below)
+                if (filePositions.size() > 1)
+                    parallelLoader = new ParallelFileLoader(filePositions, importers, serie,
+                            SystemUtil.getNumberOfCPUs());
+
                 // load each file in a separate sequence
-                for (FilePosition filePos : filePositions)
+                for (int i = 0; i < filePositions.size(); i++)
                 {
+                    final FilePosition filePos = filePositions.get(i);
                     final String path = filePos.path;
+                    final List<Sequence> sequences;
+
                     // load the file
-                    final List<Sequence> sequences = internalLoadSingle(importers, path, serie, loadingFrame);
+                    if (parallelLoader != null)
+                    {
+                        if (loadingFrame != null)
+                            loadingFrame.setFilename(path);
+
+                        try
+                        {
+                            sequences = parallelLoader.get(i, loadingFrame);
+                        }
+                        catch (SerieSelectionException e)
+                        {
+                            // multi serie file --> do serie selection and load it from here
+                            sequences = internalLoadSingle(importers, path, serie, loadingFrame);
+                        }
+
+                        if (loadingFrame != null)
+                            loadingFrame.setPosition((i + 1) * 100d);
+                    }
+                    else
+                        sequences = internalLoadSingle(importers, path, serie, loadingFrame);
 
                     // special case where loading was interrupted --> exit
                     if (sequences == null)
@@ -2311,6 +2359,8 @@ public class Loader
         }
         finally
         {
+            if (parallelLoader != null)
+                parallelLoader.shutdown();
             if (loadingFrame != null)
                 loadingFrame.close();
         }
@@ -2415,6 +2465,19 @@ public class Loader
      */
     static List<Sequence> internalLoadSingle(List<SequenceFileImporter> importers, String path, int serie,
             FileFrame loadingFrame) throws IOException
+    {
+        return internalLoadSingle(importers, path, serie, true, loadingFrame);
+    }
+
+    /**
+     * Internal load a single file and return result as Sequence list (for multi serie).<br>
+     * Same as {@link #internalLoadSingle(List, String, int, FileFrame)} except that when
+     * <i>canSelectSerie</i> is <code>false</code> the serie selection dialog is never displayed: a
+     * {@link SerieSelectionException} is thrown instead so the file can be loaded later from a
+     * thread allowed to display it.
+     */
+    static List<Sequence> internalLoadSingle(List<SequenceFileImporter> importers, String path, int serie,
+            boolean canSelectSerie, FileFrame loadingFrame) throws IOException
     {
         final double endStep;
 
@@ -2445,6 +2508,10 @@ public class Loader
                 final int serieCount = MetaDataUtil.getNumSerie(meta);
                 int selectedSeries[];
 
+                // serie selection dialog needed but not allowed here
+                if (!canSelectSerie && (serie == -1) && (serieCount > 1) && !Icy.getMainInterface().isHeadLess())
+                    throw new SerieSelectionException(path);
+
                 try
                 {
                     // do serie selection (need to create a new instance of the importer as
@@ -2475,6 +2542,15 @@ public class Loader
                     if (loadingFrame != null)
                         progress = loadingFrame.getPosition();
 
+                    // virtual mode : only the first image is loaded, others are read on demand
+                    final VirtualPlaneStore virtualStore;
+                    if (GeneralPreferences.getVirtualMode() && ((sizeZ * sizeT) > 1))
+                        virtualStore = createVirtualStore(importer, path, s);
+                    else
+                        virtualStore = null;
+                    // virtual store is owned by the sequence once set
+                    boolean storeSet = false;
+
                     seq.beginUpdate();
                     try
                     {
@@ -2484,10 +2560,29 @@ public class Loader
                             {
                                 // cancel requested ? --> return null to inform about cancel
                                 if ((loadingFrame != null) && loadingFrame.isCancelRequested())
+                                {
+                                    if (virtualStore != null)
+                                        virtualStore.close();
                                     return null;
-
-                                // load image and add it to the sequence
-                                seq.setImage(t, z, importer.getImage(s, z, t));
+                                }
+
+                                if ((virtualStore != null) && ((t > 0) || (z > 0)))
+                                    // just set a plane handle, image will be read when needed
+                                    seq.setStoredImage(t, z, virtualStore.createPlane(z, t, seq.getSizeX(),
+                                            seq.getSizeY(), seq.getSizeC(), seq.getDataType_()));
+                                else
+                                {
+                                    // load image and add it to the sequence
+                                    seq.setImage(t, z, importer.getImage(s, z, t));
+
+                                    // first image defines sequence format, we can now set the store
+                                    if (virtualStore != null)
+                                    {
+                                        seq.setPlaneStore(virtualStore,
+                                                GeneralPreferences.getVirtualCacheSize() * 1024L * 1024L);
+                                        storeSet = true;
+                                    }
+                                }
 
                                 progress += progressStep;
 
@@ -2500,6 +2595,10 @@ public class Loader
                     finally
                     {
                         seq.endUpdate();
+
+                        // error while loading first image --> release the virtual store importer
+                        if ((virtualStore != null) && !storeSet)
+                            virtualStore.close();
                     }
 
                     // add sequence to result
@@ -2529,6 +2628,47 @@ public class Loader
         return result;
     }
 
+    /**
+     * Create the {@link VirtualPlaneStore} used to load images of the specified serie on demand.<br>
+     * A new importer instance is used as the given importer is closed at the end of the loading
+     * process.
+     * 
+     * @return <code>null</code> if the virtual store cannot be created (images are then loaded
+     *         normally)
+     */
+    static VirtualPlaneStore createVirtualStore(SequenceFileImporter importer, String path, int serie)
+    {
+        SequenceFileImporter imp = null;
+
+        try
+        {
+            imp = importer.getClass().newInstance();
+
+            if (imp.open(path, 0))
+                return new VirtualPlaneStore(imp, serie, 0, new DirectPlaneStore());
+        }
+        catch (Throwable t)
+        {
+            IcyExceptionHandler.showErrorMessage(t, false, true);
+            System.err.println("Cannot use virtual mode for '" + path + "', loading all images...");
+        }
+
+        // store not created --> release the importer
+        if (imp != null)
+        {
+            try
+            {
+                imp.close();
+            }
+            catch (Throwable t)
+            {
+                // ignore
+            }
+        }
+
+        return null;
+    }
+
     static Sequence createNewSequence(String path, OMEXMLMetadataImpl meta, int serie, boolean multiSerie)
     {
         // create a new sequence
@@ -0,0 +1,273 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.file;
+
+import icy.file.Loader.FilePosition;
+import icy.gui.frame.progress.FileFrame;
+import icy.sequence.Sequence;
+import icy.system.IcyExceptionHandler;
+import icy.system.thread.Processor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Load a list of files in parallel (each worker thread uses its own importer instances) while
+ * giving the loaded sequences back in file order.<br>
+ * Workers can't get more than <i>windowSize</i> files ahead of the consumer so the amount of
+ * loaded but not yet assembled data remains bounded.<br>
+ * Internal use only.
+ *
+ * @author Stephane
+ */
+class ParallelFileLoader
+{
+    /**
+     * Loading result of a file
+     */
+    static class LoadResult
+    {
+        final List<Sequence> sequences;
+        final Throwable error;
+
+        LoadResult(List<Sequence> sequences, Throwable error)
+        {
+            super();
+
+            this.sequences = sequences;
+            this.error = error;
+        }
+    }
+
+    class Worker implements Runnable
+    {
+        final List<SequenceFileImporter> importers;
+
+        Worker(List<SequenceFileImporter> importers)
+        {
+            super();
+
+            this.importers = importers;
+        }
+
+        @Override
+        public void run()
+        {
+            int index = nextFile();
+
+            while (index != -1)
+            {
+                List<Sequence> sequences = null;
+                Throwable error = null;
+
+                try
+                {
+                    // never display the serie selection dialog from here (see Loader)
+                    sequences = Loader.internalLoadSingle(importers, filePositions.get(index).path, serie, false,
+                            null);
+                }
+                catch (Throwable t)
+                {
+                    error = t;
+                }
+
+                fileLoaded(index, new LoadResult(sequences, error));
+                index = nextFile();
+            }
+        }
+    }
+
+    final List<FilePosition> filePositions;
+    final int serie;
+    final int windowSize;
+    final Processor processor;
+
+    /**
+     * internals
+     */
+    final Map<Integer, LoadResult> results;
+    int nextIndex;
+    int consumedIndex;
+    boolean canceled;
+
+    /**
+     * Create and start the parallel loader.
+     *
+     * @param filePositions
+     *        files to load (in assembly order)
+     * @param importers
+     *        importers to use (workers use new instances of the same importers so the given
+     *        instances remain available to the caller)
+     * @param serie
+     *        serie index to load (see {@link Loader#internalLoadSingle(List, String, int, FileFrame)}).
+     *        When it is -1 a multi serie file is not loaded, {@link #get(int, FileFrame)} throws a
+     *        {@link Loader.SerieSelectionException} for it instead
+     * @param numThread
+     *        number of loading thread
+     */
+    ParallelFileLoader(List<FilePosition> filePositions, List<SequenceFileImporter> importers, int serie,
+            int numThread)
+    {
+        super();
+
+        this.filePositions = filePositions;
+        this.serie = serie;
+
+        final int numWorker = Math.max(1, Math.min(numThread, filePositions.size()));
+
+        // allow each worker to be one file ahead
+        windowSize = numWorker * 2;
+        results = new HashMap<Integer, LoadResult>();
+        nextIndex = 0;
+        consumedIndex = 0;
+        canceled = false;
+
+        processor = new Processor(numWorker);
+        processor.setThreadName("File loader");
+
+        for (int i = 0; i < numWorker; i++)
+            processor.submit(new Worker(createImporters(importers)));
+    }
+
+    /**
+     * Create new instances of the specified importers (importers are not thread safe).
+     */
+    static List<SequenceFileImporter> createImporters(List<SequenceFileImporter> importers)
+    {
+        final List<SequenceFileImporter> result = new ArrayList<SequenceFileImporter>(importers.size());
+
+        for (SequenceFileImporter importer : importers)
+        {
+            try
+            {
+                result.add(importer.getClass().newInstance());
+            }
+            catch (Throwable t)
+            {
+                IcyExceptionHandler.showErrorMessage(t, false, true);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns index of the next file to load (wait if workers are too much ahead of the consumer)
+     * or -1 if there is no more file to load.
+     */
+    synchronized int nextFile()
+    {
+        while (!canceled && (nextIndex < filePositions.size()) && (nextIndex >= (consumedIndex + windowSize)))
+        {
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                // ignore
+            }
+        }
+
+        if (canceled || (nextIndex >= filePositions.size()))
+            return -1;
+
+        return nextIndex++;
+    }
+
+    synchronized void fileLoaded(int index, LoadResult result)
+    {
+        results.put(Integer.valueOf(index), result);
+        notifyAll();
+    }
+
+    /**
+     * Returns the sequences loaded from the file at the specified index (wait for it if needed).<br>
+     * Files should be retrieved in order. Returns <code>null</code> if loading was canceled (from
+     * the <i>loadingFrame</i> or the serie selection).
+     */
+    List<Sequence> get(int index, FileFrame loadingFrame) throws IOException
+    {
+        final LoadResult result;
+
+        synchronized (this)
+        {
+            final Integer key = Integer.valueOf(index);
+
+            while (!canceled && !results.containsKey(key))
+            {
+                // cancel requested ?
+                if ((loadingFrame != null) && loadingFrame.isCancelRequested())
+                {
+                    cancel();
+                    break;
+                }
+
+                try
+                {
+                    wait(100);
+                }
+                catch (InterruptedException e)
+                {
+                    // ignore
+                }
+            }
+
+            if (canceled)
+                return null;
+
+            result = results.remove(key);
+            consumedIndex = index + 1;
+            notifyAll();
+        }
+
+        if (result.error instanceof IOException)
+            throw (IOException) result.error;
+        if (result.error instanceof RuntimeException)
+            throw (RuntimeException) result.error;
+        if (result.error instanceof Error)
+            throw (Error) result.error;
+        if (result.error != null)
+            throw new IOException(result.error.getMessage(), result.error);
+
+        return result.sequences;
+    }
+
+    /**
+     * Stop loading (pending results are lost).
+     */
+    synchronized void cancel()
+    {
+        canceled = true;
+        results.clear();
+        notifyAll();
+    }
+
+    /**
+     * Cancel remaining loading and release the loading threads.
+     */
+    void shutdown()
+    {
+        cancel();
+        processor.shutdown();
+    }
+}
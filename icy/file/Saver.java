@@ -28,6 +28,8 @@ import icy.preferences.GeneralPreferences;
 import icy.sequence.MetaDataUtil;
 import icy.sequence.Sequence;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
 import icy.type.DataType;
 import icy.util.OMEUtil;
 import icy.util.StringUtil;
@@ -35,6 +37,12 @@ import icy.util.StringUtil;
 import java.io.File;
 import java.io.IOException;
 import java.text.DecimalFormat;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import loci.common.services.ServiceException;
 import loci.formats.FormatException;
@@ -603,21 +611,56 @@ public class Saver
                     sequence.setName(fileName);
                 sequence.setFilename(fileBaseDirectory);
 
-                for (int t = tMin; t <= tMax; t++)
+                final Processor processor = new Processor(getSaveThreadCount());
+                final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+                processor.setThreadName("Image saver");
+
+                try
                 {
-                    for (int z = zMin; z <= zMax; z++)
+                    for (int t = tMin; t <= tMax; t++)
                     {
-                        String filename = filePathWithoutExt;
+                        for (int z = zMin; z <= zMax; z++)
+                        {
+                            String filename = filePathWithoutExt;
 
-                        if ((tMax - tMin) > 0)
-                            filename += "_t" + decimalFormat.format(t);
-                        if ((zMax - zMin) > 0)
-                            filename += "_z" + decimalFormat.format(z);
-                        filename += fileExt;
+                            if ((tMax - tMin) > 0)
+                                filename += "_t" + decimalFormat.format(t);
+                            if ((zMax - zMin) > 0)
+                                filename += "_z" + decimalFormat.format(z);
+                            filename += fileExt;
 
-                        // save as single image file
-                        save(writer, sequence, filename, z, z, t, t, fps, saveFrame);
+                            // save as single image file (files are saved in parallel)
+                            futures.add(processor.submit(new FileSaver(writer, sequence, filename, z, t, fps)));
+                        }
                     }
+
+                    // wait for completion (in order)
+                    for (Future<?> future : futures)
+                    {
+                        if ((saveFrame != null) && saveFrame.isCancelRequested())
+                            break;
+
+                        try
+                        {
+                            future.get();
+                        }
+                        catch (ExecutionException e)
+                        {
+                            throw getException(e);
+                        }
+
+                        if (saveFrame != null)
+                            saveFrame.incPosition();
+                    }
+                }
+                finally
+                {
+                    // cancel remaining files (if any)
+                    for (Future<?> future : futures)
+                        future.cancel(false);
+
+                    processor.shutdown();
                 }
 
                 // add as one item to recent file list
@@ -673,6 +716,143 @@ public class Saver
         }
     }
 
+    /**
+     * Returns the number of thread used to convert and save images.
+     */
+    static int getSaveThreadCount()
+    {
+        final int result = GeneralPreferences.getSaverThreads();
+
+        // automatic
+        if (result <= 0)
+            return SystemUtil.getNumberOfCPUs();
+
+        return result;
+    }
+
+    /**
+     * Returns the original exception from an {@link ExecutionException}.
+     */
+    private static Exception getException(ExecutionException e)
+    {
+        final Throwable cause = e.getCause();
+
+        if (cause instanceof Exception)
+            return (Exception) cause;
+        if (cause instanceof Error)
+            throw (Error) cause;
+
+        return e;
+    }
+
+    /**
+     * Create a new writer of the same type (and same compression) than the specified one (writers
+     * are not thread safe).
+     */
+    private static IFormatWriter createWriter(IFormatWriter writer) throws ServiceException
+    {
+        final IFormatWriter result;
+
+        try
+        {
+            result = writer.getClass().newInstance();
+        }
+        catch (Exception e)
+        {
+            throw new ServiceException("Can't create new writer instance: " + e);
+        }
+
+        try
+        {
+            if (writer.getCompression() != null)
+                result.setCompression(writer.getCompression());
+        }
+        catch (FormatException e)
+        {
+            // compression not supported, keep default
+        }
+
+        return result;
+    }
+
+    /**
+     * Save a single image of the sequence in a separate file (own writer instance so several files
+     * can be saved in parallel).
+     */
+    private static class FileSaver implements Callable<Object>
+    {
+        final IFormatWriter writer;
+        final Sequence sequence;
+        final String filePath;
+        final int z;
+        final int t;
+        final int fps;
+
+        FileSaver(IFormatWriter writer, Sequence sequence, String filePath, int z, int t, int fps)
+        {
+            super();
+
+            this.writer = writer;
+            this.sequence = sequence;
+            this.filePath = filePath;
+            this.z = z;
+            this.t = t;
+            this.fps = fps;
+        }
+
+        @Override
+        public Object call() throws Exception
+        {
+            save(createWriter(writer), sequence, filePath, z, z, t, t, fps, null);
+
+            return null;
+        }
+    }
+
+    /**
+     * Image raw data conversion (done in parallel with the file writing).
+     */
+    private static class RawDataGetter implements Callable<byte[][]>
+    {
+        final Sequence sequence;
+        final int z;
+        final int t;
+        final boolean separateChannel;
+        final boolean littleEndian;
+
+        RawDataGetter(Sequence sequence, int z, int t, boolean separateChannel, boolean littleEndian)
+        {
+            super();
+
+            this.sequence = sequence;
+            this.z = z;
+            this.t = t;
+            this.separateChannel = separateChannel;
+            this.littleEndian = littleEndian;
+        }
+
+        @Override
+        public byte[][] call() throws Exception
+        {
+            final IcyBufferedImage image = sequence.getImage(t, z);
+
+            if (image == null)
+                return null;
+
+            if (separateChannel)
+            {
+                final byte[][] result = new byte[image.getSizeC()][];
+
+                for (int c = 0; c < result.length; c++)
+                    result[c] = image.getRawData(c, littleEndian);
+
+                return result;
+            }
+
+            return new byte[][] {image.getRawData(littleEndian)};
+        }
+    }
+
     /**
      * Save a single image from bytes buffer to the specified file.
      */
@@ -888,8 +1068,94 @@ public class Saver
 
         // get endianess
         final boolean littleEndian = !writer.getMetadataRetrieve().getPixelsBinDataBigEndian(0, 0).booleanValue();
+        final int numImage = ((zMax - zMin) + 1) * ((tMax - tMin) + 1);
+        final int numThread = (numImage > 1) ? getSaveThreadCount() : 1;
         byte[] data = null;
 
+        // several images --> convert them in parallel while writing in order
+        if (numThread > 1)
+        {
+            final Processor processor = new Processor(numThread);
+            // images are converted ahead but only within this limit
+            final int maxPending = numThread * 2;
+            final LinkedList<Future<byte[][]>> pendings = new LinkedList<Future<byte[][]>>();
+
+            processor.setThreadName("Image saver");
+
+            try
+            {
+                int imageIndex = 0;
+                int t = tMin;
+                int z = zMin;
+
+                // XYCZT order is important here (see metadata)
+                for (int i = 0; i < numImage; i++)
+                {
+                    // feed conversion pipeline
+                    while ((pendings.size() < maxPending) && (t <= tMax))
+                    {
+                        pendings.add(processor.submit(new RawDataGetter(sequence, z, t, separateChannel, littleEndian)));
+
+                        if (++z > zMax)
+                        {
+                            z = zMin;
+                            t++;
+                        }
+                    }
+
+                    if ((saveFrame != null) && saveFrame.isCancelRequested())
+                        return;
+
+                    final byte[][] datas;
+
+                    try
+                    {
+                        datas = pendings.removeFirst().get();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        throw new IOException("Image save interrupted.");
+                    }
+                    catch (ExecutionException e)
+                    {
+                        final Exception ex = getException(e);
+
+                        if (ex instanceof IOException)
+                            throw (IOException) ex;
+                        if (ex instanceof RuntimeException)
+                            throw (RuntimeException) ex;
+
+                        throw new IOException(ex.getMessage(), ex);
+                    }
+
+                    final int numData = separateChannel ? sizeC : 1;
+
+                    for (int c = 0; c < numData; c++)
+                    {
+                        if (datas != null)
+                            writer.saveBytes(imageIndex, datas[c]);
+
+                        imageIndex++;
+                    }
+
+                    if (saveFrame != null)
+                        saveFrame.incPosition();
+                }
+            }
+            finally
+            {
+                for (Future<byte[][]> future : pendings)
+                    future.cancel(false);
+
+                processor.shutdown();
+
+                // always close writer after a file has been saved
+                writer.close();
+            }
+
+            return;
+        }
+
         try
         {
             int imageIndex = 0;
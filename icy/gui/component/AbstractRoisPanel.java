@@ -42,7 +42,9 @@ import icy.sequence.Sequence;
 import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
 import icy.system.thread.InstanceProcessor;
+import icy.system.thread.Processor;
 import icy.system.thread.ThreadUtil;
 import icy.util.ClassUtil;
 import icy.util.StringUtil;
@@ -65,6 +67,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
@@ -95,6 +99,8 @@ import org.jdesktop.swingx.table.TableColumnExt;
 import org.pushingpixels.substance.api.renderers.SubstanceDefaultTableCellRenderer;
 import org.pushingpixels.substance.api.skin.SkinChangeListener;
 
+import plugins.kernel.roi.descriptor.intensity.ROIIntensityDescriptorsPlugin;
+import plugins.kernel.roi.descriptor.intensity.ROIIntensityDescriptorsPlugin.IntensityDescriptorInfos;
 import plugins.kernel.roi.descriptor.intensity.ROIMaxIntensityDescriptor;
 import plugins.kernel.roi.descriptor.intensity.ROIMeanIntensityDescriptor;
 import plugins.kernel.roi.descriptor.intensity.ROIMinIntensityDescriptor;
@@ -1973,6 +1979,8 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel implements A
     {
         protected final LinkedHashSet<ROIResults> resultsToCompute;
         protected final DescriptorType type;
+        // used to compute (kernel) descriptors of several ROIs in parallel
+        protected final Processor computeProcessor;
 
         public DescriptorComputer(DescriptorType type)
         {
@@ -1981,6 +1989,10 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel implements A
             resultsToCompute = new LinkedHashSet<AbstractRoisPanel.ROIResults>(256);
             this.type = type;
 
+            computeProcessor = new Processor(SystemUtil.getNumberOfCPUs());
+            computeProcessor.setThreadName(getName());
+            computeProcessor.setPriority(Processor.MIN_PRIORITY);
+
             setPriority(Thread.MIN_PRIORITY);
         }
 
@@ -2073,11 +2085,166 @@ public abstract class AbstractRoisPanel extends ExternalizablePanel implements A
 
                 if (seq != null)
                 {
-                    // start with primaries descriptors
-                    for (ROIResults roiResults : roiResultsList)
-                        computeROIResults(roiResults, seq);
+                    // intensity descriptors are computed for all ROIs at once
+                    computeIntensityDescriptors(roiResultsList, seq);
+
+                    // external descriptors may not support concurrent computation
+                    if ((type == DescriptorType.EXTERNAL) || (roiResultsList.length < 2))
+                    {
+                        for (ROIResults roiResults : roiResultsList)
+                            computeROIResults(roiResults, seq);
+                    }
+                    else
+                        computeROIResultsInParallel(roiResultsList, seq);
                 }
             }
+
+            computeProcessor.shutdownNow();
+        }
+
+        protected void computeROIResultsInParallel(ROIResults[] roiResultsList, final Sequence seq)
+        {
+            final List<Future<?>> futures = new ArrayList<Future<?>>(roiResultsList.length);
+
+            try
+            {
+                for (final ROIResults roiResults : roiResultsList)
+                {
+                    futures.add(computeProcessor.submit(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            computeROIResults(roiResults, seq);
+                        }
+                    }));
+                }
+
+                for (Future<?> future : futures)
+                    future.get();
+            }
+            catch (InterruptedException e)
+            {
+                // ignore and just interrupt now
+                Thread.currentThread().interrupt();
+            }
+            catch (ExecutionException e)
+            {
+                IcyExceptionHandler.handleException(e.getCause(), true);
+            }
+            finally
+            {
+                // cancel remaining tasks (interrupted)
+                for (Future<?> future : futures)
+                    future.cancel(true);
+            }
+        }
+
+        /**
+         * Compute the outdated intensity descriptors (see {@link ROIIntensityDescriptorsPlugin}) of the specified
+         * ROI results in a single batch (much faster than a per ROI computation when we have many ROIs).<br>
+         * Results which cannot be computed here are left outdated.
+         */
+        protected void computeIntensityDescriptors(ROIResults[] roiResultsList, Sequence seq)
+        {
+            final Map<ROIResults, List<ColumnInfo>> columnsToCompute = new HashMap<ROIResults, List<ColumnInfo>>();
+
+            for (ROIResults roiResults : roiResultsList)
+            {
+                final Map<ColumnInfo, DescriptorResult> results = roiResults.descriptorResults;
+                final List<ColumnInfo> columns = new ArrayList<ColumnInfo>();
+
+                synchronized (results)
+                {
+                    for (Entry<ColumnInfo, DescriptorResult> entry : results.entrySet())
+                    {
+                        final ColumnInfo columnInfo = entry.getKey();
+                        final DescriptorResult result = entry.getValue();
+
+                        // only compute a specific kind of descriptor
+                        if ((columnInfo.getDescriptorType() == type) && columnInfo.descriptor.separateChannel()
+                                && (result != null) && result.isOutdated())
+                        {
+                            final PluginROIDescriptor plugin;
+
+                            synchronized (descriptorMap)
+                            {
+                                plugin = descriptorMap.get(columnInfo.descriptor);
+                            }
+
+                            if (plugin instanceof ROIIntensityDescriptorsPlugin)
+                                columns.add(columnInfo);
+                        }
+                    }
+                }
+
+                if (!columns.isEmpty())
+                    columnsToCompute.put(roiResults, columns);
+            }
+
+            // not worth it
+            if (columnsToCompute.size() < 2)
+                return;
+
+            final List<ROI> rois = new ArrayList<ROI>(columnsToCompute.size());
+
+            for (ROIResults roiResults : columnsToCompute.keySet())
+                rois.add(roiResults.roi);
+
+            final Map<ROI, IntensityDescriptorInfos[]> intensityInfos;
+
+            try
+            {
+                intensityInfos = ROIIntensityDescriptorsPlugin.computeIntensityDescriptors(rois, seq);
+            }
+            catch (InterruptedException e)
+            {
+                // ignore and just interrupt now
+                Thread.currentThread().interrupt();
+                return;
+            }
+            catch (Throwable t)
+            {
+                // results are still outdated so they will be computed (and error reported) by the default path
+                return;
+            }
+
+            for (Entry<ROIResults, List<ColumnInfo>> entry : columnsToCompute.entrySet())
+            {
+                final ROIResults roiResults = entry.getKey();
+                final IntensityDescriptorInfos[] channelInfos = intensityInfos.get(roiResults.roi);
+
+                for (ColumnInfo columnInfo : entry.getValue())
+                {
+                    final int channel = columnInfo.channel;
+                    final Object value;
+
+                    if ((channelInfos != null) && (channel >= 0) && (channel < channelInfos.length)
+                            && (channelInfos[channel] != null))
+                        value = ROIIntensityDescriptorsPlugin.getDescriptorResults(channelInfos[channel]).get(
+                                columnInfo.descriptor);
+                    else
+                        value = null;
+
+                    final DescriptorResult result;
+
+                    synchronized (roiResults.descriptorResults)
+                    {
+                        result = roiResults.descriptorResults.get(columnInfo);
+                    }
+
+                    if (result != null)
+                    {
+                        // set the result value
+                        result.setValue(value);
+                        // result is up to date
+                        result.setOutdated(false);
+                    }
+                }
+            }
+
+            // refresh table data
+            refreshTableData();
         }
 
         protected void computeROIResults(ROIResults roiResults, Sequence seq)
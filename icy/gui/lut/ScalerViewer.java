@@ -24,6 +24,8 @@ import icy.gui.viewer.Viewer;
 import icy.gui.viewer.ViewerEvent;
 import icy.gui.viewer.ViewerEvent.ViewerEventType;
 import icy.gui.viewer.ViewerListener;
+import icy.image.IcyBufferedImage;
+import icy.image.cache.HistogramCache;
 import icy.image.lut.LUT.LUTChannel;
 import icy.image.lut.LUT.LUTChannelEvent;
 import icy.image.lut.LUT.LUTChannelEvent.LUTChannelEventType;
@@ -36,8 +38,6 @@ import icy.sequence.SequenceEvent;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.sequence.SequenceListener;
 import icy.system.thread.ThreadUtil;
-import icy.type.DataType;
-import icy.type.collection.array.Array1DUtil;
 import icy.util.ColorUtil;
 import icy.util.EventUtil;
 import icy.util.GraphicsUtil;
@@ -60,7 +60,6 @@ import java.awt.event.MouseMotionListener;
 import java.awt.event.MouseWheelEvent;
 import java.awt.event.MouseWheelListener;
 import java.awt.geom.Point2D;
-import java.lang.reflect.Array;
 import java.util.EventListener;
 
 import javax.swing.JMenuItem;
@@ -520,6 +519,7 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
      * internals
      */
     private final Runnable histoUpdater;
+    private final HistogramCache histoCache;
     String message;
     private int retry;
 
@@ -535,6 +535,7 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
 
         message = "";
         retry = 0;
+        histoCache = new HistogramCache();
         scalerMapPositionListeners = new EventListenerList();
         histoUpdater = new Runnable()
         {
@@ -628,53 +629,51 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
         {
             if (seq != null)
             {
+                final int minZ;
                 final int maxZ;
+                final int minT;
                 final int maxT;
-                int t = viewer.getPositionT();
-                int z = viewer.getPositionZ();
+                final int t = viewer.getPositionT();
+                final int z = viewer.getPositionZ();
 
                 if (t != -1)
+                {
+                    minT = t;
                     maxT = t;
+                }
                 else
                 {
-                    t = 0;
+                    minT = 0;
                     maxT = seq.getSizeT() - 1;
                 }
 
                 if (z != -1)
+                {
+                    minZ = z;
                     maxZ = z;
+                }
                 else
                 {
-                    z = 0;
+                    minZ = 0;
                     maxZ = seq.getSizeZ() - 1;
                 }
 
                 final int c = lutChannel.getChannel();
 
-                for (; t <= maxT; t++)
+                for (int it = minT; it <= maxT; it++)
                 {
-                    for (; z <= maxZ; z++)
+                    for (int iz = minZ; iz <= maxZ; iz++)
                     {
-                        final Object data = seq.getDataXY(t, z, c);
+                        // need to be recalculated so don't waste time here...
+                        if (ThreadUtil.hasWaitingBgSingleTask(histoUpdater))
+                            return;
 
-                        // need to test for empty sequence
-                        if (data != null)
-                        {
-                            final DataType dataType = seq.getDataType_();
-                            final int len = Array.getLength(data);
+                        final IcyBufferedImage image = seq.getImage(it, iz);
 
-                            for (int i = 0; i < len; i++)
-                            {
-                                if ((i & 0xFFF) == 0)
-                                {
-                                    // need to be recalculated so don't waste time here...
-                                    if (ThreadUtil.hasWaitingBgSingleTask(histoUpdater))
-                                        return;
-                                }
-
-                                histo.addValue(Array1DUtil.getValue(data, i, dataType));
-                            }
-                        }
+                        // need to test for empty sequence
+                        if ((image != null) && (c < image.getSizeC()))
+                            // plane histogram is computed only once (then merged from cache)
+                            histoCache.addValues(histo, image, c);
                     }
                 }
             }
@@ -910,7 +909,17 @@ public class ScalerViewer extends JPanel implements SequenceListener, LUTChannel
     public void sequenceChanged(SequenceEvent sequenceEvent)
     {
         if (sequenceEvent.getSourceType() == SequenceEventSourceType.SEQUENCE_DATA)
+        {
+            final Object source = sequenceEvent.getSource();
+
+            // invalidate cached histograms
+            if (source instanceof IcyBufferedImage)
+                histoCache.invalidate((IcyBufferedImage) source);
+            else
+                histoCache.clear();
+
             onSequenceDataChanged();
+        }
     }
 
     @Override
@@ -18,18 +18,22 @@
  */
 package icy.image;
 
+import icy.image.colormap.IcyColorMap;
+import icy.image.colormap.IcyColorMap.IcyColorMapType;
+import icy.image.colorspace.IcyColorSpace;
 import icy.image.lut.LUT;
 import icy.math.Scaler;
 import icy.system.SystemUtil;
 import icy.system.thread.Processor;
-import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
 
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBufferInt;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * @author Stephane
@@ -38,77 +42,448 @@ class ARGBImageBuilder
 {
     private static final int BLOC_SIZE = 512 * 512;
 
-    class BlockBuilder implements Runnable
+    /**
+     * Maximum number of enabled channels for the lookup table path (color components are summed
+     * in 10 bits fields)
+     */
+    private static final int MAX_TABLE_CHANNEL = 4;
+
+    /**
+     * Alpha normalization factor table (avoid division)
+     */
+    private static final int[] ALPHA_INV;
+
+    static
+    {
+        ALPHA_INV = new int[IcyColorMap.MAX_LEVEL + 1];
+        for (int a = 1; a < ALPHA_INV.length; a++)
+            ALPHA_INV[a] = (1 << (IcyColorMap.COLORMAP_BITS + 8)) / a;
+    }
+
+    /**
+     * Precomputed value --> color lookup tables of a LUT for byte and short data.<br>
+     * For each channel and each possible raw value we store the premultiplied color (packed as 10
+     * bits fields) and the alpha value so ARGB values can be built without scaling nor colormap
+     * access.
+     */
+    static class LUTTables
+    {
+        final DataType dataType;
+        /**
+         * enabled channels
+         */
+        final int[] channels;
+        /**
+         * alpha colormap for each enabled channel
+         */
+        final boolean[] alphaType;
+        /**
+         * packed premultiplied colors (b | g << 10 | r << 20) for each enabled channel
+         */
+        final int[][] colors;
+        /**
+         * alpha values for each enabled channel
+         */
+        final float[][] alphas;
+
+        /**
+         * LUT state used to build tables
+         */
+        final double[][] scalerStates;
+        final int[][][] colormapStates;
+        final float[][] alphaStates;
+        final boolean[] enabledStates;
+
+        LUTTables(LUT lut, DataType dataType)
+        {
+            super();
+
+            this.dataType = dataType;
+
+            final IcyColorSpace colorSpace = lut.getColorSpace();
+            final Scaler[] scalers = lut.getScalers();
+            final int numChannel = lut.getNumChannel();
+            final int size = 1 << (dataType.getSize() * 8);
+            final boolean signed = dataType.isSigned();
+
+            // all possible raw values
+            final Object values;
+            if (dataType.getJavaType() == DataType.BYTE.getJavaType())
+            {
+                final byte[] b = new byte[size];
+                for (int i = 0; i < size; i++)
+                    b[i] = (byte) i;
+                values = b;
+            }
+            else
+            {
+                final short[] s = new short[size];
+                for (int i = 0; i < size; i++)
+                    s[i] = (short) i;
+                values = s;
+            }
+
+            scalerStates = new double[numChannel][];
+            colormapStates = new int[numChannel][][];
+            alphaStates = new float[numChannel][];
+            enabledStates = new boolean[numChannel];
+
+            int numEnabled = 0;
+            for (int comp = 0; comp < numChannel; comp++)
+            {
+                final IcyColorMap cm = colorSpace.getColorMap(comp);
+
+                scalerStates[comp] = getScalerState(scalers[comp]);
+                colormapStates[comp] = copyOf(cm.getPremulRGB());
+                alphaStates[comp] = cm.alpha.mapf.clone();
+                enabledStates[comp] = cm.isEnabled();
+
+                if (enabledStates[comp])
+                    numEnabled++;
+            }
+
+            channels = new int[numEnabled];
+            alphaType = new boolean[numEnabled];
+            colors = new int[numEnabled][];
+            alphas = new float[numEnabled][];
+
+            final int[] indexes = new int[size];
+            int ch = 0;
+            for (int comp = 0; comp < numChannel; comp++)
+            {
+                if (!enabledStates[comp])
+                    continue;
+
+                final IcyColorMap cm = colorSpace.getColorMap(comp);
+                final int[][] premulRGB = colormapStates[comp];
+                final float[] alphaMap = alphaStates[comp];
+                final int[] col = new int[size];
+                final float[] alp = new float[size];
+
+                // scaled colormap index for each raw value (same computation than the default path)
+                scalers[comp].scale(values, 0, indexes, 0, size, signed);
+
+                for (int i = 0; i < size; i++)
+                {
+                    final int index = indexes[i];
+                    final int[] rgb = premulRGB[index];
+
+                    col[i] = rgb[0] | (rgb[1] << 10) | (rgb[2] << 20);
+                    alp[i] = alphaMap[index];
+                }
+
+                channels[ch] = comp;
+                alphaType[ch] = (cm.getType() == IcyColorMapType.ALPHA);
+                colors[ch] = col;
+                alphas[ch] = alp;
+                ch++;
+            }
+        }
+
+        /**
+         * Returns <code>true</code> if tables are still valid for the specified LUT and data type.
+         */
+        boolean isValid(LUT lut, DataType dataType)
+        {
+            if ((this.dataType != dataType) || (lut.getNumChannel() != enabledStates.length))
+                return false;
+
+            final IcyColorSpace colorSpace = lut.getColorSpace();
+            final Scaler[] scalers = lut.getScalers();
+
+            for (int comp = 0; comp < enabledStates.length; comp++)
+            {
+                final IcyColorMap cm = colorSpace.getColorMap(comp);
+
+                if (cm.isEnabled() != enabledStates[comp])
+                    return false;
+                if (!Arrays.equals(getScalerState(scalers[comp]), scalerStates[comp]))
+                    return false;
+                if (!Arrays.equals(cm.alpha.mapf, alphaStates[comp]))
+                    return false;
+
+                final int[][] premulRGB = cm.getPremulRGB();
+                final int[][] state = colormapStates[comp];
+
+                for (int i = 0; i < state.length; i++)
+                    if (!Arrays.equals(premulRGB[i], state[i]))
+                        return false;
+            }
+
+            return true;
+        }
+
+        private static int[][] copyOf(int[][] array)
+        {
+            final int[][] result = new int[array.length][];
+
+            for (int i = 0; i < array.length; i++)
+                result[i] = array[i].clone();
+
+            return result;
+        }
+
+        private static double[] getScalerState(Scaler scaler)
+        {
+            return new double[] {scaler.getLeftIn(), scaler.getRightIn(), scaler.getLeftOut(), scaler.getRightOut(),
+                    scaler.isCrossed() ? 1d : 0d};
+        }
+    }
+
+    /**
+     * Build the ARGB image of a frame.<br>
+     * The image is split in blocs which are processed by the calling thread and the processor
+     * threads: each thread takes the next available bloc until all blocs are done, so the calling
+     * thread never has to wait for a task to be accepted.
+     */
+    class FrameBuilder implements Runnable
     {
         /**
          * cached variables
          */
-        private IcyBufferedImage image;
-        private LUT lut;
-        private int dest[];
-        private int offset;
-        private int length;
-        private int numChannel;
-
-        BlockBuilder(IcyBufferedImage image, LUT lut, int[] dest, int offset, int length)
+        final IcyBufferedImage image;
+        final LUT lut;
+        final LUTTables tables;
+        final int[] dest;
+        final int imageSize;
+        final int numBloc;
+        final int numChannel;
+        final boolean signed;
+        final byte[][] byteValues;
+        final short[][] shortValues;
+
+        /**
+         * internals
+         */
+        final AtomicInteger nextBloc;
+        final CountDownLatch remainingBloc;
+
+        FrameBuilder(IcyBufferedImage image, LUT lut, LUTTables tables, int[] dest)
         {
             super();
 
             this.image = image;
-            // use internal lut if specified lut is null
-            if (lut == null)
-                this.lut = image.createCompatibleLUT(false);
-            else
-                this.lut = lut;
+            this.lut = lut;
+            this.tables = tables;
             this.dest = dest;
-            this.offset = offset;
-            this.length = length;
 
+            imageSize = image.getSizeX() * image.getSizeY();
+            numBloc = (imageSize + (BLOC_SIZE - 1)) / BLOC_SIZE;
             numChannel = image.getSizeC();
+            signed = image.getIcyColorModel().getDataType_().isSigned();
 
-            if (this.lut.getNumChannel() != numChannel)
+            if (lut.getNumChannel() != numChannel)
                 throw new IllegalArgumentException("ARGBImageBuilder.prepare(...): LUT.numChannel != IMAGE.numChannel");
+
+            // prepare data arrays for lookup tables path
+            if (tables != null)
+            {
+                final int numEnabled = tables.channels.length;
+
+                if (tables.dataType.getJavaType() == DataType.BYTE.getJavaType())
+                {
+                    byteValues = new byte[numEnabled][];
+                    for (int ch = 0; ch < numEnabled; ch++)
+                        byteValues[ch] = (byte[]) image.getSharedDataXY(tables.channels[ch]);
+                    shortValues = null;
+                }
+                else
+                {
+                    shortValues = new short[numEnabled][];
+                    for (int ch = 0; ch < numEnabled; ch++)
+                        shortValues[ch] = (short[]) image.getSharedDataXY(tables.channels[ch]);
+                    byteValues = null;
+                }
+            }
+            else
+            {
+                byteValues = null;
+                shortValues = null;
+            }
+
+            nextBloc = new AtomicInteger(0);
+            remainingBloc = new CountDownLatch(numBloc);
         }
 
         @Override
         public void run()
         {
-            int[][] componentValues = null;
+            int bloc = nextBloc.getAndIncrement();
 
-            try
+            while (bloc < numBloc)
             {
-                // get working buffer
-                componentValues = requestBuffer(numChannel);
+                final int offset = bloc * BLOC_SIZE;
 
-                if (componentValues != null)
+                try
+                {
+                    buildBloc(offset, Math.min(BLOC_SIZE, imageSize - offset));
+                }
+                catch (Exception e)
                 {
-                    // update output image buffer
-                    final Scaler[] scalers = lut.getScalers();
-                    final boolean signed = image.getIcyColorModel().getDataType_().isSigned();
+                    // we just ignore any exceptions here as we can be in asynch process
+                }
+                finally
+                {
+                    remainingBloc.countDown();
+                }
+
+                bloc = nextBloc.getAndIncrement();
+            }
+        }
+
+        private void buildBloc(int offset, int length)
+        {
+            // fast path using lookup tables
+            if (byteValues != null)
+                buildFromTables(byteValues, tables, dest, offset, length);
+            else if (shortValues != null)
+                buildFromTables(shortValues, tables, dest, offset, length);
+            else
+            {
+                // get working buffer
+                final int[][] componentValues = getBuffer(numChannel);
+                // update output image buffer
+                final Scaler[] scalers = lut.getScalers();
 
-                    // scale component values
-                    for (int comp = 0; comp < numChannel; comp++)
-                        scalers[comp].scale(image.getDataXY(comp), offset, componentValues[comp], 0, length, signed);
+                // scale component values
+                for (int comp = 0; comp < numChannel; comp++)
+                    scalers[comp].scale(image.getSharedDataXY(comp), offset, componentValues[comp], 0, length, signed);
+
+                // build ARGB destination buffer
+                lut.getColorSpace().fillARGBBuffer(componentValues, dest, offset, length);
+            }
+        }
+
+        /**
+         * Wait until all blocs are built.
+         */
+        void waitCompletion()
+        {
+            boolean done = false;
 
-                    // build ARGB destination buffer
-                    lut.getColorSpace().fillARGBBuffer(componentValues, dest, offset, length);
+            while (!done)
+            {
+                try
+                {
+                    remainingBloc.await();
+                    done = true;
+                }
+                catch (InterruptedException e)
+                {
+                    // ignore
                 }
             }
-            catch (Exception e)
+        }
+    }
+
+    /**
+     * Build ARGB values from the lookup tables for byte data (same result than
+     * {@link IcyColorSpace#toRGBUnnorm(int[])} on scaled values).
+     */
+    static void buildFromTables(byte[][] values, LUTTables tables, int[] dest, int offset, int length)
+    {
+        final int numChannel = values.length;
+        final int[][] colors = tables.colors;
+        final float[][] alphas = tables.alphas;
+        final boolean[] alphaType = tables.alphaType;
+
+        for (int i = offset; i < (offset + length); i++)
+        {
+            float alpha = 1f;
+            float maxLocalAlpha = 0f;
+            int bgr = 0;
+
+            for (int ch = 0; ch < numChannel; ch++)
             {
-                // we just ignore any exceptions here as we can be in asynch process
+                final int value = values[ch][i] & 0xFF;
+                final float alphaValue = alphas[ch][value];
+
+                if (alphaType[ch])
+                    alpha = alphaValue;
+                else if (alphaValue > maxLocalAlpha)
+                    maxLocalAlpha = alphaValue;
+
+                // additive blending of premultiplied colors
+                bgr += colors[ch][value];
             }
-            finally
+
+            dest[i] = toARGB(bgr, alpha, maxLocalAlpha);
+        }
+    }
+
+    /**
+     * Build ARGB values from the lookup tables for short data (same result than
+     * {@link IcyColorSpace#toRGBUnnorm(int[])} on scaled values).
+     */
+    static void buildFromTables(short[][] values, LUTTables tables, int[] dest, int offset, int length)
+    {
+        final int numChannel = values.length;
+        final int[][] colors = tables.colors;
+        final float[][] alphas = tables.alphas;
+        final boolean[] alphaType = tables.alphaType;
+
+        for (int i = offset; i < (offset + length); i++)
+        {
+            float alpha = 1f;
+            float maxLocalAlpha = 0f;
+            int bgr = 0;
+
+            for (int ch = 0; ch < numChannel; ch++)
             {
-                releaseBuffer(componentValues);
+                final int value = values[ch][i] & 0xFFFF;
+                final float alphaValue = alphas[ch][value];
+
+                if (alphaType[ch])
+                    alpha = alphaValue;
+                else if (alphaValue > maxLocalAlpha)
+                    maxLocalAlpha = alphaValue;
+
+                // additive blending of premultiplied colors
+                bgr += colors[ch][value];
             }
+
+            dest[i] = toARGB(bgr, alpha, maxLocalAlpha);
         }
     }
 
+    /**
+     * Returns ARGB value from the packed premultiplied color components and alpha values.
+     */
+    private static int toARGB(int bgr, float alpha, float maxLocalAlpha)
+    {
+        int b = bgr & 0x3FF;
+        int g = (bgr >> 10) & 0x3FF;
+        int r = (bgr >> 20) & 0x3FF;
+        final int a = (int) (alpha * maxLocalAlpha * IcyColorMap.MAX_LEVEL);
+
+        if (a != 0)
+        {
+            final int inv = ALPHA_INV[a];
+
+            // normalize on alpha
+            b = (b * inv) >> 8;
+            g = (g * inv) >> 8;
+            r = (r * inv) >> 8;
+        }
+
+        return ((b > IcyColorMap.MAX_LEVEL) ? IcyColorMap.MAX_LEVEL : b)
+                | (((g > IcyColorMap.MAX_LEVEL) ? IcyColorMap.MAX_LEVEL : g) << 8)
+                | (((r > IcyColorMap.MAX_LEVEL) ? IcyColorMap.MAX_LEVEL : r) << 16) | (a << 24);
+    }
+
     // processor
     private final Processor processor;
-    // data buffer pool
-    private final List<int[][]> buffers;
+    // working buffers (kept by each thread between frames)
+    private final ThreadLocal<int[][]> buffers;
+    // lookup tables cache
+    private final Map<LUT, LUTTables> lutTables;
+
+    /**
+     * statistics (time in ns)
+     */
+    private long buildCount;
+    private long lastBuildTime;
+    private long totalBuildTime;
 
     /**
      * 
@@ -125,128 +500,146 @@ class ARGBImageBuilder
         processor.setThreadName("ARGB Image builder");
         processor.setPriority(Processor.NORM_PRIORITY - 1);
 
-        buffers = new ArrayList<int[][]>();
+        buffers = new ThreadLocal<int[][]>();
+        lutTables = new WeakHashMap<LUT, LUTTables>();
     }
 
-    private BufferedImage getImage(IcyBufferedImage in, BufferedImage out)
+    /**
+     * Returns lookup tables for the specified image and LUT (<code>null</code> if lookup tables
+     * cannot be used for this image).<br>
+     * Tables are rebuilt only when the LUT changed.
+     */
+    LUTTables getLUTTables(IcyBufferedImage image, LUT lut)
     {
-        if ((out != null) && ImageUtil.sameSize(in, out))
-            return out;
-
-        return new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_ARGB);
-    }
+        final DataType dataType = image.getDataType_();
 
-    int[][] requestBuffer(int numChannel)
-    {
-        if (numChannel <= 0)
+        // only for byte and short data
+        if ((lut == null) || (dataType.getSize() > 2) || !dataType.isInteger())
+            return null;
+        if (lut.getNumChannel() != image.getSizeC())
+            return null;
+        // not worth for small image
+        if (((long) image.getSizeX() * (long) image.getSizeY()) < (1 << (dataType.getSize() * 8)))
             return null;
 
-        synchronized (buffers)
+        synchronized (lutTables)
         {
-            for (int index = buffers.size() - 1; index >= 0; index--)
-                if (buffers.get(index).length == numChannel)
-                    return buffers.remove(index);
+            LUTTables result = lutTables.get(lut);
+
+            if ((result == null) || !result.isValid(lut, dataType))
+            {
+                result = new LUTTables(lut, dataType);
+                lutTables.put(lut, result);
+            }
+
+            // too many channels to sum colors in packed fields
+            if (result.channels.length > MAX_TABLE_CHANNEL)
+                return null;
+
+            return result;
         }
+    }
 
-        // allocate a new one
-        return new int[numChannel][BLOC_SIZE];
+    private BufferedImage getImage(IcyBufferedImage in, BufferedImage out)
+    {
+        if ((out != null) && ImageUtil.sameSize(in, out))
+            return out;
+
+        return new BufferedImage(in.getWidth(), in.getHeight(), BufferedImage.TYPE_INT_ARGB);
     }
 
-    void releaseBuffer(int[][] buffer)
+    /**
+     * Returns the working buffer of the current thread.
+     */
+    int[][] getBuffer(int numChannel)
     {
-        if (buffer == null)
-            return;
+        int[][] result = buffers.get();
 
-        // --> blocked
-        synchronized (buffers)
+        // allocate only when channel number changed
+        if ((result == null) || (result.length != numChannel))
         {
-            buffers.add(buffer);
+            result = new int[numChannel][BLOC_SIZE];
+            buffers.set(result);
         }
+
+        return result;
     }
 
     public BufferedImage buildARGBImage(IcyBufferedImage image, LUT lut, BufferedImage out)
     {
-        // planar size
-        final int imageSize = image.getSizeX() * image.getSizeY();
-        final int step = imageSize / BLOC_SIZE;
+        final long startTime = System.nanoTime();
         final BufferedImage result = getImage(image, out);
         // destination buffer
         final int[] dest = ((DataBufferInt) result.getRaster().getDataBuffer()).getData();
-        final List<Future<?>> futures = new ArrayList<Future<?>>();
 
-        int offset = 0;
         try
         {
-            for (int i = 0; i < step; i++)
-            {
-                // build bloc
-                futures.add(addBloc(image, lut, dest, offset, BLOC_SIZE));
-                offset += BLOC_SIZE;
-            }
-
-            // last bloc
-            if (offset < imageSize)
-                futures.add(addBloc(image, lut, dest, offset, imageSize - offset));
-
-            // wait until image is built
-            waitCompletion(futures);
+            // use internal lut if specified lut is null
+            final LUT l = (lut == null) ? image.createCompatibleLUT(false) : lut;
+            final FrameBuilder builder = new FrameBuilder(image, l, getLUTTables(image, l), dest);
+            // number of helper tasks
+            final int numTask = Math.min(builder.numBloc - 1, processor.getMaximumPoolSize());
+
+            for (int i = 0; i < numTask; i++)
+                processor.submit(builder);
+
+            // calling thread participates to the build
+            builder.run();
+            // wait until helpers finished their blocs
+            builder.waitCompletion();
         }
         catch (IllegalArgumentException e)
         {
             // image has changed in the meantime, just ignore
         }
 
-        // release working buffer memory
-        synchronized (buffers)
+        final long time = System.nanoTime() - startTime;
+
+        synchronized (this)
         {
-            buffers.clear();
+            buildCount++;
+            lastBuildTime = time;
+            totalBuildTime += time;
         }
 
         return result;
     }
 
-    private Future<?> addBloc(IcyBufferedImage image, LUT lut, int dest[], int offset, int length)
+    /**
+     * Returns the number of image built since last statistics reset.
+     */
+    public synchronized long getBuildCount()
     {
-        final BlockBuilder builder = new BlockBuilder(image, lut, dest, offset, length);
-        Future<?> result = processor.submit(builder);
-
-        // not accepted ? retry until it is accepted...
-        while (result == null)
-        {
-            // wait a bit
-            ThreadUtil.sleep(1);
-            // and retry task submission
-            result = processor.submit(builder);
-        }
+        return buildCount;
+    }
 
-        return result;
+    /**
+     * Returns the time taken to build the last image (in ms).
+     */
+    public synchronized double getLastBuildTime()
+    {
+        return lastBuildTime / 1000000d;
     }
 
-    private void waitCompletion(List<Future<?>> futures)
+    /**
+     * Returns the average time taken to build an image (in ms) since last statistics reset.
+     */
+    public synchronized double getAverageBuildTime()
     {
-        while (!futures.isEmpty())
-        {
-            // get last in queue
-            final Future<?> f = futures.get(futures.size() - 1);
+        if (buildCount == 0)
+            return 0d;
 
-            try
-            {
-                // wait for it
-                f.get();
-            }
-            catch (ExecutionException e)
-            {
-                // warning
-                System.out.println("ARGBImageBuilder - Warning: " + e);
-            }
-            catch (InterruptedException e)
-            {
-                // ignore
-            }
+        return (totalBuildTime / buildCount) / 1000000d;
+    }
 
-            // remove it
-            futures.remove(f);
-        }
+    /**
+     * Reset build time statistics.
+     */
+    public synchronized void resetStatistics()
+    {
+        buildCount = 0L;
+        lastBuildTime = 0L;
+        totalBuildTime = 0L;
     }
 
     /**
@@ -70,8 +70,13 @@ public abstract class AbstractImageProvider implements ImageProvider
         final int tny = (int) Math.round(sy * ratio);
         final int resolution = getResolutionFactor(sx, sy, DEFAULT_THUMBNAIL_SIZE);
 
-        // take middle image for thumbnail
+        // take middle image for thumbnail (importers using a PyramidCache get it from cached levels)
         IcyBufferedImage result = getImage(serie, resolution, sz / 2, st / 2);
+
+        // can't get image
+        if (result == null)
+            return null;
+
         // scale it to desired dimension
         return IcyBufferedImageUtil.scale(result, tnx, tny, FilterType.BILINEAR);
     }
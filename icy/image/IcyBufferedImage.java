@@ -78,6 +78,20 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         NEAREST, BILINEAR, BICUBIC
     };
 
+    /**
+     * Handler of an image sharing its data with other images (copy-on-write, see
+     * {@link IcyBufferedImage#createSharingImage()}).<br>
+     * The handler is called before the image data is modified so images sharing the data can get
+     * their own copy of the still unmodified data.
+     */
+    public static interface DataShareHandler
+    {
+        /**
+         * The data of the specified image is about to be modified.
+         */
+        public void dataWillChange(IcyBufferedImage image);
+    }
+
     protected static IcyBufferedImageUtil.FilterType getNewFilterType(FilterType ft)
     {
         switch (ft)
@@ -436,6 +450,10 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      * listeners
      */
     private final List<IcyBufferedImageListener> listeners;
+    /**
+     * data share handler (copy-on-write), <code>null</code> if data is not shared
+     */
+    private volatile DataShareHandler dataShareHandler;
 
     /**
      * Build an Icy formatted BufferedImage, takes an IcyColorModel and a WritableRaster as input
@@ -831,7 +849,9 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     }
 
     /**
-     * Not supported on IcyBufferedImage, use getSubImageCopy instead.
+     * Not supported on IcyBufferedImage, use getSubImageCopy instead.<br>
+     * You can also use {@link IcyBufferedImageUtil#getSubImageView(IcyBufferedImage, java.awt.Rectangle)}
+     * to access a region without copying data.
      */
     @Deprecated
     @Override
@@ -974,12 +994,12 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         final DataType dataType = getDataType_();
 
         final boolean signed = dataType.isSigned();
-        final Object data = getDataXY(channel);
+        final Object data = getSharedDataXY(channel);
 
-        final double min = ArrayMath.min(data, signed);
-        final double max = ArrayMath.max(data, signed);
+        // single pass computation
+        final double[] result = ArrayMath.minMaxSum(data, signed);
 
-        return new double[] {min, max};
+        return new double[] {result[0], result[1]};
     }
 
     /**
@@ -1667,7 +1687,30 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     }
 
     /**
-     * Return a direct reference to internal 2D array data [C][XY]
+     * Returns the raster of this image.<br>
+     * The raster gives write access to the image data so data sharing is stopped first (see
+     * {@link #prepareDataChange()}).
+     */
+    @Override
+    public WritableRaster getRaster()
+    {
+        prepareDataChange();
+
+        return super.getRaster();
+    }
+
+    /**
+     * Returns the raster of this image for read access only (data sharing is preserved).
+     */
+    private WritableRaster getReadRaster()
+    {
+        return super.getRaster();
+    }
+
+    /**
+     * Return a direct reference to internal 2D array data [C][XY].<br>
+     * As the returned array can be modified data sharing is stopped first (see
+     * {@link #prepareDataChange()}), use {@link #getSharedDataXYC()} for read only access.
      */
     public Object getDataXYC()
     {
@@ -1689,7 +1732,9 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     }
 
     /**
-     * Return a direct reference to internal 1D array data [XY] for specified c
+     * Return a direct reference to internal 1D array data [XY] for specified c.<br>
+     * As the returned array can be modified data sharing is stopped first (see
+     * {@link #prepareDataChange()}), use {@link #getSharedDataXY(int)} for read only access.
      */
     public Object getDataXY(int c)
     {
@@ -1710,6 +1755,117 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         }
     }
 
+    /**
+     * Return a direct reference to internal 2D array data [C][XY] for read only access.<br>
+     * Contrary to {@link #getDataXYC()} this method preserves data sharing (see
+     * {@link #createSharingImage()}) so the returned array should never be modified.
+     */
+    public Object getSharedDataXYC()
+    {
+        final DataBuffer db = getReadRaster().getDataBuffer();
+
+        switch (getDataType_().getJavaType())
+        {
+            case BYTE:
+                return ((DataBufferByte) db).getBankData();
+            case SHORT:
+                if (db instanceof DataBufferUShort)
+                    return ((DataBufferUShort) db).getBankData();
+                return ((DataBufferShort) db).getBankData();
+            case INT:
+                return ((DataBufferInt) db).getBankData();
+            case FLOAT:
+                return ((DataBufferFloat) db).getBankData();
+            case DOUBLE:
+                return ((DataBufferDouble) db).getBankData();
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return a direct reference to internal 1D array data [XY] for specified c for read only
+     * access.<br>
+     * Contrary to {@link #getDataXY(int)} this method preserves data sharing (see
+     * {@link #createSharingImage()}) so the returned array should never be modified.
+     */
+    public Object getSharedDataXY(int c)
+    {
+        final DataBuffer db = getReadRaster().getDataBuffer();
+
+        switch (getDataType_().getJavaType())
+        {
+            case BYTE:
+                return ((DataBufferByte) db).getData(c);
+            case SHORT:
+                if (db instanceof DataBufferUShort)
+                    return ((DataBufferUShort) db).getData(c);
+                return ((DataBufferShort) db).getData(c);
+            case INT:
+                return ((DataBufferInt) db).getData(c);
+            case FLOAT:
+                return ((DataBufferFloat) db).getData(c);
+            case DOUBLE:
+                return ((DataBufferDouble) db).getData(c);
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Creates a new image sharing the data of this image (copy-on-write).<br>
+     * The new image has its own color model (same channel bounds) but uses the same raster so no
+     * data is copied here. It's the responsibility of the caller to set a
+     * {@link DataShareHandler} on both images (see {@link #setDataShareHandler(DataShareHandler)})
+     * so the other image gets its own copy of the data before one of them is modified.
+     */
+    public IcyBufferedImage createSharingImage()
+    {
+        final IcyColorModel cm = IcyColorModel.createInstance(getIcyColorModel(), false, true);
+
+        return new IcyBufferedImage(cm, getReadRaster(), autoUpdateChannelBounds);
+    }
+
+    /**
+     * Returns the data share handler of this image (<code>null</code> if data is not shared).
+     */
+    public DataShareHandler getDataShareHandler()
+    {
+        return dataShareHandler;
+    }
+
+    /**
+     * Sets the data share handler of this image (<code>null</code> when data is not anymore
+     * shared).
+     */
+    public void setDataShareHandler(DataShareHandler value)
+    {
+        dataShareHandler = value;
+    }
+
+    /**
+     * Returns <code>true</code> if the data of this image is shared with another image.
+     */
+    public boolean isDataShared()
+    {
+        return dataShareHandler != null;
+    }
+
+    /**
+     * Stop data sharing before the image data is modified (see {@link DataShareHandler}).<br>
+     * This method is automatically called by all methods modifying or giving write access to the
+     * image data ({@link #getDataXY(int)}, {@link #getRaster()}, {@link #setDataXY(int, Object)},
+     * {@link #dataChanged()}...). It only needs to be called directly by code writing into a data
+     * array obtained from {@link #getSharedDataXY(int)}.
+     */
+    public void prepareDataChange()
+    {
+        final DataShareHandler handler = dataShareHandler;
+
+        if (handler != null)
+            handler.dataWillChange(this);
+    }
+
     /**
      * Return a 1D array data copy [XYC] of internal 2D array data [C][XY]
      */
@@ -1977,7 +2133,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final byte[][] banks = ((DataBufferByte) getRaster().getDataBuffer()).getBankData();
+        final byte[][] banks = ((DataBufferByte) getReadRaster().getDataBuffer()).getBankData();
         final byte[] result = Array1DUtil.allocIfNull(out, len * sizeC);
         int offset = off;
 
@@ -2007,7 +2163,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final DataBuffer db = getRaster().getDataBuffer();
+        final DataBuffer db = getReadRaster().getDataBuffer();
         final short[][] banks;
         if (db instanceof DataBufferUShort)
             banks = ((DataBufferUShort) db).getBankData();
@@ -2042,7 +2198,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final int[][] banks = ((DataBufferInt) getRaster().getDataBuffer()).getBankData();
+        final int[][] banks = ((DataBufferInt) getReadRaster().getDataBuffer()).getBankData();
         final int[] result = Array1DUtil.allocIfNull(out, len * sizeC);
         int offset = off;
 
@@ -2072,7 +2228,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final float[][] banks = ((DataBufferFloat) getRaster().getDataBuffer()).getBankData();
+        final float[][] banks = ((DataBufferFloat) getReadRaster().getDataBuffer()).getBankData();
         final float[] result = Array1DUtil.allocIfNull(out, len * sizeC);
         int offset = off;
 
@@ -2102,7 +2258,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final double[][] banks = ((DataBufferDouble) getRaster().getDataBuffer()).getBankData();
+        final double[][] banks = ((DataBufferDouble) getReadRaster().getDataBuffer()).getBankData();
         final double[] result = Array1DUtil.allocIfNull(out, len * sizeC);
         int offset = off;
 
@@ -2131,7 +2287,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public byte[] getDataCopyXYAsByte(int c, byte[] out, int off)
     {
         final int len = getSizeX() * getSizeY();
-        final byte[] src = ((DataBufferByte) getRaster().getDataBuffer()).getData(c);
+        final byte[] src = ((DataBufferByte) getReadRaster().getDataBuffer()).getData(c);
         final byte[] result = Array1DUtil.allocIfNull(out, len);
 
         System.arraycopy(src, 0, result, off, len);
@@ -2154,7 +2310,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public short[] getDataCopyXYAsShort(int c, short[] out, int off)
     {
         final int len = getSizeX() * getSizeY();
-        final DataBuffer db = getRaster().getDataBuffer();
+        final DataBuffer db = getReadRaster().getDataBuffer();
         final short[] src;
         if (db instanceof DataBufferUShort)
             src = ((DataBufferUShort) db).getData(c);
@@ -2182,7 +2338,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public int[] getDataCopyXYAsInt(int c, int[] out, int off)
     {
         final int len = getSizeX() * getSizeY();
-        final int[] src = ((DataBufferInt) getRaster().getDataBuffer()).getData(c);
+        final int[] src = ((DataBufferInt) getReadRaster().getDataBuffer()).getData(c);
         final int[] result = Array1DUtil.allocIfNull(out, len);
 
         System.arraycopy(src, 0, result, off, len);
@@ -2205,7 +2361,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public float[] getDataCopyXYAsFloat(int c, float[] out, int off)
     {
         final int len = getSizeX() * getSizeY();
-        final float[] src = ((DataBufferFloat) getRaster().getDataBuffer()).getData(c);
+        final float[] src = ((DataBufferFloat) getReadRaster().getDataBuffer()).getData(c);
         final float[] result = Array1DUtil.allocIfNull(out, len);
 
         System.arraycopy(src, 0, result, off, len);
@@ -2228,7 +2384,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public double[] getDataCopyXYAsDouble(int c, double[] out, int off)
     {
         final int len = getSizeX() * getSizeY();
-        final double[] src = ((DataBufferDouble) getRaster().getDataBuffer()).getData(c);
+        final double[] src = ((DataBufferDouble) getReadRaster().getDataBuffer()).getData(c);
         final double[] result = Array1DUtil.allocIfNull(out, len);
 
         System.arraycopy(src, 0, result, off, len);
@@ -2252,7 +2408,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final byte[][] banks = ((DataBufferByte) getRaster().getDataBuffer()).getBankData();
+        final byte[][] banks = ((DataBufferByte) getReadRaster().getDataBuffer()).getBankData();
         final byte[] result = Array1DUtil.allocIfNull(out, len * sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2282,7 +2438,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final DataBuffer db = getRaster().getDataBuffer();
+        final DataBuffer db = getReadRaster().getDataBuffer();
         final short[][] banks;
         if (db instanceof DataBufferUShort)
             banks = ((DataBufferUShort) db).getBankData();
@@ -2317,7 +2473,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final int[][] banks = ((DataBufferInt) getRaster().getDataBuffer()).getBankData();
+        final int[][] banks = ((DataBufferInt) getReadRaster().getDataBuffer()).getBankData();
         final int[] result = Array1DUtil.allocIfNull(out, len * sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2347,7 +2503,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final float[][] banks = ((DataBufferFloat) getRaster().getDataBuffer()).getBankData();
+        final float[][] banks = ((DataBufferFloat) getReadRaster().getDataBuffer()).getBankData();
         final float[] result = Array1DUtil.allocIfNull(out, len * sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2377,7 +2533,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int len = getSizeX() * getSizeY();
         final int sizeC = getSizeC();
-        final double[][] banks = ((DataBufferDouble) getRaster().getDataBuffer()).getBankData();
+        final double[][] banks = ((DataBufferDouble) getReadRaster().getDataBuffer()).getBankData();
         final double[] result = Array1DUtil.allocIfNull(out, len * sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2407,7 +2563,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int sizeC = getSizeC();
         final int offset = x + (y * getWidth());
-        final byte[][] data = ((DataBufferByte) getRaster().getDataBuffer()).getBankData();
+        final byte[][] data = ((DataBufferByte) getReadRaster().getDataBuffer()).getBankData();
         final byte[] result = Array1DUtil.allocIfNull(out, sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2433,7 +2589,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int sizeC = getSizeC();
         final int offset = x + (y * getWidth());
-        final DataBuffer db = getRaster().getDataBuffer();
+        final DataBuffer db = getReadRaster().getDataBuffer();
         final short[][] data;
         if (db instanceof DataBufferUShort)
             data = ((DataBufferUShort) db).getBankData();
@@ -2464,7 +2620,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int sizeC = getSizeC();
         final int offset = x + (y * getWidth());
-        final int[][] data = ((DataBufferInt) getRaster().getDataBuffer()).getBankData();
+        final int[][] data = ((DataBufferInt) getReadRaster().getDataBuffer()).getBankData();
         final int[] result = Array1DUtil.allocIfNull(out, sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2490,7 +2646,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int sizeC = getSizeC();
         final int offset = x + (y * getWidth());
-        final float[][] data = ((DataBufferFloat) getRaster().getDataBuffer()).getBankData();
+        final float[][] data = ((DataBufferFloat) getReadRaster().getDataBuffer()).getBankData();
         final float[] result = Array1DUtil.allocIfNull(out, sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2516,7 +2672,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     {
         final int sizeC = getSizeC();
         final int offset = x + (y * getWidth());
-        final double[][] data = ((DataBufferDouble) getRaster().getDataBuffer()).getBankData();
+        final double[][] data = ((DataBufferDouble) getReadRaster().getDataBuffer()).getBankData();
         final double[] result = Array1DUtil.allocIfNull(out, sizeC);
 
         for (int c = 0; c < sizeC; c++)
@@ -2677,7 +2833,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     public double getData(int x, int y, int c)
     {
-        return Array1DUtil.getValue(getDataXY(c), getOffset(x, y), getDataType_());
+        return Array1DUtil.getValue(getSharedDataXY(c), getOffset(x, y), getDataType_());
     }
 
     /**
@@ -2698,7 +2854,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public byte getDataAsByte(int x, int y, int c)
     {
         // ignore band offset as it's always 0 here
-        return (((DataBufferByte) getRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
+        return (((DataBufferByte) getReadRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
     }
 
     /**
@@ -2719,7 +2875,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public short getDataAsShort(int x, int y, int c)
     {
         // ignore band offset as it's always 0 here
-        final DataBuffer db = getRaster().getDataBuffer();
+        final DataBuffer db = getReadRaster().getDataBuffer();
 
         if (db instanceof DataBufferUShort)
             return (((DataBufferUShort) db).getData(c))[x + (y * getWidth())];
@@ -2749,7 +2905,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public int getDataAsInt(int x, int y, int c)
     {
         // ignore band offset as it's always 0 here
-        return (((DataBufferInt) getRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
+        return (((DataBufferInt) getReadRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
     }
 
     /**
@@ -2770,7 +2926,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public float getDataAsFloat(int x, int y, int c)
     {
         // ignore band offset as it's always 0 here
-        return (((DataBufferFloat) getRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
+        return (((DataBufferFloat) getReadRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
     }
 
     /**
@@ -2791,7 +2947,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
     public double getDataAsDouble(int x, int y, int c)
     {
         // ignore band offset as it's always 0 here
-        return (((DataBufferDouble) getRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
+        return (((DataBufferDouble) getReadRaster().getDataBuffer()).getData(c))[x + (y * getWidth())];
     }
 
     /**
@@ -2813,7 +2969,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     public int getRGB(int x, int y, LUT lut)
     {
-        return getIcyColorModel().getRGB(getRaster().getDataElements(x, y, null), lut);
+        return getIcyColorModel().getRGB(getReadRaster().getDataElements(x, y, null), lut);
     }
 
     /**
@@ -2860,7 +3016,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
 
         final boolean signed = srcImage.getDataType_().isSigned();
 
-        final Object src = srcImage.getDataXY(srcChannel);
+        final Object src = srcImage.getSharedDataXY(srcChannel);
         final Object dst = getDataXY(dstChannel);
 
         int srcOffset = adjSrcRect.x + (adjSrcRect.y * srcSizeX);
@@ -3234,7 +3390,7 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
         final byte[] result = Array1DUtil.allocIfNull(out, offset
                 + (getSizeX() * getSizeY() * getDataType_().getSize()));
 
-        return ByteArrayConvert.toByteArray(getDataXY(c), 0, result, offset, little);
+        return ByteArrayConvert.toByteArray(getSharedDataXY(c), 0, result, offset, little);
     }
 
     /**
@@ -3449,6 +3605,9 @@ public class IcyBufferedImage extends BufferedImage implements IcyColorModelList
      */
     public void dataChanged()
     {
+        // data modified without asking for write access first ? stop sharing at least now
+        prepareDataChange();
+
         updater.changed(new IcyBufferedImageEvent(this, IcyBufferedImageEventType.DATA_CHANGED));
     }
 
@@ -26,16 +26,9 @@ import icy.type.collection.array.ArrayUtil;
 
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.awt.RenderingHints;
 import java.awt.image.BufferedImage;
 import java.util.List;
 
-import javax.media.jai.BorderExtender;
-import javax.media.jai.Interpolation;
-import javax.media.jai.JAI;
-import javax.media.jai.RenderedOp;
-import javax.media.jai.operator.RotateDescriptor;
-import javax.media.jai.operator.ScaleDescriptor;
 import javax.swing.SwingConstants;
 
 /**
@@ -48,7 +41,7 @@ public class IcyBufferedImageUtil
 {
     public static enum FilterType
     {
-        NEAREST, BILINEAR, BICUBIC
+        NEAREST, BILINEAR, BICUBIC, LANCZOS
     };
 
     /**
@@ -169,6 +162,33 @@ public class IcyBufferedImageUtil
         return argbImageBuilder.buildARGBImage(source, lut, dest);
     }
 
+    /**
+     * Returns the time taken (in ms) by the last {@link #getARGBImage(IcyBufferedImage, LUT, BufferedImage)}
+     * conversion.
+     */
+    public static double getARGBImageLastBuildTime()
+    {
+        return argbImageBuilder.getLastBuildTime();
+    }
+
+    /**
+     * Returns the average time (in ms) taken by {@link #getARGBImage(IcyBufferedImage, LUT, BufferedImage)}
+     * conversions since last {@link #resetARGBImageStatistics()}.
+     */
+    public static double getARGBImageAverageBuildTime()
+    {
+        return argbImageBuilder.getAverageBuildTime();
+    }
+
+    /**
+     * Reset the {@link #getARGBImage(IcyBufferedImage, LUT, BufferedImage)} conversion time
+     * statistics.
+     */
+    public static void resetARGBImageStatistics()
+    {
+        argbImageBuilder.resetStatistics();
+    }
+
     /**
      * Draw the source {@link IcyBufferedImage} into the destination ARGB {@link BufferedImage}<br>
      * If <code>dest</code> is null then a new ARGB {@link BufferedImage} is returned.<br>
@@ -245,11 +265,11 @@ public class IcyBufferedImageUtil
             // no rescale ?
             if ((scalers == null) || (c >= scalers.length) || scalers[c].isNull())
                 // simple type change
-                ArrayUtil.arrayToSafeArray(source.getDataXY(c), result.getDataXY(c), srcSigned, dstSigned);
+                ArrayUtil.arrayToSafeArray(source.getSharedDataXY(c), result.getDataXY(c), srcSigned, dstSigned);
             else
             {
                 // first we convert in double
-                final double[] darray = Array1DUtil.arrayToDoubleArray(source.getDataXY(c), srcSigned);
+                final double[] darray = Array1DUtil.arrayToDoubleArray(source.getSharedDataXY(c), srcSigned);
                 // then we scale data
                 scalers[c].scale(darray);
                 // and finally we convert in wanted datatype
@@ -290,11 +310,11 @@ public class IcyBufferedImageUtil
             // no rescale ?
             if ((scaler == null) || scaler.isNull())
                 // simple type change
-                ArrayUtil.arrayToSafeArray(source.getDataXY(c), result.getDataXY(c), srcSigned, dstSigned);
+                ArrayUtil.arrayToSafeArray(source.getSharedDataXY(c), result.getDataXY(c), srcSigned, dstSigned);
             else
             {
                 // first we convert in double
-                final double[] darray = Array1DUtil.arrayToDoubleArray(source.getDataXY(c), srcSigned);
+                final double[] darray = Array1DUtil.arrayToDoubleArray(source.getSharedDataXY(c), srcSigned);
                 // then we scale data
                 scaler.scale(darray);
                 // and finally we convert in wanted datatype
@@ -452,7 +472,7 @@ public class IcyBufferedImageUtil
 
         for (int ch = startC; ch < endC; ch++)
         {
-            final Object src = source.getDataXY(ch);
+            final Object src = source.getSharedDataXY(ch);
             final Object dst = result.getDataXY(ch - startC);
 
             int srcOffset = source.getOffset(startX, startY);
@@ -481,6 +501,37 @@ public class IcyBufferedImageUtil
         return getSubImage(source, region, 0, source.getSizeC());
     }
 
+    /**
+     * Returns a view on the specified region of the source image (no data copy).<br>
+     * Contrary to {@link #getSubImage(IcyBufferedImage, Rectangle, int, int)} the returned view
+     * directly accesses the source image data.
+     * 
+     * @param readOnly
+     *        if <code>false</code> then modifications done through the view are written in the
+     *        source image
+     */
+    public static IcyBufferedImageView getSubImageView(IcyBufferedImage source, Rectangle region, int c, int sizeC,
+            boolean readOnly)
+    {
+        if (source == null)
+            return null;
+
+        return new IcyBufferedImageView(source, region, c, sizeC, readOnly);
+    }
+
+    /**
+     * Returns a read only view on the specified region of the source image (no data copy).
+     * 
+     * @see #getSubImageView(IcyBufferedImage, Rectangle, int, int, boolean)
+     */
+    public static IcyBufferedImageView getSubImageView(IcyBufferedImage source, Rectangle region)
+    {
+        if (source == null)
+            return null;
+
+        return new IcyBufferedImageView(source, region, true);
+    }
+
     /**
      * @deprecated Use {@link #getSubImage(IcyBufferedImage, Rectangle, int, int)} instead.
      */
@@ -528,7 +579,7 @@ public class IcyBufferedImageUtil
             final int channel = channelNumbers.get(i).intValue();
 
             if (channel < sizeC)
-                result.setDataXY(i, source.getDataXY(channel));
+                result.setDataXY(i, source.getSharedDataXY(channel));
         }
 
         return result;
@@ -553,7 +604,7 @@ public class IcyBufferedImageUtil
             final int channel = channels[i];
 
             if (channel < sizeC)
-                result.setDataXY(i, source.getDataXY(channel));
+                result.setDataXY(i, source.getSharedDataXY(channel));
         }
 
         return result;
@@ -629,30 +680,7 @@ public class IcyBufferedImageUtil
         if (source == null)
             return null;
 
-        final Interpolation interpolation;
-
-        switch (filterType)
-        {
-            default:
-            case NEAREST:
-                interpolation = Interpolation.getInstance(Interpolation.INTERP_NEAREST);
-                break;
-
-            case BILINEAR:
-                interpolation = Interpolation.getInstance(Interpolation.INTERP_BILINEAR);
-                break;
-
-            case BICUBIC:
-                interpolation = Interpolation.getInstance(Interpolation.INTERP_BICUBIC);
-                break;
-        }
-
-        // use JAI scaler (use a copy to avoid source alteration)
-        final RenderedOp renderedOp = RotateDescriptor.create(getCopy(source), Float.valueOf((float) xOrigin), Float
-                .valueOf((float) yOrigin), Float.valueOf((float) angle), interpolation, null, new RenderingHints(
-                JAI.KEY_BORDER_EXTENDER, BorderExtender.createInstance(BorderExtender.BORDER_ZERO)));
-
-        return IcyBufferedImage.createFrom(renderedOp, source.isSignedDataType());
+        return ImageResampler.rotate(source, xOrigin, yOrigin, angle, filterType);
     }
 
     /**
@@ -764,38 +792,8 @@ public class IcyBufferedImageUtil
         }
         else
         {
-            final Float xScale = Float.valueOf((float) width / srcW);
-            final Float yScale = Float.valueOf((float) height / srcH);
-            final Interpolation interpolation;
-
-            switch (filterType)
-            {
-                default:
-                case NEAREST:
-                    interpolation = Interpolation.getInstance(Interpolation.INTERP_NEAREST);
-                    break;
-
-                case BILINEAR:
-                    interpolation = Interpolation.getInstance(Interpolation.INTERP_BILINEAR);
-                    break;
-
-                case BICUBIC:
-                    interpolation = Interpolation.getInstance(Interpolation.INTERP_BICUBIC);
-                    break;
-            }
-
-            // use JAI scaler (use a copy to avoid source alteration)
-            final RenderedOp renderedOp = ScaleDescriptor.create(
-                    getCopy(source),
-                    xScale,
-                    yScale,
-                    Float.valueOf(0f),
-                    Float.valueOf(0f),
-                    interpolation,
-                    new RenderingHints(JAI.KEY_BORDER_EXTENDER, BorderExtender
-                            .createInstance(BorderExtender.BORDER_COPY)));
-
-            result = IcyBufferedImage.createFrom(renderedOp, source.isSignedDataType());
+            // resample directly from source data
+            result = ImageResampler.scale(source, width, height, filterType);
         }
 
         return result;
@@ -887,7 +885,7 @@ public class IcyBufferedImageUtil
             wCopy = sizeX - adx;
         }
 
-        final Object data = source.getDataXY(channel);
+        final Object data = source.getSharedDataXY(channel);
 
         if (ady < 0)
         {
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.awt.Rectangle;
+
+/**
+ * Zero-copy view on a rectangular region (and channel range) of an {@link IcyBufferedImage}.<br>
+ * The view does not copy any pixel data: all accessors read (and write if the view is not read
+ * only) directly the data of the source image, view coordinates are relative to the region
+ * origin.<br>
+ * Direct data access is stride aware: {@link #getDataXY(int)} returns the source image array so
+ * the position of a view pixel is given by {@link #getOffset(int, int)} and rows are separated by
+ * {@link #getScanlineStride()} elements.<br>
+ * <b>If the source image size or type is modified the view becomes invalid.</b>
+ *
+ * @see IcyBufferedImageUtil#getSubImageView(IcyBufferedImage, Rectangle, int, int, boolean)
+ * @author Stephane
+ */
+public class IcyBufferedImageView
+{
+    protected final IcyBufferedImage image;
+    protected final Rectangle bounds;
+    protected final int startC;
+    protected final int sizeC;
+    protected final boolean readOnly;
+
+    /**
+     * Create a view on the specified region of the source image.
+     *
+     * @param image
+     *        source image
+     * @param region
+     *        XY region of the view (clipped to image bounds)
+     * @param c
+     *        first channel of the view
+     * @param sizeC
+     *        number of channel of the view (clipped to image channel number)
+     * @param readOnly
+     *        if <code>true</code> then any attempt to modify data through the view throws an
+     *        {@link UnsupportedOperationException}
+     */
+    public IcyBufferedImageView(IcyBufferedImage image, Rectangle region, int c, int sizeC, boolean readOnly)
+    {
+        super();
+
+        this.image = image;
+        this.readOnly = readOnly;
+
+        bounds = region.intersection(image.getBounds());
+        if (bounds.isEmpty())
+            bounds.setSize(0, 0);
+
+        // infinite C dimension ?
+        if ((c == Integer.MIN_VALUE) && (sizeC == Integer.MAX_VALUE))
+        {
+            startC = 0;
+            this.sizeC = image.getSizeC();
+        }
+        else
+        {
+            startC = Math.max(0, c);
+            this.sizeC = Math.max(0, Math.min(image.getSizeC(), c + sizeC) - startC);
+        }
+    }
+
+    /**
+     * Create a view on the specified region of the source image (all channels).
+     */
+    public IcyBufferedImageView(IcyBufferedImage image, Rectangle region, boolean readOnly)
+    {
+        this(image, region, 0, image.getSizeC(), readOnly);
+    }
+
+    /**
+     * Returns the source image.
+     */
+    public IcyBufferedImage getImage()
+    {
+        return image;
+    }
+
+    /**
+     * Returns the view region in source image coordinates.
+     */
+    public Rectangle getBounds()
+    {
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * Returns the first channel of the view in source image.
+     */
+    public int getStartC()
+    {
+        return startC;
+    }
+
+    /**
+     * Returns <code>true</code> if data cannot be modified through this view.
+     */
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    /**
+     * Returns <code>true</code> if the view is empty (region outside the image).
+     */
+    public boolean isEmpty()
+    {
+        return (bounds.width <= 0) || (bounds.height <= 0) || (sizeC <= 0);
+    }
+
+    public int getSizeX()
+    {
+        return bounds.width;
+    }
+
+    public int getSizeY()
+    {
+        return bounds.height;
+    }
+
+    public int getSizeC()
+    {
+        return sizeC;
+    }
+
+    public DataType getDataType_()
+    {
+        return image.getDataType_();
+    }
+
+    public boolean isSignedDataType()
+    {
+        return image.isSignedDataType();
+    }
+
+    /**
+     * Returns a direct reference to the source image data array of the specified view channel.<br>
+     * Use {@link #getOffset(int, int)} and {@link #getScanlineStride()} to access view pixels.
+     */
+    public Object getDataXY(int c)
+    {
+        return image.getDataXY(startC + c);
+    }
+
+    /**
+     * Returns the offset in source data array of the specified view position.
+     */
+    public int getOffset(int x, int y)
+    {
+        return image.getOffset(bounds.x + x, bounds.y + y);
+    }
+
+    /**
+     * Returns the number of element between two successive rows in the source data array.
+     */
+    public int getScanlineStride()
+    {
+        return image.getSizeX();
+    }
+
+    /**
+     * Return the value located at (x, y, c) view position as a double whatever is the internal
+     * data type
+     */
+    public double getData(int x, int y, int c)
+    {
+        return Array1DUtil.getValue(getDataXY(c), getOffset(x, y), getDataType_());
+    }
+
+    /**
+     * Set the value located at (x, y, c) view position as a double whatever is the internal data
+     * type
+     */
+    public void setData(int x, int y, int c, double value)
+    {
+        checkWritable();
+
+        Array1DUtil.setValue(getDataXY(c), getOffset(x, y), getDataType_(), value);
+
+        // notify data changed
+        image.dataChanged();
+    }
+
+    /**
+     * Copy the specified view row values (as double) in the <code>out</code> array from
+     * <code>offset</code>.
+     */
+    public void getRow(int y, int c, double[] out, int offset)
+    {
+        Array1DUtil.arrayToDoubleArray(getDataXY(c), getOffset(0, y), out, offset, bounds.width, isSignedDataType());
+    }
+
+    /**
+     * Set the specified view row values from the <code>in</code> array starting at
+     * <code>offset</code>.
+     */
+    public void setRow(int y, int c, double[] in, int offset)
+    {
+        checkWritable();
+
+        Array1DUtil.doubleArrayToArray(in, offset, getDataXY(c), getOffset(0, y), bounds.width);
+
+        // notify data changed
+        image.dataChanged();
+    }
+
+    /**
+     * Returns a data span iterator on the specified view channel.<br>
+     * Note that the iterator gives direct access to source data (read only state is not checked).
+     */
+    public ImageDataSpanIterator getSpanIterator(int c)
+    {
+        return new ImageDataSpanIterator(image, bounds, startC + c);
+    }
+
+    /**
+     * Notify the source image that data has been modified through direct access.
+     */
+    public void dataChanged()
+    {
+        checkWritable();
+
+        image.dataChanged();
+    }
+
+    /**
+     * Returns a new image containing a copy of the view data.
+     */
+    public IcyBufferedImage getCopy()
+    {
+        return IcyBufferedImageUtil.getSubImage(image, bounds, startC, sizeC);
+    }
+
+    protected void checkWritable()
+    {
+        if (readOnly)
+            throw new UnsupportedOperationException("Cannot modify data of a read only image view.");
+    }
+}
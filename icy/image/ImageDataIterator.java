@@ -56,6 +56,7 @@ public class ImageDataIterator implements DataIterator
     protected int maskOff;
     protected boolean done;
     protected Object data;
+    protected boolean writable;
 
     /**
      * Create a new ImageData iterator to iterate data through the specified XY region and channel.
@@ -220,8 +221,9 @@ public class ImageDataIterator implements DataIterator
 
         if (!done)
         {
-            // get data
-            data = image.getDataXY(c);
+            // get data (write access is requested on first write only to preserve data sharing)
+            data = image.getSharedDataXY(c);
+            writable = false;
 
             // reset position
             y = 0;
@@ -305,6 +307,12 @@ public class ImageDataIterator implements DataIterator
         if (done)
             throw new NoSuchElementException(null);
 
+        if (!writable)
+        {
+            image.prepareDataChange();
+            writable = true;
+        }
+
         Array1DUtil.setValue(data, imgOff, dataType, value);
     }
 
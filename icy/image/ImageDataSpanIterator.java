@@ -0,0 +1,391 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import icy.roi.BooleanMask2D;
+import icy.type.DataSpanIterator;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.awt.Rectangle;
+import java.util.NoSuchElementException;
+
+/**
+ * Image data span iterator.<br>
+ * This class permit to iterate <code>IcyBufferedImage</code> data of a single channel by
+ * contiguous runs (see {@link DataSpanIterator}).<br>
+ * Without mask each span is a row of the XY region (or the whole region if it covers the image
+ * width), with a mask each span is a run of consecutive pixels contained in the mask.<br>
+ * <b>If the image size or type is modified during iteration the iterator
+ * becomes invalid and can causes exception to happen.</b>
+ *
+ * @author Stephane
+ */
+public class ImageDataSpanIterator implements DataSpanIterator
+{
+    protected final IcyBufferedImage image;
+    protected final DataType dataType;
+
+    /**
+     * internals
+     */
+    protected final BooleanMask2D mask;
+    protected final Rectangle regionBounds;
+    protected final Rectangle imageBounds;
+    protected final Rectangle finalBounds;
+    protected final int c;
+    protected final int w, h;
+    // search position
+    protected int x, y;
+    // current span
+    protected int spanX, spanY;
+    protected int offset;
+    protected int length;
+    protected boolean done;
+    protected Object data;
+
+    /**
+     * Create a new ImageData span iterator to iterate data through the specified XY region and
+     * channel.
+     *
+     * @param image
+     *        Image we want to iterate data from
+     * @param boundsXY
+     *        XY region to iterate (inclusive).
+     * @param maskXY
+     *        BooleanMask2D defining the XY region to iterate (if not <code>null</code> then
+     *        <code>boundsXY</code> is ignored)
+     * @param channel
+     *        channel (C position) we want to iterate data
+     */
+    protected ImageDataSpanIterator(IcyBufferedImage image, Rectangle boundsXY, BooleanMask2D maskXY, int channel)
+    {
+        super();
+
+        if (maskXY != null)
+            regionBounds = maskXY.bounds;
+        else
+            regionBounds = boundsXY;
+
+        this.image = image;
+        this.mask = maskXY;
+
+        if (image != null)
+        {
+            imageBounds = image.getBounds();
+            dataType = image.getDataType_();
+            c = channel;
+        }
+        else
+        {
+            imageBounds = new Rectangle();
+            dataType = DataType.UBYTE;
+            c = 0;
+        }
+
+        finalBounds = regionBounds.intersection(imageBounds);
+
+        // cached
+        w = finalBounds.width;
+        h = finalBounds.height;
+
+        // start iterator
+        reset();
+    }
+
+    /**
+     * Create a new ImageData span iterator to iterate data through the specified XY region and
+     * channel.
+     *
+     * @param image
+     *        Image we want to iterate data from
+     * @param boundsXY
+     *        XY region to iterate (inclusive).
+     * @param channel
+     *        channel (C position) we want to iterate data
+     */
+    public ImageDataSpanIterator(IcyBufferedImage image, Rectangle boundsXY, int channel)
+    {
+        this(image, boundsXY, null, channel);
+    }
+
+    /**
+     * Create a new ImageData span iterator to iterate data of specified channel.
+     *
+     * @param image
+     *        Image we want to iterate data from
+     * @param c
+     *        C position (channel) we want to iterate data
+     */
+    public ImageDataSpanIterator(IcyBufferedImage image, int c)
+    {
+        this(image, image.getBounds(), c);
+    }
+
+    /**
+     * Create a new ImageData span iterator to iterate data through the specified
+     * <code>BooleanMask2D</code> and C dimension.
+     *
+     * @param image
+     *        Image we want to iterate data from
+     * @param maskXY
+     *        BooleanMask2D defining the XY region to iterate
+     * @param channel
+     *        channel (C position) we want to iterate data
+     */
+    public ImageDataSpanIterator(IcyBufferedImage image, BooleanMask2D maskXY, int channel)
+    {
+        this(image, null, maskXY, channel);
+    }
+
+    public int getMinX()
+    {
+        return finalBounds.x;
+    }
+
+    public int getMaxX()
+    {
+        return (finalBounds.x + w) - 1;
+    }
+
+    public int getMinY()
+    {
+        return finalBounds.y;
+    }
+
+    public int getMaxY()
+    {
+        return (finalBounds.y + h) - 1;
+    }
+
+    @Override
+    public void reset()
+    {
+        done = (image == null) || (c < 0) || (c >= image.getSizeC()) || finalBounds.isEmpty();
+
+        if (!done)
+        {
+            // get data
+            data = image.getDataXY(c);
+
+            // reset position
+            x = 0;
+            y = 0;
+
+            // get first span
+            next();
+        }
+    }
+
+    @Override
+    public void next()
+    {
+        if (done)
+            return;
+
+        if (mask == null)
+        {
+            if (y >= h)
+            {
+                done = true;
+                return;
+            }
+
+            spanX = 0;
+            spanY = y;
+            offset = getImageOffset(y);
+
+            // region covers the whole image width --> single span for all remaining rows
+            if (w == imageBounds.width)
+            {
+                length = w * (h - y);
+                y = h;
+            }
+            else
+            {
+                length = w;
+                y++;
+            }
+
+            return;
+        }
+
+        final boolean[] maskData = mask.mask;
+
+        while (y < h)
+        {
+            final int maskOff = (((finalBounds.y - regionBounds.y) + y) * regionBounds.width)
+                    + (finalBounds.x - regionBounds.x);
+
+            // find run start
+            while ((x < w) && !maskData[maskOff + x])
+                x++;
+
+            if (x < w)
+            {
+                final int start = x;
+
+                // find run end
+                while ((x < w) && maskData[maskOff + x])
+                    x++;
+
+                spanX = start;
+                spanY = y;
+                offset = getImageOffset(y) + start;
+                length = x - start;
+
+                return;
+            }
+
+            // next row
+            x = 0;
+            y++;
+        }
+
+        done = true;
+    }
+
+    /**
+     * Returns image data offset for the specified row (relative to final bounds)
+     */
+    protected int getImageOffset(int row)
+    {
+        return (finalBounds.x - imageBounds.x) + (((finalBounds.y - imageBounds.y) + row) * imageBounds.width);
+    }
+
+    @Override
+    public boolean done()
+    {
+        return done;
+    }
+
+    @Override
+    public Object getData()
+    {
+        if (done)
+            throw new NoSuchElementException(null);
+
+        return data;
+    }
+
+    @Override
+    public DataType getDataType()
+    {
+        return dataType;
+    }
+
+    @Override
+    public int getOffset()
+    {
+        return offset;
+    }
+
+    @Override
+    public int getLength()
+    {
+        return length;
+    }
+
+    @Override
+    public int getX()
+    {
+        return finalBounds.x + spanX;
+    }
+
+    @Override
+    public int getY()
+    {
+        return finalBounds.y + spanY;
+    }
+
+    /**
+     * Returns Z position (always 0 for a single image)
+     */
+    @Override
+    public int getZ()
+    {
+        return 0;
+    }
+
+    /**
+     * Returns T position (always 0 for a single image)
+     */
+    @Override
+    public int getT()
+    {
+        return 0;
+    }
+
+    /**
+     * Returns C position (fixed)
+     */
+    @Override
+    public int getC()
+    {
+        return c;
+    }
+
+    @Override
+    public byte[] getDataAsByte()
+    {
+        return (byte[]) getData();
+    }
+
+    @Override
+    public short[] getDataAsShort()
+    {
+        return (short[]) getData();
+    }
+
+    @Override
+    public int[] getDataAsInt()
+    {
+        return (int[]) getData();
+    }
+
+    @Override
+    public float[] getDataAsFloat()
+    {
+        return (float[]) getData();
+    }
+
+    @Override
+    public double[] getDataAsDouble()
+    {
+        return (double[]) getData();
+    }
+
+    @Override
+    public void get(double[] out, int outOffset)
+    {
+        Array1DUtil.arrayToDoubleArray(getData(), offset, out, outOffset, length, dataType.isSigned());
+    }
+
+    @Override
+    public void set(double[] in, int inOffset)
+    {
+        Array1DUtil.doubleArrayToArray(in, inOffset, getData(), offset, length);
+    }
+
+    @Override
+    public void fill(double value)
+    {
+        Array1DUtil.fill(getData(), offset, offset + length, value);
+    }
+}
@@ -0,0 +1,666 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image;
+
+import icy.image.IcyBufferedImageUtil.FilterType;
+import icy.math.MathUtil;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Pure java resampling engine used by {@link IcyBufferedImageUtil#scale} and
+ * {@link IcyBufferedImageUtil#rotate}.<br>
+ * Resampling is done directly on the planar channel data arrays of the source image (no copy nor
+ * data type conversion) for all {@link DataType}.<br>
+ * Scaling uses separable kernels with weights precomputed once per axis (kernel support is
+ * enlarged when down scaling so all source pixels contribute to the result), out of bounds pixels
+ * are replicated from the image edges.<br>
+ * Rotation samples the source with the same kernels, out of bounds pixels are set to 0.<br>
+ * Destination rows are processed in parallel.
+ *
+ * @author Stephane
+ */
+public class ImageResampler
+{
+    /**
+     * Under this number of destination pixel we don't use parallel processing
+     */
+    private static final int PARALLEL_MIN_SIZE = 64 * 1024;
+
+    /**
+     * Precomputed resampling weights for one axis
+     */
+    static class AxisWeights
+    {
+        // first source index for each destination index
+        final int[] start;
+        // number of source index for each destination index
+        final int[] length;
+        // weights (stride elements per destination index)
+        final double[] weights;
+        final int stride;
+
+        AxisWeights(int srcSize, int dstSize, FilterType filterType)
+        {
+            super();
+
+            final double scale = (double) dstSize / (double) srcSize;
+            final int last = srcSize - 1;
+
+            start = new int[dstSize];
+            length = new int[dstSize];
+
+            if (filterType == FilterType.NEAREST)
+            {
+                stride = 1;
+                weights = new double[dstSize];
+
+                for (int i = 0; i < dstSize; i++)
+                {
+                    start[i] = clamp((int) Math.floor((i + 0.5d) / scale), 0, last);
+                    length[i] = 1;
+                    weights[i] = 1d;
+                }
+
+                return;
+            }
+
+            // enlarge kernel when down scaling (low pass filtering)
+            final double filterScale = (scale < 1d) ? (1d / scale) : 1d;
+            final double support = getSupport(filterType) * filterScale;
+
+            stride = (int) Math.ceil(support * 2d) + 3;
+            weights = new double[dstSize * stride];
+
+            for (int i = 0; i < dstSize; i++)
+            {
+                // destination pixel center in source space
+                final double center = (i + 0.5d) / scale;
+                final int left = (int) Math.floor(center - support);
+                final int right = (int) Math.ceil(center + support);
+                final int first = clamp(left, 0, last);
+                final int off = i * stride;
+                double sum = 0d;
+
+                for (int k = left; k <= right; k++)
+                {
+                    final double w = getKernelValue(filterType, ((k + 0.5d) - center) / filterScale);
+
+                    if (w != 0d)
+                    {
+                        // out of bounds pixels use the nearest edge pixel
+                        weights[(off + clamp(k, 0, last)) - first] += w;
+                        sum += w;
+                    }
+                }
+
+                if (sum != 0d)
+                {
+                    for (int k = 0; k < stride; k++)
+                        weights[off + k] /= sum;
+                }
+
+                start[i] = first;
+                length[i] = (clamp(right, 0, last) - first) + 1;
+            }
+        }
+    }
+
+    /**
+     * Returns the kernel support (radius) for the specified filter type.
+     */
+    public static int getSupport(FilterType filterType)
+    {
+        switch (filterType)
+        {
+            default:
+            case NEAREST:
+            case BILINEAR:
+                return 1;
+
+            case BICUBIC:
+                return 2;
+
+            case LANCZOS:
+                return 3;
+        }
+    }
+
+    /**
+     * Returns the kernel value for the specified filter type at distance <code>x</code> from the
+     * kernel center.
+     */
+    public static double getKernelValue(FilterType filterType, double x)
+    {
+        final double ax = Math.abs(x);
+
+        switch (filterType)
+        {
+            default:
+            case NEAREST:
+                return (ax < 0.5d) ? 1d : 0d;
+
+            case BILINEAR:
+                return (ax < 1d) ? 1d - ax : 0d;
+
+            case BICUBIC:
+                // cubic convolution (a = -0.5)
+                if (ax < 1d)
+                    return (((1.5d * ax) - 2.5d) * ax * ax) + 1d;
+                if (ax < 2d)
+                    return (((((-0.5d * ax) + 2.5d) * ax) - 4d) * ax) + 2d;
+                return 0d;
+
+            case LANCZOS:
+                // lanczos 3 (windowed sinc)
+                if (ax < 1e-8d)
+                    return 1d;
+                if (ax < 3d)
+                {
+                    final double px = Math.PI * ax;
+                    return (3d * Math.sin(px) * Math.sin(px / 3d)) / (px * px);
+                }
+                return 0d;
+        }
+    }
+
+    /**
+     * Return a scaled version of the source image (edge pixels are replicated outside the image).
+     *
+     * @param source
+     *        source image
+     * @param width
+     *        destination width
+     * @param height
+     *        destination height
+     * @param filterType
+     *        filter resampling method used
+     */
+    public static IcyBufferedImage scale(final IcyBufferedImage source, final int width, final int height,
+            FilterType filterType)
+    {
+        final int srcW = source.getSizeX();
+        final int srcH = source.getSizeY();
+        final int sizeC = source.getSizeC();
+        final DataType dataType = source.getDataType_();
+        final IcyBufferedImage result = new IcyBufferedImage(width, height, sizeC, dataType);
+        final AxisWeights wx = new AxisWeights(srcW, width, filterType);
+        final AxisWeights wy = new AxisWeights(srcH, height, filterType);
+
+        processRows(height, width, new RowTask()
+        {
+            @Override
+            public void process(int startY, int endY)
+            {
+                final double[] tmp = new double[srcW];
+                final double[] row = new double[width];
+
+                for (int c = 0; c < sizeC; c++)
+                {
+                    final Object srcData = source.getSharedDataXY(c);
+                    final Object dstData = result.getDataXY(c);
+
+                    for (int y = startY; y < endY; y++)
+                    {
+                        // vertical pass (contiguous source rows)
+                        final int sy = wy.start[y];
+                        final int ly = wy.length[y];
+                        final int offY = y * wy.stride;
+
+                        Arrays.fill(tmp, 0d);
+                        for (int k = 0; k < ly; k++)
+                        {
+                            final double w = wy.weights[offY + k];
+
+                            if (w != 0d)
+                                accumulate(srcData, dataType, (sy + k) * srcW, srcW, w, tmp);
+                        }
+
+                        // horizontal pass
+                        final double[] weights = wx.weights;
+                        final int stride = wx.stride;
+
+                        for (int x = 0; x < width; x++)
+                        {
+                            final int sx = wx.start[x];
+                            final int lx = wx.length[x];
+                            final int offX = x * stride;
+                            double v = 0d;
+
+                            for (int k = 0; k < lx; k++)
+                                v += weights[offX + k] * tmp[sx + k];
+
+                            row[x] = v;
+                        }
+
+                        store(row, dstData, dataType, y * width, width);
+                    }
+                }
+            }
+        });
+
+        result.dataChanged();
+
+        return result;
+    }
+
+    /**
+     * Return a rotated version of the source image (pixels outside the source image are set to 0).
+     *
+     * @param source
+     *        source image
+     * @param xOrigin
+     *        X origin for the rotation
+     * @param yOrigin
+     *        Y origin for the rotation
+     * @param angle
+     *        rotation angle in radian
+     * @param filterType
+     *        filter resampling method used
+     */
+    public static IcyBufferedImage rotate(final IcyBufferedImage source, final double xOrigin,
+            final double yOrigin, double angle, final FilterType filterType)
+    {
+        final int srcW = source.getSizeX();
+        final int srcH = source.getSizeY();
+        final int sizeC = source.getSizeC();
+        final DataType dataType = source.getDataType_();
+        final double cos = Math.cos(angle);
+        final double sin = Math.sin(angle);
+
+        // destination bounds (rotated source bounds)
+        double minX = Double.MAX_VALUE;
+        double minY = Double.MAX_VALUE;
+        double maxX = -Double.MAX_VALUE;
+        double maxY = -Double.MAX_VALUE;
+
+        for (int i = 0; i < 4; i++)
+        {
+            final double dx = (((i & 1) == 0) ? 0d : srcW) - xOrigin;
+            final double dy = (((i & 2) == 0) ? 0d : srcH) - yOrigin;
+            final double x = ((dx * cos) - (dy * sin)) + xOrigin;
+            final double y = ((dx * sin) + (dy * cos)) + yOrigin;
+
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+        }
+
+        // small epsilon so right angle rotations keep exact dimensions
+        final int dstX = (int) Math.floor(minX + 1e-6d);
+        final int dstY = (int) Math.floor(minY + 1e-6d);
+        final int width = Math.max(1, (int) Math.ceil(maxX - 1e-6d) - dstX);
+        final int height = Math.max(1, (int) Math.ceil(maxY - 1e-6d) - dstY);
+        final IcyBufferedImage result = new IcyBufferedImage(width, height, sizeC, dataType);
+        final int radius = getSupport(filterType);
+
+        processRows(height, width, new RowTask()
+        {
+            @Override
+            public void process(int startY, int endY)
+            {
+                final double[] row = new double[width];
+                final double[] wx = new double[radius * 2];
+                final double[] wy = new double[radius * 2];
+
+                for (int c = 0; c < sizeC; c++)
+                {
+                    final Object srcData = source.getSharedDataXY(c);
+                    final Object dstData = result.getDataXY(c);
+
+                    for (int y = startY; y < endY; y++)
+                    {
+                        final double dy = ((dstY + y) + 0.5d) - yOrigin;
+
+                        for (int x = 0; x < width; x++)
+                        {
+                            final double dx = ((dstX + x) + 0.5d) - xOrigin;
+                            // inverse rotation (source pixel center space)
+                            final double sx = (((dx * cos) + (dy * sin)) + xOrigin) - 0.5d;
+                            final double sy = (((dy * cos) - (dx * sin)) + yOrigin) - 0.5d;
+
+                            row[x] = sample(srcData, dataType, srcW, srcH, sx, sy, filterType, radius, wx, wy);
+                        }
+
+                        store(row, dstData, dataType, y * width, width);
+                    }
+                }
+            }
+        });
+
+        result.dataChanged();
+
+        return result;
+    }
+
+    /**
+     * Sample source data at the specified position (0 outside the image).
+     */
+    static double sample(Object data, DataType dataType, int w, int h, double x, double y, FilterType filterType,
+            int radius, double[] wx, double[] wy)
+    {
+        if (filterType == FilterType.NEAREST)
+        {
+            final int ix = (int) Math.floor(x + 0.5d);
+            final int iy = (int) Math.floor(y + 0.5d);
+
+            if ((ix < 0) || (iy < 0) || (ix >= w) || (iy >= h))
+                return 0d;
+
+            return Array1DUtil.getValue(data, (iy * w) + ix, dataType);
+        }
+
+        // completely outside ?
+        if ((x <= -radius) || (y <= -radius) || (x >= ((w - 1) + radius)) || (y >= ((h - 1) + radius)))
+            return 0d;
+
+        final int size = radius * 2;
+        final int x0 = ((int) Math.floor(x) - radius) + 1;
+        final int y0 = ((int) Math.floor(y) - radius) + 1;
+        double sumX = 0d;
+        double sumY = 0d;
+
+        for (int k = 0; k < size; k++)
+        {
+            wx[k] = getKernelValue(filterType, x - (x0 + k));
+            wy[k] = getKernelValue(filterType, y - (y0 + k));
+            sumX += wx[k];
+            sumY += wy[k];
+        }
+
+        double result = 0d;
+
+        for (int j = 0; j < size; j++)
+        {
+            final int yy = y0 + j;
+
+            if ((yy < 0) || (yy >= h) || (wy[j] == 0d))
+                continue;
+
+            final int off = yy * w;
+            double v = 0d;
+
+            for (int k = 0; k < size; k++)
+            {
+                final int xx = x0 + k;
+
+                if ((xx >= 0) && (xx < w) && (wx[k] != 0d))
+                    v += wx[k] * Array1DUtil.getValue(data, off + xx, dataType);
+            }
+
+            result += wy[j] * v;
+        }
+
+        return result / (sumX * sumY);
+    }
+
+    /**
+     * Add <code>weight * data[offset + i]</code> to <code>out[i]</code> for <code>i</code> in
+     * <code>[0..length[</code>.
+     */
+    static void accumulate(Object data, DataType dataType, int offset, int length, double weight, double[] out)
+    {
+        switch (dataType)
+        {
+            case UBYTE:
+            {
+                final byte[] array = (byte[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * (array[offset + i] & 0xFF);
+                break;
+            }
+
+            case BYTE:
+            {
+                final byte[] array = (byte[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * array[offset + i];
+                break;
+            }
+
+            case USHORT:
+            {
+                final short[] array = (short[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * (array[offset + i] & 0xFFFF);
+                break;
+            }
+
+            case SHORT:
+            {
+                final short[] array = (short[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * array[offset + i];
+                break;
+            }
+
+            case UINT:
+            {
+                final int[] array = (int[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * (array[offset + i] & 0xFFFFFFFFL);
+                break;
+            }
+
+            case INT:
+            {
+                final int[] array = (int[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * array[offset + i];
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] array = (float[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * array[offset + i];
+                break;
+            }
+
+            case DOUBLE:
+            {
+                final double[] array = (double[]) data;
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * array[offset + i];
+                break;
+            }
+
+            default:
+                for (int i = 0; i < length; i++)
+                    out[i] += weight * Array1DUtil.getValue(data, offset + i, dataType);
+                break;
+        }
+    }
+
+    /**
+     * Store values in <code>data[offset..offset+length[</code>, integer data types values are
+     * rounded and clamped to the data type range.
+     */
+    static void store(double[] values, Object data, DataType dataType, int offset, int length)
+    {
+        final double min = dataType.getMinValue();
+        final double max = dataType.getMaxValue();
+
+        switch (dataType)
+        {
+            case UBYTE:
+            case BYTE:
+            {
+                final byte[] array = (byte[]) data;
+                for (int i = 0; i < length; i++)
+                    array[offset + i] = (byte) Math.round(clamp(values[i], min, max));
+                break;
+            }
+
+            case USHORT:
+            case SHORT:
+            {
+                final short[] array = (short[]) data;
+                for (int i = 0; i < length; i++)
+                    array[offset + i] = (short) Math.round(clamp(values[i], min, max));
+                break;
+            }
+
+            case UINT:
+            case INT:
+            {
+                final int[] array = (int[]) data;
+                for (int i = 0; i < length; i++)
+                    array[offset + i] = (int) Math.round(clamp(values[i], min, max));
+                break;
+            }
+
+            case ULONG:
+            {
+                final long[] array = (long[]) data;
+                for (int i = 0; i < length; i++)
+                {
+                    final double v = Math.rint(clamp(values[i], min, max));
+
+                    // unsigned values over Long.MAX_VALUE are stored as negative long
+                    if (v >= Long.MAX_VALUE)
+                        array[offset + i] = (long) (v - MathUtil.POW2_64_DOUBLE);
+                    else
+                        array[offset + i] = (long) v;
+                }
+                break;
+            }
+
+            case LONG:
+            {
+                final long[] array = (long[]) data;
+                for (int i = 0; i < length; i++)
+                    array[offset + i] = Math.round(values[i]);
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] array = (float[]) data;
+                for (int i = 0; i < length; i++)
+                    array[offset + i] = (float) values[i];
+                break;
+            }
+
+            default:
+                System.arraycopy(values, 0, data, offset, length);
+                break;
+        }
+    }
+
+    static int clamp(int value, int min, int max)
+    {
+        if (value < min)
+            return min;
+        if (value > max)
+            return max;
+        return value;
+    }
+
+    static double clamp(double value, double min, double max)
+    {
+        if (value < min)
+            return min;
+        if (value > max)
+            return max;
+        return value;
+    }
+
+    /**
+     * Process a block of destination rows
+     */
+    static interface RowTask
+    {
+        public void process(int startY, int endY);
+    }
+
+    /**
+     * Process all destination rows by blocks (in parallel when the image is large enough and we
+     * are not already in a compute task, as when planes are resampled in parallel).
+     */
+    static void processRows(int height, int width, final RowTask task)
+    {
+        final int numThread = Math.max(1, SystemUtil.getNumberOfCPUs());
+
+        if ((numThread == 1) || (((long) width * (long) height) < PARALLEL_MIN_SIZE) || (height < 2)
+                || ThreadUtil.isComputeThread())
+        {
+            task.process(0, height);
+            return;
+        }
+
+        // use more blocks than threads for better load balancing
+        final int numBlock = Math.min(height, numThread * 4);
+        final Processor proc = ThreadUtil.getComputeProcessor();
+        final List<Future<?>> futures = new ArrayList<Future<?>>(numBlock);
+
+        try
+        {
+            for (int b = 0; b < numBlock; b++)
+            {
+                final int startY = (int) (((long) height * b) / numBlock);
+                final int endY = (int) (((long) height * (b + 1)) / numBlock);
+
+                futures.add(proc.submit(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        task.process(startY, endY);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (InterruptedException e)
+        {
+            // restore interrupted state
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+    }
+}
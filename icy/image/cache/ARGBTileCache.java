@@ -0,0 +1,491 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.image.lut.LUT;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Cache of ARGB rendered tiles for large image display.<br>
+ * Each image plane is divided in tiles of {@link #getTileSize()} pixels for each resolution level
+ * (level <code>n</code> is the plane resolution / 2^n) so a viewer only has to colorize the tiles
+ * of the visible area at the resolution matching its zoom factor.<br>
+ * Tiles are kept in memory (LRU order) and can be invalidated per plane (data changed) or all at
+ * once (LUT changed).
+ *
+ * @author Stephane
+ */
+public class ARGBTileCache
+{
+    static class TileKey
+    {
+        // weak reference so cached tiles don't retain removed planes
+        final WeakReference<IcyBufferedImage> plane;
+        final int planeHash;
+        final int c;
+        final int level;
+        final int tileX;
+        final int tileY;
+
+        TileKey(IcyBufferedImage plane, int c, int level, int tileX, int tileY)
+        {
+            super();
+
+            this.plane = new WeakReference<IcyBufferedImage>(plane);
+            planeHash = System.identityHashCode(plane);
+            this.c = c;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof TileKey)
+            {
+                final TileKey key = (TileKey) obj;
+
+                return (key.planeHash == planeHash) && (key.plane.get() == plane.get()) && (key.c == c)
+                        && (key.level == level) && (key.tileX == tileX) && (key.tileY == tileY);
+            }
+
+            return super.equals(obj);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = planeHash;
+
+            result = (result * 31) + c;
+            result = (result * 31) + level;
+            result = (result * 31) + tileX;
+            result = (result * 31) + tileY;
+
+            return result;
+        }
+    }
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024L * 1024L;
+
+    protected final int tileSize;
+    protected long maxMemory;
+
+    /**
+     * cached tiles in access order (LRU first)
+     */
+    protected final LinkedHashMap<TileKey, BufferedImage> tiles;
+    protected long usedMemory;
+    /**
+     * incremented on each invalidation so tiles built meanwhile are not cached
+     */
+    protected int version;
+
+    /**
+     * Create a new tile cache.
+     *
+     * @param tileSize
+     *        tile size (in pixel)
+     * @param maxMemory
+     *        maximum amount of memory (in bytes) used by cached tiles
+     */
+    public ARGBTileCache(int tileSize, long maxMemory)
+    {
+        super();
+
+        this.tileSize = tileSize;
+        this.maxMemory = maxMemory;
+
+        tiles = new LinkedHashMap<TileKey, BufferedImage>(64, 0.75f, true);
+        usedMemory = 0L;
+        version = 0;
+    }
+
+    public ARGBTileCache()
+    {
+        this(DEFAULT_TILE_SIZE, DEFAULT_MAX_MEMORY);
+    }
+
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+
+    /**
+     * Returns the maximum amount of memory (in bytes) used by cached tiles.
+     */
+    public synchronized long getMaxMemory()
+    {
+        return maxMemory;
+    }
+
+    /**
+     * Set the maximum amount of memory (in bytes) used by cached tiles.
+     */
+    public synchronized void setMaxMemory(long value)
+    {
+        maxMemory = value;
+        flush();
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) currently used by cached tiles.
+     */
+    public synchronized long getUsedMemory()
+    {
+        return usedMemory;
+    }
+
+    /**
+     * Returns the bounds (in plane coordinates) of the specified tile.<br>
+     * The returned rectangle is not clipped to the plane bounds.
+     */
+    public Rectangle getTileBounds(int level, int tileX, int tileY)
+    {
+        final int size = tileSize << level;
+
+        return new Rectangle(tileX * size, tileY * size, size, size);
+    }
+
+    /**
+     * Returns the cached tile for specified plane and position (<code>null</code> if the tile is not
+     * in the cache).
+     *
+     * @param plane
+     *        image plane (used as key so it should be the original plane instance)
+     * @param c
+     *        channel index (-1 for all channels)
+     * @param level
+     *        resolution level
+     * @param tileX
+     *        tile X index
+     * @param tileY
+     *        tile Y index
+     */
+    public synchronized BufferedImage getTile(IcyBufferedImage plane, int c, int level, int tileX, int tileY)
+    {
+        return tiles.get(new TileKey(plane, c, level, tileX, tileY));
+    }
+
+    /**
+     * Build (and cache) the specified tile.
+     *
+     * @param plane
+     *        image plane (used as key so it should be the original plane instance)
+     * @param c
+     *        channel index (-1 for all channels)
+     * @param source
+     *        image to render (can be a single channel of <code>plane</code>)
+     * @param lut
+     *        lut used for rendering
+     * @param level
+     *        resolution level
+     * @param tileX
+     *        tile X index
+     * @param tileY
+     *        tile Y index
+     */
+    public BufferedImage buildTile(IcyBufferedImage plane, int c, IcyBufferedImage source, LUT lut, int level,
+            int tileX, int tileY)
+    {
+        final int v;
+
+        synchronized (this)
+        {
+            v = version;
+        }
+
+        final BufferedImage result = getARGBImage(source, lut, getTileBounds(level, tileX, tileY), level);
+
+        if (result != null)
+        {
+            synchronized (this)
+            {
+                // not invalidated in the meantime ?
+                if (v == version)
+                {
+                    final BufferedImage previous = tiles.put(new TileKey(plane, c, level, tileX, tileY), result);
+
+                    if (previous != null)
+                        usedMemory -= getMemorySize(previous);
+                    usedMemory += getMemorySize(result);
+
+                    flush();
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove all tiles of the specified plane (data changed).
+     */
+    public synchronized void invalid(IcyBufferedImage plane)
+    {
+        final Iterator<Entry<TileKey, BufferedImage>> it = tiles.entrySet().iterator();
+
+        while (it.hasNext())
+        {
+            final Entry<TileKey, BufferedImage> entry = it.next();
+
+            final IcyBufferedImage p = entry.getKey().plane.get();
+
+            // also remove tiles of released planes
+            if ((p == plane) || (p == null))
+            {
+                usedMemory -= getMemorySize(entry.getValue());
+                it.remove();
+            }
+        }
+
+        version++;
+    }
+
+    /**
+     * Remove all cached tiles.
+     */
+    public synchronized void clear()
+    {
+        tiles.clear();
+        usedMemory = 0L;
+        version++;
+    }
+
+    /**
+     * Remove least recently used tiles until used memory fits the allowed limit.
+     */
+    protected synchronized void flush()
+    {
+        final Iterator<Entry<TileKey, BufferedImage>> it = tiles.entrySet().iterator();
+
+        while ((usedMemory > maxMemory) && it.hasNext())
+        {
+            usedMemory -= getMemorySize(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    private static long getMemorySize(BufferedImage image)
+    {
+        // ARGB --> 4 bytes per pixel
+        return (long) image.getWidth() * (long) image.getHeight() * 4L;
+    }
+
+    /**
+     * Returns the resolution level to use for the specified display scale factor.
+     */
+    public static int getLevel(double scale)
+    {
+        int result = 0;
+        double s = scale;
+
+        while ((s > 0d) && (s <= 0.5d))
+        {
+            s *= 2d;
+            result++;
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the ARGB rendering of the specified region of the source image at the given
+     * resolution level.
+     *
+     * @param source
+     *        source image
+     * @param lut
+     *        lut used for rendering
+     * @param region
+     *        region to render (in source coordinates), <code>null</code> for the whole image
+     * @param level
+     *        resolution level (image is sub sampled by 2^level)
+     */
+    public static BufferedImage getARGBImage(IcyBufferedImage source, LUT lut, Rectangle region, int level)
+    {
+        final IcyBufferedImage image = getSampledImage(source, region, 1 << level);
+
+        if (image == null)
+            return null;
+
+        return IcyBufferedImageUtil.getARGBImage(image, lut, null);
+    }
+
+    /**
+     * Returns a sub sampled image (one pixel every <code>step</code> pixels) of the specified
+     * region of the source image.
+     *
+     * @param source
+     *        source image
+     * @param region
+     *        region to sample (in source coordinates), <code>null</code> for the whole image
+     * @param step
+     *        sampling step
+     */
+    public static IcyBufferedImage getSampledImage(IcyBufferedImage source, Rectangle region, int step)
+    {
+        if (source == null)
+            return null;
+
+        final int srcW = source.getSizeX();
+        final Rectangle adjRegion;
+
+        if (region == null)
+            adjRegion = source.getBounds();
+        else
+            adjRegion = region.intersection(source.getBounds());
+
+        if (adjRegion.isEmpty())
+            return null;
+
+        // no sampling --> simple copy
+        if (step <= 1)
+            return IcyBufferedImageUtil.getSubImage(source, adjRegion);
+
+        final int w = ((adjRegion.width - 1) / step) + 1;
+        final int h = ((adjRegion.height - 1) / step) + 1;
+        final int sizeC = source.getSizeC();
+        final DataType dataType = source.getDataType_();
+        final Object[] data = new Object[sizeC];
+
+        for (int c = 0; c < sizeC; c++)
+        {
+            final Object src = source.getSharedDataXY(c);
+            final Object dst = Array1DUtil.createArray(dataType, w * h);
+
+            switch (dataType.getJavaType())
+            {
+                case BYTE:
+                    sample((byte[]) src, srcW, (byte[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+                case SHORT:
+                    sample((short[]) src, srcW, (short[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+                case INT:
+                    sample((int[]) src, srcW, (int[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+                case LONG:
+                    sample((long[]) src, srcW, (long[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+                case FLOAT:
+                    sample((float[]) src, srcW, (float[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+                case DOUBLE:
+                    sample((double[]) src, srcW, (double[]) dst, adjRegion.x, adjRegion.y, w, h, step);
+                    break;
+            }
+
+            data[c] = dst;
+        }
+
+        // bounds are not needed for rendering
+        return new IcyBufferedImage(w, h, data, dataType.isSigned(), false);
+    }
+
+    private static void sample(byte[] src, int srcW, byte[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+
+    private static void sample(short[] src, int srcW, short[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+
+    private static void sample(int[] src, int srcW, int[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+
+    private static void sample(long[] src, int srcW, long[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+
+    private static void sample(float[] src, int srcW, float[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+
+    private static void sample(double[] src, int srcW, double[] dst, int x, int y, int w, int h, int step)
+    {
+        int off = 0;
+
+        for (int j = 0; j < h; j++)
+        {
+            int srcOff = ((y + (j * step)) * srcW) + x;
+
+            for (int i = 0; i < w; i++, srcOff += step)
+                dst[off++] = src[srcOff];
+        }
+    }
+}
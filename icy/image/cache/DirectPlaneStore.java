@@ -0,0 +1,49 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PlaneStore} keeping planes in direct (off heap) {@link ByteBuffer}.<br>
+ * Direct memory is not part of the java heap so it does not impact GC time, but the total amount
+ * of direct memory is still limited by the JVM (see <code>-XX:MaxDirectMemorySize</code>).<br>
+ * Use a {@link MappedFilePlaneStore} for datasets which do not fit in physical memory.
+ *
+ * @author Stephane
+ */
+public class DirectPlaneStore extends PlaneStore
+{
+    public DirectPlaneStore()
+    {
+        super();
+    }
+
+    @Override
+    protected ByteBuffer createBuffer(int size)
+    {
+        return ByteBuffer.allocateDirect(size);
+    }
+
+    @Override
+    protected void releaseResources()
+    {
+        // direct buffers are released by the GC
+    }
+}
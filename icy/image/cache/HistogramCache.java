@@ -0,0 +1,370 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.image.IcyBufferedImage;
+import icy.math.Histogram;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
+import icy.type.collection.array.ArrayUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Cache of per plane / per channel {@link Histogram}.<br>
+ * Each plane histogram is computed once (type specialized and parallel computation) then kept
+ * until the plane is invalidated (see {@link #invalidate(IcyBufferedImage)}) so histogram of a
+ * whole stack or time lapse is obtained by merging cached plane histograms in O(bins).<br>
+ * Planes are weakly referenced so the cache doesn't prevent them to be garbage collected.
+ *
+ * @author Stephane
+ */
+public class HistogramCache
+{
+    /**
+     * minimum number of value per computation task
+     */
+    private static final int MIN_TASK_SIZE = 256 * 1024;
+
+    /**
+     * Cached histogram of a plane channel
+     */
+    private static class CachedHistogram
+    {
+        final int[] bins;
+        final double minValue;
+        final double maxValue;
+        final boolean integer;
+
+        CachedHistogram(Histogram histogram)
+        {
+            super();
+
+            bins = histogram.getBins().clone();
+            minValue = histogram.getMinValue();
+            maxValue = histogram.getMaxValue();
+            integer = histogram.isIntegerType();
+        }
+
+        boolean isCompatible(Histogram histogram)
+        {
+            return (minValue == histogram.getMinValue()) && (maxValue == histogram.getMaxValue())
+                    && (integer == histogram.isIntegerType()) && (bins.length == histogram.getBinNumber());
+        }
+    }
+
+    /**
+     * plane --> histogram for each channel
+     */
+    private final Map<IcyBufferedImage, CachedHistogram[]> histograms;
+
+    public HistogramCache()
+    {
+        super();
+
+        histograms = new WeakHashMap<IcyBufferedImage, CachedHistogram[]>();
+    }
+
+    /**
+     * Add the values of the specified image channel to the <i>histogram</i>.<br>
+     * The image channel histogram is taken from the cache when available (and compatible), else it
+     * is computed and stored in the cache.
+     */
+    public void addValues(Histogram histogram, IcyBufferedImage image, int channel)
+    {
+        CachedHistogram cached = get(image, channel, histogram);
+
+        if (cached == null)
+        {
+            // use a temporary histogram with the same binning
+            final Histogram planeHisto = new Histogram(histogram.getMinValue(), histogram.getMaxValue(),
+                    histogram.getBinNumber(), histogram.isIntegerType());
+
+            // binning differs (should not happen) --> direct computation without caching
+            if (planeHisto.getBinNumber() != histogram.getBinNumber())
+            {
+                addValues(histogram, image.getSharedDataXY(channel), image.getDataType_());
+                return;
+            }
+
+            addValues(planeHisto, image.getSharedDataXY(channel), image.getDataType_());
+
+            cached = new CachedHistogram(planeHisto);
+            put(image, channel, image.getSizeC(), cached);
+        }
+
+        // merge
+        final int[] src = cached.bins;
+        final int[] dst = histogram.getBins();
+
+        for (int i = 0; i < src.length; i++)
+            dst[i] += src[i];
+    }
+
+    private synchronized CachedHistogram get(IcyBufferedImage image, int channel, Histogram histogram)
+    {
+        final CachedHistogram[] result = histograms.get(image);
+
+        if ((result == null) || (channel >= result.length) || (result[channel] == null))
+            return null;
+        if (!result[channel].isCompatible(histogram))
+            return null;
+
+        return result[channel];
+    }
+
+    private synchronized void put(IcyBufferedImage image, int channel, int sizeC, CachedHistogram histogram)
+    {
+        CachedHistogram[] channels = histograms.get(image);
+
+        if ((channels == null) || (channels.length != sizeC))
+        {
+            channels = new CachedHistogram[sizeC];
+            histograms.put(image, channels);
+        }
+
+        channels[channel] = histogram;
+    }
+
+    /**
+     * Invalidate cached histograms of the specified image (call it when image data changed).
+     */
+    public synchronized void invalidate(IcyBufferedImage image)
+    {
+        histograms.remove(image);
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public synchronized void clear()
+    {
+        histograms.clear();
+    }
+
+    /**
+     * Add the specified data values to the <i>histogram</i> (values outside histogram range are
+     * ignored).<br>
+     * Computation is done in parallel for large data.
+     */
+    public static void addValues(Histogram histogram, final Object data, final DataType dataType)
+    {
+        final int len = ArrayUtil.getLength(data);
+        final int numTask = Math.max(1, Math.min(SystemUtil.getNumberOfCPUs(), len / MIN_TASK_SIZE));
+        final double minValue = histogram.getMinValue();
+        final double maxValue = histogram.getMaxValue();
+        final int numBin = histogram.getBinNumber();
+        final int[] bins = histogram.getBins();
+
+        // small data or already in a compute task --> process in current thread
+        if ((numTask == 1) || ThreadUtil.isComputeThread())
+        {
+            addValues(bins, minValue, maxValue, data, dataType, 0, len);
+            return;
+        }
+
+        final Processor proc = ThreadUtil.getComputeProcessor();
+        final List<Future<int[]>> futures = new ArrayList<Future<int[]>>(numTask);
+        final int step = (len + (numTask - 1)) / numTask;
+
+        for (int i = 0; i < numTask; i++)
+        {
+            final int offset = i * step;
+            final int length = Math.min(step, len - offset);
+
+            futures.add(proc.submit(new Callable<int[]>()
+            {
+                @Override
+                public int[] call() throws Exception
+                {
+                    final int[] result = new int[numBin];
+
+                    addValues(result, minValue, maxValue, data, dataType, offset, length);
+
+                    return result;
+                }
+            }));
+        }
+
+        for (Future<int[]> future : futures)
+        {
+            final int[] partial;
+
+            try
+            {
+                partial = future.get();
+            }
+            catch (InterruptedException e)
+            {
+                return;
+            }
+            catch (ExecutionException e)
+            {
+                throw new RuntimeException(e.getCause());
+            }
+
+            for (int i = 0; i < numBin; i++)
+                bins[i] += partial[i];
+        }
+    }
+
+    /**
+     * Type specialized histogram computation (same binning than {@link Histogram#addValue(double)}).
+     */
+    static void addValues(int[] bins, double minValue, double maxValue, Object data, DataType dataType, int offset,
+            int length)
+    {
+        final int numBin = bins.length;
+        final double range = maxValue - minValue;
+        final double dataToBin = (range > 0) ? (numBin / range) : 0d;
+        final int end = offset + length;
+
+        switch (dataType)
+        {
+            case UBYTE:
+            case BYTE:
+            {
+                // direct value to bin lookup table
+                final int[] lut = createBinTable(256, dataType.isSigned(), minValue, dataToBin, numBin);
+                final byte[] array = (byte[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = lut[array[i] & 0xFF];
+                    if (bin != -1)
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            case USHORT:
+            case SHORT:
+            {
+                // direct value to bin lookup table
+                final int[] lut = createBinTable(65536, dataType.isSigned(), minValue, dataToBin, numBin);
+                final short[] array = (short[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = lut[array[i] & 0xFFFF];
+                    if (bin != -1)
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            case UINT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = (int) (((array[i] & 0xFFFFFFFFL) - minValue) * dataToBin);
+                    if ((bin >= 0) && (bin < numBin))
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            case INT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = (int) ((array[i] - minValue) * dataToBin);
+                    if ((bin >= 0) && (bin < numBin))
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] array = (float[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = (int) ((array[i] - minValue) * dataToBin);
+                    if ((bin >= 0) && (bin < numBin))
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            case DOUBLE:
+            {
+                final double[] array = (double[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = (int) ((array[i] - minValue) * dataToBin);
+                    if ((bin >= 0) && (bin < numBin))
+                        bins[bin]++;
+                }
+                break;
+            }
+
+            default:
+            {
+                // generic (slower) path
+                final boolean signed = dataType.isSigned();
+
+                for (int i = offset; i < end; i++)
+                {
+                    final int bin = (int) ((ArrayUtil.getValue(data, i, signed) - minValue) * dataToBin);
+                    if ((bin >= 0) && (bin < numBin))
+                        bins[bin]++;
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * Create the value to bin index table (-1 for values outside histogram range).
+     */
+    private static int[] createBinTable(int size, boolean signed, double minValue, double dataToBin, int numBin)
+    {
+        final int[] result = new int[size];
+
+        for (int i = 0; i < size; i++)
+        {
+            final int value;
+
+            if (signed)
+                value = (size == 256) ? (byte) i : (short) i;
+            else
+                value = i;
+
+            final int bin = (int) ((value - minValue) * dataToBin);
+            result[i] = ((bin >= 0) && (bin < numBin)) ? bin : -1;
+        }
+
+        return result;
+    }
+}
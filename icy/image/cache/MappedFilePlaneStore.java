@@ -0,0 +1,127 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.file.FileUtil;
+import icy.system.IcyExceptionHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * {@link PlaneStore} keeping planes in a memory mapped scratch file.<br>
+ * The operating system pages plane data in and out of physical memory on demand so this store can
+ * hold datasets larger than both the java heap and the physical memory.<br>
+ * The scratch file is deleted when the store is closed (or on JVM exit).
+ *
+ * @author Stephane
+ */
+public class MappedFilePlaneStore extends PlaneStore
+{
+    /**
+     * scratch file
+     */
+    protected final File file;
+
+    /**
+     * internals
+     */
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private long fileSize;
+
+    /**
+     * Create a new mapped plane store using a scratch file in the specified directory.
+     *
+     * @param directory
+     *        directory where the scratch file is created (if <code>null</code> the default
+     *        temporary directory is used)
+     */
+    public MappedFilePlaneStore(File directory) throws IOException
+    {
+        super();
+
+        final File dir = (directory != null) ? directory : new File(FileUtil.getTempDirectory());
+
+        if (!dir.exists())
+            dir.mkdirs();
+
+        file = File.createTempFile("icy_planes", ".tmp", dir);
+        file.deleteOnExit();
+        raf = new RandomAccessFile(file, "rw");
+        channel = raf.getChannel();
+        fileSize = 0L;
+    }
+
+    /**
+     * Create a new mapped plane store using a scratch file in the default temporary directory.
+     */
+    public MappedFilePlaneStore() throws IOException
+    {
+        this(null);
+    }
+
+    /**
+     * Returns the scratch file used by this store.
+     */
+    public File getFile()
+    {
+        return file;
+    }
+
+    @Override
+    protected ByteBuffer createBuffer(int size) throws IOException
+    {
+        // append a new region at end of file (mapping extends the file)
+        final ByteBuffer result = channel.map(MapMode.READ_WRITE, fileSize, size);
+
+        fileSize += size;
+
+        return result;
+    }
+
+    @Override
+    protected void releaseResources()
+    {
+        try
+        {
+            channel.close();
+            raf.close();
+        }
+        catch (IOException e)
+        {
+            IcyExceptionHandler.showErrorMessage(e, false);
+        }
+
+        // can fail while mapped regions are not yet garbage collected (deleteOnExit will do it then)
+        file.delete();
+    }
+
+    @Override
+    protected void finalize() throws Throwable
+    {
+        close();
+
+        super.finalize();
+    }
+}
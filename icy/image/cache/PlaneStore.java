@@ -0,0 +1,328 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.image.IcyBufferedImage;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.collection.array.Array2DUtil;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for image plane storage outside the java heap.<br>
+ * A plane store keeps the pixel data of {@link IcyBufferedImage} in {@link ByteBuffer} (direct or
+ * memory mapped) so the java heap only has to hold the planes currently in use.<br>
+ * Released buffers are kept in a pool (indexed by size) and reused for the next stored planes as
+ * planes of a same sequence generally have the same size.
+ *
+ * @see DirectPlaneStore
+ * @see MappedFilePlaneStore
+ * @author Stephane
+ */
+public abstract class PlaneStore
+{
+    /**
+     * free buffers pool (indexed by buffer size)
+     */
+    private final Map<Integer, List<ByteBuffer>> freeBuffers;
+
+    /**
+     * internals
+     */
+    private long usedMemory;
+    private boolean closed;
+
+    public PlaneStore()
+    {
+        super();
+
+        freeBuffers = new HashMap<Integer, List<ByteBuffer>>();
+        usedMemory = 0L;
+        closed = false;
+    }
+
+    /**
+     * Create a new buffer of the specified size (in bytes).
+     */
+    protected abstract ByteBuffer createBuffer(int size) throws IOException;
+
+    /**
+     * Release the resources allocated by the store (called on {@link #close()}).
+     */
+    protected abstract void releaseResources();
+
+    /**
+     * Returns the amount of plane data currently stored (in bytes).
+     */
+    public synchronized long getUsedMemory()
+    {
+        return usedMemory;
+    }
+
+    /**
+     * Returns <code>true</code> if the store has been closed.
+     */
+    public synchronized boolean isClosed()
+    {
+        return closed;
+    }
+
+    /**
+     * Close the store and release all its resources.<br>
+     * All stored planes are lost after this call.
+     */
+    public synchronized void close()
+    {
+        if (!closed)
+        {
+            closed = true;
+            freeBuffers.clear();
+            usedMemory = 0L;
+            releaseResources();
+        }
+    }
+
+    private synchronized ByteBuffer allocate(int size) throws IOException
+    {
+        if (closed)
+            throw new IOException("Plane store is closed.");
+
+        final List<ByteBuffer> buffers = freeBuffers.get(Integer.valueOf(size));
+        final ByteBuffer result;
+
+        // reuse a free buffer if possible
+        if ((buffers != null) && !buffers.isEmpty())
+            result = buffers.remove(buffers.size() - 1);
+        else
+            result = createBuffer(size);
+
+        usedMemory += size;
+        result.clear();
+        // native order is faster for typed buffer access
+        result.order(ByteOrder.nativeOrder());
+
+        return result;
+    }
+
+    private synchronized void free(ByteBuffer buffer)
+    {
+        // store closed --> buffer is lost
+        if (closed)
+            return;
+
+        final Integer key = Integer.valueOf(buffer.capacity());
+        List<ByteBuffer> buffers = freeBuffers.get(key);
+
+        if (buffers == null)
+        {
+            buffers = new ArrayList<ByteBuffer>();
+            freeBuffers.put(key, buffers);
+        }
+
+        buffers.add(buffer);
+        usedMemory -= buffer.capacity();
+    }
+
+    /**
+     * Store the specified image in the store.
+     *
+     * @param image
+     *        image to store
+     * @param plane
+     *        previous stored plane for this image (can be <code>null</code>).<br>
+     *        If the plane is compatible its buffer is reused, otherwise it is released.
+     * @return the stored plane handle
+     */
+    public StoredPlane store(IcyBufferedImage image, StoredPlane plane) throws IOException
+    {
+        final int sizeX = image.getSizeX();
+        final int sizeY = image.getSizeY();
+        final int sizeC = image.getSizeC();
+        final DataType dataType = image.getDataType_();
+        final StoredPlane result;
+
+        // can reuse previous stored plane buffer ?
+        if ((plane != null) && (plane.store == this) && (plane.buffer != null) && (plane.sizeX == sizeX)
+                && (plane.sizeY == sizeY) && (plane.sizeC == sizeC) && (plane.dataType == dataType))
+            result = plane;
+        else
+        {
+            if (plane != null)
+                release(plane);
+
+            result = new StoredPlane(this, sizeX, sizeY, sizeC, dataType);
+
+            final long size = result.getDataSize();
+
+            // buffer size is limited to 2GB
+            if (size > Integer.MAX_VALUE)
+                throw new IOException("Cannot store a plane larger than 2GB.");
+
+            result.buffer = allocate((int) size);
+        }
+
+        final ByteBuffer buffer = result.buffer.duplicate();
+        final int len = sizeX * sizeY;
+
+        buffer.order(result.buffer.order());
+        buffer.clear();
+
+        for (int c = 0; c < sizeC; c++)
+        {
+            final Object data = image.getSharedDataXY(c);
+            final int offset = buffer.position();
+
+            switch (dataType.getJavaType())
+            {
+                case BYTE:
+                    buffer.put((byte[]) data, 0, len);
+                    break;
+                case SHORT:
+                    buffer.asShortBuffer().put((short[]) data, 0, len);
+                    break;
+                case INT:
+                    buffer.asIntBuffer().put((int[]) data, 0, len);
+                    break;
+                case LONG:
+                    buffer.asLongBuffer().put((long[]) data, 0, len);
+                    break;
+                case FLOAT:
+                    buffer.asFloatBuffer().put((float[]) data, 0, len);
+                    break;
+                case DOUBLE:
+                    buffer.asDoubleBuffer().put((double[]) data, 0, len);
+                    break;
+            }
+
+            buffer.position(offset + (len * dataType.getSize()));
+        }
+
+        result.channelsTypeBounds = image.getChannelsTypeBounds();
+        result.channelsBounds = image.getChannelsBounds();
+
+        return result;
+    }
+
+    /**
+     * Update the channels bounds kept in the stored plane from the specified image (which should
+     * contains the same data as the stored plane).
+     */
+    public void updateBounds(IcyBufferedImage image, StoredPlane plane)
+    {
+        plane.channelsTypeBounds = image.getChannelsTypeBounds();
+        plane.channelsBounds = image.getChannelsBounds();
+    }
+
+    /**
+     * Store the specified image in the store.
+     *
+     * @return the stored plane handle
+     */
+    public StoredPlane store(IcyBufferedImage image) throws IOException
+    {
+        return store(image, null);
+    }
+
+    /**
+     * Restore an image from the specified stored plane.<br>
+     * The returned image has its own (heap) data, the stored plane remains valid until
+     * {@link #release(StoredPlane)} is called.
+     */
+    public IcyBufferedImage load(StoredPlane plane) throws IOException
+    {
+        final ByteBuffer source = plane.buffer;
+
+        if (source == null)
+            throw new IOException("Stored plane has been released.");
+
+        final int len = plane.sizeX * plane.sizeY;
+        final DataType dataType = plane.dataType;
+        final Object[] data = Array2DUtil.createArray(dataType, plane.sizeC);
+        final ByteBuffer buffer = source.duplicate();
+
+        buffer.order(source.order());
+        buffer.clear();
+
+        for (int c = 0; c < plane.sizeC; c++)
+        {
+            final Object array = Array1DUtil.createArray(dataType, len);
+            final int offset = buffer.position();
+
+            switch (dataType.getJavaType())
+            {
+                case BYTE:
+                    buffer.get((byte[]) array, 0, len);
+                    break;
+                case SHORT:
+                    buffer.asShortBuffer().get((short[]) array, 0, len);
+                    break;
+                case INT:
+                    buffer.asIntBuffer().get((int[]) array, 0, len);
+                    break;
+                case LONG:
+                    buffer.asLongBuffer().get((long[]) array, 0, len);
+                    break;
+                case FLOAT:
+                    buffer.asFloatBuffer().get((float[]) array, 0, len);
+                    break;
+                case DOUBLE:
+                    buffer.asDoubleBuffer().get((double[]) array, 0, len);
+                    break;
+            }
+
+            buffer.position(offset + (len * dataType.getSize()));
+            data[c] = array;
+        }
+
+        // create image without bounds calculation, we restore them just after
+        final IcyBufferedImage result = new IcyBufferedImage(plane.sizeX, plane.sizeY, data, dataType.isSigned(),
+                false);
+
+        if (plane.channelsTypeBounds != null)
+            result.setChannelsTypeBounds(plane.getChannelsTypeBounds());
+        if (plane.channelsBounds != null)
+            result.setChannelsBounds(plane.getChannelsBounds());
+
+        return result;
+    }
+
+    /**
+     * Release the specified stored plane (its data is lost and the buffer goes back to the pool).
+     */
+    public void release(StoredPlane plane)
+    {
+        final ByteBuffer buffer;
+
+        synchronized (plane)
+        {
+            buffer = plane.buffer;
+            plane.buffer = null;
+        }
+
+        if ((buffer != null) && (plane.store == this))
+            free(buffer);
+    }
+}
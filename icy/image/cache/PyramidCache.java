@@ -0,0 +1,459 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageUtil;
+import icy.image.IcyBufferedImageUtil.FilterType;
+import icy.type.DataType;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+
+/**
+ * Multi resolution (pyramid) tile cache used to build down scaled images.<br>
+ * Each resolution level is divided in tiles of {@link #getTileSize()} pixels and a tile of level
+ * <code>n</code> is computed from the 4 tiles of level <code>n-1</code> (or directly from the base
+ * level data given by the {@link LevelSource}). Tiles are kept in memory (LRU order) so low
+ * resolution requests are obtained from the nearest cached level and base resolution data is
+ * decoded only once.<br>
+ * Tiles are identified by (serie, z, t, c, level, tile position), <code>c = -1</code> meaning all
+ * channels.
+ *
+ * @author Stephane
+ */
+public class PyramidCache
+{
+    /**
+     * Source of the base (native) resolution level data.
+     */
+    public static interface LevelSource
+    {
+        /**
+         * Returns the highest resolution level (nearest to the wanted level) natively available
+         * for the specified serie. The returned level should be &lt;= <code>level</code>.
+         */
+        public int getBaseLevel(int serie, int level) throws UnsupportedFormatException, IOException;
+
+        /**
+         * Returns the image width at the specified base level.
+         */
+        public int getSizeX(int serie, int baseLevel) throws UnsupportedFormatException, IOException;
+
+        /**
+         * Returns the image height at the specified base level.
+         */
+        public int getSizeY(int serie, int baseLevel) throws UnsupportedFormatException, IOException;
+
+        /**
+         * Returns the image region at the specified base level.
+         *
+         * @param c
+         *        channel index (-1 for all channels)
+         */
+        public IcyBufferedImage getImage(int serie, int baseLevel, Rectangle region, int z, int t, int c)
+                throws UnsupportedFormatException, IOException;
+    }
+
+    static class TileKey
+    {
+        final int serie;
+        final int z;
+        final int t;
+        final int c;
+        final int level;
+        final int tileX;
+        final int tileY;
+
+        TileKey(int serie, int z, int t, int c, int level, int tileX, int tileY)
+        {
+            super();
+
+            this.serie = serie;
+            this.z = z;
+            this.t = t;
+            this.c = c;
+            this.level = level;
+            this.tileX = tileX;
+            this.tileY = tileY;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj instanceof TileKey)
+            {
+                final TileKey key = (TileKey) obj;
+
+                return (key.serie == serie) && (key.z == z) && (key.t == t) && (key.c == c) && (key.level == level)
+                        && (key.tileX == tileX) && (key.tileY == tileY);
+            }
+
+            return super.equals(obj);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = serie;
+
+            result = (result * 31) + z;
+            result = (result * 31) + t;
+            result = (result * 31) + c;
+            result = (result * 31) + level;
+            result = (result * 31) + tileX;
+            result = (result * 31) + tileY;
+
+            return result;
+        }
+    }
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final long DEFAULT_MAX_MEMORY = 64L * 1024L * 1024L;
+
+    protected final int tileSize;
+    protected long maxMemory;
+
+    /**
+     * cached tiles in access order (LRU first)
+     */
+    protected final LinkedHashMap<TileKey, IcyBufferedImage> tiles;
+    protected long usedMemory;
+
+    /**
+     * Create a new pyramid cache.
+     *
+     * @param tileSize
+     *        tile size (in pixel)
+     * @param maxMemory
+     *        maximum amount of memory (in bytes) used by cached tiles
+     */
+    public PyramidCache(int tileSize, long maxMemory)
+    {
+        super();
+
+        this.tileSize = tileSize;
+        this.maxMemory = maxMemory;
+
+        tiles = new LinkedHashMap<TileKey, IcyBufferedImage>(64, 0.75f, true);
+        usedMemory = 0L;
+    }
+
+    public PyramidCache()
+    {
+        this(DEFAULT_TILE_SIZE, DEFAULT_MAX_MEMORY);
+    }
+
+    public int getTileSize()
+    {
+        return tileSize;
+    }
+
+    /**
+     * Returns the maximum amount of memory (in bytes) used by cached tiles.
+     */
+    public synchronized long getMaxMemory()
+    {
+        return maxMemory;
+    }
+
+    /**
+     * Set the maximum amount of memory (in bytes) used by cached tiles.
+     */
+    public synchronized void setMaxMemory(long value)
+    {
+        maxMemory = value;
+        flush();
+    }
+
+    /**
+     * Returns the amount of memory (in bytes) currently used by cached tiles.
+     */
+    public synchronized long getUsedMemory()
+    {
+        return usedMemory;
+    }
+
+    /**
+     * Remove all cached tiles.
+     */
+    public synchronized void clear()
+    {
+        tiles.clear();
+        usedMemory = 0L;
+    }
+
+    /**
+     * Returns the image at the specified resolution level.<br>
+     * If the level is not natively available from the source it is built from the cached tiles of
+     * the nearest computed level.
+     *
+     * @param source
+     *        base level data source
+     * @param serie
+     *        Serie index
+     * @param level
+     *        wanted resolution level (image resolution / 2^level)
+     * @param rectangle
+     *        region we want to retrieve (in base level coordinates), <code>null</code> for the
+     *        whole image
+     * @param z
+     *        Z position
+     * @param t
+     *        T position
+     * @param c
+     *        channel index (-1 for all channels)
+     */
+    public IcyBufferedImage getImage(LevelSource source, int serie, int level, Rectangle rectangle, int z, int t,
+            int c) throws UnsupportedFormatException, IOException
+    {
+        final int baseLevel = source.getBaseLevel(serie, level);
+        final int delta = level - baseLevel;
+
+        // natively available --> directly use the source
+        if (delta <= 0)
+            return source.getImage(serie, baseLevel, rectangle, z, t, c);
+
+        final int baseSizeX = source.getSizeX(serie, baseLevel);
+        final int baseSizeY = source.getSizeY(serie, baseLevel);
+        final Rectangle region;
+
+        if (rectangle == null)
+            region = new Rectangle(0, 0, baseSizeX, baseSizeY);
+        else
+            region = rectangle.intersection(new Rectangle(0, 0, baseSizeX, baseSizeY));
+
+        if (region.isEmpty())
+            return null;
+
+        final int factor = 1 << delta;
+        final int levelSizeX = getLevelSize(baseSizeX, delta);
+        final int levelSizeY = getLevelSize(baseSizeY, delta);
+        // region in level coordinates
+        final int startX = region.x / factor;
+        final int startY = region.y / factor;
+        final int endX = Math.min(levelSizeX, ceilDiv(region.x + region.width, factor));
+        final int endY = Math.min(levelSizeY, ceilDiv(region.y + region.height, factor));
+
+        IcyBufferedImage result = null;
+
+        for (int ty = startY / tileSize; ty <= ((endY - 1) / tileSize); ty++)
+        {
+            for (int tx = startX / tileSize; tx <= ((endX - 1) / tileSize); tx++)
+            {
+                final IcyBufferedImage tile = getTile(source, serie, baseLevel, baseSizeX, baseSizeY, level, z, t, c,
+                        tx, ty);
+
+                if (result == null)
+                    result = createImage(tile, endX - startX, endY - startY);
+
+                // intersection of tile with wanted region
+                final int x0 = Math.max(startX, tx * tileSize);
+                final int y0 = Math.max(startY, ty * tileSize);
+                final int x1 = Math.min(endX, (tx * tileSize) + tile.getSizeX());
+                final int y1 = Math.min(endY, (ty * tileSize) + tile.getSizeY());
+
+                copy(tile, x0 - (tx * tileSize), y0 - (ty * tileSize), result, x0 - startX, y0 - startY, x1 - x0, y1
+                        - y0);
+            }
+        }
+
+        result.dataChanged();
+
+        // adjust to the exact wanted size (same rounding as a direct down scaling)
+        final int sizeX = Math.max(1, (int) Math.round((double) region.width / factor));
+        final int sizeY = Math.max(1, (int) Math.round((double) region.height / factor));
+
+        if ((result.getSizeX() != sizeX) || (result.getSizeY() != sizeY))
+            result = IcyBufferedImageUtil.scale(result, sizeX, sizeY, FilterType.BILINEAR);
+
+        return result;
+    }
+
+    /**
+     * Returns the tile at specified level and position (compute it if needed).
+     */
+    protected IcyBufferedImage getTile(LevelSource source, int serie, int baseLevel, int baseSizeX, int baseSizeY,
+            int level, int z, int t, int c, int tileX, int tileY) throws UnsupportedFormatException, IOException
+    {
+        final TileKey key = new TileKey(serie, z, t, c, level, tileX, tileY);
+
+        synchronized (this)
+        {
+            final IcyBufferedImage result = tiles.get(key);
+
+            if (result != null)
+                return result;
+        }
+
+        final IcyBufferedImage parent;
+
+        // parent level is the base level --> read source data
+        if ((level - 1) == baseLevel)
+        {
+            final int s = tileSize * 2;
+            final Rectangle region = new Rectangle(tileX * s, tileY * s, s, s).intersection(new Rectangle(0, 0,
+                    baseSizeX, baseSizeY));
+
+            parent = source.getImage(serie, baseLevel, region, z, t, c);
+        }
+        else
+        {
+            // build parent region from the 4 tiles of the parent level
+            final int parentSizeX = getLevelSize(baseSizeX, (level - 1) - baseLevel);
+            final int parentSizeY = getLevelSize(baseSizeY, (level - 1) - baseLevel);
+            IcyBufferedImage image = null;
+            int w = 0;
+            int h = 0;
+
+            for (int j = 0; j < 2; j++)
+            {
+                final int ty = (tileY * 2) + j;
+
+                if ((ty * tileSize) >= parentSizeY)
+                    break;
+
+                for (int i = 0; i < 2; i++)
+                {
+                    final int tx = (tileX * 2) + i;
+
+                    if ((tx * tileSize) >= parentSizeX)
+                        break;
+
+                    final IcyBufferedImage tile = getTile(source, serie, baseLevel, baseSizeX, baseSizeY, level - 1, z,
+                            t, c, tx, ty);
+
+                    if (image == null)
+                    {
+                        w = Math.min(tileSize * 2, parentSizeX - (tileX * tileSize * 2));
+                        h = Math.min(tileSize * 2, parentSizeY - (tileY * tileSize * 2));
+                        image = createImage(tile, w, h);
+                    }
+
+                    copy(tile, 0, 0, image, i * tileSize, j * tileSize, tile.getSizeX(), tile.getSizeY());
+                }
+            }
+
+            if (image != null)
+                image.dataChanged();
+
+            parent = image;
+        }
+
+        if (parent == null)
+            throw new IOException("Cannot read image data for Z=" + z + ", T=" + t + ", C=" + c);
+
+        // down scale by 2
+        final IcyBufferedImage result = IcyBufferedImageUtil.scale(parent, ceilDiv(parent.getSizeX(), 2),
+                ceilDiv(parent.getSizeY(), 2), FilterType.BILINEAR);
+
+        synchronized (this)
+        {
+            final IcyBufferedImage previous = tiles.put(key, result);
+
+            if (previous != null)
+                usedMemory -= getMemorySize(previous);
+            usedMemory += getMemorySize(result);
+
+            flush();
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove least recently used tiles until used memory fits the allowed limit.
+     */
+    protected synchronized void flush()
+    {
+        final Iterator<Entry<TileKey, IcyBufferedImage>> it = tiles.entrySet().iterator();
+
+        while ((usedMemory > maxMemory) && it.hasNext())
+        {
+            usedMemory -= getMemorySize(it.next().getValue());
+            it.remove();
+        }
+    }
+
+    /**
+     * Returns the image size for the specified level (relative to base level).
+     */
+    protected static int getLevelSize(int baseSize, int delta)
+    {
+        int result = baseSize;
+
+        for (int i = 0; i < delta; i++)
+            result = ceilDiv(result, 2);
+
+        return result;
+    }
+
+    private static int ceilDiv(int value, int divisor)
+    {
+        return (value + (divisor - 1)) / divisor;
+    }
+
+    private static long getMemorySize(IcyBufferedImage image)
+    {
+        return (long) image.getSizeX() * (long) image.getSizeY() * (long) image.getSizeC()
+                * image.getDataType_().getSize();
+    }
+
+    /**
+     * Create an empty image with same format (and colormaps) than the specified one.
+     */
+    private static IcyBufferedImage createImage(IcyBufferedImage model, int sizeX, int sizeY)
+    {
+        final DataType dataType = model.getDataType_();
+        final IcyBufferedImage result = new IcyBufferedImage(sizeX, sizeY, model.getSizeC(), dataType);
+
+        result.setColorMaps(model);
+
+        return result;
+    }
+
+    /**
+     * Copy a rectangular region of source image data in the destination image.
+     */
+    private static void copy(IcyBufferedImage src, int srcX, int srcY, IcyBufferedImage dst, int dstX, int dstY,
+            int w, int h)
+    {
+        final int srcSizeX = src.getSizeX();
+        final int dstSizeX = dst.getSizeX();
+
+        for (int ch = 0; ch < src.getSizeC(); ch++)
+        {
+            final Object srcData = src.getSharedDataXY(ch);
+            final Object dstData = dst.getDataXY(ch);
+            int srcOffset = (srcY * srcSizeX) + srcX;
+            int dstOffset = (dstY * dstSizeX) + dstX;
+
+            for (int y = 0; y < h; y++)
+            {
+                System.arraycopy(srcData, srcOffset, dstData, dstOffset, w);
+                srcOffset += srcSizeX;
+                dstOffset += dstSizeX;
+            }
+        }
+    }
+}
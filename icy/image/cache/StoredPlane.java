@@ -0,0 +1,136 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.type.DataType;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Handle on an image plane stored outside the java heap by a {@link PlaneStore}.<br>
+ * It keeps plane dimension, data type and channels bounds so the plane can be restored or
+ * inspected without reading back the pixel data.
+ *
+ * @author Stephane
+ */
+public class StoredPlane
+{
+    protected final PlaneStore store;
+    protected final int sizeX;
+    protected final int sizeY;
+    protected final int sizeC;
+    protected final DataType dataType;
+
+    /**
+     * internals
+     */
+    protected ByteBuffer buffer;
+    protected double[][] channelsTypeBounds;
+    protected double[][] channelsBounds;
+
+    protected StoredPlane(PlaneStore store, int sizeX, int sizeY, int sizeC, DataType dataType)
+    {
+        super();
+
+        this.store = store;
+        this.sizeX = sizeX;
+        this.sizeY = sizeY;
+        this.sizeC = sizeC;
+        this.dataType = dataType;
+
+        buffer = null;
+        channelsTypeBounds = null;
+        channelsBounds = null;
+    }
+
+    /**
+     * Returns the {@link PlaneStore} owning this plane.
+     */
+    public PlaneStore getStore()
+    {
+        return store;
+    }
+
+    public int getSizeX()
+    {
+        return sizeX;
+    }
+
+    public int getSizeY()
+    {
+        return sizeY;
+    }
+
+    public int getSizeC()
+    {
+        return sizeC;
+    }
+
+    public DataType getDataType_()
+    {
+        return dataType;
+    }
+
+    /**
+     * Returns the size of the plane data (in bytes).
+     */
+    public long getDataSize()
+    {
+        return (long) sizeX * (long) sizeY * (long) sizeC * dataType.getSize();
+    }
+
+    /**
+     * Returns <code>true</code> if the plane data has been released.
+     */
+    public boolean isReleased()
+    {
+        return buffer == null;
+    }
+
+    /**
+     * Returns a copy of the channels type bounds of the plane as they were when the plane has been
+     * stored.
+     */
+    public double[][] getChannelsTypeBounds()
+    {
+        return copyBounds(channelsTypeBounds);
+    }
+
+    /**
+     * Returns a copy of the channels bounds of the plane as they were when the plane has been
+     * stored.
+     */
+    public double[][] getChannelsBounds()
+    {
+        return copyBounds(channelsBounds);
+    }
+
+    private static double[][] copyBounds(double[][] bounds)
+    {
+        if (bounds == null)
+            return null;
+
+        final double[][] result = new double[bounds.length][];
+
+        for (int c = 0; c < bounds.length; c++)
+            result[c] = bounds[c].clone();
+
+        return result;
+    }
+}
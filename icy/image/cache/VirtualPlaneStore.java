@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.image.cache;
+
+import icy.common.exception.UnsupportedFormatException;
+import icy.image.IcyBufferedImage;
+import icy.sequence.SequenceIdImporter;
+import icy.system.IcyExceptionHandler;
+import icy.type.DataType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * {@link PlaneStore} reading planes on demand from the {@link SequenceIdImporter} they come from.<br>
+ * Planes which were never modified are simply read again from the importer when needed so they
+ * don't take any memory once paged out. Modified planes can't go back to the importer so they are
+ * stored in the <i>scratch</i> plane store.<br>
+ * The importer should be opened and is owned by this store (it is closed with the store).
+ *
+ * @author Stephane
+ */
+public class VirtualPlaneStore extends PlaneStore
+{
+    /**
+     * Plane which has not been modified and can be read back from the importer.
+     */
+    public static class VirtualPlane extends StoredPlane
+    {
+        protected final int z;
+        protected final int t;
+
+        protected VirtualPlane(VirtualPlaneStore store, int z, int t, int sizeX, int sizeY, int sizeC,
+                DataType dataType)
+        {
+            super(store, sizeX, sizeY, sizeC, dataType);
+
+            this.z = z;
+            this.t = t;
+        }
+
+        public int getZ()
+        {
+            return z;
+        }
+
+        public int getT()
+        {
+            return t;
+        }
+
+        @Override
+        public boolean isReleased()
+        {
+            // always available from the importer
+            return false;
+        }
+    }
+
+    protected final SequenceIdImporter importer;
+    protected final int serie;
+    protected final int resolution;
+    protected final PlaneStore scratch;
+
+    /**
+     * Create a new virtual plane store.
+     *
+     * @param importer
+     *        opened importer to read planes from
+     * @param serie
+     *        serie index of the planes in the importer
+     * @param resolution
+     *        resolution level of the planes in the importer (0 = full resolution)
+     * @param scratch
+     *        store used to keep modified planes
+     */
+    public VirtualPlaneStore(SequenceIdImporter importer, int serie, int resolution, PlaneStore scratch)
+    {
+        super();
+
+        this.importer = importer;
+        this.serie = serie;
+        this.resolution = resolution;
+        this.scratch = scratch;
+    }
+
+    /**
+     * Returns the importer used to read planes.
+     */
+    public SequenceIdImporter getImporter()
+    {
+        return importer;
+    }
+
+    public int getSerie()
+    {
+        return serie;
+    }
+
+    public int getResolution()
+    {
+        return resolution;
+    }
+
+    /**
+     * Create a plane handle for the image located at the specified position in the importer.<br>
+     * Nothing is read at this point, the plane is read from the importer when accessed.
+     */
+    public VirtualPlane createPlane(int z, int t, int sizeX, int sizeY, int sizeC, DataType dataType)
+    {
+        return new VirtualPlane(this, z, t, sizeX, sizeY, sizeC, dataType);
+    }
+
+    @Override
+    public IcyBufferedImage load(StoredPlane plane) throws IOException
+    {
+        if (plane instanceof VirtualPlane)
+        {
+            final VirtualPlane vp = (VirtualPlane) plane;
+            final IcyBufferedImage result;
+
+            try
+            {
+                // importer are not thread safe
+                synchronized (importer)
+                {
+                    result = importer.getImage(serie, resolution, null, vp.z, vp.t);
+                }
+            }
+            catch (UnsupportedFormatException e)
+            {
+                throw new IOException(e.getMessage(), e);
+            }
+
+            if (result == null)
+                throw new IOException("Cannot read image at Z=" + vp.z + ", T=" + vp.t + " from '"
+                        + importer.getOpened() + "'");
+
+            // restore known bounds (avoid recalculation)
+            if (plane.channelsTypeBounds != null)
+                result.setChannelsTypeBounds(plane.getChannelsTypeBounds());
+            if (plane.channelsBounds != null)
+                result.setChannelsBounds(plane.getChannelsBounds());
+
+            return result;
+        }
+
+        return super.load(plane);
+    }
+
+    @Override
+    protected ByteBuffer createBuffer(int size) throws IOException
+    {
+        return scratch.createBuffer(size);
+    }
+
+    @Override
+    protected void releaseResources()
+    {
+        scratch.close();
+
+        try
+        {
+            importer.close();
+        }
+        catch (IOException e)
+        {
+            IcyExceptionHandler.showErrorMessage(e, false);
+        }
+    }
+}
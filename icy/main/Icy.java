@@ -49,6 +49,7 @@ import icy.preferences.ApplicationPreferences;
 import icy.preferences.GeneralPreferences;
 import icy.preferences.IcyPreferences;
 import icy.preferences.PluginPreferences;
+import icy.roi.ROIMaskCache;
 import icy.sequence.Sequence;
 import icy.system.AppleUtil;
 import icy.system.IcyExceptionHandler;
@@ -311,6 +312,8 @@ public class Icy
         IcyExceptionHandler.init();
         // initialize action manager
         ActionManager.init();
+        // apply ROI mask cache size
+        ROIMaskCache.setMaxMemory(GeneralPreferences.getRoiMaskCacheSize() * 1024L * 1024L);
         // prepare native library files (need preferences init)
         nativeLibrariesInit();
 
@@ -2731,6 +2731,378 @@ public class ArrayMath
         return sum;
     }
 
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(Object array, boolean signed)
+    {
+        switch (ArrayUtil.getDataType(array))
+        {
+            case BYTE:
+                return minMaxSum((byte[]) array, signed);
+            case SHORT:
+                return minMaxSum((short[]) array, signed);
+            case INT:
+                return minMaxSum((int[]) array, signed);
+            case LONG:
+                return minMaxSum((long[]) array, signed);
+            case FLOAT:
+                return minMaxSum((float[]) array);
+            case DOUBLE:
+                return minMaxSum((double[]) array);
+            default:
+                return new double[4];
+        }
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(byte[] array, boolean signed)
+    {
+        final int len = array.length;
+
+        if (len == 0)
+            return new double[] {min(array, signed), max(array, signed), 0d, 0d};
+
+        final int mask = signed ? 0xFFFFFFFF : 0xFF;
+        int min0 = array[0] & mask;
+        int max0 = min0;
+        int min1 = min0;
+        int max1 = min0;
+        // exact integer accumulation
+        long sum0 = 0, sum1 = 0;
+        long sumSq0 = 0, sumSq1 = 0;
+        int i = 0;
+
+        // unrolled loop with independent accumulators
+        for (final int end = len - 1; i < end; i += 2)
+        {
+            final int v0 = array[i] & mask;
+            final int v1 = array[i + 1] & mask;
+
+            if (v0 < min0)
+                min0 = v0;
+            if (v0 > max0)
+                max0 = v0;
+            if (v1 < min1)
+                min1 = v1;
+            if (v1 > max1)
+                max1 = v1;
+
+            sum0 += v0;
+            sum1 += v1;
+            sumSq0 += v0 * v0;
+            sumSq1 += v1 * v1;
+        }
+        // remaining
+        for (; i < len; i++)
+        {
+            final int v = array[i] & mask;
+
+            if (v < min0)
+                min0 = v;
+            if (v > max0)
+                max0 = v;
+
+            sum0 += v;
+            sumSq0 += v * v;
+        }
+
+        return new double[] {Math.min(min0, min1), Math.max(max0, max1), sum0 + sum1, sumSq0 + sumSq1};
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(short[] array, boolean signed)
+    {
+        final int len = array.length;
+
+        if (len == 0)
+            return new double[] {min(array, signed), max(array, signed), 0d, 0d};
+
+        final int mask = signed ? 0xFFFFFFFF : 0xFFFF;
+        int min0 = array[0] & mask;
+        int max0 = min0;
+        int min1 = min0;
+        int max1 = min0;
+        // exact integer accumulation
+        long sum0 = 0, sum1 = 0;
+        long sumSq0 = 0, sumSq1 = 0;
+        int i = 0;
+
+        // unrolled loop with independent accumulators
+        for (final int end = len - 1; i < end; i += 2)
+        {
+            final int v0 = array[i] & mask;
+            final int v1 = array[i + 1] & mask;
+
+            if (v0 < min0)
+                min0 = v0;
+            if (v0 > max0)
+                max0 = v0;
+            if (v1 < min1)
+                min1 = v1;
+            if (v1 > max1)
+                max1 = v1;
+
+            sum0 += v0;
+            sum1 += v1;
+            // need long for unsigned square
+            sumSq0 += (long) v0 * (long) v0;
+            sumSq1 += (long) v1 * (long) v1;
+        }
+        // remaining
+        for (; i < len; i++)
+        {
+            final int v = array[i] & mask;
+
+            if (v < min0)
+                min0 = v;
+            if (v > max0)
+                max0 = v;
+
+            sum0 += v;
+            sumSq0 += (long) v * (long) v;
+        }
+
+        return new double[] {Math.min(min0, min1), Math.max(max0, max1), sum0 + sum1,
+                (double) sumSq0 + (double) sumSq1};
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(int[] array, boolean signed)
+    {
+        final int len = array.length;
+
+        if (len == 0)
+            return new double[] {min(array, signed), max(array, signed), 0d, 0d};
+
+        final long mask = signed ? 0xFFFFFFFFFFFFFFFFL : 0xFFFFFFFFL;
+        long min0 = array[0] & mask;
+        long max0 = min0;
+        long min1 = min0;
+        long max1 = min0;
+        long sum0 = 0, sum1 = 0;
+        double sumSq0 = 0, sumSq1 = 0;
+        int i = 0;
+
+        // unrolled loop with independent accumulators
+        for (final int end = len - 1; i < end; i += 2)
+        {
+            final long v0 = array[i] & mask;
+            final long v1 = array[i + 1] & mask;
+
+            if (v0 < min0)
+                min0 = v0;
+            if (v0 > max0)
+                max0 = v0;
+            if (v1 < min1)
+                min1 = v1;
+            if (v1 > max1)
+                max1 = v1;
+
+            sum0 += v0;
+            sum1 += v1;
+            sumSq0 += (double) v0 * (double) v0;
+            sumSq1 += (double) v1 * (double) v1;
+        }
+        // remaining
+        for (; i < len; i++)
+        {
+            final long v = array[i] & mask;
+
+            if (v < min0)
+                min0 = v;
+            if (v > max0)
+                max0 = v;
+
+            sum0 += v;
+            sumSq0 += (double) v * (double) v;
+        }
+
+        return new double[] {Math.min(min0, min1), Math.max(max0, max1), (double) sum0 + (double) sum1,
+                sumSq0 + sumSq1};
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @param signed
+     *        signed / unsigned flag
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(long[] array, boolean signed)
+    {
+        final int len = array.length;
+
+        if (len == 0)
+            return new double[] {min(array, signed), max(array, signed), 0d, 0d};
+
+        double min = Double.MAX_VALUE;
+        double max = -Double.MAX_VALUE;
+        double sum = 0;
+        double sumSq = 0;
+
+        for (int i = 0; i < len; i++)
+        {
+            // need to compare in double for unsigned
+            final double v = signed ? array[i] : TypeUtil.unsign(array[i]);
+
+            if (v < min)
+                min = v;
+            if (v > max)
+                max = v;
+
+            sum += v;
+            sumSq += v * v;
+        }
+
+        return new double[] {min, max, sum, sumSq};
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(float[] array)
+    {
+        final int len = array.length;
+        float min0 = Float.MAX_VALUE, min1 = Float.MAX_VALUE;
+        float max0 = -Float.MAX_VALUE, max1 = -Float.MAX_VALUE;
+        double sum0 = 0, sum1 = 0;
+        double sumSq0 = 0, sumSq1 = 0;
+        int i = 0;
+
+        // unrolled loop with independent accumulators
+        for (final int end = len - 1; i < end; i += 2)
+        {
+            final float v0 = array[i];
+            final float v1 = array[i + 1];
+
+            if (v0 < min0)
+                min0 = v0;
+            if (v0 > max0)
+                max0 = v0;
+            if (v1 < min1)
+                min1 = v1;
+            if (v1 > max1)
+                max1 = v1;
+
+            sum0 += v0;
+            sum1 += v1;
+            sumSq0 += (double) v0 * (double) v0;
+            sumSq1 += (double) v1 * (double) v1;
+        }
+        // remaining
+        for (; i < len; i++)
+        {
+            final float v = array[i];
+
+            if (v < min0)
+                min0 = v;
+            if (v > max0)
+                max0 = v;
+
+            sum0 += v;
+            sumSq0 += (double) v * (double) v;
+        }
+
+        return new double[] {Math.min(min0, min1), Math.max(max0, max1), sum0 + sum1, sumSq0 + sumSq1};
+    }
+
+    /**
+     * Computes the minimum, maximum, sum and sum of squares of the specified array in a single
+     * pass.
+     * 
+     * @param array
+     *        an array
+     * @return an array containing {min, max, sum, sum of squares}
+     */
+    public static double[] minMaxSum(double[] array)
+    {
+        final int len = array.length;
+        double min0 = Double.MAX_VALUE, min1 = Double.MAX_VALUE;
+        double max0 = -Double.MAX_VALUE, max1 = -Double.MAX_VALUE;
+        double sum0 = 0, sum1 = 0;
+        double sumSq0 = 0, sumSq1 = 0;
+        int i = 0;
+
+        // unrolled loop with independent accumulators
+        for (final int end = len - 1; i < end; i += 2)
+        {
+            final double v0 = array[i];
+            final double v1 = array[i + 1];
+
+            if (v0 < min0)
+                min0 = v0;
+            if (v0 > max0)
+                max0 = v0;
+            if (v1 < min1)
+                min1 = v1;
+            if (v1 > max1)
+                max1 = v1;
+
+            sum0 += v0;
+            sum1 += v1;
+            sumSq0 += v0 * v0;
+            sumSq1 += v1 * v1;
+        }
+        // remaining
+        for (; i < len; i++)
+        {
+            final double v = array[i];
+
+            if (v < min0)
+                min0 = v;
+            if (v > max0)
+                max0 = v;
+
+            sum0 += v;
+            sumSq0 += v * v;
+        }
+
+        return new double[] {Math.min(min0, min1), Math.max(max0, max1), sum0 + sum1, sumSq0 + sumSq1};
+    }
+
     /**
      * Computes the mean value of the given array
      * 
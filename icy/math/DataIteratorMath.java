@@ -20,9 +20,12 @@ package icy.math;
 
 import icy.type.DataIterator;
 import icy.type.DataIteratorUtil;
+import icy.type.DataSpanIterator;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
 
 /**
- * Math utilities for {@link DataIterator} classes.
+ * Math utilities for {@link DataIterator} and {@link DataSpanIterator} classes.
  * 
  * @author Stephane
  */
@@ -118,4 +121,224 @@ public class DataIteratorMath
 
         return result / numSample;
     }
+
+    /**
+     * Returns the sum of all values contained in the specified {@link DataSpanIterator}.
+     * Returns <code>0</code> if no value in <code>DataSpanIterator</code>.
+     */
+    public static double sum(DataSpanIterator it)
+    {
+        return compute(it)[2];
+    }
+
+    /**
+     * Returns the minimum value found in the specified {@link DataSpanIterator}.
+     * Returns <code>Double.MAX_VALUE</code> if no value in <code>DataSpanIterator</code>.
+     */
+    public static double min(DataSpanIterator it)
+    {
+        return compute(it)[0];
+    }
+
+    /**
+     * Returns the maximum value found in the specified {@link DataSpanIterator}.
+     * Returns <code>-Double.MAX_VALUE</code> if no value in <code>DataSpanIterator</code>.
+     */
+    public static double max(DataSpanIterator it)
+    {
+        return compute(it)[1];
+    }
+
+    /**
+     * Returns the mean value found in the specified {@link DataSpanIterator}.
+     * Returns <code>NaN</code> if no value in <code>DataSpanIterator</code>.
+     */
+    public static double mean(DataSpanIterator it)
+    {
+        final double[] result = compute(it);
+
+        return result[2] / result[3];
+    }
+
+    /**
+     * Returns minimum, maximum, sum and number of values (in this order) of the specified
+     * {@link DataSpanIterator} in a single pass.
+     */
+    public static double[] compute(DataSpanIterator it)
+    {
+        // min, max, sum, count
+        final double[] result = new double[] {Double.MAX_VALUE, -Double.MAX_VALUE, 0d, 0d};
+
+        it.reset();
+
+        while (!it.done())
+        {
+            computeSpan(it.getData(), it.getDataType(), it.getOffset(), it.getLength(), result);
+            it.next();
+        }
+
+        return result;
+    }
+
+    /**
+     * Update minimum, maximum, sum and count with the specified span values (type specialized loops)
+     */
+    private static void computeSpan(Object data, DataType dataType, int offset, int length, double[] result)
+    {
+        final int end = offset + length;
+        double mn = result[0];
+        double mx = result[1];
+        double s = 0d;
+
+        switch (dataType)
+        {
+            case UBYTE:
+            {
+                final byte[] array = (byte[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i] & 0xFF;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case BYTE:
+            {
+                final byte[] array = (byte[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case USHORT:
+            {
+                final short[] array = (short[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i] & 0xFFFF;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case SHORT:
+            {
+                final short[] array = (short[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case UINT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i] & 0xFFFFFFFFL;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case INT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] array = (float[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            case DOUBLE:
+            {
+                final double[] array = (double[]) data;
+
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+
+            default:
+            {
+                // generic (slower) path
+                for (int i = offset; i < end; i++)
+                {
+                    final double value = Array1DUtil.getValue(data, i, dataType);
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    s += value;
+                }
+                break;
+            }
+        }
+
+        result[0] = mn;
+        result[1] = mx;
+        result[2] += s;
+        result[3] += length;
+    }
 }
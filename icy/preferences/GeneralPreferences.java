@@ -23,6 +23,7 @@ import icy.gui.dialog.IdConfirmDialog;
 import icy.gui.frame.progress.ToolTipFrame;
 import icy.gui.util.LookAndFeelUtil;
 import icy.roi.ROI.ROIPainter;
+import icy.roi.ROIMaskCache;
 
 /**
  * @author Stephane
@@ -57,6 +58,11 @@ public class GeneralPreferences
     public static final String ID_USER_NAME = "userName";
     public static final String ID_USER_EMAIL = "userEmail";
     public static final String ID_HISTORY_SIZE = "historySize";
+    public static final String ID_HISTORY_MEMORY = "historyMemory";
+    public static final String ID_ROI_MASK_CACHE_SIZE = "roiMaskCacheSize";
+    public static final String ID_VIRTUAL_MODE = "virtualMode";
+    public static final String ID_VIRTUAL_CACHE_SIZE = "virtualCacheSize";
+    public static final String ID_SAVER_THREADS = "saverThreads";
 
     /**
      * id confirm
@@ -211,6 +217,50 @@ public class GeneralPreferences
         return prefGeneral.getInt(ID_HISTORY_SIZE, 50);
     }
 
+    /**
+     * Returns the maximum memory (in percent of the maximum Java memory) retained by the history
+     * (undo / redo edits) of all sequences.
+     */
+    public static int getHistoryMemory()
+    {
+        return prefGeneral.getInt(ID_HISTORY_MEMORY, 25);
+    }
+
+    /**
+     * Returns the maximum memory (in MB) used by the ROI mask cache (see {@link ROIMaskCache}).
+     */
+    public static int getRoiMaskCacheSize()
+    {
+        return prefGeneral.getInt(ID_ROI_MASK_CACHE_SIZE, (int) (ROIMaskCache.DEFAULT_MAX_MEMORY / (1024L * 1024L)));
+    }
+
+    /**
+     * Returns <code>true</code> if sequences are loaded in virtual mode (images are read from the
+     * file when needed instead of being all loaded in memory).
+     */
+    public static boolean getVirtualMode()
+    {
+        return prefGeneral.getBoolean(ID_VIRTUAL_MODE, false);
+    }
+
+    /**
+     * Returns the maximum amount of image data (in MB) kept in memory for a sequence loaded in
+     * virtual mode.
+     */
+    public static int getVirtualCacheSize()
+    {
+        return prefGeneral.getInt(ID_VIRTUAL_CACHE_SIZE, 256);
+    }
+
+    /**
+     * Returns the number of thread used to save images (0 = automatic, number of available
+     * processors).
+     */
+    public static int getSaverThreads()
+    {
+        return prefGeneral.getInt(ID_SAVER_THREADS, 0);
+    }
+
     public static void setExitConfirm(boolean value)
     {
         prefConfirms.putBoolean(ID_CONFIRM_EXIT, value);
@@ -296,8 +346,42 @@ public class GeneralPreferences
         prefGeneral.put(ID_GUI_SKIN, value);
     }
 
+    public static void setVirtualMode(boolean value)
+    {
+        prefGeneral.putBoolean(ID_VIRTUAL_MODE, value);
+    }
+
+    public static void setVirtualCacheSize(int value)
+    {
+        prefGeneral.putInt(ID_VIRTUAL_CACHE_SIZE, value);
+    }
+
+    public static void setSaverThreads(int value)
+    {
+        prefGeneral.putInt(ID_SAVER_THREADS, value);
+    }
+
     public static void setHistorySize(int value)
     {
         prefGeneral.putInt(ID_HISTORY_SIZE, value);
     }
+
+    /**
+     * Sets the maximum memory (in percent of the maximum Java memory) retained by the history
+     * (undo / redo edits) of all sequences.
+     */
+    public static void setHistoryMemory(int value)
+    {
+        prefGeneral.putInt(ID_HISTORY_MEMORY, value);
+    }
+
+    /**
+     * Sets the maximum memory (in MB) used by the ROI mask cache (see {@link ROIMaskCache}, 0 to
+     * disable mask caching).
+     */
+    public static void setRoiMaskCacheSize(int value)
+    {
+        prefGeneral.putInt(ID_ROI_MASK_CACHE_SIZE, value);
+        ROIMaskCache.setMaxMemory(value * 1024L * 1024L);
+    }
 }
@@ -644,6 +644,38 @@ public class BooleanMask2D implements Cloneable
         return result;
     }
 
+    /**
+     * Returns the number of points of the intersection of mask1 and mask2 without building the
+     * intersection mask.<br>
+     * A <code>null</code> mask is considered as empty.
+     */
+    public static int getIntersectionNumberOfPoints(BooleanMask2D mask1, BooleanMask2D mask2)
+    {
+        if ((mask1 == null) || (mask2 == null))
+            return 0;
+
+        final Rectangle bounds = mask1.bounds.intersection(mask2.bounds);
+
+        if (bounds.isEmpty())
+            return 0;
+
+        final boolean[] m1 = mask1.mask;
+        final boolean[] m2 = mask2.mask;
+        int result = 0;
+
+        for (int y = bounds.y; y < (bounds.y + bounds.height); y++)
+        {
+            final int off1 = ((y - mask1.bounds.y) * mask1.bounds.width) + (bounds.x - mask1.bounds.x);
+            final int off2 = ((y - mask2.bounds.y) * mask2.bounds.width) + (bounds.x - mask2.bounds.x);
+
+            for (int x = 0; x < bounds.width; x++)
+                if (m1[off1 + x] && m2[off2 + x])
+                    result++;
+        }
+
+        return result;
+    }
+
     /**
      * Build resulting mask from exclusive union of the mask1 and mask2.<br>
      * If <code>mask1</code> is <code>null</code> then a copy of <code>mask2</code> is returned.<br>
@@ -1,12 +1,19 @@
 package icy.roi;
 
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
 import icy.type.collection.array.DynamicArray;
 import icy.type.point.Point3D;
 import icy.type.rectangle.Rectangle3D;
 
 import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Class to define a 3D boolean mask region and make basic boolean operation between masks.<br>
@@ -16,6 +23,16 @@ import java.util.TreeMap;
  */
 public class BooleanMask3D implements Cloneable
 {
+    private static final int OP_UNION = 0;
+    private static final int OP_INTERSECTION = 1;
+    private static final int OP_EXCLUSIVE_UNION = 2;
+    private static final int OP_SUBTRACTION = 3;
+
+    /**
+     * minimum number of voxel to process 3D boolean operation in parallel (slice per slice)
+     */
+    private static final long PARALLEL_MIN_SIZE = 1024L * 1024L;
+
     // Internal use only
     private static BooleanMask2D doUnion2D(BooleanMask2D m1, BooleanMask2D m2)
     {
@@ -77,6 +94,151 @@ public class BooleanMask3D implements Cloneable
         return BooleanMask2D.getSubtraction(m1, m2);
     }
 
+    // Internal use only
+    private static BooleanMask2D doOperation2D(BooleanMask2D m1, BooleanMask2D m2, int op)
+    {
+        final BooleanMask2D result;
+
+        switch (op)
+        {
+            case OP_UNION:
+                // union can't reduce content so we can directly return the result
+                return doUnion2D(m1, m2);
+
+            case OP_INTERSECTION:
+                result = doIntersection2D(m1, m2);
+                break;
+
+            case OP_EXCLUSIVE_UNION:
+                // single slice --> simple copy, nothing to compact
+                if ((m1 == null) || (m2 == null))
+                    return doExclusiveUnion2D(m1, m2);
+                result = BooleanMask2D.getExclusiveUnion(m1, m2);
+                break;
+
+            default:
+                // single slice --> simple copy, nothing to compact
+                if ((m1 == null) || (m2 == null))
+                    return doSubtraction2D(m1, m2);
+                result = BooleanMask2D.getSubtraction(m1, m2);
+                break;
+        }
+
+        if (result == null)
+            return null;
+
+        // compact the slice to its content and drop it if empty (save memory for sparse volumes)
+        result.optimizeBounds();
+        if (result.isEmpty())
+            return null;
+
+        return result;
+    }
+
+    /**
+     * Process the specified boolean operation between mask1 and mask2 in the specified result
+     * bounds.<br>
+     * Slices are processed in parallel for large masks.
+     */
+    private static BooleanMask3D doOperation(final BooleanMask3D mask1, final BooleanMask3D mask2,
+            Rectangle3D.Integer bounds, final int op)
+    {
+        final BooleanMask2D[] mask;
+
+        // special case of infinite Z dimension
+        if (bounds.sizeZ == Integer.MAX_VALUE)
+        {
+            // we can allow merge ROI only if they both has infinite Z dimension
+            if ((mask1.bounds.sizeZ != Integer.MAX_VALUE) || (mask2.bounds.sizeZ != Integer.MAX_VALUE))
+                throw new UnsupportedOperationException(
+                        "Cannot merge an infinite Z dimension ROI with a finite Z dimension ROI");
+
+            final BooleanMask2D m2d = doOperation2D(mask1.mask.firstEntry().getValue(), mask2.mask
+                    .firstEntry().getValue(), op);
+
+            mask = new BooleanMask2D[1];
+            // infinite Z mask always needs its single slice (empty result)
+            mask[0] = (m2d != null) ? m2d : new BooleanMask2D();
+        }
+        else
+        {
+            final int sizeZ = bounds.sizeZ;
+            final int z0 = bounds.z;
+            final int numTask = Math.min(sizeZ, SystemUtil.getNumberOfCPUs());
+
+            mask = new BooleanMask2D[sizeZ];
+
+            // don't fan out again from a compute task (nested wait could dead lock)
+            if ((numTask > 1) && ((((long) bounds.sizeX) * ((long) bounds.sizeY) * sizeZ) >= PARALLEL_MIN_SIZE)
+                    && !ThreadUtil.isComputeThread())
+            {
+                final List<Future<?>> futures = new ArrayList<Future<?>>(numTask);
+                final Processor proc = ThreadUtil.getComputeProcessor();
+
+                // interleaved slice distribution to balance sparse volumes
+                for (int t = 0; t < numTask; t++)
+                {
+                    final int start = t;
+
+                    futures.add(proc.submit(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            for (int z = start; z < sizeZ; z += numTask)
+                                mask[z] = doOperation2D(mask1.getMask2D(z + z0), mask2.getMask2D(z + z0), op);
+                        }
+                    }));
+                }
+
+                waitAll(futures);
+            }
+            else
+            {
+                for (int z = 0; z < sizeZ; z++)
+                    mask[z] = doOperation2D(mask1.getMask2D(z + z0), mask2.getMask2D(z + z0), op);
+            }
+        }
+
+        return new BooleanMask3D(bounds, mask);
+    }
+
+    /**
+     * Wait for completion of all specified tasks (task exception is thrown back).
+     */
+    private static void waitAll(List<? extends Future<?>> futures)
+    {
+        boolean interrupted = false;
+
+        for (Future<?> future : futures)
+        {
+            while (true)
+            {
+                try
+                {
+                    future.get();
+                    break;
+                }
+                catch (InterruptedException e)
+                {
+                    // slices tasks are short so we just wait for them and restore interrupted state later
+                    interrupted = true;
+                }
+                catch (ExecutionException e)
+                {
+                    final Throwable cause = e.getCause();
+
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    throw new RuntimeException(cause);
+                }
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
     /**
      * Build resulting mask from union of the mask1 and mask2:
      * 
@@ -106,39 +268,7 @@ public class BooleanMask3D implements Cloneable
         final Rectangle3D.Integer bounds = (Rectangle3D.Integer) mask1.bounds.createUnion(mask2.bounds);
 
         if (!bounds.isEmpty())
-        {
-            final BooleanMask2D[] mask;
-
-            // special case of infinite Z dimension
-            if (bounds.sizeZ == Integer.MAX_VALUE)
-            {
-                // we can allow merge ROI only if they both has infinite Z dimension
-                if ((mask1.bounds.sizeZ != Integer.MAX_VALUE) || (mask2.bounds.sizeZ != Integer.MAX_VALUE))
-                    throw new UnsupportedOperationException(
-                            "Cannot merge an infinite Z dimension ROI with a finite Z dimension ROI");
-
-                mask = new BooleanMask2D[1];
-
-                final BooleanMask2D m2d1 = mask1.mask.firstEntry().getValue();
-                final BooleanMask2D m2d2 = mask2.mask.firstEntry().getValue();
-
-                mask[0] = doUnion2D(m2d1, m2d2);
-            }
-            else
-            {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doUnion2D(m2d1, m2d2);
-                }
-            }
-
-            return new BooleanMask3D(bounds, mask);
-        }
+            return doOperation(mask1, mask2, bounds, OP_UNION);
 
         return new BooleanMask3D();
     }
@@ -167,39 +297,7 @@ public class BooleanMask3D implements Cloneable
         final Rectangle3D.Integer bounds = (Rectangle3D.Integer) mask1.bounds.createIntersection(mask2.bounds);
 
         if (!bounds.isEmpty())
-        {
-            final BooleanMask2D[] mask;
-
-            // special case of infinite Z dimension
-            if (bounds.sizeZ == Integer.MAX_VALUE)
-            {
-                // we can allow merge ROI only if they both has infinite Z dimension
-                if ((mask1.bounds.sizeZ != Integer.MAX_VALUE) || (mask2.bounds.sizeZ != Integer.MAX_VALUE))
-                    throw new UnsupportedOperationException(
-                            "Cannot merge an infinite Z dimension ROI with  a finite Z dimension ROI");
-
-                mask = new BooleanMask2D[1];
-
-                final BooleanMask2D m2d1 = mask1.mask.firstEntry().getValue();
-                final BooleanMask2D m2d2 = mask2.mask.firstEntry().getValue();
-
-                mask[0] = doIntersection2D(m2d1, m2d2);
-            }
-            else
-            {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doIntersection2D(m2d1, m2d2);
-                }
-            }
-
-            return new BooleanMask3D(bounds, mask);
-        }
+            return doOperation(mask1, mask2, bounds, OP_INTERSECTION);
 
         return new BooleanMask3D();
     }
@@ -233,39 +331,7 @@ public class BooleanMask3D implements Cloneable
         final Rectangle3D.Integer bounds = (Rectangle3D.Integer) mask1.bounds.createUnion(mask2.bounds);
 
         if (!bounds.isEmpty())
-        {
-            final BooleanMask2D[] mask;
-
-            // special case of infinite Z dimension
-            if (bounds.sizeZ == Integer.MAX_VALUE)
-            {
-                // we can allow merge ROI only if they both has infinite Z dimension
-                if ((mask1.bounds.sizeZ != Integer.MAX_VALUE) || (mask2.bounds.sizeZ != Integer.MAX_VALUE))
-                    throw new UnsupportedOperationException(
-                            "Cannot merge an infinite Z dimension ROI with  a finite Z dimension ROI");
-
-                mask = new BooleanMask2D[1];
-
-                final BooleanMask2D m2d1 = mask1.mask.firstEntry().getValue();
-                final BooleanMask2D m2d2 = mask2.mask.firstEntry().getValue();
-
-                mask[0] = doExclusiveUnion2D(m2d1, m2d2);
-            }
-            else
-            {
-                mask = new BooleanMask2D[bounds.sizeZ];
-
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
-
-                    mask[z] = doExclusiveUnion2D(m2d1, m2d2);
-                }
-            }
-
-            return new BooleanMask3D(bounds, mask);
-        }
+            return doOperation(mask1, mask2, bounds, OP_EXCLUSIVE_UNION);
 
         return new BooleanMask3D();
     }
@@ -298,40 +364,127 @@ public class BooleanMask3D implements Cloneable
         // need to subtract something ?
         if (!bounds.isEmpty())
         {
-            final BooleanMask2D[] mask;
+            // infinite Z dimension can't be merged with a finite Z dimension so we restrict the
+            // result to the intersection in this case
+            if ((mask1.bounds.sizeZ == Integer.MAX_VALUE) && (mask2.bounds.sizeZ != Integer.MAX_VALUE))
+                return doOperation(mask1, mask2, bounds, OP_SUBTRACTION);
 
-            // special case of infinite Z dimension
-            if (bounds.sizeZ == Integer.MAX_VALUE)
-            {
-                // we can allow merge ROI only if they both has infinite Z dimension
-                if ((mask1.bounds.sizeZ != Integer.MAX_VALUE) || (mask2.bounds.sizeZ != Integer.MAX_VALUE))
-                    throw new UnsupportedOperationException(
-                            "Cannot merge an infinite Z dimension ROI with  a finite Z dimension ROI");
+            return doOperation(mask1, mask2, new Rectangle3D.Integer(mask1.bounds), OP_SUBTRACTION);
+        }
 
-                mask = new BooleanMask2D[1];
+        return (BooleanMask3D) mask1.clone();
+    }
 
-                final BooleanMask2D m2d1 = mask1.mask.firstEntry().getValue();
-                final BooleanMask2D m2d2 = mask2.mask.firstEntry().getValue();
+    /**
+     * Returns the number of points of the intersection of mask1 and mask2.<br>
+     * Same result as <code>getIntersection(mask1, mask2).getNumberOfPoints()</code> but the
+     * intersection mask is never built.
+     */
+    public static int getIntersectionNumberOfPoints(BooleanMask3D mask1, BooleanMask3D mask2)
+    {
+        if ((mask1 == null) || (mask2 == null) || mask1.isEmpty() || mask2.isEmpty())
+            return 0;
 
-                mask[0] = doSubtraction2D(m2d1, m2d2);
-            }
-            else
-            {
-                mask = new BooleanMask2D[bounds.sizeZ];
+        // special case of infinite Z dimension on both masks
+        if ((mask1.bounds.sizeZ == Integer.MAX_VALUE) && (mask2.bounds.sizeZ == Integer.MAX_VALUE))
+            return BooleanMask2D.getIntersectionNumberOfPoints(mask1.mask.firstEntry().getValue(), mask2.mask
+                    .firstEntry().getValue());
 
-                for (int z = 0; z < bounds.sizeZ; z++)
-                {
-                    final BooleanMask2D m2d1 = mask1.getMask2D(z + bounds.z);
-                    final BooleanMask2D m2d2 = mask2.getMask2D(z + bounds.z);
+        // iterate over slices of the finite mask (the smallest one if both are finite)
+        final BooleanMask3D m1;
+        final BooleanMask3D m2;
 
-                    mask[z] = doSubtraction2D(m2d1, m2d2);
-                }
-            }
-
-            return new BooleanMask3D(bounds, mask);
+        if ((mask1.bounds.sizeZ == Integer.MAX_VALUE)
+                || ((mask2.bounds.sizeZ != Integer.MAX_VALUE) && (mask2.mask.size() < mask1.mask.size())))
+        {
+            m1 = mask2;
+            m2 = mask1;
+        }
+        else
+        {
+            m1 = mask1;
+            m2 = mask2;
         }
 
-        return (BooleanMask3D) mask1.clone();
+        int result = 0;
+
+        for (Entry<Integer, BooleanMask2D> entry : m1.mask.entrySet())
+            result += BooleanMask2D.getIntersectionNumberOfPoints(entry.getValue(),
+                    m2.getMask2D(entry.getKey().intValue()));
+
+        return result;
+    }
+
+    /**
+     * Returns the number of points of the union of mask1 and mask2.<br>
+     * Same result as <code>getUnion(mask1, mask2).getNumberOfPoints()</code> but the union mask
+     * is never built.
+     * 
+     * @throws UnsupportedOperationException
+     *         if one mask has an infinite Z dimension and the other a finite one (as
+     *         {@link #getUnion(BooleanMask3D, BooleanMask3D)}).
+     */
+    public static int getUnionNumberOfPoints(BooleanMask3D mask1, BooleanMask3D mask2)
+    {
+        checkMergeZ(mask1, mask2);
+
+        return getNumberOfPoints(mask1) + getNumberOfPoints(mask2) - getIntersectionNumberOfPoints(mask1, mask2);
+    }
+
+    /**
+     * Returns the number of points of the exclusive union of mask1 and mask2.<br>
+     * Same result as <code>getExclusiveUnion(mask1, mask2).getNumberOfPoints()</code> but the
+     * exclusive union mask is never built.
+     * 
+     * @throws UnsupportedOperationException
+     *         if one mask has an infinite Z dimension and the other a finite one (as
+     *         {@link #getExclusiveUnion(BooleanMask3D, BooleanMask3D)}).
+     */
+    public static int getExclusiveUnionNumberOfPoints(BooleanMask3D mask1, BooleanMask3D mask2)
+    {
+        checkMergeZ(mask1, mask2);
+
+        return getNumberOfPoints(mask1) + getNumberOfPoints(mask2)
+                - (2 * getIntersectionNumberOfPoints(mask1, mask2));
+    }
+
+    /**
+     * Returns the number of points of the subtraction of mask2 from mask1.<br>
+     * Same result as <code>getSubtraction(mask1, mask2).getNumberOfPoints()</code> but the
+     * subtraction mask is never built (except for an infinite Z dimension mask1 and a finite Z
+     * dimension mask2 where the result is restricted to the masks intersection).
+     */
+    public static int getSubtractionNumberOfPoints(BooleanMask3D mask1, BooleanMask3D mask2)
+    {
+        // result is restricted to the intersection bounds in this case (see getSubtraction)
+        if ((mask1 != null) && (mask2 != null) && (mask1.bounds.sizeZ == Integer.MAX_VALUE)
+                && (mask2.bounds.sizeZ != Integer.MAX_VALUE)
+                && !mask1.bounds.createIntersection(mask2.bounds).isEmpty())
+            return getSubtraction(mask1, mask2).getNumberOfPoints();
+
+        return getNumberOfPoints(mask1) - getIntersectionNumberOfPoints(mask1, mask2);
+    }
+
+    /**
+     * Throws the same exception as a union operation between an infinite Z dimension mask and a
+     * finite Z dimension mask.
+     */
+    private static void checkMergeZ(BooleanMask3D mask1, BooleanMask3D mask2)
+    {
+        if ((mask1 == null) || (mask2 == null) || mask1.isEmpty() || mask2.isEmpty())
+            return;
+
+        if ((mask1.bounds.sizeZ == Integer.MAX_VALUE) != (mask2.bounds.sizeZ == Integer.MAX_VALUE))
+            throw new UnsupportedOperationException(
+                    "Cannot merge an infinite Z dimension ROI with a finite Z dimension ROI");
+    }
+
+    private static int getNumberOfPoints(BooleanMask3D mask)
+    {
+        if (mask == null)
+            return 0;
+
+        return mask.getNumberOfPoints();
     }
 
     /**
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+
+/**
+ * Bit packed storage of a {@link BooleanMask2D}.<br>
+ * Each row of the mask is stored in <code>long</code> words (1 bit per pixel, bit <i>i</i> of word
+ * <i>w</i> is the pixel at <code>bounds.x + (w * 64) + i</code>) so memory use is 8 times lower
+ * than the <code>boolean[]</code> storage.<br>
+ * Used by {@link ROIMaskCache} to keep cached masks in compact form.
+ *
+ * @author Stephane
+ */
+class PackedBooleanMask2D
+{
+    /**
+     * Returns the number of <code>long</code> word used to store a row of the specified width.
+     */
+    static int getWordsPerRow(int width)
+    {
+        return (width + 63) >>> 6;
+    }
+
+    /**
+     * Region represented by the mask.
+     */
+    final Rectangle bounds;
+    /**
+     * Packed mask bits (rows are <code>getWordsPerRow(bounds.width)</code> words long).
+     */
+    final long[] bits;
+
+    /**
+     * Create a mask with the specified bounds (no pixel set).
+     */
+    PackedBooleanMask2D(Rectangle bounds)
+    {
+        super();
+
+        this.bounds = bounds;
+        bits = new long[getWordsPerRow(bounds.width) * bounds.height];
+    }
+
+    /**
+     * Create a packed mask from the specified {@link BooleanMask2D}.
+     */
+    PackedBooleanMask2D(BooleanMask2D mask)
+    {
+        this(new Rectangle(mask.bounds));
+
+        final boolean[] m = mask.mask;
+        final int w = bounds.width;
+        final int wpr = getWordsPerRow(w);
+        int offSrc = 0;
+        int offDst = 0;
+
+        for (int y = 0; y < bounds.height; y++)
+        {
+            for (int x = 0; x < w; x++)
+                if (m[offSrc + x])
+                    bits[offDst + (x >> 6)] |= 1L << (x & 63);
+
+            offSrc += w;
+            offDst += wpr;
+        }
+    }
+
+    /**
+     * Returns the dense {@link BooleanMask2D} representation of this mask.
+     */
+    BooleanMask2D toBooleanMask2D()
+    {
+        final int w = bounds.width;
+        final int wpr = getWordsPerRow(w);
+        final boolean[] mask = new boolean[w * bounds.height];
+        int offSrc = 0;
+        int offDst = 0;
+
+        for (int y = 0; y < bounds.height; y++)
+        {
+            for (int i = 0; i < wpr; i++)
+            {
+                long word = bits[offSrc + i];
+
+                // only iterate over set bits
+                while (word != 0L)
+                {
+                    final int bit = Long.numberOfTrailingZeros(word);
+
+                    mask[offDst + (i << 6) + bit] = true;
+                    word &= word - 1L;
+                }
+            }
+
+            offSrc += wpr;
+            offDst += w;
+        }
+
+        return new BooleanMask2D(new Rectangle(bounds), mask);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+
+/**
+ * Run length encoded (RLE) storage of a {@link BooleanMask2D}.<br>
+ * The mask is stored as a list of horizontal runs (intervals of contained pixels) for each row
+ * so memory cost scales with the mask perimeter instead of its area (interesting for thin or
+ * sparse masks).<br>
+ * Used by {@link ROIMaskCache} to keep cached masks in compact form, conversion from the dense
+ * mask is lazy (done on first use only).
+ *
+ * @author Stephane
+ */
+class RLEBooleanMask2D
+{
+    private static final int[] EMPTY_ARRAY = new int[0];
+
+    /**
+     * Growable int array
+     */
+    private static class IntArray
+    {
+        int[] data;
+        int size;
+
+        IntArray(int capacity)
+        {
+            super();
+
+            data = new int[Math.max(2, capacity)];
+            size = 0;
+        }
+
+        void add(int value)
+        {
+            if (size == data.length)
+                data = Arrays.copyOf(data, data.length * 2);
+
+            data[size++] = value;
+        }
+
+        void add(int value1, int value2)
+        {
+            if ((size + 2) > data.length)
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 2));
+
+            data[size++] = value1;
+            data[size++] = value2;
+        }
+
+        int[] toArray()
+        {
+            return Arrays.copyOf(data, size);
+        }
+    }
+
+    /**
+     * Build a mask from runs given in ascending Y then X order.
+     */
+    private static class Builder
+    {
+        final IntArray rowStart;
+        final IntArray runs;
+        int y0;
+        int row;
+        int minX;
+        int maxX;
+
+        Builder()
+        {
+            super();
+
+            rowStart = new IntArray(16);
+            runs = new IntArray(32);
+            row = -1;
+            minX = Integer.MAX_VALUE;
+            maxX = Integer.MIN_VALUE;
+        }
+
+        /**
+         * Add the run [start, end[ on row y.
+         */
+        void addRun(int y, int start, int end)
+        {
+            // first run
+            if (row == -1)
+            {
+                y0 = y;
+                row = 0;
+                rowStart.add(0);
+            }
+
+            // move to wanted row
+            while ((y0 + row) < y)
+            {
+                rowStart.add(runs.size);
+                row++;
+            }
+
+            runs.add(start, end);
+
+            if (start < minX)
+                minX = start;
+            if (end > maxX)
+                maxX = end;
+        }
+
+        RLEBooleanMask2D build()
+        {
+            // empty mask
+            if (row == -1)
+                return new RLEBooleanMask2D();
+
+            rowStart.add(runs.size);
+
+            return new RLEBooleanMask2D(new Rectangle(minX, y0, maxX - minX, row + 1), rowStart.toArray(),
+                    runs.toArray());
+        }
+    }
+
+    /**
+     * internals (runs are stored as [start, end[ pairs of absolute X coordinate, runs of row
+     * <i>r</i> are in [rowStart[r], rowStart[r + 1][ range of <i>runs</i> array)
+     */
+    private Rectangle bounds;
+    private int[] rowStart;
+    private int[] runs;
+    private BooleanMask2D booleanMask;
+
+    /**
+     * Create an empty mask.
+     */
+    RLEBooleanMask2D()
+    {
+        this(new Rectangle(), new int[] {0}, EMPTY_ARRAY);
+    }
+
+    /**
+     * Create a RLE mask from the specified {@link BooleanMask2D}.<br>
+     * Conversion is done on first use so the specified mask should not be modified afterward.
+     */
+    RLEBooleanMask2D(BooleanMask2D mask)
+    {
+        super();
+
+        bounds = null;
+        rowStart = null;
+        runs = null;
+        booleanMask = mask;
+    }
+
+    RLEBooleanMask2D(Rectangle bounds, int[] rowStart, int[] runs)
+    {
+        super();
+
+        this.bounds = bounds;
+        this.rowStart = rowStart;
+        this.runs = runs;
+        booleanMask = null;
+    }
+
+    /**
+     * Compute runs from the dense mask if needed
+     */
+    private synchronized void ensureRuns()
+    {
+        if (runs != null)
+            return;
+
+        final Rectangle b = booleanMask.bounds;
+        final boolean[] mask = booleanMask.mask;
+        final Builder builder = new Builder();
+        int offset = 0;
+
+        for (int y = 0; y < b.height; y++)
+        {
+            int x = 0;
+
+            while (x < b.width)
+            {
+                // find run start
+                while ((x < b.width) && !mask[offset + x])
+                    x++;
+
+                final int start = x;
+
+                // find run end
+                while ((x < b.width) && mask[offset + x])
+                    x++;
+
+                if (x > start)
+                    builder.addRun(b.y + y, b.x + start, b.x + x);
+            }
+
+            offset += b.width;
+        }
+
+        final RLEBooleanMask2D result = builder.build();
+
+        bounds = result.bounds;
+        rowStart = result.rowStart;
+        runs = result.runs;
+    }
+
+    /**
+     * Compute runs and release the dense mask (keep the compact representation only).
+     */
+    synchronized void compact()
+    {
+        ensureRuns();
+        booleanMask = null;
+    }
+
+    /**
+     * Returns the memory size (in bytes) of the runs.
+     */
+    synchronized long getRunsDataSize()
+    {
+        ensureRuns();
+
+        return (rowStart.length + runs.length) * 4L;
+    }
+
+    /**
+     * Returns a new dense {@link BooleanMask2D} of the specified region from this mask.<br>
+     * The region should contain the mask bounds.
+     */
+    synchronized BooleanMask2D toBooleanMask2D(Rectangle region)
+    {
+        ensureRuns();
+
+        final boolean[] mask = new boolean[region.width * region.height];
+
+        for (int r = 0; r < bounds.height; r++)
+        {
+            final int offset = (((bounds.y + r) - region.y) * region.width) - region.x;
+
+            for (int i = rowStart[r]; i < rowStart[r + 1]; i += 2)
+                Arrays.fill(mask, offset + runs[i], offset + runs[i + 1], true);
+        }
+
+        return new BooleanMask2D(new Rectangle(region), mask);
+    }
+}
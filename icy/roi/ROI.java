@@ -1250,6 +1250,10 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     protected boolean boundsInvalid;
     protected boolean numberOfContourPointsInvalid;
     protected boolean numberOfPointsInvalid;
+    /**
+     * cached boolean masks stamp (incremented each time the ROI changes, see {@link ROIMaskCache})
+     */
+    private volatile int maskCacheStamp;
 
     /**
      * listeners
@@ -2397,6 +2401,51 @@ public abstract class ROI implements ChangeListener, XMLPersistent
                 t, c, inclusive));
     }
 
+    /**
+     * Returns the current stamp of the boolean mask cache for this ROI.<br>
+     * The stamp changes each time the ROI is modified (see {@link ROIMaskCache}).
+     */
+    public int getMaskCacheStamp()
+    {
+        return maskCacheStamp;
+    }
+
+    /**
+     * Remove all cached boolean masks of this ROI (automatically done on {@link #roiChanged(boolean)}).
+     */
+    public void invalidateMaskCache()
+    {
+        synchronized (ROIMaskCache.class)
+        {
+            maskCacheStamp++;
+            ROIMaskCache.invalidate(this);
+        }
+    }
+
+    /**
+     * Returns a copy of the cached {@link BooleanMask2D} for the specified position (<code>null</code>
+     * if not yet cached).
+     */
+    protected BooleanMask2D getCachedBooleanMask2D(int z, int t, int c, boolean inclusive)
+    {
+        return ROIMaskCache.get(this, z, t, c, inclusive);
+    }
+
+    /**
+     * Store the specified {@link BooleanMask2D} in the mask cache and returns it (the cache keeps
+     * its own compact copy so the caller can modify it).
+     * 
+     * @param stamp
+     *        mask cache stamp (see {@link #getMaskCacheStamp()}) read before the mask computation
+     */
+    protected BooleanMask2D setCachedBooleanMask2D(int z, int t, int c, boolean inclusive, BooleanMask2D mask,
+            int stamp)
+    {
+        ROIMaskCache.put(this, stamp, z, t, c, inclusive, mask);
+
+        return mask;
+    }
+
     /**
      * @deprecated Override directly these methods:<br>
      *             {@link #getUnion(ROI)}<br>
@@ -3088,6 +3137,8 @@ public abstract class ROI implements ChangeListener, XMLPersistent
     @Deprecated
     public void roiChanged(ROIPointEventType pointEventType, Object point)
     {
+        // cached masks are no longer valid
+        invalidateMaskCache();
         // handle with updater
         updater.changed(new ROIEvent(this, ROIEventType.ROI_CHANGED, pointEventType, point));
     }
@@ -3100,6 +3151,8 @@ public abstract class ROI implements ChangeListener, XMLPersistent
      */
     public void roiChanged(boolean contentChanged)
     {
+        // cached masks are no longer valid (position change also move the masks)
+        invalidateMaskCache();
         // handle with updater
         if (contentChanged)
             updater.changed(new ROIEvent(this, ROIEventType.ROI_CHANGED, ROI_CHANGED_ALL));
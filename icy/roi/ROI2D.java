@@ -1239,13 +1239,20 @@ public abstract class ROI2D extends ROI
      */
     public BooleanMask2D getBooleanMask(boolean inclusive)
     {
+        final BooleanMask2D cached = getCachedBooleanMask2D(-1, -1, -1, inclusive);
+
+        if (cached != null)
+            return cached;
+
+        final int stamp = getMaskCacheStamp();
         final Rectangle bounds = getBounds();
 
         // empty ROI --> return empty mask
         if (bounds.isEmpty())
             return new BooleanMask2D(new Rectangle(), new boolean[0]);
 
-        return new BooleanMask2D(bounds, getBooleanMask(bounds, inclusive));
+        return setCachedBooleanMask2D(-1, -1, -1, inclusive, new BooleanMask2D(bounds, getBooleanMask(bounds,
+                inclusive)), stamp);
     }
 
     /**
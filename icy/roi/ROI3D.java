@@ -959,6 +959,12 @@ public abstract class ROI3D extends ROI
      */
     public BooleanMask2D getBooleanMask2D(int z, boolean inclusive)
     {
+        final BooleanMask2D cached = getCachedBooleanMask2D(z, -1, -1, inclusive);
+
+        if (cached != null)
+            return cached;
+
+        final int stamp = getMaskCacheStamp();
         final Rectangle bounds = getBounds3D().toRectangle2D().getBounds();
 
         // empty ROI --> return empty mask
@@ -970,7 +976,7 @@ public abstract class ROI3D extends ROI
         // optimized bounds to optimize memory usage for this specific Z slice mask
         result.optimizeBounds();
 
-        return result;
+        return setCachedBooleanMask2D(z, -1, -1, inclusive, result, stamp);
     }
 
     /**
@@ -681,6 +681,12 @@ public abstract class ROI4D extends ROI
      */
     public BooleanMask2D getBooleanMask2D(int z, int t, boolean inclusive)
     {
+        final BooleanMask2D cached = getCachedBooleanMask2D(z, t, -1, inclusive);
+
+        if (cached != null)
+            return cached;
+
+        final int stamp = getMaskCacheStamp();
         final Rectangle bounds = getBounds4D().toRectangle2D().getBounds();
 
         // empty ROI --> return empty mask
@@ -692,7 +698,7 @@ public abstract class ROI4D extends ROI
         // optimized bounds to optimize memory usage for this specific Z, T slice mask
         result.optimizeBounds();
 
-        return result;
+        return setCachedBooleanMask2D(z, t, -1, inclusive, result, stamp);
     }
 
     /**
@@ -236,12 +236,18 @@ public abstract class ROI5D extends ROI
     @Override
     public BooleanMask2D getBooleanMask2D(int z, int t, int c, boolean inclusive)
     {
+        final BooleanMask2D cached = getCachedBooleanMask2D(z, t, c, inclusive);
+
+        if (cached != null)
+            return cached;
+
+        final int stamp = getMaskCacheStamp();
         final BooleanMask2D result = super.getBooleanMask2D(z, t, c, inclusive);
 
         // optimized bounds to optimize memory usage for this specific Z, T, C slice mask
         result.optimizeBounds();
 
-        return result;
+        return setCachedBooleanMask2D(z, t, c, inclusive, result, stamp);
     }
 
     /**
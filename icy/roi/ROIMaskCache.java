@@ -0,0 +1,422 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import icy.system.SystemUtil;
+
+import java.awt.Rectangle;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Shared cache of ROI {@link BooleanMask2D} (one mask per ROI and per Z, T, C, inclusive
+ * position).<br>
+ * It avoids rasterizing the same ROI again and again when descriptors, iterators or boolean
+ * operations successively request its mask.<br>
+ * Masks are dropped as soon as the ROI changes (see {@link ROI#roiChanged(boolean)}) and the
+ * whole cache memory (for all ROIs) is limited (least recently used masks are released first).<br>
+ * The memory limit is global rather than per sequence: a ROI can be attached to several sequences
+ * (or to none) and the memory pressure is shared by the whole application anyway, so a single
+ * limit bounds the cache for all open sequences together. It is set from the
+ * {@link icy.preferences.GeneralPreferences#getRoiMaskCacheSize()} preference at startup and can be changed with
+ * {@link #setMaxMemory(long)}.<br>
+ * Masks are kept in compact form: run length encoded ({@link RLEBooleanMask2D}) or bit packed
+ * ({@link PackedBooleanMask2D}), whichever is the smallest.<br>
+ * ROIs are weakly referenced (by identity) so the cache never keeps a removed ROI alive, its masks
+ * are released as soon as the ROI is garbage collected.
+ *
+ * @author Stephane
+ */
+public class ROIMaskCache
+{
+    /**
+     * Weak identity reference on a ROI
+     */
+    private static class ROIReference extends WeakReference<ROI>
+    {
+        final int hash;
+        /**
+         * cached mask keys of the ROI (<code>null</code> for lookup reference)
+         */
+        final Set<MaskKey> keys;
+
+        /**
+         * Lookup reference
+         */
+        ROIReference(ROI roi)
+        {
+            super(roi);
+
+            hash = System.identityHashCode(roi);
+            keys = null;
+        }
+
+        /**
+         * Registered reference
+         */
+        ROIReference(ROI roi, ReferenceQueue<ROI> queue)
+        {
+            super(roi, queue);
+
+            hash = System.identityHashCode(roi);
+            keys = new HashSet<MaskKey>();
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+
+            if (obj instanceof ROIReference)
+            {
+                final ROI roi = get();
+
+                // released reference is only equal to itself
+                return (roi != null) && (roi == ((ROIReference) obj).get());
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Cached mask in compact form
+     */
+    private static class CachedMask
+    {
+        final Rectangle bounds;
+        final RLEBooleanMask2D rleMask;
+        final PackedBooleanMask2D packedMask;
+        final long size;
+
+        CachedMask(BooleanMask2D mask)
+        {
+            super();
+
+            bounds = new Rectangle(mask.bounds);
+
+            final RLEBooleanMask2D rle = new RLEBooleanMask2D(mask);
+
+            // don't keep reference on the dense mask
+            rle.compact();
+
+            final long rleSize = rle.getRunsDataSize();
+            final long packedSize = PackedBooleanMask2D.getWordsPerRow(bounds.width) * (long) bounds.height * 8L;
+
+            // use the smallest representation (runs for thin / sparse masks, bits otherwise)
+            if (rleSize <= packedSize)
+            {
+                rleMask = rle;
+                packedMask = null;
+                // data + bounds + object overhead
+                size = rleSize + 64L;
+            }
+            else
+            {
+                rleMask = null;
+                packedMask = new PackedBooleanMask2D(mask);
+                // data + bounds + object overhead
+                size = packedSize + 64L;
+            }
+        }
+
+        /**
+         * Returns a new dense mask (same bounds as the cached mask).
+         */
+        BooleanMask2D getMask()
+        {
+            if (rleMask != null)
+                return rleMask.toBooleanMask2D(bounds);
+
+            return packedMask.toBooleanMask2D();
+        }
+    }
+
+    /**
+     * cache key
+     */
+    private static class MaskKey
+    {
+        final ROIReference roi;
+        final int z;
+        final int t;
+        final int c;
+        final boolean inclusive;
+
+        MaskKey(ROIReference roi, int z, int t, int c, boolean inclusive)
+        {
+            super();
+
+            this.roi = roi;
+            this.z = z;
+            this.t = t;
+            this.c = c;
+            this.inclusive = inclusive;
+        }
+
+        @Override
+        public boolean equals(Object obj)
+        {
+            if (obj == this)
+                return true;
+
+            if (obj instanceof MaskKey)
+            {
+                final MaskKey key = (MaskKey) obj;
+
+                return (key.roi == roi) && (key.z == z) && (key.t == t) && (key.c == c)
+                        && (key.inclusive == inclusive);
+            }
+
+            return false;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return roi.hash ^ (z * 31) ^ (t * 961) ^ (c * 29791) ^ (inclusive ? 1 : 0);
+        }
+    }
+
+    /**
+     * Default maximum memory used by the cache (in bytes)
+     */
+    public static final long DEFAULT_MAX_MEMORY = Math.min(256L * 1024L * 1024L,
+            SystemUtil.getJavaMaxMemory() / 16L);
+
+    /**
+     * masks ordered from the least to the most recently used
+     */
+    private static final LinkedHashMap<MaskKey, CachedMask> masks = new LinkedHashMap<MaskKey, CachedMask>(
+            16, 0.75f, true);
+    /**
+     * registered ROI references (containing cached mask keys)
+     */
+    private static final Map<ROIReference, ROIReference> rois = new HashMap<ROIReference, ROIReference>();
+    /**
+     * released ROI references
+     */
+    private static final ReferenceQueue<ROI> releasedRois = new ReferenceQueue<ROI>();
+
+    private static long maxMemory = DEFAULT_MAX_MEMORY;
+    private static long usedMemory = 0L;
+
+    /**
+     * Returns the maximum memory (in bytes) used by the mask cache.
+     */
+    public static synchronized long getMaxMemory()
+    {
+        return maxMemory;
+    }
+
+    /**
+     * Sets the maximum memory (in bytes) used by the mask cache (0 to disable caching).
+     */
+    public static synchronized void setMaxMemory(long value)
+    {
+        maxMemory = Math.max(0L, value);
+        releaseMemory();
+    }
+
+    /**
+     * Returns the memory (in bytes) currently used by the mask cache.
+     */
+    public static synchronized long getUsedMemory()
+    {
+        return usedMemory;
+    }
+
+    /**
+     * Returns a copy of the cached mask for the specified ROI and position (<code>null</code> if
+     * not in the cache).
+     */
+    public static BooleanMask2D get(ROI roi, int z, int t, int c, boolean inclusive)
+    {
+        final CachedMask result;
+
+        synchronized (ROIMaskCache.class)
+        {
+            final ROIReference ref = rois.get(new ROIReference(roi));
+
+            if (ref != null)
+                result = masks.get(new MaskKey(ref, z, t, c, inclusive));
+            else
+                result = null;
+        }
+
+        // cached masks are never modified so we can rebuild the dense mask outside the lock
+        if (result != null)
+            return result.getMask();
+
+        return null;
+    }
+
+    /**
+     * Store the specified mask for the specified ROI and position.<br>
+     * The cache keeps its own (compact) copy of the mask so the caller can still modify it.
+     *
+     * @param stamp
+     *        ROI mask stamp (see {@link ROI#getMaskCacheStamp()}) read before the mask computation
+     *        started, the mask is ignored if the ROI changed in between.
+     */
+    public static void put(ROI roi, int stamp, int z, int t, int c, boolean inclusive, BooleanMask2D mask)
+    {
+        // ROI changed during mask computation --> don't cache it
+        if ((roi.getMaskCacheStamp() != stamp) || (getMaxMemory() == 0L))
+            return;
+
+        // compact the mask outside the lock
+        final CachedMask cachedMask = new CachedMask(mask);
+
+        synchronized (ROIMaskCache.class)
+        {
+            store(roi, stamp, z, t, c, inclusive, cachedMask);
+        }
+    }
+
+    private static void store(ROI roi, int stamp, int z, int t, int c, boolean inclusive, CachedMask mask)
+    {
+        // ROI changed during mask compaction --> don't cache it
+        if (roi.getMaskCacheStamp() != stamp)
+            return;
+
+        // release masks of garbage collected ROIs
+        purge();
+
+        final long size = mask.size;
+
+        // too large
+        if (size > maxMemory)
+            return;
+
+        ROIReference ref = rois.get(new ROIReference(roi));
+
+        if (ref == null)
+        {
+            ref = new ROIReference(roi, releasedRois);
+            rois.put(ref, ref);
+        }
+
+        final MaskKey key = new MaskKey(ref, z, t, c, inclusive);
+        final CachedMask old = masks.put(key, mask);
+
+        if (old != null)
+            usedMemory -= old.size;
+        else
+            ref.keys.add(key);
+
+        usedMemory += size;
+        releaseMemory();
+    }
+
+    /**
+     * Remove all cached masks of the specified ROI.
+     */
+    public static synchronized void invalidate(ROI roi)
+    {
+        final ROIReference ref = rois.remove(new ROIReference(roi));
+
+        if (ref != null)
+            removeMasks(ref);
+
+        // release masks of garbage collected ROIs
+        purge();
+    }
+
+    /**
+     * Clear the cache.
+     */
+    public static synchronized void clear()
+    {
+        masks.clear();
+        for (ROIReference ref : rois.keySet())
+            ref.keys.clear();
+        rois.clear();
+        usedMemory = 0L;
+    }
+
+    /**
+     * Remove all cached masks of the specified ROI reference.
+     */
+    private static void removeMasks(ROIReference ref)
+    {
+        for (MaskKey key : ref.keys)
+        {
+            final CachedMask mask = masks.remove(key);
+
+            if (mask != null)
+                usedMemory -= mask.size;
+        }
+
+        ref.keys.clear();
+    }
+
+    /**
+     * Remove cached masks of garbage collected ROIs.
+     */
+    private static void purge()
+    {
+        Reference<? extends ROI> ref;
+
+        while ((ref = releasedRois.poll()) != null)
+        {
+            final ROIReference roiRef = (ROIReference) ref;
+
+            rois.remove(roiRef);
+            removeMasks(roiRef);
+        }
+    }
+
+    /**
+     * Release least recently used masks until used memory fits in the cache limit.
+     */
+    private static void releaseMemory()
+    {
+        final Iterator<Entry<MaskKey, CachedMask>> it = masks.entrySet().iterator();
+
+        while ((usedMemory > maxMemory) && it.hasNext())
+        {
+            final Entry<MaskKey, CachedMask> entry = it.next();
+            final MaskKey key = entry.getKey();
+            final ROIReference ref = key.roi;
+
+            ref.keys.remove(key);
+            if (ref.keys.isEmpty())
+                rois.remove(ref);
+
+            usedMemory -= entry.getValue().size;
+            it.remove();
+        }
+    }
+}
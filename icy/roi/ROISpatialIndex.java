@@ -0,0 +1,317 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import icy.type.rectangle.Rectangle5D;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Spatial index of {@link ROI} (uniform XY grid over ROI 5D bounds).<br>
+ * It allows to quickly retrieve ROIs whose bounds intersect a given region without iterating
+ * over all ROIs.<br>
+ * ROIs with very large (or infinite) XY bounds are not stored in the grid but always tested.<br>
+ * The index only works on ROI bounds so returned ROIs are candidates which still need an exact
+ * test (see {@link ROI#intersects(Rectangle5D)}).<br>
+ * The index is thread safe.
+ *
+ * @author Stephane
+ */
+public class ROISpatialIndex
+{
+    /**
+     * Default grid cell size (in pixel)
+     */
+    public static final int DEFAULT_CELL_SIZE = 64;
+
+    /**
+     * ROI covering more cells than that are stored in the <i>large</i> list
+     */
+    private static final int MAX_CELL_PER_ROI = 256;
+
+    private static class IndexEntry
+    {
+        final ROI roi;
+        Rectangle5D bounds;
+        int cellMinX;
+        int cellMinY;
+        int cellMaxX;
+        int cellMaxY;
+        boolean large;
+        // last query which visited this entry (avoid duplicates for multi cells entries)
+        int queryStamp;
+
+        IndexEntry(ROI roi)
+        {
+            super();
+
+            this.roi = roi;
+        }
+
+        boolean intersects(Rectangle5D r)
+        {
+            // we use closed intervals so empty (point or line) bounds are correctly handled
+            return (bounds.getMinX() <= r.getMaxX()) && (bounds.getMaxX() >= r.getMinX())
+                    && (bounds.getMinY() <= r.getMaxY()) && (bounds.getMaxY() >= r.getMinY())
+                    && (bounds.getMinZ() <= r.getMaxZ()) && (bounds.getMaxZ() >= r.getMinZ())
+                    && (bounds.getMinT() <= r.getMaxT()) && (bounds.getMaxT() >= r.getMinT())
+                    && (bounds.getMinC() <= r.getMaxC()) && (bounds.getMaxC() >= r.getMinC());
+        }
+    }
+
+    private final int cellSize;
+    private final Map<ROI, IndexEntry> entries;
+    private final Map<Long, List<IndexEntry>> cells;
+    private final List<IndexEntry> largeEntries;
+    private int queryStamp;
+
+    /**
+     * Create a spatial index with the specified grid cell size (in pixel).
+     */
+    public ROISpatialIndex(int cellSize)
+    {
+        super();
+
+        this.cellSize = Math.max(1, cellSize);
+        entries = new HashMap<ROI, IndexEntry>();
+        cells = new HashMap<Long, List<IndexEntry>>();
+        largeEntries = new ArrayList<IndexEntry>();
+        queryStamp = 0;
+    }
+
+    /**
+     * Create a spatial index with default grid cell size.
+     */
+    public ROISpatialIndex()
+    {
+        this(DEFAULT_CELL_SIZE);
+    }
+
+    /**
+     * Returns the number of indexed ROI.
+     */
+    public synchronized int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Add the specified ROI to the index (update it if already present).
+     */
+    public synchronized void add(ROI roi)
+    {
+        IndexEntry entry = entries.get(roi);
+
+        if (entry == null)
+        {
+            entry = new IndexEntry(roi);
+            entries.put(roi, entry);
+        }
+        else
+            unlink(entry);
+
+        link(entry);
+    }
+
+    /**
+     * Update the specified ROI position in the index (call it when ROI bounds changed).<br>
+     * Does nothing if the ROI is not indexed.
+     */
+    public synchronized void update(ROI roi)
+    {
+        final IndexEntry entry = entries.get(roi);
+
+        if (entry != null)
+        {
+            unlink(entry);
+            link(entry);
+        }
+    }
+
+    /**
+     * Remove the specified ROI from the index.
+     */
+    public synchronized void remove(ROI roi)
+    {
+        final IndexEntry entry = entries.remove(roi);
+
+        if (entry != null)
+            unlink(entry);
+    }
+
+    /**
+     * Remove all ROI from the index.
+     */
+    public synchronized void clear()
+    {
+        entries.clear();
+        cells.clear();
+        largeEntries.clear();
+    }
+
+    /**
+     * Returns ROIs whose bounds intersect the specified region.
+     */
+    public synchronized List<ROI> getROIs(Rectangle5D region)
+    {
+        final List<ROI> result = new ArrayList<ROI>();
+
+        if (region == null)
+            return result;
+
+        final int stamp = ++queryStamp;
+
+        for (IndexEntry entry : largeEntries)
+            if (entry.intersects(region))
+                result.add(entry.roi);
+
+        final long minCX = getCell(region.getMinX());
+        final long minCY = getCell(region.getMinY());
+        final long maxCX = getCell(region.getMaxX());
+        final long maxCY = getCell(region.getMaxY());
+
+        // region covers too many cells --> iterate over all entries
+        if (getNumCell(minCX, minCY, maxCX, maxCY) > cells.size())
+        {
+            for (IndexEntry entry : entries.values())
+                if (!entry.large && entry.intersects(region))
+                    result.add(entry.roi);
+
+            return result;
+        }
+
+        for (long cy = minCY; cy <= maxCY; cy++)
+        {
+            for (long cx = minCX; cx <= maxCX; cx++)
+            {
+                final List<IndexEntry> cell = cells.get(Long.valueOf(getKey((int) cx, (int) cy)));
+
+                if (cell != null)
+                {
+                    for (IndexEntry entry : cell)
+                    {
+                        if (entry.queryStamp != stamp)
+                        {
+                            entry.queryStamp = stamp;
+                            if (entry.intersects(region))
+                                result.add(entry.roi);
+                        }
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private void link(IndexEntry entry)
+    {
+        final Rectangle5D bounds = entry.roi.getBounds5D();
+        final long minCX = getCell(bounds.getMinX());
+        final long minCY = getCell(bounds.getMinY());
+        final long maxCX = getCell(bounds.getMaxX());
+        final long maxCY = getCell(bounds.getMaxY());
+
+        entry.bounds = bounds;
+        entry.large = (bounds.isInfiniteX() || bounds.isInfiniteY()
+                || (getNumCell(minCX, minCY, maxCX, maxCY) > MAX_CELL_PER_ROI));
+
+        if (entry.large)
+        {
+            largeEntries.add(entry);
+            return;
+        }
+
+        entry.cellMinX = (int) minCX;
+        entry.cellMinY = (int) minCY;
+        entry.cellMaxX = (int) maxCX;
+        entry.cellMaxY = (int) maxCY;
+
+        for (int cy = entry.cellMinY; cy <= entry.cellMaxY; cy++)
+        {
+            for (int cx = entry.cellMinX; cx <= entry.cellMaxX; cx++)
+            {
+                final Long key = Long.valueOf(getKey(cx, cy));
+                List<IndexEntry> cell = cells.get(key);
+
+                if (cell == null)
+                {
+                    cell = new ArrayList<IndexEntry>(4);
+                    cells.put(key, cell);
+                }
+
+                cell.add(entry);
+            }
+        }
+    }
+
+    private void unlink(IndexEntry entry)
+    {
+        if (entry.large)
+        {
+            largeEntries.remove(entry);
+            return;
+        }
+
+        for (int cy = entry.cellMinY; cy <= entry.cellMaxY; cy++)
+        {
+            for (int cx = entry.cellMinX; cx <= entry.cellMaxX; cx++)
+            {
+                final Long key = Long.valueOf(getKey(cx, cy));
+                final List<IndexEntry> cell = cells.get(key);
+
+                if (cell != null)
+                {
+                    cell.remove(entry);
+                    if (cell.isEmpty())
+                        cells.remove(key);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns cell index for the specified coordinate (clamped to integer range)
+     */
+    private long getCell(double value)
+    {
+        final double cell = Math.floor(value / cellSize);
+
+        if (cell <= Integer.MIN_VALUE)
+            return Integer.MIN_VALUE;
+        if (cell >= Integer.MAX_VALUE)
+            return Integer.MAX_VALUE;
+
+        return (long) cell;
+    }
+
+    private static double getNumCell(long minCX, long minCY, long maxCX, long maxCY)
+    {
+        // use double to avoid overflow
+        return ((double) ((maxCX - minCX) + 1)) * ((double) ((maxCY - minCY) + 1));
+    }
+
+    private static long getKey(int cx, int cy)
+    {
+        return (((long) cx) << 32) | (cy & 0xFFFFFFFFL);
+    }
+}
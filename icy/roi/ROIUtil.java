@@ -23,7 +23,9 @@ import icy.math.DataIteratorMath;
 import icy.math.MathUtil;
 import icy.plugin.interface_.PluginROIDescriptor;
 import icy.sequence.Sequence;
-import icy.sequence.SequenceDataIterator;
+import icy.sequence.SequenceDataSpanIterator;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
 import icy.type.DataIteratorUtil;
 import icy.type.dimension.Dimension5D;
 import icy.type.geom.Polygon2D;
@@ -40,11 +42,18 @@ import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import plugins.kernel.roi.descriptor.intensity.ROIIntensityDescriptorsPlugin;
+import plugins.kernel.roi.descriptor.intensity.ROIIntensityDescriptorsPlugin.IntensityDescriptorInfos;
 import plugins.kernel.roi.descriptor.intensity.ROIMaxIntensityDescriptor;
 import plugins.kernel.roi.descriptor.intensity.ROIMeanIntensityDescriptor;
 import plugins.kernel.roi.descriptor.intensity.ROIMinIntensityDescriptor;
@@ -142,6 +151,166 @@ public class ROIUtil
         return ROIDescriptor.computeDescriptor(descriptorId, roi, sequence);
     }
 
+    /**
+     * Computes the specified descriptors on all given ROIs and returns the results.<br/>
+     * This method is much faster than computing descriptors for each ROI separately when there is
+     * many ROIs:
+     * <ul>
+     * <li>intensity descriptors (see {@link ROIIntensityDescriptorsPlugin}) are computed in batch
+     * so each sequence plane is read once for a group of ROIs</li>
+     * <li>others descriptors are computed in parallel (plugin <code>compute(..)</code> method can be
+     * called from several threads at once)</li>
+     * </ul>
+     * 
+     * @param rois
+     *        the ROIs on which the descriptors should be computed
+     * @param sequence
+     *        an optional sequence where the pixel informations can be retrieved
+     * @param descriptors
+     *        the descriptors to compute (see {@link #getROIDescriptors()} method)
+     * @return a map where each ROI is associated to its descriptors results (a result is <code>null</code> if the
+     *         descriptor cannot be computed for this ROI)
+     * @throws InterruptedException
+     *         if computation was interrupted
+     */
+    public static Map<ROI, Map<ROIDescriptor, Object>> computeDescriptors(Collection<? extends ROI> rois,
+            final Sequence sequence, Set<ROIDescriptor> descriptors) throws InterruptedException
+    {
+        final Map<ROIDescriptor, PluginROIDescriptor> allDescriptors = getROIDescriptors();
+        final Map<PluginROIDescriptor, List<ROIDescriptor>> plugins = new LinkedHashMap<PluginROIDescriptor, List<ROIDescriptor>>();
+        final Map<ROI, Map<ROIDescriptor, Object>> result = new HashMap<ROI, Map<ROIDescriptor, Object>>(rois.size());
+
+        // group descriptors by plugin
+        for (ROIDescriptor descriptor : descriptors)
+        {
+            final PluginROIDescriptor plugin = allDescriptors.get(descriptor);
+
+            if (plugin != null)
+            {
+                List<ROIDescriptor> list = plugins.get(plugin);
+
+                if (list == null)
+                {
+                    list = new ArrayList<ROIDescriptor>();
+                    plugins.put(plugin, list);
+                }
+
+                list.add(descriptor);
+            }
+        }
+
+        for (ROI roi : rois)
+            result.put(roi, new HashMap<ROIDescriptor, Object>());
+
+        // intensity descriptors --> batch computation
+        for (Entry<PluginROIDescriptor, List<ROIDescriptor>> entry : plugins.entrySet())
+        {
+            if ((entry.getKey() instanceof ROIIntensityDescriptorsPlugin) && (sequence != null))
+            {
+                final List<ROIDescriptor> pluginDescriptors = entry.getValue();
+                final Map<ROI, IntensityDescriptorInfos[]> intensityInfos = ROIIntensityDescriptorsPlugin
+                        .computeIntensityDescriptors(rois, sequence);
+
+                for (Entry<ROI, Map<ROIDescriptor, Object>> roiEntry : result.entrySet())
+                {
+                    final ROI roi = roiEntry.getKey();
+                    final Map<ROIDescriptor, Object> roiResults;
+
+                    // same behavior than ROIIntensityDescriptorsPlugin.compute(..): multi channel ROI not supported
+                    if (roi.getBounds5D().getSizeC() > 1d)
+                        roiResults = null;
+                    else
+                    {
+                        IntensityDescriptorInfos infos = new IntensityDescriptorInfos();
+
+                        for (IntensityDescriptorInfos channelInfos : intensityInfos.get(roi))
+                            if (channelInfos != null)
+                                infos = channelInfos;
+
+                        roiResults = ROIIntensityDescriptorsPlugin.getDescriptorResults(infos);
+                    }
+
+                    for (ROIDescriptor descriptor : pluginDescriptors)
+                        roiEntry.getValue().put(descriptor, (roiResults != null) ? roiResults.get(descriptor) : null);
+                }
+            }
+        }
+
+        // others descriptors --> parallel computation
+        final Map<PluginROIDescriptor, List<ROIDescriptor>> otherPlugins = new LinkedHashMap<PluginROIDescriptor, List<ROIDescriptor>>(
+                plugins);
+
+        if (sequence != null)
+        {
+            for (PluginROIDescriptor plugin : plugins.keySet())
+                if (plugin instanceof ROIIntensityDescriptorsPlugin)
+                    otherPlugins.remove(plugin);
+        }
+
+        if (!otherPlugins.isEmpty())
+        {
+            final Processor processor = new Processor(SystemUtil.getNumberOfCPUs());
+            final List<Future<?>> futures = new ArrayList<Future<?>>(result.size());
+
+            processor.setThreadName("ROI descriptor computation");
+
+            try
+            {
+                for (Entry<ROI, Map<ROIDescriptor, Object>> roiEntry : result.entrySet())
+                {
+                    final ROI roi = roiEntry.getKey();
+                    final Map<ROIDescriptor, Object> roiResults = roiEntry.getValue();
+
+                    futures.add(processor.submit(new Runnable()
+                    {
+                        @Override
+                        public void run()
+                        {
+                            for (Entry<PluginROIDescriptor, List<ROIDescriptor>> entry : otherPlugins.entrySet())
+                            {
+                                Map<ROIDescriptor, Object> pluginResults;
+
+                                try
+                                {
+                                    pluginResults = entry.getKey().compute(roi, sequence);
+                                }
+                                catch (UnsupportedOperationException e)
+                                {
+                                    // not supported --> null results
+                                    pluginResults = null;
+                                }
+
+                                for (ROIDescriptor descriptor : entry.getValue())
+                                    roiResults.put(descriptor,
+                                            (pluginResults != null) ? pluginResults.get(descriptor) : null);
+                            }
+                        }
+                    }));
+                }
+
+                for (Future<?> future : futures)
+                    future.get();
+            }
+            catch (ExecutionException e)
+            {
+                final Throwable cause = e.getCause();
+
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+
+                throw new RuntimeException(cause);
+            }
+            finally
+            {
+                processor.shutdownNow();
+            }
+        }
+
+        return result;
+    }
+
     /**
      * @deprecated Use {@link ROIStandardDeviationDescriptor} or {@link #computeDescriptor(String, ROI, Sequence)}
      *             method instead.
@@ -151,20 +320,30 @@ public class ROIUtil
     {
         try
         {
-            final SequenceDataIterator it = new SequenceDataIterator(sequence, roi, false, z, t, c);
+            final SequenceDataSpanIterator it = new SequenceDataSpanIterator(sequence, roi, false, z, t, c);
 
             long numPixels = 0;
             double sum = 0;
             double sum2 = 0;
+            double[] values = new double[0];
 
             // faster to do all calculation in a single iteration run
             while (!it.done())
             {
-                final double value = it.get();
+                final int len = it.getLength();
+
+                if (values.length < len)
+                    values = new double[len];
+                it.get(values, 0);
 
-                sum += value;
-                sum2 += value * value;
-                numPixels++;
+                for (int i = 0; i < len; i++)
+                {
+                    final double value = values[i];
+
+                    sum += value;
+                    sum2 += value * value;
+                }
+                numPixels += len;
 
                 it.next();
             }
@@ -197,33 +376,15 @@ public class ROIUtil
         try
         {
             final IntensityInfo result = new IntensityInfo();
-            final SequenceDataIterator it = new SequenceDataIterator(sequence, roi, false, z, t, c);
-
-            long numPixels = 0;
-            double min = Double.MAX_VALUE;
-            double max = -Double.MAX_VALUE;
-            double sum = 0;
-
             // faster to do all calculation in a single iteration run
-            while (!it.done())
-            {
-                final double value = it.get();
-
-                if (value < min)
-                    min = value;
-                if (value > max)
-                    max = value;
-                sum += value;
-                numPixels++;
+            final double[] values = DataIteratorMath.compute(new SequenceDataSpanIterator(sequence, roi, false, z,
+                    t, c));
 
-                it.next();
-            }
-
-            if (numPixels > 0)
+            if (values[3] > 0)
             {
-                result.minIntensity = min;
-                result.maxIntensity = max;
-                result.meanIntensity = sum / numPixels;
+                result.minIntensity = values[0];
+                result.maxIntensity = values[1];
+                result.meanIntensity = values[2] / values[3];
             }
             else
             {
@@ -261,7 +422,7 @@ public class ROIUtil
      */
     public static long getNumPixel(Sequence sequence, ROI roi, int z, int t, int c)
     {
-        return DataIteratorUtil.count(new SequenceDataIterator(sequence, roi, false, z, t, c));
+        return DataIteratorUtil.count(new SequenceDataSpanIterator(sequence, roi, false, z, t, c));
     }
 
     /**
@@ -271,7 +432,7 @@ public class ROIUtil
     @Deprecated
     public static double getMinIntensity(Sequence sequence, ROI roi, int z, int t, int c)
     {
-        return DataIteratorMath.min(new SequenceDataIterator(sequence, roi, false, z, t, c));
+        return DataIteratorMath.min(new SequenceDataSpanIterator(sequence, roi, false, z, t, c));
     }
 
     /**
@@ -281,7 +442,7 @@ public class ROIUtil
     @Deprecated
     public static double getMaxIntensity(Sequence sequence, ROI roi, int z, int t, int c)
     {
-        return DataIteratorMath.max(new SequenceDataIterator(sequence, roi, false, z, t, c));
+        return DataIteratorMath.max(new SequenceDataSpanIterator(sequence, roi, false, z, t, c));
     }
 
     /**
@@ -291,7 +452,7 @@ public class ROIUtil
     @Deprecated
     public static double getMeanIntensity(Sequence sequence, ROI roi, int z, int t, int c)
     {
-        return DataIteratorMath.mean(new SequenceDataIterator(sequence, roi, false, z, t, c));
+        return DataIteratorMath.mean(new SequenceDataSpanIterator(sequence, roi, false, z, t, c));
     }
 
     /**
@@ -301,7 +462,7 @@ public class ROIUtil
     @Deprecated
     public static double getSumIntensity(Sequence sequence, ROI roi, int z, int t, int c)
     {
-        return DataIteratorMath.sum(new SequenceDataIterator(sequence, roi, false, z, t, c));
+        return DataIteratorMath.sum(new SequenceDataSpanIterator(sequence, roi, false, z, t, c));
     }
 
     /**
@@ -0,0 +1,466 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.roi;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.util.Arrays;
+
+/**
+ * Pure Java scanline rasterizer used to build {@link BooleanMask2D} from {@link Shape} (no Java2D
+ * rendering involved so the result is the same on all JVM).<br>
+ * <br>
+ * Rules:<br>
+ * - only closed sub paths are filled: a pixel is filled when its center is inside the shape
+ * (according to the path winding rule, same convention than Java2D fill).<br>
+ * - the outline is the set of pixels whose area is crossed by a sub path segment (open sub paths
+ * are considered as 1 pixel thick lines).<br>
+ * - <i>inclusive</i> mask = filled pixels + outline pixels (all partially contained pixels).<br>
+ * - <i>exclusive</i> mask = filled pixels - outline pixels (only fully contained pixels).
+ *
+ * @author Stephane
+ */
+public class ShapeRasterizer
+{
+    /**
+     * Flatness used to convert curves to segments
+     */
+    public static final double FLATNESS = 0.1d;
+
+    /**
+     * Returns the {@link BooleanMask2D} of the specified shape (mask bounds are the shape
+     * integer bounds).
+     *
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels are included in the mask.
+     */
+    public static BooleanMask2D getBooleanMask(Shape shape, boolean inclusive)
+    {
+        final Rectangle bounds = shape.getBounds();
+
+        // empty shape --> return empty mask
+        if (bounds.isEmpty())
+            return new BooleanMask2D(new Rectangle(), new boolean[0]);
+
+        return new BooleanMask2D(bounds, getBooleanMask(shape, bounds.x, bounds.y, bounds.width, bounds.height,
+                inclusive));
+    }
+
+    /**
+     * Returns the boolean array mask of the specified shape for the specified rectangular region.<br>
+     * if the pixel (x,y) is contained in the shape then result[(y * width) + x] = true
+     *
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels are included in the mask.
+     */
+    public static boolean[] getBooleanMask(Shape shape, int x, int y, int width, int height, boolean inclusive)
+    {
+        if ((width <= 0) || (height <= 0))
+            return new boolean[0];
+
+        final boolean[] result = new boolean[width * height];
+        final ShapeRasterizer rasterizer = new ShapeRasterizer(x, y, width, height);
+
+        rasterizer.setPath(shape.getPathIterator(null, FLATNESS));
+        rasterizer.fill(result);
+        rasterizer.outline(result, inclusive);
+
+        return result;
+    }
+
+    /**
+     * internals
+     */
+    private final int regionX;
+    private final int regionY;
+    private final int regionW;
+    private final int regionH;
+
+    private boolean nonZero;
+
+    // fill edges (x0, y0, x1, y1)
+    private double[] edges;
+    private int numEdge;
+    // outline segments (x0, y0, x1, y1)
+    private double[] segments;
+    // outline segment uses half open pixel area (open sub path)
+    private boolean[] segmentHalfOpen;
+    private int numSegment;
+
+    private ShapeRasterizer(int x, int y, int width, int height)
+    {
+        super();
+
+        regionX = x;
+        regionY = y;
+        regionW = width;
+        regionH = height;
+
+        edges = new double[64];
+        numEdge = 0;
+        segments = new double[64];
+        segmentHalfOpen = new boolean[16];
+        numSegment = 0;
+    }
+
+    /**
+     * Read the flattened path
+     */
+    private void setPath(PathIterator path)
+    {
+        final double crd[] = new double[6];
+        // current sub path points
+        double[] pts = new double[32];
+        int numPts = 0;
+        // last sub path was closed (and current one contains only its starting point)
+        boolean closed = false;
+
+        nonZero = (path.getWindingRule() == PathIterator.WIND_NON_ZERO);
+
+        while (!path.isDone())
+        {
+            switch (path.currentSegment(crd))
+            {
+                case PathIterator.SEG_MOVETO:
+                    // previous sub path was open
+                    if (!closed)
+                        addSubPath(pts, numPts, false);
+                    numPts = 0;
+                    // fall through
+
+                case PathIterator.SEG_LINETO:
+                    closed = false;
+                    if ((numPts * 2) == pts.length)
+                        pts = Arrays.copyOf(pts, pts.length * 2);
+                    pts[(numPts * 2) + 0] = crd[0];
+                    pts[(numPts * 2) + 1] = crd[1];
+                    numPts++;
+                    break;
+
+                case PathIterator.SEG_CLOSE:
+                    if (!closed)
+                        addSubPath(pts, numPts, true);
+                    // next segment starts from the sub path first point
+                    numPts = Math.min(numPts, 1);
+                    closed = true;
+                    break;
+
+                default:
+                    // curves should not happen with a flattened path iterator
+                    break;
+            }
+
+            path.next();
+        }
+
+        if (!closed)
+            addSubPath(pts, numPts, false);
+    }
+
+    private void addSubPath(double[] pts, int numPts, boolean closed)
+    {
+        if (numPts == 0)
+            return;
+
+        // single point (or closed single point) --> outline only
+        if (numPts == 1)
+        {
+            addSegment(pts[0], pts[1], pts[0], pts[1], true);
+            return;
+        }
+
+        for (int i = 1; i < numPts; i++)
+        {
+            final double x0 = pts[((i - 1) * 2) + 0];
+            final double y0 = pts[((i - 1) * 2) + 1];
+            final double x1 = pts[(i * 2) + 0];
+            final double y1 = pts[(i * 2) + 1];
+
+            if (closed)
+                addEdge(x0, y0, x1, y1);
+            addSegment(x0, y0, x1, y1, !closed);
+        }
+
+        if (closed)
+        {
+            final double x0 = pts[((numPts - 1) * 2) + 0];
+            final double y0 = pts[((numPts - 1) * 2) + 1];
+
+            addEdge(x0, y0, pts[0], pts[1]);
+            addSegment(x0, y0, pts[0], pts[1], false);
+        }
+    }
+
+    private void addEdge(double x0, double y0, double x1, double y1)
+    {
+        // horizontal edges never cross a scanline
+        if (y0 == y1)
+            return;
+
+        if (((numEdge + 1) * 4) > edges.length)
+            edges = Arrays.copyOf(edges, edges.length * 2);
+
+        final int off = numEdge * 4;
+
+        edges[off + 0] = x0;
+        edges[off + 1] = y0;
+        edges[off + 2] = x1;
+        edges[off + 3] = y1;
+        numEdge++;
+    }
+
+    private void addSegment(double x0, double y0, double x1, double y1, boolean halfOpen)
+    {
+        if (((numSegment + 1) * 4) > segments.length)
+            segments = Arrays.copyOf(segments, segments.length * 2);
+        if (numSegment == segmentHalfOpen.length)
+            segmentHalfOpen = Arrays.copyOf(segmentHalfOpen, segmentHalfOpen.length * 2);
+
+        final int off = numSegment * 4;
+
+        segments[off + 0] = x0;
+        segments[off + 1] = y0;
+        segments[off + 2] = x1;
+        segments[off + 3] = y1;
+        segmentHalfOpen[numSegment] = halfOpen;
+        numSegment++;
+    }
+
+    /**
+     * Fill closed sub paths (pixel center sampling).
+     */
+    private void fill(boolean[] mask)
+    {
+        if (numEdge == 0)
+            return;
+
+        // edges sorted on their first covered row (first row in high bits, edge index in low bits)
+        final long[] order = new long[numEdge];
+        final int[] firstRow = new int[numEdge];
+        final int[] lastRow = new int[numEdge];
+        final double[] slopes = new double[numEdge];
+
+        for (int e = 0; e < numEdge; e++)
+        {
+            final int off = e * 4;
+            final double ymin = Math.min(edges[off + 1], edges[off + 3]);
+            final double ymax = Math.max(edges[off + 1], edges[off + 3]);
+
+            // rows whose center (row + 0.5) is in [ymin, ymax[
+            firstRow[e] = ceil(ymin - 0.5d);
+            lastRow[e] = ceil(ymax - 0.5d) - 1;
+            slopes[e] = (edges[off + 2] - edges[off + 0]) / (edges[off + 3] - edges[off + 1]);
+            order[e] = (((long) firstRow[e]) << 32) | e;
+        }
+
+        Arrays.sort(order);
+
+        final int[] active = new int[numEdge];
+        final double[] crossX = new double[numEdge];
+        final int[] crossDir = new int[numEdge];
+        int numActive = 0;
+        int next = 0;
+
+        for (int row = regionY; row < (regionY + regionH); row++)
+        {
+            // add new active edges
+            while ((next < numEdge) && ((int) (order[next] >> 32) <= row))
+                active[numActive++] = (int) (order[next++] & 0xFFFFFFFFL);
+
+            // remove ended edges
+            int n = 0;
+            for (int i = 0; i < numActive; i++)
+                if (lastRow[active[i]] >= row)
+                    active[n++] = active[i];
+            numActive = n;
+
+            if (numActive == 0)
+            {
+                // no more edges
+                if (next == numEdge)
+                    break;
+                continue;
+            }
+
+            final double yc = row + 0.5d;
+
+            // compute crossings
+            for (int i = 0; i < numActive; i++)
+            {
+                final int e = active[i];
+                final int off = e * 4;
+                final double y0 = edges[off + 1];
+
+                crossX[i] = edges[off + 0] + ((yc - y0) * slopes[e]);
+                crossDir[i] = (edges[off + 3] > y0) ? 1 : -1;
+            }
+
+            // sort crossings (insertion sort, crossing number is usually small)
+            for (int i = 1; i < numActive; i++)
+            {
+                final double cx = crossX[i];
+                final int cd = crossDir[i];
+                int j = i - 1;
+
+                while ((j >= 0) && (crossX[j] > cx))
+                {
+                    crossX[j + 1] = crossX[j];
+                    crossDir[j + 1] = crossDir[j];
+                    j--;
+                }
+
+                crossX[j + 1] = cx;
+                crossDir[j + 1] = cd;
+            }
+
+            final int offset = (row - regionY) * regionW;
+            int winding = 0;
+
+            for (int i = 0; i < (numActive - 1); i++)
+            {
+                winding += crossDir[i];
+
+                final boolean inside = nonZero ? (winding != 0) : ((winding & 1) != 0);
+
+                if (inside)
+                {
+                    // pixels whose center is in [crossX[i], crossX[i + 1][
+                    final int start = Math.max(regionX, ceil(crossX[i] - 0.5d));
+                    final int end = Math.min(regionX + regionW, ceil(crossX[i + 1] - 0.5d));
+
+                    if (start < end)
+                        Arrays.fill(mask, (offset + start) - regionX, (offset + end) - regionX, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Set (or clear) pixels crossed by the outline segments.
+     */
+    private void outline(boolean[] mask, boolean value)
+    {
+        for (int s = 0; s < numSegment; s++)
+        {
+            final int off = s * 4;
+            final double x0 = segments[off + 0];
+            final double y0 = segments[off + 1];
+            final double x1 = segments[off + 2];
+            final double y1 = segments[off + 3];
+            final boolean halfOpen = segmentHalfOpen[s];
+            final double ymin = Math.min(y0, y1);
+            final double ymax = Math.max(y0, y1);
+            final double slope = (ymin == ymax) ? 0d : ((x1 - x0) / (y1 - y0));
+            final int firstRow;
+            final int lastRow;
+
+            if (halfOpen)
+            {
+                // pixel area is [px, px + 1[ x [py, py + 1[
+                firstRow = floor(ymin);
+                lastRow = floor(ymax);
+            }
+            else if (ymin == ymax)
+            {
+                // horizontal segment on a pixel border doesn't cross any pixel area
+                if (ymin == floor(ymin))
+                    continue;
+
+                firstRow = floor(ymin);
+                lastRow = firstRow;
+            }
+            else
+            {
+                // pixel area is ]px, px + 1[ x ]py, py + 1[
+                firstRow = floor(ymin);
+                lastRow = ceil(ymax) - 1;
+            }
+
+            for (int row = Math.max(regionY, firstRow); row <= Math.min((regionY + regionH) - 1, lastRow); row++)
+            {
+                // segment part in the row band
+                final double xa;
+                final double xb;
+
+                if (ymin == ymax)
+                {
+                    xa = Math.min(x0, x1);
+                    xb = Math.max(x0, x1);
+                }
+                else
+                {
+                    final double ya = Math.max(row, ymin);
+                    final double yb = Math.min(row + 1, ymax);
+                    final double xya = x0 + ((ya - y0) * slope);
+                    final double xyb = x0 + ((yb - y0) * slope);
+
+                    xa = Math.min(xya, xyb);
+                    xb = Math.max(xya, xyb);
+                }
+
+                final int start;
+                final int end;
+
+                if (halfOpen)
+                {
+                    start = floor(xa);
+                    end = floor(xb) + 1;
+                }
+                else if (xa == xb)
+                {
+                    // vertical part on a pixel border doesn't cross any pixel area
+                    if (xa == floor(xa))
+                        continue;
+
+                    start = floor(xa);
+                    end = start + 1;
+                }
+                else
+                {
+                    start = floor(xa);
+                    end = ceil(xb);
+                }
+
+                final int s0 = Math.max(regionX, start);
+                final int s1 = Math.min(regionX + regionW, end);
+
+                // spans are usually very short here so we avoid Arrays.fill(..) call overhead
+                final int offset = ((row - regionY) * regionW) - regionX;
+
+                for (int i = offset + s0; i < (offset + s1); i++)
+                    mask[i] = value;
+            }
+        }
+    }
+
+    private static int floor(double value)
+    {
+        final int result = (int) value;
+
+        return (value < result) ? result - 1 : result;
+    }
+
+    private static int ceil(double value)
+    {
+        final int result = (int) value;
+
+        return (value > result) ? result + 1 : result;
+    }
+}
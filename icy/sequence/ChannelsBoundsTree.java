@@ -0,0 +1,267 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Keep the channels bounds (type bounds and user bounds) of each plane of a {@link Sequence} in a
+ * segment tree so the global sequence bounds can be retrieved in constant time and updated in
+ * O(log(N)) when a single plane changes.<br>
+ * Planes are identified by their instance (resident image or stored plane).<br>
+ * Internal use only.
+ *
+ * @author Stephane
+ */
+class ChannelsBoundsTree
+{
+    private static final int TYPE = 0;
+    private static final int USER = 1;
+
+    /**
+     * plane --> leaf index
+     */
+    private final Map<Object, Integer> slots;
+
+    /**
+     * tree nodes (index 1 is the root, leaves start at <code>capacity</code>) for type and user
+     * bounds
+     */
+    private double[][][][] nodes;
+    private int capacity;
+
+    /**
+     * free leaves
+     */
+    private int[] freeSlots;
+    private int numFreeSlot;
+    private int nextSlot;
+
+    ChannelsBoundsTree()
+    {
+        super();
+
+        slots = new IdentityHashMap<Object, Integer>();
+        clear();
+    }
+
+    /**
+     * Remove all planes.
+     */
+    synchronized void clear()
+    {
+        slots.clear();
+        capacity = 16;
+        nodes = new double[2][2 * capacity][][];
+        freeSlots = new int[16];
+        numFreeSlot = 0;
+        nextSlot = 0;
+    }
+
+    /**
+     * Set bounds of the specified plane (plane is added if not already present).<br>
+     * Bounds can be <code>null</code> if unknown.
+     */
+    synchronized void set(Object plane, double[][] typeBounds, double[][] userBounds)
+    {
+        final Integer slot = slots.get(plane);
+        final int index;
+
+        if (slot == null)
+        {
+            index = allocateSlot();
+            slots.put(plane, Integer.valueOf(index));
+        }
+        else
+            index = slot.intValue();
+
+        setLeaf(index, typeBounds, userBounds);
+    }
+
+    /**
+     * Update bounds of the specified plane (does nothing if the plane is not present).
+     */
+    synchronized void update(Object plane, double[][] typeBounds, double[][] userBounds)
+    {
+        final Integer slot = slots.get(plane);
+
+        if (slot != null)
+            setLeaf(slot.intValue(), typeBounds, userBounds);
+    }
+
+    /**
+     * Replace a plane by another one (the new plane takes the place of the old one).
+     */
+    synchronized void replace(Object oldPlane, Object newPlane, double[][] typeBounds, double[][] userBounds)
+    {
+        final Integer slot = slots.remove(oldPlane);
+
+        if (slot == null)
+            set(newPlane, typeBounds, userBounds);
+        else
+        {
+            slots.put(newPlane, slot);
+            setLeaf(slot.intValue(), typeBounds, userBounds);
+        }
+    }
+
+    /**
+     * Remove the specified plane.
+     */
+    synchronized void remove(Object plane)
+    {
+        final Integer slot = slots.remove(plane);
+
+        if (slot != null)
+        {
+            final int index = slot.intValue();
+
+            setLeaf(index, null, null);
+
+            if (numFreeSlot == freeSlots.length)
+            {
+                final int[] newFreeSlots = new int[freeSlots.length * 2];
+                System.arraycopy(freeSlots, 0, newFreeSlots, 0, numFreeSlot);
+                freeSlots = newFreeSlots;
+            }
+
+            freeSlots[numFreeSlot++] = index;
+        }
+    }
+
+    /**
+     * Returns the global channels type bounds (<code>null</code> if no bounds are known).
+     */
+    synchronized double[][] getTypeBounds()
+    {
+        return copy(nodes[TYPE][1]);
+    }
+
+    /**
+     * Returns the global channels user bounds (<code>null</code> if no bounds are known).
+     */
+    synchronized double[][] getUserBounds()
+    {
+        return copy(nodes[USER][1]);
+    }
+
+    private int allocateSlot()
+    {
+        if (numFreeSlot > 0)
+            return freeSlots[--numFreeSlot];
+
+        if (nextSlot == capacity)
+            grow();
+
+        return nextSlot++;
+    }
+
+    private void grow()
+    {
+        final int newCapacity = capacity * 2;
+        final double[][][][] newNodes = new double[2][2 * newCapacity][][];
+
+        for (int type = TYPE; type <= USER; type++)
+        {
+            // copy leaves
+            System.arraycopy(nodes[type], capacity, newNodes[type], newCapacity, capacity);
+            // rebuild internal nodes
+            for (int node = newCapacity - 1; node > 0; node--)
+                newNodes[type][node] = merge(newNodes[type][node * 2], newNodes[type][(node * 2) + 1], null);
+        }
+
+        nodes = newNodes;
+        capacity = newCapacity;
+    }
+
+    private void setLeaf(int index, double[][] typeBounds, double[][] userBounds)
+    {
+        setLeaf(nodes[TYPE], index, typeBounds);
+        setLeaf(nodes[USER], index, userBounds);
+    }
+
+    private void setLeaf(double[][][] tree, int index, double[][] bounds)
+    {
+        int node = capacity + index;
+
+        tree[node] = copy(bounds);
+
+        // update parents
+        node >>= 1;
+        while (node > 0)
+        {
+            tree[node] = merge(tree[node * 2], tree[(node * 2) + 1], tree[node]);
+            node >>= 1;
+        }
+    }
+
+    /**
+     * Merge bounds (<i>out</i> array is reused when possible).
+     */
+    private static double[][] merge(double[][] b1, double[][] b2, double[][] out)
+    {
+        if (b1 == null)
+            return (b2 == null) ? null : copy(b2, out);
+        if (b2 == null)
+            return copy(b1, out);
+
+        final double[][] result = copy(b1, out);
+        final int len = Math.min(result.length, b2.length);
+
+        for (int c = 0; c < len; c++)
+        {
+            final double[] bounds = result[c];
+            final double[] bounds2 = b2[c];
+
+            if (bounds2[0] < bounds[0])
+                bounds[0] = bounds2[0];
+            if (bounds2[1] > bounds[1])
+                bounds[1] = bounds2[1];
+        }
+
+        return result;
+    }
+
+    private static double[][] copy(double[][] bounds)
+    {
+        if (bounds == null)
+            return null;
+
+        return copy(bounds, null);
+    }
+
+    private static double[][] copy(double[][] bounds, double[][] out)
+    {
+        final double[][] result;
+
+        if ((out != null) && (out.length == bounds.length))
+            result = out;
+        else
+            result = new double[bounds.length][2];
+
+        for (int c = 0; c < bounds.length; c++)
+        {
+            result[c][0] = bounds[c][0];
+            result[c][1] = bounds[c][1];
+        }
+
+        return result;
+    }
+}
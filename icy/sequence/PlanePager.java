@@ -0,0 +1,381 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import icy.image.IcyBufferedImage;
+import icy.image.cache.PlaneStore;
+import icy.image.cache.StoredPlane;
+import icy.system.IcyExceptionHandler;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * Keep track of the resident (heap) planes of a {@link Sequence} and page them out to a
+ * {@link PlaneStore} in LRU order when the resident memory exceeds the allowed limit.<br>
+ * Internal use only.
+ *
+ * @author Stephane
+ */
+class PlanePager
+{
+    static class ResidentPlane
+    {
+        final VolumetricImage volume;
+        final long size;
+        StoredPlane stored;
+        boolean dirty;
+        /**
+         * plane is being written to the store (stored plane is owned by the flush process)
+         */
+        boolean flushing;
+
+        ResidentPlane(VolumetricImage volume, IcyBufferedImage image, StoredPlane stored)
+        {
+            super();
+
+            this.volume = volume;
+            this.stored = stored;
+            size = (long) image.getSizeX() * (long) image.getSizeY() * (long) image.getSizeC()
+                    * image.getDataType_().getSize();
+            // never stored --> dirty
+            dirty = (stored == null);
+            flushing = false;
+        }
+    }
+
+    final Sequence sequence;
+    final PlaneStore store;
+    final long maxResidentMemory;
+
+    /**
+     * resident planes in access order (LRU first)
+     */
+    final LinkedHashMap<IcyBufferedImage, ResidentPlane> residentPlanes;
+    /**
+     * stored planes being loaded back (store read is done outside the pager lock)
+     */
+    final Set<StoredPlane> loadingPlanes;
+    long residentMemory;
+    boolean disposed;
+
+    PlanePager(Sequence sequence, PlaneStore store, long maxResidentMemory)
+    {
+        super();
+
+        this.sequence = sequence;
+        this.store = store;
+        this.maxResidentMemory = maxResidentMemory;
+
+        residentPlanes = new LinkedHashMap<IcyBufferedImage, ResidentPlane>(16, 0.75f, true);
+        loadingPlanes = new HashSet<StoredPlane>();
+        residentMemory = 0L;
+        disposed = false;
+    }
+
+    /**
+     * Register all planes currently present in the sequence.
+     */
+    void init()
+    {
+        for (VolumetricImage volImg : sequence.getAllVolumetricImage())
+            for (IcyBufferedImage image : volImg.getResidentImages())
+                imageAdded(volImg, image, null);
+    }
+
+    synchronized long getResidentMemory()
+    {
+        return residentMemory;
+    }
+
+    /**
+     * A new image has been set in the specified volume.
+     */
+    void imageAdded(VolumetricImage volume, IcyBufferedImage image, StoredPlane stored)
+    {
+        synchronized (this)
+        {
+            final ResidentPlane previous = residentPlanes.put(image, new ResidentPlane(volume, image, stored));
+
+            if (previous != null)
+            {
+                residentMemory -= previous.size;
+                // stored plane of a flushing plane is released by the flush process
+                if ((previous.stored != null) && (previous.stored != stored) && !previous.flushing)
+                    store.release(previous.stored);
+            }
+
+            residentMemory += residentPlanes.get(image).size;
+        }
+
+        flush();
+    }
+
+    /**
+     * The specified image has been removed from the sequence.
+     */
+    synchronized void imageRemoved(IcyBufferedImage image)
+    {
+        final ResidentPlane plane = residentPlanes.remove(image);
+
+        if (plane != null)
+        {
+            residentMemory -= plane.size;
+            // stored plane of a flushing plane is released by the flush process
+            if ((plane.stored != null) && !plane.flushing)
+                store.release(plane.stored);
+        }
+    }
+
+    /**
+     * The specified stored (not resident) plane has been removed from the sequence.
+     */
+    void storedRemoved(StoredPlane plane)
+    {
+        store.release(plane);
+    }
+
+    /**
+     * The specified image has been accessed (update LRU order).
+     */
+    synchronized void imageAccessed(IcyBufferedImage image)
+    {
+        residentPlanes.get(image);
+    }
+
+    /**
+     * The specified image data (or bounds) changed so it has to be stored again.
+     */
+    synchronized void imageChanged(IcyBufferedImage image)
+    {
+        final ResidentPlane plane = residentPlanes.get(image);
+
+        if (plane != null)
+            plane.dirty = true;
+    }
+
+    /**
+     * Load back the specified stored plane in the volume.<br>
+     * Plane data is read from the store outside the pager lock (as for {@link #flush()}) so others
+     * threads can still access resident planes in the meantime, concurrent loads of the same plane
+     * wait for the first one.
+     */
+    IcyBufferedImage load(VolumetricImage volume, int z, StoredPlane stored)
+    {
+        boolean interrupted = false;
+
+        synchronized (this)
+        {
+            try
+            {
+                while (true)
+                {
+                    // already loaded by another thread (or plane removed) ?
+                    if (volume.getStoredPlane(z) != stored)
+                        return volume.getResidentImage(z);
+                    // not being loaded by another thread ? --> load it
+                    if (loadingPlanes.add(stored))
+                        break;
+
+                    try
+                    {
+                        wait();
+                    }
+                    catch (InterruptedException e)
+                    {
+                        interrupted = true;
+                    }
+                }
+            }
+            finally
+            {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        IcyBufferedImage result = null;
+
+        try
+        {
+            try
+            {
+                result = store.load(stored);
+            }
+            catch (IOException e)
+            {
+                IcyExceptionHandler.showErrorMessage(e, true);
+                return null;
+            }
+
+            synchronized (this)
+            {
+                sequence.onImageLoaded(result);
+
+                // plane removed in the meantime ?
+                if (!volume.restoreImage(z, stored, result))
+                {
+                    sequence.onImageUnloaded(result);
+                    return volume.getResidentImage(z);
+                }
+            }
+        }
+        finally
+        {
+            synchronized (this)
+            {
+                loadingPlanes.remove(stored);
+                notifyAll();
+            }
+        }
+
+        imageAdded(volume, result, stored);
+
+        return result;
+    }
+
+    /**
+     * Page out least recently used planes until resident memory fits the allowed limit.<br>
+     * Plane data is written to the store outside the pager lock so others threads can still
+     * access resident planes in the meantime.
+     */
+    void flush()
+    {
+        while (true)
+        {
+            IcyBufferedImage image = null;
+            ResidentPlane plane = null;
+            final StoredPlane stored;
+            final boolean needStore;
+
+            synchronized (this)
+            {
+                // always keep the most recent plane in memory
+                if (disposed || (residentMemory <= maxResidentMemory) || (residentPlanes.size() <= 1))
+                    return;
+
+                final Iterator<Entry<IcyBufferedImage, ResidentPlane>> it = residentPlanes.entrySet().iterator();
+
+                // get the least recently used plane not already being flushed
+                while ((plane == null) && it.hasNext())
+                {
+                    final Entry<IcyBufferedImage, ResidentPlane> entry = it.next();
+
+                    if (!entry.getValue().flushing)
+                    {
+                        image = entry.getKey();
+                        plane = entry.getValue();
+                    }
+                }
+
+                // all planes are being flushed
+                if (plane == null)
+                    return;
+
+                stored = plane.stored;
+                needStore = plane.dirty || (stored == null) || stored.isReleased();
+                // changes done from now will set the dirty flag again
+                plane.dirty = false;
+                plane.flushing = true;
+            }
+
+            StoredPlane result = stored;
+            IOException error = null;
+
+            try
+            {
+                // store plane data if needed
+                if (needStore)
+                    result = store.store(image, stored);
+                else
+                    // just refresh bounds (they may have been computed since the plane was loaded)
+                    store.updateBounds(image, stored);
+            }
+            catch (IOException e)
+            {
+                error = e;
+            }
+
+            synchronized (this)
+            {
+                plane.flushing = false;
+                plane.stored = result;
+
+                final ResidentPlane current = residentPlanes.get(image);
+
+                // plane removed or replaced in the meantime --> release the stored plane
+                if (current != plane)
+                {
+                    if ((result != null) && ((current == null) || (current.stored != result)))
+                        store.release(result);
+                    continue;
+                }
+
+                if (error != null)
+                {
+                    // can't page out, keep it in memory
+                    if (needStore)
+                        plane.dirty = true;
+                    IcyExceptionHandler.showErrorMessage(error, false);
+                    return;
+                }
+
+                // plane modified in the meantime (or pager disposed) --> keep it in memory
+                if (plane.dirty || disposed)
+                    return;
+
+                residentPlanes.remove(image);
+                residentMemory -= plane.size;
+
+                if (plane.volume.unloadImage(image, result))
+                    sequence.onImageUnloaded(image);
+                else
+                    store.release(result);
+            }
+        }
+    }
+
+    /**
+     * Load back all stored planes in memory and close the store.
+     */
+    void dispose()
+    {
+        synchronized (this)
+        {
+            // no more page out from now
+            disposed = true;
+        }
+
+        for (VolumetricImage volImg : sequence.getAllVolumetricImage())
+            for (Entry<Integer, StoredPlane> entry : volImg.getStoredPlanes().entrySet())
+                load(volImg, entry.getKey().intValue(), entry.getValue());
+
+        synchronized (this)
+        {
+            residentPlanes.clear();
+            residentMemory = 0L;
+        }
+
+        store.close();
+    }
+}
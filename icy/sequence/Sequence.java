@@ -24,8 +24,12 @@ import icy.common.listener.ChangeListener;
 import icy.gui.viewer.Viewer;
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageEvent;
+import icy.image.IcyBufferedImageEvent.IcyBufferedImageEventType;
 import icy.image.IcyBufferedImageListener;
 import icy.image.IcyBufferedImageUtil;
+import icy.image.cache.PlaneStore;
+import icy.image.cache.StoredPlane;
+import icy.image.cache.VirtualPlaneStore;
 import icy.image.colormap.IcyColorMap;
 import icy.image.colormodel.IcyColorModel;
 import icy.image.colormodel.IcyColorModelEvent;
@@ -47,7 +51,9 @@ import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.roi.ROI3D;
 import icy.roi.ROIEvent;
+import icy.roi.ROIEvent.ROIEventType;
 import icy.roi.ROIListener;
+import icy.roi.ROISpatialIndex;
 import icy.sequence.SequenceEvent.SequenceEventSourceType;
 import icy.sequence.SequenceEvent.SequenceEventType;
 import icy.sequence.edit.DataSequenceEdit;
@@ -57,7 +63,9 @@ import icy.sequence.edit.ROIAddSequenceEdit;
 import icy.sequence.edit.ROIAddsSequenceEdit;
 import icy.sequence.edit.ROIRemoveSequenceEdit;
 import icy.sequence.edit.ROIRemovesSequenceEdit;
+import icy.sequence.edit.SequenceDataSnapshot;
 import icy.system.IcyExceptionHandler;
+import icy.system.SystemUtil;
 import icy.system.thread.ThreadUtil;
 import icy.type.DataType;
 import icy.type.TypeUtil;
@@ -65,6 +73,7 @@ import icy.type.collection.CollectionUtil;
 import icy.type.collection.array.Array1DUtil;
 import icy.type.dimension.Dimension5D;
 import icy.type.rectangle.Rectangle5D;
+import icy.undo.AbstractIcyUndoableEdit;
 import icy.undo.IcyUndoManager;
 import icy.undo.IcyUndoableEdit;
 import icy.util.OMEUtil;
@@ -166,6 +175,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      * ROIs
      */
     protected final Set<ROI> rois;
+    /**
+     * ROIs spatial index (fast region / position queries)
+     */
+    protected final ROISpatialIndex roiIndex;
 
     /**
      * id of sequence (uniq during an Icy session)
@@ -233,6 +246,16 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     protected final List<SequenceListener> listeners;
     protected final List<SequenceModelListener> modelListeners;
 
+    /**
+     * plane pager (null if planes are kept in memory)
+     */
+    volatile PlanePager planePager;
+
+    /**
+     * channels bounds of each plane (incrementally updated)
+     */
+    final ChannelsBoundsTree planesBounds;
+
     /**
      * internals
      */
@@ -280,10 +303,16 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             MetaDataUtil.setTimeInterval(metaData, 0, 0.0d);
 
         volumetricImages = new TreeMap<Integer, VolumetricImage>();
+        planesBounds = new ChannelsBoundsTree();
         overlays = new HashSet<Overlay>();
         rois = new HashSet<ROI>();
+        roiIndex = new ROISpatialIndex();
         persistent = new SequencePersistent(this);
         undoManager = new IcyUndoManager(this, GeneralPreferences.getHistorySize());
+        // limit memory retained by data restore points (limit is shared by all sequences)
+        IcyUndoManager.setSharedMemoryLimit((SystemUtil.getJavaMaxMemory() / 100L)
+                * GeneralPreferences.getHistoryMemory());
+        undoManager.setUseSharedMemoryLimit(true);
 
         updater = new UpdateEventHandler(this, false);
         listeners = new ArrayList<SequenceListener>();
@@ -295,6 +324,8 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         channelBoundsInvalid = false;
         // automatic update of channel bounds
         autoUpdateChannelBounds = true;
+        // planes kept in memory by default
+        planePager = null;
     }
 
     /**
@@ -360,6 +391,11 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     @Override
     protected void finalize() throws Throwable
     {
+        final PlanePager pager = planePager;
+
+        // release plane store resources
+        if (pager != null)
+            pager.store.close();
 
         super.finalize();
     }
@@ -394,6 +430,12 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             ThreadUtil.sleep(10L);
         }
 
+        final PlanePager pager = planePager;
+
+        // release plane store resources (importer of virtual sequence for instance)
+        if (pager != null)
+            pager.store.close();
+
         // notify close
         fireClosedEvent();
     }
@@ -413,7 +455,15 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     }
 
     /**
-     * Copy data from the specified Sequence
+     * Copy data from the specified Sequence.<br>
+     * Planes data is shared (copy-on-write) with the source sequence: no data is copied here and
+     * reading a plane never does any copy. A plane is really copied only when its data is about to
+     * be modified in one of the sequences (see {@link IcyBufferedImage#prepareDataChange()}), the
+     * other sequence then gets the private copy.<br>
+     * Note that the sequence which didn't modify the plane gets its copy as a new
+     * {@link IcyBufferedImage} instance so, as for paged sequences (see
+     * {@link #setPlaneStore(PlaneStore, long)}), you should not keep reference on images for a long
+     * time.
      */
     public void copyDataFrom(Sequence source)
     {
@@ -428,12 +478,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             {
                 for (int z = 0; z < sizeZ; z++)
                 {
-                    final IcyBufferedImage img = source.getImage(t, z);
-
-                    if (img != null)
-                        setImage(t, z, IcyBufferedImageUtil.getCopy(img));
-                    else
-                        source.setImage(t, z, null);
+                    setSharedImage(t, z, source, t, z);
                 }
             }
         }
@@ -499,7 +544,22 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     {
         try
         {
-            undoManager.addEdit(new DataSequenceEdit(SequenceUtil.getCopy(this, false, false, false), this));
+            SequenceDataSnapshot reference = null;
+
+            // get last data snapshot so unchanged planes can be shared with it
+            final List<AbstractIcyUndoableEdit> edits = undoManager.getAllEdits();
+            for (int i = edits.size() - 1; i >= 0; i--)
+            {
+                final AbstractIcyUndoableEdit edit = edits.get(i);
+
+                if ((edit instanceof DataSequenceEdit) && (((DataSequenceEdit) edit).getSnapshot() != null))
+                {
+                    reference = ((DataSequenceEdit) edit).getSnapshot();
+                    break;
+                }
+            }
+
+            undoManager.addEdit(new DataSequenceEdit(SequenceDataSnapshot.create(this, reference), this));
             return true;
         }
         catch (Throwable t)
@@ -1525,6 +1585,22 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return (ArrayList<ROI>) getROIs(false);
     }
 
+    /**
+     * Returns ROIs attached to this sequence which intersect the specified 5D region.<br>
+     * This method uses a spatial index so it's much faster than testing all ROIs.
+     */
+    public List<ROI> getROIs(Rectangle5D region)
+    {
+        final List<ROI> result = roiIndex.getROIs(region);
+
+        // candidates are found from bounds, do the exact test now
+        for (int i = result.size() - 1; i >= 0; i--)
+            if (!result.get(i).intersects(region))
+                result.remove(i);
+
+        return result;
+    }
+
     /**
      * Returns all ROIs attached to this sequence (HashSet form)
      */
@@ -2023,6 +2099,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         {
             rois.add(roi);
         }
+        roiIndex.add(roi);
         // add listener to ROI
         roi.addListener(this);
         // notify roi added
@@ -2070,6 +2147,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             {
                 rois.remove(roi);
             }
+            roiIndex.remove(roi);
             // remove listener
             roi.removeListener(this);
             // notify roi removed
@@ -2154,6 +2232,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
                         removeOverlay(roi.getOverlay());
 
                         rois.remove(roi);
+                        roiIndex.remove(roi);
                         // remove listener
                         roi.removeListener(this);
                         // notify roi removed
@@ -2299,6 +2378,89 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return result;
     }
 
+    /**
+     * Set the {@link PlaneStore} used to page out images of this sequence.<br>
+     * When a plane store is defined, the sequence only keeps in the java heap the most recently
+     * accessed images, up to <code>maxResidentMemory</code> bytes. Others images are stored in the
+     * plane store and transparently loaded back when accessed (through {@link #getImage(int, int)},
+     * {@link #getDataXY(int, int, int)}...).<br>
+     * Note that a paged out image is restored as a new {@link IcyBufferedImage} instance so you
+     * should not keep reference on images of a paged sequence for a long time.<br>
+     * The store is owned by the sequence and closed when replaced or when the sequence is closed.
+     * 
+     * @param store
+     *        plane store to use (<code>null</code> to keep all planes in memory)
+     * @param maxResidentMemory
+     *        maximum amount of image data (in bytes) kept in the java heap
+     */
+    public void setPlaneStore(PlaneStore store, long maxResidentMemory)
+    {
+        final PlanePager oldPager = planePager;
+
+        // load back all paged out images
+        if (oldPager != null)
+            oldPager.dispose();
+
+        planePager = null;
+
+        if (store != null)
+        {
+            final PlanePager newPager = new PlanePager(this, store, maxResidentMemory);
+
+            planePager = newPager;
+            // register current images (page them out if needed)
+            newPager.init();
+        }
+    }
+
+    /**
+     * Returns the {@link PlaneStore} used to page out images of this sequence (<code>null</code> if
+     * images are kept in memory).
+     * 
+     * @see #setPlaneStore(PlaneStore, long)
+     */
+    public PlaneStore getPlaneStore()
+    {
+        final PlanePager pager = planePager;
+
+        if (pager != null)
+            return pager.store;
+
+        return null;
+    }
+
+    /**
+     * Returns the maximum amount of image data (in bytes) kept in the java heap when a
+     * {@link PlaneStore} is used (<code>-1</code> if no plane store is defined).
+     * 
+     * @see #setPlaneStore(PlaneStore, long)
+     */
+    public long getMaxResidentMemory()
+    {
+        final PlanePager pager = planePager;
+
+        if (pager != null)
+            return pager.maxResidentMemory;
+
+        return -1L;
+    }
+
+    /**
+     * Returns the amount of image data (in bytes) currently in the java heap when a {@link PlaneStore}
+     * is used (<code>-1</code> if no plane store is defined).
+     * 
+     * @see #setPlaneStore(PlaneStore, long)
+     */
+    public long getResidentMemory()
+    {
+        final PlanePager pager = planePager;
+
+        if (pager != null)
+            return pager.getResidentMemory();
+
+        return -1L;
+    }
+
     /**
      * Returns the VolumetricImage at position t
      */
@@ -2389,8 +2551,9 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
                 // get new volumetric image (remove old one if any)
                 result = setVolumetricImage(t);
 
-                for (Entry<Integer, IcyBufferedImage> entry : volImg.getImages().entrySet())
-                    setImage(t, entry.getKey().intValue(), entry.getValue());
+                // image by image so paged out images are not all loaded at once
+                for (Integer z : volImg.getPositions())
+                    setImage(t, z.intValue(), volImg.getImage(z.intValue()));
             }
             finally
             {
@@ -2507,7 +2670,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     }
 
     /**
-     * Returns all images at specified t position
+     * Returns all images at specified t position.<br>
+     * Only images currently in memory are returned when the sequence is paged (see
+     * {@link #setPlaneStore(PlaneStore, long)}), use {@link #getImage(int, int)} to access all
+     * images one by one.
      */
     public ArrayList<IcyBufferedImage> getImages(int t)
     {
@@ -2530,6 +2696,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
      * T=1 Z=0
      * ...
      * </pre>
+     * 
+     * Only images currently in memory are returned when the sequence is paged (see
+     * {@link #setPlaneStore(PlaneStore, long)}), use {@link #getImage(int, int)} to access all
+     * images one by one.
      */
     public ArrayList<IcyBufferedImage> getAllImage()
     {
@@ -2551,8 +2721,8 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     {
         if (volImg != null)
         {
-            // not the same image ?
-            if (volImg.getImage(z) != image)
+            // not the same image ? (don't need to load back a paged out image for that)
+            if (volImg.getResidentImage(z) != image)
             {
                 // this is different from removeImage as we don't remove empty VolumetricImage
                 if (image == null)
@@ -2636,6 +2806,86 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         }
     }
 
+    /**
+     * Set a stored image at the specified position.<br>
+     * The image data is not loaded at this point, it will be loaded from the sequence
+     * {@link PlaneStore} on first access (see {@link VirtualPlaneStore} for instance).<br>
+     * The plane should come from the current sequence plane store and be compatible with the
+     * sequence (the sequence should already contains at least one image).
+     * 
+     * @param t
+     *        T position
+     * @param z
+     *        Z position
+     * @param plane
+     *        the stored plane to set
+     * @see #setPlaneStore(PlaneStore, long)
+     */
+    public void setStoredImage(int t, int z, StoredPlane plane) throws IllegalArgumentException
+    {
+        if (plane == null)
+            return;
+
+        final PlanePager pager = planePager;
+
+        if ((pager == null) || (plane.getStore() != pager.store))
+            throw new IllegalArgumentException("Sequence.setStoredImage : plane doesn't come from the sequence store !");
+        if ((colorModel == null) || (plane.getSizeX() != getSizeX()) || (plane.getSizeY() != getSizeY())
+                || (plane.getSizeC() != getSizeC()) || (plane.getDataType_() != getDataType_()))
+            throw new IllegalArgumentException("Sequence.setStoredImage : plane is not compatible !");
+
+        VolumetricImage volImg = getVolumetricImage(t);
+
+        if (volImg == null)
+            volImg = setVolumetricImage(t);
+
+        volImg.setStoredPlane(z, plane);
+    }
+
+    /**
+     * Set at the specified position an image sharing (copy-on-write) the data of the image at the
+     * specified position in the source sequence (internal use only, see {@link SharedPlane}).<br>
+     * Nothing is done if the source image doesn't exist.
+     */
+    void setSharedImage(int t, int z, Sequence source, int srcT, int srcZ) throws IllegalArgumentException
+    {
+        final VolumetricImage srcVolImg = source.getVolumetricImage(srcT);
+
+        if (srcVolImg == null)
+            return;
+
+        // paged out image is loaded back here
+        final IcyBufferedImage image = srcVolImg.getImage(srcZ);
+
+        if (image == null)
+            return;
+
+        final boolean volImgCreated;
+        VolumetricImage volImg = getVolumetricImage(t);
+
+        if (volImg == null)
+        {
+            volImg = setVolumetricImage(t);
+            volImgCreated = true;
+        }
+        else
+            volImgCreated = false;
+
+        try
+        {
+            // set image
+            setImage(volImg, z, SharedPlane.share(image, srcVolImg, volImg));
+        }
+        catch (IllegalArgumentException e)
+        {
+            // image set failed ? remove empty image list if needed
+            if (volImgCreated)
+                removeAllImages(t);
+            // throw exception
+            throw e;
+        }
+    }
+
     /**
      * Add an image (image is added in Z dimension).<br>
      * This method is equivalent to <code>setImage(max(getSizeT() - 1, 0), getSizeZ(t), image)</code>
@@ -3284,28 +3534,6 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         return getDataType_().isSigned();
     }
 
-    /**
-     * Internal use only.
-     */
-    private double[][] adjustBounds(double[][] curBounds, double[][] bounds)
-    {
-        if (bounds == null)
-            return curBounds;
-
-        for (int comp = 0; comp < bounds.length; comp++)
-        {
-            final double[] compBounds = bounds[comp];
-            final double[] curCompBounds = curBounds[comp];
-
-            if (curCompBounds[0] < compBounds[0])
-                compBounds[0] = curCompBounds[0];
-            if (curCompBounds[1] > compBounds[1])
-                compBounds[1] = curCompBounds[1];
-        }
-
-        return bounds;
-    }
-
     /**
      * Recalculate all image channels bounds (min and max values).<br>
      * Internal use only.
@@ -3322,8 +3550,9 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         try
         {
             // recalculate images bounds (automatically update sequence bounds with event)
+            // paged out images keep the bounds they had when stored so we don't need to load them
             for (VolumetricImage volImg : volumes)
-                for (IcyBufferedImage img : volImg.getAllImage())
+                for (IcyBufferedImage img : volImg.getResidentImages())
                     img.updateChannelsBounds();
         }
         finally
@@ -3343,41 +3572,15 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
         if ((colorModel == null) || isEmpty())
             return;
 
-        double[][] bounds;
-
-        bounds = null;
-        // recalculate bounds from all images
-        synchronized (volumetricImages)
-        {
-            for (VolumetricImage volImg : volumetricImages.values())
-            {
-                for (IcyBufferedImage img : volImg.getAllImage())
-                {
-                    if (img != null)
-                        bounds = adjustBounds(img.getChannelsTypeBounds(), bounds);
-                }
-            }
-        }
+        // global bounds are maintained from planes bounds
+        final double[][] typeBounds = planesBounds.getTypeBounds();
+        final double[][] userBounds = planesBounds.getUserBounds();
 
         // set new computed bounds
-        colorModel.setComponentsAbsBounds(bounds);
-
-        bounds = null;
-        // recalculate user bounds from all images
-        synchronized (volumetricImages)
-        {
-            for (VolumetricImage volImg : volumetricImages.values())
-            {
-                for (IcyBufferedImage img : volImg.getAllImage())
-                {
-                    if (img != null)
-                        bounds = adjustBounds(img.getChannelsBounds(), bounds);
-                }
-            }
-        }
-
-        // set new computed bounds
-        colorModel.setComponentsUserBounds(bounds);
+        if (typeBounds != null)
+            colorModel.setComponentsAbsBounds(typeBounds);
+        if (userBounds != null)
+            colorModel.setComponentsUserBounds(userBounds);
     }
 
     /**
@@ -5937,6 +6140,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
 
         // add listener to image
         image.addListener(this);
+        planesBounds.set(image, image.getChannelsTypeBounds(), image.getChannelsBounds());
 
         // notify changed
         dataChanged(image, SequenceEventType.ADDED);
@@ -5970,11 +6174,13 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
                 colorModel.getIcyColorSpace().removeListener(oldImage.getIcyColorModel());
             // remove listener from old image
             oldImage.removeListener(this);
+            planesBounds.remove(oldImage);
             // notify about old image remove
             dataChanged(oldImage, SequenceEventType.REMOVED);
 
             // add listener to new image
             newImage.addListener(this);
+            planesBounds.set(newImage, newImage.getChannelsTypeBounds(), newImage.getChannelsBounds());
             // notify about new image added
             dataChanged(newImage, SequenceEventType.ADDED);
         }
@@ -6001,11 +6207,93 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
             colorModel.getIcyColorSpace().removeListener(image.getIcyColorModel());
         // remove listener from image
         image.removeListener(this);
+        planesBounds.remove(image);
 
         // notify changed
         dataChanged(image, SequenceEventType.REMOVED);
     }
 
+    /**
+     * Do common job on "stored image remove" here (image paged out to the plane store)
+     */
+    void onStoredImageRemoved(StoredPlane plane)
+    {
+        planesBounds.remove(plane);
+
+        // no more image ? --> release the global colorModel
+        if (isEmpty())
+            setColorModel(null);
+
+        // notify changed (paged out image has no instance anymore)
+        dataChanged(null, SequenceEventType.REMOVED);
+    }
+
+    /**
+     * Do common job on "stored image add" here (image not yet loaded from the plane store)
+     */
+    void onStoredImageAdded(StoredPlane plane)
+    {
+        // bounds can be unknown for not yet loaded virtual images
+        planesBounds.set(plane, plane.getChannelsTypeBounds(), plane.getChannelsBounds());
+
+        // notify changed (image instance doesn't exist yet)
+        dataChanged(null, SequenceEventType.ADDED);
+    }
+
+    /**
+     * The specified image (sharing its data with another sequence) has been replaced by the
+     * specified private copy (internal use only).<br>
+     * Data is identical so no data change event is sent.
+     */
+    void onSharedImageReplaced(IcyBufferedImage image, IcyBufferedImage copy)
+    {
+        onImageUnloaded(image);
+        onImageLoaded(copy);
+        planesBounds.replace(image, copy, copy.getChannelsTypeBounds(), copy.getChannelsBounds());
+    }
+
+    /**
+     * Do common job on "image loaded" here (image loaded back from the plane store)
+     */
+    void onImageLoaded(IcyBufferedImage image)
+    {
+        // share the sequence color space (see setImage(..))
+        if (colorModel != null)
+            image.getIcyColorModel().setColorSpace(colorModel.getIcyColorSpace());
+        // apply this parameter from sequence parameter
+        image.setAutoUpdateChannelBounds(getAutoUpdateChannelBounds());
+        // add listener to image
+        image.addListener(this);
+    }
+
+    /**
+     * The specified image has been paged out to the specified stored plane (internal use only).
+     */
+    void onImagePagedOut(IcyBufferedImage image, StoredPlane plane)
+    {
+        planesBounds.replace(image, plane, plane.getChannelsTypeBounds(), plane.getChannelsBounds());
+    }
+
+    /**
+     * The specified stored plane has been loaded back in the specified image (internal use only).
+     */
+    void onImagePagedIn(StoredPlane plane, IcyBufferedImage image)
+    {
+        planesBounds.replace(plane, image, image.getChannelsTypeBounds(), image.getChannelsBounds());
+    }
+
+    /**
+     * Do common job on "image unloaded" here (image paged out to the plane store)
+     */
+    void onImageUnloaded(IcyBufferedImage image)
+    {
+        // need that to avoid memory leak as we manually patch the image colorspace
+        if (colorModel != null)
+            colorModel.getIcyColorSpace().removeListener(image.getIcyColorModel());
+        // remove listener from image
+        image.removeListener(this);
+    }
+
     /**
      * fire change event
      */
@@ -6248,10 +6536,18 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     public void imageChanged(IcyBufferedImageEvent e)
     {
         final IcyBufferedImage image = e.getImage();
+        final PlanePager pager = planePager;
+
+        // image has to be stored again on page out
+        if ((pager != null) && (e.getType() != IcyBufferedImageEventType.COLORMAP_CHANGED))
+            pager.imageChanged(image);
 
         switch (e.getType())
         {
             case BOUNDS_CHANGED:
+                // update plane bounds
+                planesBounds.update(image, image.getChannelsTypeBounds(), image.getChannelsBounds());
+
                 // update sequence channel bounds
                 if (autoUpdateChannelBounds)
                 {
@@ -6278,6 +6574,10 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
     @Override
     public void roiChanged(ROIEvent event)
     {
+        // ROI bounds may have changed --> update spatial index
+        if (event.getType() == ROIEventType.ROI_CHANGED)
+            roiIndex.update(event.getSource());
+
         // notify the ROI has changed
         roiChanged(event.getSource(), SequenceEventType.CHANGED);
     }
@@ -6298,7 +6598,7 @@ public class Sequence implements SequenceModel, IcyColorModelListener, IcyBuffer
                 if (autoUpdateChannelBounds)
                 {
                     // generic CHANGED event
-                    if (event.getSource() == null)
+                    if ((event.getSource() == null) && (event.getType() == SequenceEventType.CHANGED))
                         // recalculate all images bounds and update sequence bounds
                         updateChannelsBounds(true);
                     else
@@ -27,20 +27,26 @@ import icy.math.Scaler;
 import icy.painter.Overlay;
 import icy.roi.BooleanMask2D;
 import icy.roi.ROI;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
 import icy.type.DataType;
 import icy.type.collection.array.Array1DUtil;
 import icy.type.rectangle.Rectangle5D;
 import icy.util.OMEUtil;
 import icy.util.StringUtil;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.swing.SwingConstants;
 
@@ -414,6 +420,255 @@ public class SequenceUtil
         }
     }
 
+    /**
+     * Plane processing task (see {@link SequenceUtil#processPlanes(Sequence, int, int, PlaneTask, ProgressListener)}).
+     */
+    public static interface PlaneTask
+    {
+        /**
+         * Returns the image to set at position (t, z) in the output sequence (can be <code>null</code>).<br>
+         * This method can be called concurrently from several threads so it should only read the source data.
+         */
+        public IcyBufferedImage process(int t, int z) throws Exception;
+    }
+
+    /**
+     * Compute the (t, z) planes of the output sequence in parallel.<br>
+     * Planes are computed by the specified task on the shared compute processor (see
+     * {@link ThreadUtil#getComputeProcessor()}, only a limited number of planes are computed in
+     * advance) and set in the output sequence in (t, z) order
+     * from the calling thread, inside a single <code>beginUpdate() / endUpdate()</code> block.
+     * 
+     * @param output
+     *        output sequence receiving the computed planes
+     * @param sizeT
+     *        number of frame to compute
+     * @param sizeZ
+     *        number of slice to compute (per frame)
+     * @param task
+     *        task computing a single plane
+     * @param pl
+     *        ProgressListener to indicate processing progress (can be <code>null</code>).
+     */
+    public static void processPlanes(Sequence output, int sizeT, int sizeZ, final PlaneTask task,
+            ProgressListener pl)
+    {
+        final int numPlanes = sizeT * sizeZ;
+
+        output.beginUpdate();
+        try
+        {
+            // single plane or nested call from a compute task --> process in current thread
+            if ((numPlanes <= 1) || ThreadUtil.isComputeThread())
+            {
+                for (int i = 0; i < numPlanes; i++)
+                {
+                    if (pl != null)
+                        pl.notifyProgress(i, numPlanes);
+
+                    output.setImage(i / sizeZ, i % sizeZ, processPlane(task, i / sizeZ, i % sizeZ));
+                }
+
+                return;
+            }
+
+            final Processor processor = ThreadUtil.getComputeProcessor();
+            // number of planes computed in advance (limit memory use)
+            final int window = Math.max(2, SystemUtil.getNumberOfCPUs() * 2);
+            final List<Future<IcyBufferedImage>> futures = new ArrayList<Future<IcyBufferedImage>>(numPlanes);
+
+            try
+            {
+                for (int i = 0; i < numPlanes; i++)
+                {
+                    // keep the pool busy
+                    while ((futures.size() < numPlanes) && (futures.size() < (i + window)))
+                    {
+                        final int t = futures.size() / sizeZ;
+                        final int z = futures.size() % sizeZ;
+
+                        futures.add(processor.submit(new Callable<IcyBufferedImage>()
+                        {
+                            @Override
+                            public IcyBufferedImage call() throws Exception
+                            {
+                                return task.process(t, z);
+                            }
+                        }));
+                    }
+
+                    if (pl != null)
+                        pl.notifyProgress(i, numPlanes);
+
+                    final IcyBufferedImage image = getPlane(futures.get(i));
+
+                    // release reference
+                    futures.set(i, null);
+                    output.setImage(i / sizeZ, i % sizeZ, image);
+                }
+            }
+            finally
+            {
+                // cancel remaining tasks (on error)
+                for (Future<IcyBufferedImage> future : futures)
+                    if (future != null)
+                        future.cancel(true);
+            }
+        }
+        finally
+        {
+            output.endUpdate();
+        }
+    }
+
+    /**
+     * Compute all (t, z) planes of the source sequence in the output sequence in parallel.
+     * 
+     * @see #processPlanes(Sequence, int, int, PlaneTask, ProgressListener)
+     */
+    public static void processPlanes(Sequence source, Sequence output, PlaneTask task, ProgressListener pl)
+    {
+        processPlanes(output, source.getSizeT(), source.getSizeZ(), task, pl);
+    }
+
+    private static IcyBufferedImage processPlane(PlaneTask task, int t, int z)
+    {
+        try
+        {
+            return task.process(t, z);
+        }
+        catch (RuntimeException e)
+        {
+            throw e;
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Wait for the plane result (uninterruptibly, the interrupt state is restored)
+     */
+    private static IcyBufferedImage getPlane(Future<IcyBufferedImage> future)
+    {
+        boolean interrupted = false;
+
+        try
+        {
+            while (true)
+            {
+                try
+                {
+                    return future.get();
+                }
+                catch (InterruptedException e)
+                {
+                    interrupted = true;
+                }
+            }
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            if (interrupted)
+                Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the Z positions of the existing images (in memory or paged out) at position t.
+     */
+    private static List<Integer> getPositions(Sequence sequence, int t)
+    {
+        final VolumetricImage volImg = sequence.getVolumetricImage(t);
+
+        if (volImg == null)
+            return new ArrayList<Integer>();
+
+        return new ArrayList<Integer>(volImg.getPositions());
+    }
+
+    /**
+     * Returns the [T,Z] positions (as x and y) of all existing images (in memory or paged out) in
+     * [ZT] order.
+     */
+    private static List<Point> getPositions(Sequence sequence)
+    {
+        final List<Point> result = new ArrayList<Point>();
+        final int sizeT = sequence.getSizeT();
+
+        for (int t = 0; t < sizeT; t++)
+            for (Integer z : getPositions(sequence, t))
+                result.add(new Point(t, z.intValue()));
+
+        return result;
+    }
+
+    /**
+     * Move images of the sequence.<br>
+     * <code>moves</code> maps current [T,Z] image positions (as x and y) to new positions, a
+     * missing image at a current position removes the image at the new position.<br>
+     * Images are moved one by one following the permutation cycles so no more than two images are
+     * loaded at once when the sequence is paged (see
+     * {@link Sequence#setPlaneStore(icy.image.cache.PlaneStore, long)}). An image is always
+     * removed from its old position before being set at its new position.
+     */
+    private static void moveImages(Sequence sequence, Map<Point, Point> moves)
+    {
+        final Map<Point, Point> remaining = new HashMap<Point, Point>(moves);
+
+        sequence.beginUpdate();
+        try
+        {
+            while (!remaining.isEmpty())
+            {
+                final Point start = remaining.keySet().iterator().next();
+                Point dst = remaining.remove(start);
+                IcyBufferedImage image = sequence.getImage(start.x, start.y);
+
+                sequence.removeImage(start.x, start.y);
+
+                while (dst != null)
+                {
+                    // image at destination has to be moved too ?
+                    final Point next = remaining.remove(dst);
+                    final IcyBufferedImage displaced;
+
+                    if (next != null)
+                    {
+                        displaced = sequence.getImage(dst.x, dst.y);
+                        sequence.removeImage(dst.x, dst.y);
+                    }
+                    else
+                        displaced = null;
+
+                    if (image != null)
+                        sequence.setImage(dst.x, dst.y, image);
+                    else
+                        sequence.removeImage(dst.x, dst.y);
+
+                    image = displaced;
+                    dst = next;
+                }
+            }
+        }
+        finally
+        {
+            sequence.endUpdate();
+        }
+    }
+
     /**
      * Add one or severals frames at position t.
      * 
@@ -496,39 +751,15 @@ public class SequenceUtil
         if ((t1 < 0) || (t2 < 0) || (t1 >= sizeT) || (t2 >= sizeT))
             return;
 
-        // get volume images at position t1 & t2
-        final VolumetricImage vi1 = sequence.getVolumetricImage(t1);
-        final VolumetricImage vi2 = sequence.getVolumetricImage(t2);
+        final Map<Point, Point> moves = new HashMap<Point, Point>();
 
-        sequence.beginUpdate();
-        try
-        {
-            // start by removing old volume image (if any)
-            sequence.removeAllImages(t1);
-            sequence.removeAllImages(t2);
-
-            // safe volume image copy (TODO : check if we can't direct set volume image internally)
-            if (vi1 != null)
-            {
-                final Map<Integer, IcyBufferedImage> images = vi1.getImages();
-
-                // copy images of volume image 1 at position t2
-                for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
-                    sequence.setImage(t2, entry.getKey().intValue(), entry.getValue());
-            }
-            if (vi2 != null)
-            {
-                final Map<Integer, IcyBufferedImage> images = vi2.getImages();
+        // exchange images of volume image 1 and volume image 2
+        for (Integer z : getPositions(sequence, t1))
+            moves.put(new Point(t1, z.intValue()), new Point(t2, z.intValue()));
+        for (Integer z : getPositions(sequence, t2))
+            moves.put(new Point(t2, z.intValue()), new Point(t1, z.intValue()));
 
-                // copy images of volume image 2 at position t1
-                for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
-                    sequence.setImage(t1, entry.getKey().intValue(), entry.getValue());
-            }
-        }
-        finally
-        {
-            sequence.endUpdate();
-        }
+        moveImages(sequence, moves);
     }
 
     /**
@@ -559,11 +790,13 @@ public class SequenceUtil
 
             if (vi != null)
             {
-                final TreeMap<Integer, IcyBufferedImage> images = vi.getImages();
+                final Map<Point, Point> moves = new HashMap<Point, Point>();
+
+                // move images of volume image at position newT
+                for (Integer z : vi.getPositions())
+                    moves.put(new Point(t, z.intValue()), new Point(newT, z.intValue()));
 
-                // copy images of volume image at position newT
-                for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
-                    sequence.setImage(newT, entry.getKey().intValue(), entry.getValue());
+                moveImages(sequence, moves);
 
                 // remove volume image at position t
                 sequence.removeAllImages(t);
@@ -656,34 +889,13 @@ public class SequenceUtil
     {
         final int sizeT = sequence.getSizeT();
         final int sizeZ = sequence.getSizeZ();
+        final Map<Point, Point> moves = new HashMap<Point, Point>();
 
-        final Sequence save = new Sequence();
-
-        save.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    save.setImage(t, z, sequence.getImage(t, z));
-        }
-        finally
-        {
-            save.endUpdate();
-        }
-
-        sequence.beginUpdate();
-        try
-        {
-            sequence.removeAllImages();
+        for (int t = 0; t < sizeT; t++)
+            for (int z = 0; z < sizeZ; z++)
+                moves.put(new Point(t, z), new Point(sizeT - (t + 1), z));
 
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    sequence.setImage(sizeT - (t + 1), z, save.getImage(t, z));
-        }
-        finally
-        {
-            sequence.endUpdate();
-        }
+        moveImages(sequence, moves);
     }
 
     /**
@@ -769,29 +981,15 @@ public class SequenceUtil
         if ((z1 < 0) || (z2 < 0) || (z1 >= sizeZ) || (z2 >= sizeZ))
             return;
 
-        sequence.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-            {
-                final IcyBufferedImage image1 = sequence.getImage(t, z1);
-                final IcyBufferedImage image2 = sequence.getImage(t, z2);
-
-                // set image at new position
-                if (image1 != null)
-                    sequence.setImage(t, z2, image1);
-                else
-                    sequence.removeImage(t, z2);
-                if (image2 != null)
-                    sequence.setImage(t, z1, image2);
-                else
-                    sequence.removeImage(t, z1);
-            }
-        }
-        finally
+        final Map<Point, Point> moves = new HashMap<Point, Point>();
+
+        for (int t = 0; t < sizeT; t++)
         {
-            sequence.endUpdate();
+            moves.put(new Point(t, z1), new Point(t, z2));
+            moves.put(new Point(t, z2), new Point(t, z1));
         }
+
+        moveImages(sequence, moves);
     }
 
     /**
@@ -812,29 +1010,13 @@ public class SequenceUtil
         if ((z < 0) || (z >= sizeZ) || (newZ < 0) || (z == newZ))
             return;
 
-        sequence.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-            {
-                final IcyBufferedImage image = sequence.getImage(t, z);
+        final Map<Point, Point> moves = new HashMap<Point, Point>();
 
-                if (image != null)
-                {
-                    // set image at new position
-                    sequence.setImage(t, newZ, image);
-                    // and remove image at old position z
-                    sequence.removeImage(t, z);
-                }
-                else
-                    // just set null image at new position (equivalent to no image)
-                    sequence.removeImage(t, newZ);
-            }
-        }
-        finally
-        {
-            sequence.endUpdate();
-        }
+        // a missing image at position z removes the image at new position
+        for (int t = 0; t < sizeT; t++)
+            moves.put(new Point(t, z), new Point(t, newZ));
+
+        moveImages(sequence, moves);
     }
 
     /**
@@ -929,34 +1111,13 @@ public class SequenceUtil
     {
         final int sizeT = sequence.getSizeT();
         final int sizeZ = sequence.getSizeZ();
+        final Map<Point, Point> moves = new HashMap<Point, Point>();
 
-        final Sequence save = new Sequence();
-
-        save.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    save.setImage(t, z, sequence.getImage(t, z));
-        }
-        finally
-        {
-            save.endUpdate();
-        }
-
-        sequence.beginUpdate();
-        try
-        {
-            sequence.removeAllImages();
+        for (int t = 0; t < sizeT; t++)
+            for (int z = 0; z < sizeZ; z++)
+                moves.put(new Point(t, z), new Point(t, sizeZ - (z + 1)));
 
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    sequence.setImage(t, sizeZ - (z + 1), save.getImage(t, z));
-        }
-        finally
-        {
-            sequence.endUpdate();
-        }
+        moveImages(sequence, moves);
     }
 
     /**
@@ -967,11 +1128,13 @@ public class SequenceUtil
         sequence.beginUpdate();
         try
         {
-            final List<IcyBufferedImage> images = sequence.getAllImage();
+            final List<Point> positions = getPositions(sequence);
+            final Map<Point, Point> moves = new HashMap<Point, Point>();
+
+            for (int i = 0; i < positions.size(); i++)
+                moves.put(positions.get(i), new Point(i, 0));
 
-            sequence.removeAllImages();
-            for (int i = 0; i < images.size(); i++)
-                sequence.setImage(i, 0, images.get(i));
+            moveImages(sequence, moves);
         }
         finally
         {
@@ -987,11 +1150,13 @@ public class SequenceUtil
         sequence.beginUpdate();
         try
         {
-            final List<IcyBufferedImage> images = sequence.getAllImage();
+            final List<Point> positions = getPositions(sequence);
+            final Map<Point, Point> moves = new HashMap<Point, Point>();
+
+            for (int i = 0; i < positions.size(); i++)
+                moves.put(positions.get(i), new Point(0, i));
 
-            sequence.removeAllImages();
-            for (int i = 0; i < images.size(); i++)
-                sequence.setImage(0, i, images.get(i));
+            moveImages(sequence, moves);
         }
         finally
         {
@@ -1106,8 +1271,8 @@ public class SequenceUtil
      * @param pl
      *        ProgressListener to indicate processing progress.
      */
-    public static Sequence concatC(Sequence[] sequences, int[] channels, boolean fillEmpty, boolean rescale,
-            ProgressListener pl)
+    public static Sequence concatC(final Sequence[] sequences, final int[] channels, final boolean fillEmpty,
+            final boolean rescale, ProgressListener pl)
     {
         final int sizeX = getMaxDim(sequences, DimensionId.X);
         final int sizeY = getMaxDim(sequences, DimensionId.Y);
@@ -1120,20 +1285,14 @@ public class SequenceUtil
             result.setMetaData(OMEUtil.createOMEMetadata(sequences[0].getMetadata()));
         result.setName("C Merge");
 
-        int ind = 0;
-        for (int t = 0; t < sizeT; t++)
+        processPlanes(result, sizeT, sizeZ, new PlaneTask()
         {
-            for (int z = 0; z < sizeZ; z++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                if (pl != null)
-                    pl.notifyProgress(ind, sizeT * sizeZ);
-
-                result.setImage(t, z,
-                        MergeCHelper.getImage(sequences, channels, sizeX, sizeY, t, z, fillEmpty, rescale));
-
-                ind++;
+                return MergeCHelper.getImage(sequences, channels, sizeX, sizeY, t, z, fillEmpty, rescale);
             }
-        }
+        }, pl);
 
         int c = 0;
         for (Sequence seq : sequences)
@@ -1212,8 +1371,8 @@ public class SequenceUtil
      * @param pl
      *        ProgressListener to indicate processing progress.
      */
-    public static Sequence concatZ(Sequence[] sequences, boolean interlaced, boolean fillEmpty, boolean rescale,
-            ProgressListener pl)
+    public static Sequence concatZ(final Sequence[] sequences, final boolean interlaced, final boolean fillEmpty,
+            final boolean rescale, ProgressListener pl)
     {
         final int sizeX = getMaxDim(sequences, DimensionId.X);
         final int sizeY = getMaxDim(sequences, DimensionId.Y);
@@ -1230,20 +1389,15 @@ public class SequenceUtil
             result.setMetaData(OMEUtil.createOMEMetadata(sequences[0].getMetadata()));
         result.setName("Z Merge");
 
-        int ind = 0;
-        for (int t = 0; t < sizeT; t++)
+        processPlanes(result, sizeT, sizeZ, new PlaneTask()
         {
-            for (int z = 0; z < sizeZ; z++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                if (pl != null)
-                    pl.notifyProgress(ind, sizeT * sizeZ);
-
-                result.setImage(t, z, IcyBufferedImageUtil.getCopy(MergeZHelper.getImage(sequences, sizeX, sizeY,
-                        sizeC, t, z, interlaced, fillEmpty, rescale)));
-
-                ind++;
+                return IcyBufferedImageUtil.getCopy(MergeZHelper.getImage(sequences, sizeX, sizeY, sizeC, t, z,
+                        interlaced, fillEmpty, rescale));
             }
-        }
+        }, pl);
 
         return result;
     }
@@ -1295,8 +1449,8 @@ public class SequenceUtil
      * @param pl
      *        ProgressListener to indicate processing progress.
      */
-    public static Sequence concatT(Sequence[] sequences, boolean interlaced, boolean fillEmpty, boolean rescale,
-            ProgressListener pl)
+    public static Sequence concatT(final Sequence[] sequences, final boolean interlaced, final boolean fillEmpty,
+            final boolean rescale, ProgressListener pl)
     {
         final int sizeX = getMaxDim(sequences, DimensionId.X);
         final int sizeY = getMaxDim(sequences, DimensionId.Y);
@@ -1313,20 +1467,15 @@ public class SequenceUtil
             result.setMetaData(OMEUtil.createOMEMetadata(sequences[0].getMetadata()));
         result.setName("T Merge");
 
-        int ind = 0;
-        for (int t = 0; t < sizeT; t++)
+        processPlanes(result, sizeT, sizeZ, new PlaneTask()
         {
-            for (int z = 0; z < sizeZ; z++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                if (pl != null)
-                    pl.notifyProgress(ind, sizeT * sizeZ);
-
-                result.setImage(t, z, IcyBufferedImageUtil.getCopy(MergeTHelper.getImage(sequences, sizeX, sizeY,
-                        sizeC, t, z, interlaced, fillEmpty, rescale)));
-
-                ind++;
+                return IcyBufferedImageUtil.getCopy(MergeTHelper.getImage(sequences, sizeX, sizeY, sizeC, t, z,
+                        interlaced, fillEmpty, rescale));
             }
-        }
+        }, pl);
 
         return result;
     }
@@ -1427,21 +1576,18 @@ public class SequenceUtil
      * @deprecated Use {@link #extractChannels(Sequence, int...)} instead.
      */
     @Deprecated
-    public static Sequence extractChannels(Sequence source, List<Integer> channels)
+    public static Sequence extractChannels(final Sequence source, final List<Integer> channels)
     {
         final Sequence outSequence = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
-        outSequence.beginUpdate();
-        try
-        {
-            for (int t = 0; t < source.getSizeT(); t++)
-                for (int z = 0; z < source.getSizeZ(); z++)
-                    outSequence.setImage(t, z, IcyBufferedImageUtil.extractChannels(source.getImage(t, z), channels));
-        }
-        finally
+        processPlanes(source, outSequence, new PlaneTask()
         {
-            outSequence.endUpdate();
-        }
+            @Override
+            public IcyBufferedImage process(int t, int z)
+            {
+                return IcyBufferedImageUtil.extractChannels(source.getImage(t, z), channels);
+            }
+        }, null);
 
         // sequence name
         if (channels.size() > 1)
@@ -1475,24 +1621,19 @@ public class SequenceUtil
      *        Channel indexes to extract from the source sequence.
      * @return Sequence
      */
-    public static Sequence extractChannels(Sequence source, int... channels)
+    public static Sequence extractChannels(final Sequence source, final int... channels)
     {
         final Sequence outSequence = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
-        final int sizeT = source.getSizeT();
-        final int sizeZ = source.getSizeZ();
         final int sizeC = source.getSizeC();
 
-        outSequence.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    outSequence.setImage(t, z, IcyBufferedImageUtil.extractChannels(source.getImage(t, z), channels));
-        }
-        finally
+        processPlanes(source, outSequence, new PlaneTask()
         {
-            outSequence.endUpdate();
-        }
+            @Override
+            public IcyBufferedImage process(int t, int z)
+            {
+                return IcyBufferedImageUtil.extractChannels(source.getImage(t, z), channels);
+            }
+        }, null);
 
         final OMEXMLMetadataImpl metadata = outSequence.getMetadata();
 
@@ -1559,7 +1700,7 @@ public class SequenceUtil
         try
         {
             for (int t = 0; t < source.getSizeT(); t++)
-                outSequence.setImage(t, 0, source.getImage(t, z));
+                outSequence.setSharedImage(t, 0, source, t, z);
         }
         finally
         {
@@ -1588,7 +1729,7 @@ public class SequenceUtil
         try
         {
             for (int z = 0; z < source.getSizeZ(); z++)
-                outSequence.setImage(0, z, source.getImage(t, z));
+                outSequence.setSharedImage(0, z, source, t, z);
         }
         finally
         {
@@ -1666,40 +1807,30 @@ public class SequenceUtil
      * @deprecated Use {@link #convertType(Sequence, DataType, Scaler[])} instead.
      */
     @Deprecated
-    public static Sequence convertToType(Sequence source, DataType dataType, Scaler scaler)
+    public static Sequence convertToType(final Sequence source, final DataType dataType, final Scaler scaler)
     {
         final Sequence output = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
-        output.beginUpdate();
-        try
+        processPlanes(source, output, new PlaneTask()
         {
-            for (int t = 0; t < source.getSizeT(); t++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                for (int z = 0; z < source.getSizeZ(); z++)
-                {
-                    final IcyBufferedImage converted = IcyBufferedImageUtil.convertToType(source.getImage(t, z),
-                            dataType, scaler);
-
-                    // FIXME : why we did that ??
-                    // this is not a good idea to force bounds when rescale = false
+                // FIXME : why we did that ??
+                // this is not a good idea to force bounds when rescale = false
 
-                    // set bounds manually for the converted image
-                    // for (int c = 0; c < getSizeC(); c++)
-                    // {
-                    // converted.setComponentBounds(c, boundsDst);
-                    // converted.setComponentUserBounds(c, boundsDst);
-                    // }
+                // set bounds manually for the converted image
+                // for (int c = 0; c < getSizeC(); c++)
+                // {
+                // converted.setComponentBounds(c, boundsDst);
+                // converted.setComponentUserBounds(c, boundsDst);
+                // }
 
-                    output.setImage(t, z, converted);
-                }
+                return IcyBufferedImageUtil.convertToType(source.getImage(t, z), dataType, scaler);
             }
+        }, null);
 
-            output.setName(source.getName() + " (" + output.getDataType_() + ")");
-        }
-        finally
-        {
-            output.endUpdate();
-        }
+        output.setName(source.getName() + " (" + output.getDataType_() + ")");
 
         return output;
     }
@@ -1717,40 +1848,30 @@ public class SequenceUtil
      *        Can be set to <code>null</code> to avoid value conversion.
      * @return converted image
      */
-    public static Sequence convertType(Sequence source, DataType dataType, Scaler[] scalers)
+    public static Sequence convertType(final Sequence source, final DataType dataType, final Scaler[] scalers)
     {
         final Sequence output = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
-        output.beginUpdate();
-        try
+        processPlanes(source, output, new PlaneTask()
         {
-            for (int t = 0; t < source.getSizeT(); t++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                for (int z = 0; z < source.getSizeZ(); z++)
-                {
-                    final IcyBufferedImage converted = IcyBufferedImageUtil.convertType(source.getImage(t, z),
-                            dataType, scalers);
-
-                    // FIXME : why we did that ??
-                    // this is not a good idea to force bounds when rescale = false
+                // FIXME : why we did that ??
+                // this is not a good idea to force bounds when rescale = false
 
-                    // set bounds manually for the converted image
-                    // for (int c = 0; c < getSizeC(); c++)
-                    // {
-                    // converted.setComponentBounds(c, boundsDst);
-                    // converted.setComponentUserBounds(c, boundsDst);
-                    // }
+                // set bounds manually for the converted image
+                // for (int c = 0; c < getSizeC(); c++)
+                // {
+                // converted.setComponentBounds(c, boundsDst);
+                // converted.setComponentUserBounds(c, boundsDst);
+                // }
 
-                    output.setImage(t, z, converted);
-                }
+                return IcyBufferedImageUtil.convertType(source.getImage(t, z), dataType, scalers);
             }
+        }, null);
 
-            output.setName(source.getName() + " (" + output.getDataType_() + ")");
-        }
-        finally
-        {
-            output.endUpdate();
-        }
+        output.setName(source.getName() + " (" + output.getDataType_() + ")");
 
         return output;
     }
@@ -1769,24 +1890,19 @@ public class SequenceUtil
      * @param filterType
      *        filter resampling method used
      */
-    public static Sequence rotate(Sequence source, double xOrigin, double yOrigin, double angle, FilterType filterType)
+    public static Sequence rotate(final Sequence source, final double xOrigin, final double yOrigin,
+            final double angle, final FilterType filterType)
     {
-        final int sizeT = source.getSizeT();
-        final int sizeZ = source.getSizeZ();
         final Sequence result = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
-        result.beginUpdate();
-        try
-        {
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    result.setImage(t, z,
-                            IcyBufferedImageUtil.rotate(source.getImage(t, z), xOrigin, yOrigin, angle, filterType));
-        }
-        finally
+        processPlanes(source, result, new PlaneTask()
         {
-            result.endUpdate();
-        }
+            @Override
+            public IcyBufferedImage process(int t, int z)
+            {
+                return IcyBufferedImageUtil.rotate(source.getImage(t, z), xOrigin, yOrigin, angle, filterType);
+            }
+        }, null);
 
         result.setName(source.getName() + " (rotated)");
 
@@ -1843,25 +1959,20 @@ public class SequenceUtil
      * @param filterType
      *        filter method used for scale (used only if resizeContent is true)
      */
-    public static Sequence scale(Sequence source, int width, int height, boolean resizeContent, int xAlign, int yAlign,
-            FilterType filterType)
+    public static Sequence scale(final Sequence source, final int width, final int height,
+            final boolean resizeContent, final int xAlign, final int yAlign, final FilterType filterType)
     {
-        final int sizeT = source.getSizeT();
-        final int sizeZ = source.getSizeZ();
         final Sequence result = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
-        result.beginUpdate();
-        try
+        processPlanes(source, result, new PlaneTask()
         {
-            for (int t = 0; t < sizeT; t++)
-                for (int z = 0; z < sizeZ; z++)
-                    result.setImage(t, z, IcyBufferedImageUtil.scale(source.getImage(t, z), width, height,
-                            resizeContent, xAlign, yAlign, filterType));
-        }
-        finally
-        {
-            result.endUpdate();
-        }
+            @Override
+            public IcyBufferedImage process(int t, int z)
+            {
+                return IcyBufferedImageUtil.scale(source.getImage(t, z), width, height, resizeContent, xAlign,
+                        yAlign, filterType);
+            }
+        }, null);
 
         result.setName(source.getName() + " (resized)");
         // content was resized ?
@@ -1925,7 +2036,7 @@ public class SequenceUtil
     /**
      * Creates a new sequence from the specified region of the source sequence.
      */
-    public static Sequence getSubSequence(Sequence source, Rectangle5D.Integer region)
+    public static Sequence getSubSequence(final Sequence source, final Rectangle5D.Integer region)
     {
         final Sequence result = new Sequence(OMEUtil.createOMEMetadata(source.getMetadata()));
 
@@ -1956,33 +2067,52 @@ public class SequenceUtil
             endT = Math.min(source.getSizeT(), region.t + region.sizeT);
         }
 
-        result.beginUpdate();
-        try
+        processPlanes(result, Math.max(0, endT - startT), Math.max(0, endZ - startZ), new PlaneTask()
         {
-            for (int t = startT; t < endT; t++)
+            @Override
+            public IcyBufferedImage process(int t, int z)
             {
-                for (int z = startZ; z < endZ; z++)
-                {
-                    final IcyBufferedImage img = source.getImage(t, z);
+                final IcyBufferedImage img = source.getImage(t + startT, z + startZ);
 
-                    if (img != null)
-                        result.setImage(t - startT, z - startZ,
-                                IcyBufferedImageUtil.getSubImage(img, region2d, region.c, region.sizeC));
-                    else
-                        result.setImage(t - startT, z - startZ, null);
-                }
+                if (img != null)
+                    return IcyBufferedImageUtil.getSubImage(img, region2d, region.c, region.sizeC);
+
+                return null;
             }
-        }
-        finally
-        {
-            result.endUpdate();
-        }
+        }, null);
 
         result.setName(source.getName() + " (crop)");
 
         return result;
     }
 
+    /**
+     * Returns a view on the specified region of the source sequence (no data copy).<br>
+     * Contrary to {@link #getSubSequence(Sequence, icy.type.rectangle.Rectangle5D.Integer)} the
+     * returned view directly accesses the source sequence data.
+     * 
+     * @param readOnly
+     *        if <code>false</code> then modifications done through the view are written in the
+     *        source sequence
+     */
+    public static SequenceView getSubSequenceView(Sequence source, Rectangle5D.Integer region, boolean readOnly)
+    {
+        if (source == null)
+            return null;
+
+        return new SequenceView(source, region, readOnly);
+    }
+
+    /**
+     * Returns a read only view on the specified region of the source sequence (no data copy).
+     * 
+     * @see #getSubSequenceView(Sequence, icy.type.rectangle.Rectangle5D.Integer, boolean)
+     */
+    public static SequenceView getSubSequenceView(Sequence source, Rectangle5D.Integer region)
+    {
+        return getSubSequenceView(source, region, true);
+    }
+
     /**
      * @deprecated Use {@link #getSubSequence(Sequence, icy.type.rectangle.Rectangle5D.Integer)} instead.
      */
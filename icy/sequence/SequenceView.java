@@ -0,0 +1,206 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImageView;
+import icy.type.DataType;
+import icy.type.rectangle.Rectangle5D;
+
+import java.awt.Rectangle;
+
+/**
+ * Zero-copy view on a 5D region of a {@link Sequence}.<br>
+ * The view does not copy any pixel data: all accessors read (and write if the view is not read
+ * only) directly the data of the source sequence images, view coordinates are relative to the
+ * region origin.<br>
+ * Use {@link #getImage(int, int)} to get a stride aware view on a single plane.<br>
+ * <b>If the source sequence size or type is modified the view becomes invalid.</b>
+ *
+ * @see SequenceUtil#getSubSequenceView(Sequence, Rectangle5D.Integer, boolean)
+ * @author Stephane
+ */
+public class SequenceView
+{
+    protected final Sequence sequence;
+    protected final Rectangle5D.Integer bounds;
+    protected final Rectangle boundsXY;
+    protected final boolean readOnly;
+
+    /**
+     * Create a view on the specified region of the source sequence.
+     *
+     * @param sequence
+     *        source sequence
+     * @param region
+     *        5D region of the view (clipped to sequence bounds)
+     * @param readOnly
+     *        if <code>true</code> then any attempt to modify data through the view throws an
+     *        {@link UnsupportedOperationException}
+     */
+    public SequenceView(Sequence sequence, Rectangle5D.Integer region, boolean readOnly)
+    {
+        super();
+
+        this.sequence = sequence;
+        this.readOnly = readOnly;
+
+        bounds = (Rectangle5D.Integer) sequence.getBounds5D().createIntersection(region);
+        if (bounds.isEmpty())
+        {
+            bounds.sizeX = 0;
+            bounds.sizeY = 0;
+            bounds.sizeZ = 0;
+            bounds.sizeT = 0;
+            bounds.sizeC = 0;
+        }
+
+        boundsXY = new Rectangle(bounds.x, bounds.y, bounds.sizeX, bounds.sizeY);
+    }
+
+    /**
+     * Returns the source sequence.
+     */
+    public Sequence getSequence()
+    {
+        return sequence;
+    }
+
+    /**
+     * Returns the view region in source sequence coordinates.
+     */
+    public Rectangle5D.Integer getBounds5D()
+    {
+        return new Rectangle5D.Integer(bounds);
+    }
+
+    /**
+     * Returns <code>true</code> if data cannot be modified through this view.
+     */
+    public boolean isReadOnly()
+    {
+        return readOnly;
+    }
+
+    /**
+     * Returns <code>true</code> if the view is empty (region outside the sequence).
+     */
+    public boolean isEmpty()
+    {
+        return bounds.isEmpty();
+    }
+
+    public int getSizeX()
+    {
+        return bounds.sizeX;
+    }
+
+    public int getSizeY()
+    {
+        return bounds.sizeY;
+    }
+
+    public int getSizeZ()
+    {
+        return bounds.sizeZ;
+    }
+
+    public int getSizeT()
+    {
+        return bounds.sizeT;
+    }
+
+    public int getSizeC()
+    {
+        return bounds.sizeC;
+    }
+
+    public DataType getDataType_()
+    {
+        return sequence.getDataType_();
+    }
+
+    public boolean isSignedDataType()
+    {
+        return sequence.isSignedDataType();
+    }
+
+    /**
+     * Returns a view on the image located at the specified (t, z) view position (<code>null</code>
+     * if there is no image at this position).
+     */
+    public IcyBufferedImageView getImage(int t, int z)
+    {
+        if ((t < 0) || (z < 0) || (t >= bounds.sizeT) || (z >= bounds.sizeZ))
+            return null;
+
+        final IcyBufferedImage image = sequence.getImage(bounds.t + t, bounds.z + z);
+
+        if (image == null)
+            return null;
+
+        return new IcyBufferedImageView(image, boundsXY, bounds.c, bounds.sizeC, readOnly);
+    }
+
+    /**
+     * Returns the data value located at view position (t, z, c, y, x) as double.<br>
+     * It returns 0 if value is not found.
+     */
+    public double getData(int t, int z, int c, int y, int x)
+    {
+        final IcyBufferedImageView image = getImage(t, z);
+
+        if (image != null)
+            return image.getData(x, y, c);
+
+        return 0d;
+    }
+
+    /**
+     * Set the data value located at view position (t, z, c, y, x).
+     */
+    public void setData(int t, int z, int c, int y, int x, double value)
+    {
+        if (readOnly)
+            throw new UnsupportedOperationException("Cannot modify data of a read only sequence view.");
+
+        final IcyBufferedImageView image = getImage(t, z);
+
+        if (image != null)
+            image.setData(x, y, c, value);
+    }
+
+    /**
+     * Returns a data span iterator on the whole view region.<br>
+     * Note that the iterator gives direct access to source data (read only state is not checked)
+     * and returns positions in source sequence coordinates.
+     */
+    public SequenceDataSpanIterator getSpanIterator()
+    {
+        return new SequenceDataSpanIterator(sequence, bounds);
+    }
+
+    /**
+     * Returns a new sequence containing a copy of the view data.
+     */
+    public Sequence getCopy()
+    {
+        return SequenceUtil.getSubSequence(sequence, bounds);
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence;
+
+import icy.image.IcyBufferedImage;
+import icy.image.IcyBufferedImage.DataShareHandler;
+import icy.image.IcyBufferedImageUtil;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Group of images sharing the same data (copy-on-write) in different sequences (see
+ * {@link Sequence#copyDataFrom(Sequence)}).<br>
+ * Each image of the group is a distinct instance (with its own color model) using the same raster
+ * (see {@link IcyBufferedImage#createSharingImage()}) so reading a shared image never does any
+ * copy. When one of the images is about to be modified (see
+ * {@link IcyBufferedImage#prepareDataChange()}) the other images of the group are replaced in their
+ * sequence by a private copy of the still unmodified data and the group is dissolved.<br>
+ * Images and volumes are weakly referenced so a discarded sequence doesn't keep shared data alive
+ * nor receive a private copy.
+ *
+ * @author Stephane
+ */
+class SharedPlane implements DataShareHandler
+{
+    private static class Member
+    {
+        final WeakReference<IcyBufferedImage> image;
+        final WeakReference<VolumetricImage> volume;
+
+        Member(IcyBufferedImage image, VolumetricImage volume)
+        {
+            super();
+
+            this.image = new WeakReference<IcyBufferedImage>(image);
+            this.volume = new WeakReference<VolumetricImage>(volume);
+        }
+    }
+
+    /**
+     * global lock for all groups (groups are created, merged and dissolved under this lock)
+     */
+    private static final Object lock = new Object();
+
+    /**
+     * images sharing the data
+     */
+    private final List<Member> members;
+
+    private SharedPlane()
+    {
+        super();
+
+        members = new ArrayList<Member>(2);
+    }
+
+    /**
+     * Creates and returns a new image sharing the data of the specified image (belonging to
+     * <code>imageVolume</code>).<br>
+     * The returned image should be set in <code>volume</code>.
+     */
+    static IcyBufferedImage share(IcyBufferedImage image, VolumetricImage imageVolume, VolumetricImage volume)
+    {
+        final IcyBufferedImage result = image.createSharingImage();
+
+        synchronized (lock)
+        {
+            final DataShareHandler handler = image.getDataShareHandler();
+            final SharedPlane plane;
+
+            // image already shared ? --> join its group
+            if (handler instanceof SharedPlane)
+                plane = (SharedPlane) handler;
+            else
+            {
+                plane = new SharedPlane();
+                plane.members.add(new Member(image, imageVolume));
+                image.setDataShareHandler(plane);
+            }
+
+            plane.members.add(new Member(result, volume));
+            result.setDataShareHandler(plane);
+        }
+
+        return result;
+    }
+
+    @Override
+    public void dataWillChange(IcyBufferedImage image)
+    {
+        final List<VolumetricImage> volumes = new ArrayList<VolumetricImage>();
+        final List<IcyBufferedImage> images = new ArrayList<IcyBufferedImage>();
+        final List<IcyBufferedImage> copies = new ArrayList<IcyBufferedImage>();
+
+        synchronized (lock)
+        {
+            // group already dissolved
+            if (image.getDataShareHandler() != this)
+                return;
+
+            for (Member member : members)
+            {
+                final IcyBufferedImage img = member.image.get();
+
+                if (img == null)
+                    continue;
+
+                img.setDataShareHandler(null);
+
+                final VolumetricImage volume = member.volume.get();
+
+                // data is still unmodified here so we can copy it for the other images
+                if ((img != image) && (volume != null))
+                {
+                    volumes.add(volume);
+                    images.add(img);
+                    copies.add(IcyBufferedImageUtil.getCopy(img));
+                }
+            }
+
+            members.clear();
+        }
+
+        // give their private copy to the other sequences (released or removed images are ignored)
+        for (int i = 0; i < volumes.size(); i++)
+            volumes.get(i).replaceSharedImage(images.get(i), copies.get(i));
+    }
+}
@@ -19,10 +19,12 @@
 package icy.sequence;
 
 import icy.image.IcyBufferedImage;
+import icy.image.cache.StoredPlane;
 
 import java.util.ArrayList;
 import java.util.Map.Entry;
 import java.util.TreeMap;
+import java.util.TreeSet;
 
 /**
  * @author Fabrice de Chaumont
@@ -31,11 +33,16 @@ public class VolumetricImage
 {
     protected final Sequence sequence;
     protected final TreeMap<Integer, IcyBufferedImage> images;
+    /**
+     * planes paged out to the sequence plane store (see {@link Sequence#setPlaneStore})
+     */
+    protected final TreeMap<Integer, StoredPlane> storedImages;
 
     public VolumetricImage(Sequence seq)
     {
         sequence = seq;
         images = new TreeMap<Integer, IcyBufferedImage>();
+        storedImages = new TreeMap<Integer, StoredPlane>();
     }
 
     public VolumetricImage()
@@ -43,6 +50,14 @@ public class VolumetricImage
         this(null);
     }
 
+    PlanePager getPager()
+    {
+        if (sequence != null)
+            return sequence.planePager;
+
+        return null;
+    }
+
     /**
      * Return number of loaded image
      */
@@ -55,6 +70,9 @@ public class VolumetricImage
             for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
                 if (entry.getValue() != null)
                     result++;
+
+            // paged out images are still loaded images
+            result += storedImages.size();
         }
 
         return result;
@@ -67,10 +85,14 @@ public class VolumetricImage
     {
         synchronized (images)
         {
-            if (images.isEmpty())
-                return 0;
+            int result = 0;
 
-            return images.lastKey().intValue() + 1;
+            if (!images.isEmpty())
+                result = images.lastKey().intValue() + 1;
+            if (!storedImages.isEmpty())
+                result = Math.max(result, storedImages.lastKey().intValue() + 1);
+
+            return result;
         }
     }
 
@@ -83,32 +105,41 @@ public class VolumetricImage
     }
 
     /**
-     * Return the first image
+     * Returns all z positions (resident and paged out images)
      */
-    public IcyBufferedImage getFirstImage()
+    protected TreeSet<Integer> getPositions()
     {
-        final Entry<Integer, IcyBufferedImage> entry;
-
         synchronized (images)
         {
-            entry = images.firstEntry();
+            final TreeSet<Integer> result = new TreeSet<Integer>(images.keySet());
+
+            result.addAll(storedImages.keySet());
+
+            return result;
         }
+    }
+
+    /**
+     * Return the first image
+     */
+    public IcyBufferedImage getFirstImage()
+    {
+        final TreeSet<Integer> positions = getPositions();
 
-        if (entry != null)
-            return entry.getValue();
+        if (!positions.isEmpty())
+            return getImage(positions.first().intValue());
 
         return null;
     }
 
     public IcyBufferedImage getFirstNonNullImage()
     {
-        synchronized (images)
+        for (Integer z : getPositions())
         {
-            for (IcyBufferedImage img : images.values())
-            {
-                if (img != null)
-                    return img;
-            }
+            final IcyBufferedImage img = getImage(z.intValue());
+
+            if (img != null)
+                return img;
         }
 
         return null;
@@ -119,23 +150,54 @@ public class VolumetricImage
      */
     public IcyBufferedImage getLastImage()
     {
-        final Entry<Integer, IcyBufferedImage> entry;
+        final TreeSet<Integer> positions = getPositions();
+
+        if (!positions.isEmpty())
+            return getImage(positions.last().intValue());
+
+        return null;
+    }
+
+    /**
+     * Return image at position z.<br>
+     * If the image has been paged out to the sequence plane store it is transparently loaded back.
+     */
+    public IcyBufferedImage getImage(int z)
+    {
+        final Integer key = Integer.valueOf(z);
+        final IcyBufferedImage result;
+        final StoredPlane stored;
 
         synchronized (images)
         {
-            entry = images.lastEntry();
+            result = images.get(key);
+            if (result == null)
+                stored = storedImages.get(key);
+            else
+                stored = null;
+        }
+
+        final PlanePager pager = getPager();
+
+        if (result != null)
+        {
+            // update LRU order
+            if (pager != null)
+                pager.imageAccessed(result);
+
+            return result;
         }
 
-        if (entry != null)
-            return entry.getValue();
+        if ((stored != null) && (pager != null))
+            return pager.load(this, z, stored);
 
         return null;
     }
 
     /**
-     * Return image at position z
+     * Return image at position z only if it is currently in memory (no paging).
      */
-    public IcyBufferedImage getImage(int z)
+    IcyBufferedImage getResidentImage(int z)
     {
         synchronized (images)
         {
@@ -143,11 +205,148 @@ public class VolumetricImage
         }
     }
 
+    /**
+     * Return the paged out image at position z (<code>null</code> if the image is in memory or
+     * doesn't exist).
+     */
+    StoredPlane getStoredPlane(int z)
+    {
+        synchronized (images)
+        {
+            return storedImages.get(Integer.valueOf(z));
+        }
+    }
+
+    /**
+     * Return all images currently in memory (paged out images are ignored)
+     */
+    ArrayList<IcyBufferedImage> getResidentImages()
+    {
+        final ArrayList<IcyBufferedImage> result = new ArrayList<IcyBufferedImage>();
+
+        synchronized (images)
+        {
+            for (IcyBufferedImage image : images.values())
+                if (image != null)
+                    result.add(image);
+        }
+
+        return result;
+    }
+
+    /**
+     * Replace the specified image (sharing its data with another sequence) by the specified private
+     * copy (internal use only, see {@link SharedPlane}).
+     *
+     * @return <code>false</code> if the image is not anymore part of this volume
+     */
+    boolean replaceSharedImage(IcyBufferedImage image, IcyBufferedImage copy)
+    {
+        boolean found = false;
+
+        synchronized (images)
+        {
+            for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
+            {
+                if (entry.getValue() == image)
+                {
+                    entry.setValue(copy);
+
+                    if (sequence != null)
+                        sequence.onSharedImageReplaced(image, copy);
+
+                    found = true;
+                    break;
+                }
+            }
+        }
+
+        if (!found)
+            return false;
+
+        final PlanePager pager = getPager();
+
+        // page out other images if needed
+        if (pager != null)
+        {
+            pager.imageRemoved(image);
+            pager.imageAdded(this, copy, null);
+        }
+
+        return true;
+    }
+
+    /**
+     * Return all paged out images (as TreeMap, contains z position)
+     */
+    TreeMap<Integer, StoredPlane> getStoredPlanes()
+    {
+        synchronized (images)
+        {
+            return new TreeMap<Integer, StoredPlane>(storedImages);
+        }
+    }
+
+    /**
+     * Page out the specified image (internal use only).
+     *
+     * @return <code>false</code> if the image is not anymore part of this volume
+     */
+    boolean unloadImage(IcyBufferedImage image, StoredPlane stored)
+    {
+        synchronized (images)
+        {
+            for (Entry<Integer, IcyBufferedImage> entry : images.entrySet())
+            {
+                if (entry.getValue() == image)
+                {
+                    final Integer key = entry.getKey();
+
+                    images.remove(key);
+                    storedImages.put(key, stored);
+
+                    if (sequence != null)
+                        sequence.onImagePagedOut(image, stored);
+
+                    return true;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Restore a paged out image (internal use only).
+     *
+     * @return <code>false</code> if the stored plane is not anymore part of this volume
+     */
+    boolean restoreImage(int z, StoredPlane stored, IcyBufferedImage image)
+    {
+        final Integer key = Integer.valueOf(z);
+
+        synchronized (images)
+        {
+            if (storedImages.get(key) != stored)
+                return false;
+
+            storedImages.remove(key);
+            images.put(key, image);
+
+            if (sequence != null)
+                sequence.onImagePagedIn(stored, image);
+        }
+
+        return true;
+    }
+
     /**
      * Remove all image
      */
     public void clear()
     {
+        final PlanePager pager = getPager();
+
         if (sequence != null)
             sequence.beginUpdate();
 
@@ -160,7 +359,22 @@ public class VolumetricImage
                     final IcyBufferedImage image = images.pollFirstEntry().getValue();
                     // raise event on sequence
                     if ((image != null) && (sequence != null))
+                    {
+                        if (pager != null)
+                            pager.imageRemoved(image);
                         sequence.onImageRemoved(image);
+                    }
+                }
+                while (!storedImages.isEmpty())
+                {
+                    final StoredPlane plane = storedImages.pollFirstEntry().getValue();
+                    // raise event on sequence
+                    if (sequence != null)
+                    {
+                        if (pager != null)
+                            pager.storedRemoved(plane);
+                        sequence.onStoredImageRemoved(plane);
+                    }
                 }
             }
         }
@@ -177,27 +391,42 @@ public class VolumetricImage
     public boolean removeImage(int z)
     {
         final IcyBufferedImage image;
+        final StoredPlane plane;
 
         synchronized (images)
         {
             image = images.remove(Integer.valueOf(z));
+            plane = storedImages.remove(Integer.valueOf(z));
         }
 
+        final PlanePager pager = getPager();
+
         // raise event on sequence
         if ((image != null) && (sequence != null))
+        {
+            if (pager != null)
+                pager.imageRemoved(image);
             sequence.onImageRemoved(image);
+        }
+        if ((plane != null) && (sequence != null))
+        {
+            if (pager != null)
+                pager.storedRemoved(plane);
+            sequence.onStoredImageRemoved(plane);
+        }
 
-        return image != null;
+        return (image != null) || (plane != null);
     }
 
     /**
      * Set an image at the specified position
-     * 
+     *
      * @param image
      */
     public void setImage(int z, IcyBufferedImage image)
     {
-        final IcyBufferedImage oldImg = getImage(z);
+        final IcyBufferedImage oldImg;
+        final StoredPlane oldPlane;
 
         if (sequence != null)
             sequence.beginUpdate();
@@ -206,17 +435,85 @@ public class VolumetricImage
             // set the new image
             synchronized (images)
             {
-                images.put(Integer.valueOf(z), image);
+                oldImg = images.put(Integer.valueOf(z), image);
+                // replacing a paged out image ? (no need to load it back)
+                oldPlane = storedImages.remove(Integer.valueOf(z));
             }
 
             // raise event on sequence
             if (sequence != null)
             {
+                final PlanePager pager = getPager();
+
+                if (pager != null)
+                {
+                    if (oldImg != null)
+                        pager.imageRemoved(oldImg);
+                    if (oldPlane != null)
+                        pager.storedRemoved(oldPlane);
+                }
+
                 // we are replacing a previous image ?
                 if (oldImg != null)
                     sequence.onImageReplaced(oldImg, image);
                 else
+                {
+                    if (oldPlane != null)
+                        sequence.onStoredImageRemoved(oldPlane);
                     sequence.onImageAdded(image);
+                }
+
+                // page out other images if needed
+                if ((pager != null) && (image != null))
+                    pager.imageAdded(this, image, null);
+            }
+        }
+        finally
+        {
+            if (sequence != null)
+                sequence.endUpdate();
+        }
+    }
+
+    /**
+     * Set a stored plane (not yet loaded image) at the specified position.<br>
+     * The plane should come from the plane store of the sequence (see
+     * {@link Sequence#setStoredImage(int, int, StoredPlane)}).
+     */
+    void setStoredPlane(int z, StoredPlane plane)
+    {
+        final IcyBufferedImage oldImg;
+        final StoredPlane oldPlane;
+
+        if (sequence != null)
+            sequence.beginUpdate();
+        try
+        {
+            synchronized (images)
+            {
+                oldImg = images.remove(Integer.valueOf(z));
+                oldPlane = storedImages.put(Integer.valueOf(z), plane);
+            }
+
+            // raise event on sequence
+            if (sequence != null)
+            {
+                final PlanePager pager = getPager();
+
+                if (oldImg != null)
+                {
+                    if (pager != null)
+                        pager.imageRemoved(oldImg);
+                    sequence.onImageRemoved(oldImg);
+                }
+                if (oldPlane != null)
+                {
+                    if (pager != null)
+                        pager.storedRemoved(oldPlane);
+                    sequence.onStoredImageRemoved(oldPlane);
+                }
+
+                sequence.onStoredImageAdded(plane);
             }
         }
         finally
@@ -227,7 +524,11 @@ public class VolumetricImage
     }
 
     /**
-     * Return all images of volume image as TreeMap (contains z position)
+     * Return all images of volume image as TreeMap (contains z position).<br>
+     * Only images currently in memory are returned: paged out images (see
+     * {@link Sequence#setPlaneStore(icy.image.cache.PlaneStore, long)}) are not loaded back here
+     * as it could exceed the available memory, use {@link #getImage(int)} to access them one by
+     * one.
      */
     public TreeMap<Integer, IcyBufferedImage> getImages()
     {
@@ -238,7 +539,8 @@ public class VolumetricImage
     }
 
     /**
-     * Return all images of volume image
+     * Return all images of volume image.<br>
+     * Only images currently in memory are returned (see {@link #getImages()}).
      */
     public ArrayList<IcyBufferedImage> getAllImage()
     {
@@ -12,6 +12,8 @@ import javax.swing.undo.CannotUndoException;
 /**
  * Default lazy sequence data undoable edit (do a complete sequence data copy to restore previous
  * state).<br>
+ * When built from a {@link SequenceDataSnapshot} the data is stored compressed and unchanged
+ * planes are shared with the previous snapshot.<br>
  * Do not handle redo operation to not consume too much memory.
  * 
  * @author Stephane
@@ -19,12 +21,14 @@ import javax.swing.undo.CannotUndoException;
 public class DataSequenceEdit extends AbstractSequenceEdit
 {
     Sequence previous;
+    SequenceDataSnapshot snapshot;
 
     public DataSequenceEdit(Sequence previous, Sequence sequence, Image icon)
     {
         super(sequence, "Sequence data changed", icon);
 
         this.previous = previous;
+        snapshot = null;
     }
 
     public DataSequenceEdit(Sequence previous, Sequence sequence)
@@ -32,13 +36,49 @@ public class DataSequenceEdit extends AbstractSequenceEdit
         this(previous, sequence, null);
     }
 
+    public DataSequenceEdit(SequenceDataSnapshot snapshot, Sequence sequence, Image icon)
+    {
+        super(sequence, "Sequence data changed", icon);
+
+        previous = null;
+        this.snapshot = snapshot;
+    }
+
+    public DataSequenceEdit(SequenceDataSnapshot snapshot, Sequence sequence)
+    {
+        this(snapshot, sequence, null);
+    }
+
+    /**
+     * Returns the data snapshot of this edit (<code>null</code> if the edit uses a sequence copy).
+     */
+    public SequenceDataSnapshot getSnapshot()
+    {
+        return snapshot;
+    }
+
+    @Override
+    public long getMemorySize()
+    {
+        if (snapshot != null)
+            return snapshot.getMemorySize();
+        if (previous != null)
+            return (long) previous.getSizeX() * (long) previous.getSizeY() * (long) previous.getSizeC()
+                    * (long) previous.getSizeZ() * (long) previous.getSizeT() * previous.getDataType_().getSize();
+
+        return 0L;
+    }
+
     @Override
     public void undo() throws CannotUndoException
     {
         super.undo();
 
         // undo
-        getSequence().copyDataFrom(previous);
+        if (snapshot != null)
+            snapshot.restore(getSequence());
+        else
+            getSequence().copyDataFrom(previous);
     }
 
     @Override
@@ -46,4 +86,15 @@ public class DataSequenceEdit extends AbstractSequenceEdit
     {
         return false;
     }
+
+    @Override
+    public void die()
+    {
+        super.die();
+
+        // release data
+        if (snapshot != null)
+            snapshot.release();
+        previous = null;
+    }
 }
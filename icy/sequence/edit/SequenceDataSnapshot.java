@@ -0,0 +1,471 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.sequence.edit;
+
+import icy.image.IcyBufferedImage;
+import icy.sequence.Sequence;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
+import icy.type.collection.array.ByteArrayConvert;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressed snapshot of {@link Sequence} pixel data (used by {@link DataSequenceEdit}).<br>
+ * Each plane is stored deflate compressed and planes which did not change since the
+ * <i>reference</i> snapshot (same checksum) are shared with it instead of being compressed and
+ * stored again, so successive undo points only cost the planes which actually changed.<br>
+ * Restoring the snapshot only rewrites planes whose content differs from the current sequence
+ * data.
+ *
+ * @author Stephane
+ */
+public class SequenceDataSnapshot
+{
+    /**
+     * Compressed plane data (immutable, possibly shared between snapshots)
+     */
+    static class PlaneData
+    {
+        final int sizeX;
+        final int sizeY;
+        final DataType dataType;
+        // checksum and compressed data for each channel
+        final long[] checksums;
+        final byte[][] data;
+        // uncompressed channel size in bytes
+        final int rawSize;
+        // compressed size in bytes
+        final long size;
+        // number of snapshot using this plane
+        int refCount;
+
+        PlaneData(IcyBufferedImage image, long[] checksums)
+        {
+            super();
+
+            sizeX = image.getSizeX();
+            sizeY = image.getSizeY();
+            dataType = image.getDataType_();
+            this.checksums = checksums;
+            data = new byte[image.getSizeC()][];
+
+            final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            long s = 0;
+            int raw = 0;
+
+            try
+            {
+                for (int c = 0; c < data.length; c++)
+                {
+                    final byte[] bytes = ByteArrayConvert.toByteArray(image.getSharedDataXY(c), false);
+
+                    raw = bytes.length;
+                    data[c] = compress(deflater, bytes);
+                    s += data[c].length;
+                }
+            }
+            finally
+            {
+                deflater.end();
+            }
+
+            rawSize = raw;
+            size = s;
+            refCount = 0;
+        }
+
+        /**
+         * Returns <code>true</code> if this plane stores the same data as the specified image
+         * (same format and checksums).
+         */
+        boolean isSameAs(IcyBufferedImage image, long[] imageChecksums)
+        {
+            return (image.getSizeX() == sizeX) && (image.getSizeY() == sizeY) && (image.getDataType_() == dataType)
+                    && Arrays.equals(checksums, imageChecksums);
+        }
+
+        /**
+         * Returns <code>true</code> if the specified image has the same format than this plane
+         */
+        boolean isCompatible(IcyBufferedImage image)
+        {
+            return (image != null) && (image.getSizeX() == sizeX) && (image.getSizeY() == sizeY)
+                    && (image.getSizeC() == data.length) && (image.getDataType_() == dataType);
+        }
+
+        /**
+         * Decompress plane data into the specified (compatible) image
+         */
+        void restoreTo(IcyBufferedImage image) throws DataFormatException
+        {
+            final Inflater inflater = new Inflater();
+            final byte[] bytes = new byte[rawSize];
+
+            try
+            {
+                for (int c = 0; c < data.length; c++)
+                {
+                    inflater.reset();
+                    inflater.setInput(data[c]);
+
+                    int len = 0;
+
+                    // inflate may return less than the available data so loop until the end
+                    while (!inflater.finished())
+                    {
+                        final int read = inflater.inflate(bytes, len, bytes.length - len);
+
+                        len += read;
+
+                        // truncated data or more data than expected
+                        if ((read == 0)
+                                && (inflater.needsInput() || inflater.needsDictionary() || (len == bytes.length)))
+                            break;
+                    }
+
+                    if (!inflater.finished() || (len != rawSize))
+                        throw new DataFormatException("Corrupted snapshot data (" + len + " bytes restored, "
+                                + rawSize + " expected)");
+
+                    final Object dest = image.getDataXY(c);
+                    ByteArrayConvert.byteArrayTo(bytes, 0, dest, 0, -1, false);
+                }
+            }
+            finally
+            {
+                inflater.end();
+            }
+
+            image.dataChanged();
+        }
+
+        /**
+         * Create a new image from plane data
+         */
+        IcyBufferedImage createImage() throws DataFormatException
+        {
+            final IcyBufferedImage result = new IcyBufferedImage(sizeX, sizeY, data.length, dataType);
+
+            restoreTo(result);
+
+            return result;
+        }
+    }
+
+    /**
+     * Create a snapshot of the specified sequence data.
+     *
+     * @param sequence
+     *        the sequence we want to snapshot
+     * @param reference
+     *        previous snapshot of the same sequence (can be <code>null</code>): unchanged planes
+     *        are shared with it
+     */
+    public static SequenceDataSnapshot create(Sequence sequence, SequenceDataSnapshot reference)
+            throws InterruptedException
+    {
+        final int sizeT = sequence.getSizeT();
+        final int sizeZ = sequence.getSizeZ();
+        final PlaneData[] planes = new PlaneData[sizeT * sizeZ];
+        final List<Future<PlaneData>> futures = new ArrayList<Future<PlaneData>>(planes.length);
+        // already in a compute task --> process planes in current thread (nested wait could dead lock)
+        final boolean inComputeThread = ThreadUtil.isComputeThread();
+        final Processor proc = ThreadUtil.getComputeProcessor();
+
+        // we don't want the reference to be released in between
+        synchronized (SequenceDataSnapshot.class)
+        {
+            if ((reference != null) && reference.released)
+                reference = null;
+        }
+
+        for (int t = 0; t < sizeT; t++)
+        {
+            for (int z = 0; z < sizeZ; z++)
+            {
+                final IcyBufferedImage image = sequence.getImage(t, z);
+                final PlaneData refPlane = (reference != null) ? reference.getPlane(t, z) : null;
+
+                if (image == null)
+                    futures.add(null);
+                else if (inComputeThread)
+                {
+                    planes[(t * sizeZ) + z] = createPlane(image, refPlane);
+                    futures.add(null);
+                }
+                else
+                {
+                    futures.add(proc.submit(new Callable<PlaneData>()
+                    {
+                        @Override
+                        public PlaneData call() throws Exception
+                        {
+                            return createPlane(image, refPlane);
+                        }
+                    }));
+                }
+            }
+        }
+
+        try
+        {
+            for (int i = 0; i < planes.length; i++)
+            {
+                final Future<PlaneData> future = futures.get(i);
+
+                if (future != null)
+                    planes[i] = future.get();
+            }
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            for (Future<PlaneData> future : futures)
+                if (future != null)
+                    future.cancel(true);
+        }
+
+        return new SequenceDataSnapshot(sizeT, sizeZ, planes);
+    }
+
+    /**
+     * Returns the plane data of the specified image (shared with the reference plane if unchanged)
+     */
+    static PlaneData createPlane(IcyBufferedImage image, PlaneData refPlane)
+    {
+        final long[] checksums = getChecksums(image);
+
+        // unchanged plane --> share it
+        if ((refPlane != null) && refPlane.isSameAs(image, checksums))
+            return refPlane;
+
+        return new PlaneData(image, checksums);
+    }
+
+    /**
+     * Returns checksums of all channels of the specified image
+     */
+    static long[] getChecksums(IcyBufferedImage image)
+    {
+        final long[] result = new long[image.getSizeC()];
+        final CRC32 crc = new CRC32();
+        final Adler32 adler = new Adler32();
+
+        for (int c = 0; c < result.length; c++)
+        {
+            final byte[] bytes = ByteArrayConvert.toByteArray(image.getSharedDataXY(c), false);
+
+            crc.reset();
+            adler.reset();
+            crc.update(bytes);
+            adler.update(bytes);
+
+            // combine both 32 bits checksums for a stronger 64 bits one
+            result[c] = (crc.getValue() << 32) | adler.getValue();
+        }
+
+        return result;
+    }
+
+    static byte[] compress(Deflater deflater, byte[] bytes)
+    {
+        byte[] result = new byte[Math.max(64, bytes.length / 4)];
+        int len = 0;
+
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+
+        while (!deflater.finished())
+        {
+            if (len == result.length)
+                result = Arrays.copyOf(result, result.length * 2);
+
+            len += deflater.deflate(result, len, result.length - len);
+        }
+
+        return Arrays.copyOf(result, len);
+    }
+
+    private final int sizeT;
+    private final int sizeZ;
+    private final PlaneData[] planes;
+    private boolean released;
+
+    private SequenceDataSnapshot(int sizeT, int sizeZ, PlaneData[] planes)
+    {
+        super();
+
+        this.sizeT = sizeT;
+        this.sizeZ = sizeZ;
+        this.planes = planes;
+        released = false;
+
+        synchronized (SequenceDataSnapshot.class)
+        {
+            for (PlaneData plane : planes)
+                if (plane != null)
+                    plane.refCount++;
+        }
+    }
+
+    PlaneData getPlane(int t, int z)
+    {
+        if ((t < sizeT) && (z < sizeZ))
+            return planes[(t * sizeZ) + z];
+
+        return null;
+    }
+
+    /**
+     * Returns the memory used by this snapshot (in bytes).<br>
+     * Planes shared with other snapshots are counted proportionally so the sum over all snapshots
+     * gives the exact total memory.
+     */
+    public long getMemorySize()
+    {
+        double result = 0d;
+
+        synchronized (SequenceDataSnapshot.class)
+        {
+            if (released)
+                return 0L;
+
+            for (PlaneData plane : planes)
+                if (plane != null)
+                    result += (double) plane.size / plane.refCount;
+        }
+
+        return (long) result;
+    }
+
+    /**
+     * Restore the snapshot data in the specified sequence.<br>
+     * Only planes whose content differs are rewritten when sequence dimensions and format are
+     * unchanged, otherwise all sequence images are replaced.
+     */
+    public void restore(Sequence sequence)
+    {
+        if (released)
+            throw new IllegalStateException("Cannot restore a released snapshot.");
+
+        // same structure ?
+        boolean same = (sequence.getSizeT() == sizeT) && (sequence.getSizeZ() == sizeZ);
+
+        for (int t = 0; same && (t < sizeT); t++)
+        {
+            for (int z = 0; same && (z < sizeZ); z++)
+            {
+                final PlaneData plane = planes[(t * sizeZ) + z];
+                final IcyBufferedImage image = sequence.getImage(t, z);
+
+                if (plane == null)
+                    same = (image == null);
+                else
+                    same = plane.isCompatible(image);
+            }
+        }
+
+        sequence.beginUpdate();
+        try
+        {
+            if (!same)
+                sequence.removeAllImages();
+
+            for (int t = 0; t < sizeT; t++)
+            {
+                for (int z = 0; z < sizeZ; z++)
+                {
+                    final PlaneData plane = planes[(t * sizeZ) + z];
+
+                    if (plane == null)
+                        continue;
+
+                    if (same)
+                    {
+                        final IcyBufferedImage image = sequence.getImage(t, z);
+
+                        // only restore modified planes
+                        if (!plane.isSameAs(image, getChecksums(image)))
+                            plane.restoreTo(image);
+                    }
+                    else
+                        sequence.setImage(t, z, plane.createImage());
+                }
+            }
+        }
+        catch (DataFormatException e)
+        {
+            // should never happen
+            throw new RuntimeException(e);
+        }
+        finally
+        {
+            sequence.endUpdate();
+        }
+    }
+
+    /**
+     * Release the snapshot (shared planes are kept as long as another snapshot uses them).
+     */
+    public void release()
+    {
+        synchronized (SequenceDataSnapshot.class)
+        {
+            if (released)
+                return;
+
+            released = true;
+            for (PlaneData plane : planes)
+                if (plane != null)
+                    plane.refCount--;
+        }
+
+        Arrays.fill(planes, null);
+    }
+
+    /**
+     * Returns <code>true</code> if the snapshot has been released.
+     */
+    public boolean isReleased()
+    {
+        return released;
+    }
+}
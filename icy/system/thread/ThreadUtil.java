@@ -84,6 +84,10 @@ public class ThreadUtil
 
     // low priority background processor
     private static final Processor bgProcessor;
+    // shared processor for CPU bound parallel computations
+    private static final Processor computeProcessor;
+    // set for threads of the compute processor
+    private static final ThreadLocal<Boolean> computeThread = new ThreadLocal<Boolean>();
     // single Runnable / Callable instance processor
     private static final InstanceProcessor instanceProcessors[];
     // low priority single Runnable / Callable instance processor
@@ -116,6 +120,21 @@ public class ThreadUtil
         bgProcessor.setThreadName("Background processor");
         bgProcessor.setKeepAliveTime(3, TimeUnit.SECONDS);
 
+        // one thread per core (threads are only created when needed)
+        computeProcessor = new Processor(Math.max(1, SystemUtil.getNumberOfCPUs()))
+        {
+            @Override
+            protected void beforeExecute(Thread t, Runnable r)
+            {
+                super.beforeExecute(t, r);
+
+                // executed in the processor thread
+                computeThread.set(Boolean.TRUE);
+            }
+        };
+        computeProcessor.setPriority(NORM_PRIORITY - 1);
+        computeProcessor.setThreadName("Compute processor");
+
         for (int i = 0; i < instanceProcessors.length; i++)
         {
             // keep these thread active
@@ -134,6 +153,7 @@ public class ThreadUtil
     public static void shutdown()
     {
         bgProcessor.shutdown();
+        computeProcessor.shutdown();
         for (int i = 0; i < instanceProcessors.length; i++)
         {
             instanceProcessors[i].shutdown();
@@ -153,7 +173,7 @@ public class ThreadUtil
             if (!bgInstanceProcessors[i].isTerminated())
                 return false;
         }
-        return bgProcessor.isTerminated();
+        return bgProcessor.isTerminated() && computeProcessor.isTerminated();
     }
 
     /**
@@ -556,6 +576,28 @@ public class ThreadUtil
         return bgProcessor.getActiveCount();
     }
 
+    /**
+     * Returns the shared processor for CPU bound parallel computations (one thread per core).<br>
+     * Use it instead of creating a dedicated processor so concurrent parallel computations don't
+     * oversubscribe the CPU.<br>
+     * A task executed by this processor should never submit tasks to it and wait for them (all
+     * threads could end up waiting for queued tasks): use {@link #isComputeThread()} to detect it
+     * and process the work in the current thread instead.
+     */
+    public static Processor getComputeProcessor()
+    {
+        return computeProcessor;
+    }
+
+    /**
+     * Returns <code>true</code> if the current thread is a thread of the shared compute processor
+     * (see {@link #getComputeProcessor()}).
+     */
+    public static boolean isComputeThread()
+    {
+        return Boolean.TRUE.equals(computeThread.get());
+    }
+
     /**
      * Create a thread pool with the given name.<br>
      * The number of processing thread is automatically calculated given the number of core of the
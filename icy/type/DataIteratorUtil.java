@@ -4,7 +4,7 @@
 package icy.type;
 
 /**
- * Utilities for {@link DataIterator} classes.
+ * Utilities for {@link DataIterator} and {@link DataSpanIterator} classes.
  * 
  * @author Stephane
  */
@@ -42,4 +42,35 @@ public class DataIteratorUtil
         }
     }
 
+    /**
+     * Returns the number of element contained in the specified {@link DataSpanIterator}.
+     */
+    public static long count(DataSpanIterator it)
+    {
+        long result = 0;
+
+        it.reset();
+
+        while (!it.done())
+        {
+            result += it.getLength();
+            it.next();
+        }
+
+        return result;
+    }
+
+    /**
+     * Sets the specified value to the specified {@link DataSpanIterator}.
+     */
+    public static void set(DataSpanIterator it, double value)
+    {
+        it.reset();
+
+        while (!it.done())
+        {
+            it.fill(value);
+            it.next();
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2010-2015 Institut Pasteur.
+ * 
+ * This file is part of Icy.
+ * 
+ * Icy is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * Icy is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with Icy. If not, see <http://www.gnu.org/licenses/>.
+ */
+package icy.type;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Data span iterator interface.<br>
+ * Contrary to {@link DataIterator} which returns one value at a time, this interface provides
+ * iteration over contiguous runs (spans) of data: for each span you get the primitive data array,
+ * the offset and the length of the run so it can be processed with tight (type specialized) loops
+ * or bulk array operations.<br>
+ * A span may cover several consecutive image rows when the iterated region covers the whole
+ * image width (no mask), in which case {@link #getX()} and {@link #getY()} give the span start
+ * position.
+ *
+ * @author Stephane
+ */
+public interface DataSpanIterator
+{
+    /**
+     * Reset iterator to initial position.
+     */
+    public void reset();
+
+    /**
+     * Pass to the next span.
+     */
+    public void next();
+
+    /**
+     * Returns <tt>true</tt> if the iterator has no more span.
+     */
+    public boolean done();
+
+    /**
+     * Returns the primitive data array of the current span.
+     *
+     * @exception NoSuchElementException
+     *            iteration has no more span.
+     */
+    public Object getData();
+
+    /**
+     * Returns the data type of the current span.
+     */
+    public DataType getDataType();
+
+    /**
+     * Returns the offset of the current span in the data array.
+     */
+    public int getOffset();
+
+    /**
+     * Returns the length (number of element) of the current span.
+     */
+    public int getLength();
+
+    /**
+     * Returns the X position of the current span start.
+     */
+    public int getX();
+
+    /**
+     * Returns the Y position of the current span start.
+     */
+    public int getY();
+
+    /**
+     * Returns the Z position of the current span.
+     */
+    public int getZ();
+
+    /**
+     * Returns the T position of the current span.
+     */
+    public int getT();
+
+    /**
+     * Returns the C position of the current span.
+     */
+    public int getC();
+
+    /**
+     * Returns the current span data array as byte array (data type should be BYTE or UBYTE).
+     */
+    public byte[] getDataAsByte();
+
+    /**
+     * Returns the current span data array as short array (data type should be SHORT or USHORT).
+     */
+    public short[] getDataAsShort();
+
+    /**
+     * Returns the current span data array as int array (data type should be INT or UINT).
+     */
+    public int[] getDataAsInt();
+
+    /**
+     * Returns the current span data array as float array (data type should be FLOAT).
+     */
+    public float[] getDataAsFloat();
+
+    /**
+     * Returns the current span data array as double array (data type should be DOUBLE).
+     */
+    public double[] getDataAsDouble();
+
+    /**
+     * Get the current span values as double in the specified array.
+     *
+     * @param out
+     *        output array (should be able to receive {@link #getLength()} values from
+     *        <code>outOffset</code>).
+     * @param outOffset
+     *        position where we start to write values
+     * @exception NoSuchElementException
+     *            iteration has no more span.
+     */
+    public void get(double[] out, int outOffset);
+
+    /**
+     * Set the current span values from the specified double array.
+     *
+     * @param in
+     *        input array (should contain {@link #getLength()} values from <code>inOffset</code>).
+     * @param inOffset
+     *        position where we start to read values
+     * @exception NoSuchElementException
+     *            iteration has no more span.
+     */
+    public void set(double[] in, int inOffset);
+
+    /**
+     * Set all values of the current span to the specified value.
+     *
+     * @exception NoSuchElementException
+     *            iteration has no more span.
+     */
+    public void fill(double value);
+}
@@ -238,6 +238,15 @@ public abstract class AbstractIcyUndoableEdit implements IcyUndoableEdit
         mergeable = value;
     }
 
+    /**
+     * Returns the memory (in bytes) retained by this edit to be able to undo / redo it.<br>
+     * Used by {@link IcyUndoManager} to enforce its memory limit, default implementation returns 0.
+     */
+    public long getMemorySize()
+    {
+        return 0L;
+    }
+
     /**
      * This default implementation returns "". Used by <code>getUndoPresentationName</code> and
      * <code>getRedoPresentationName</code> to
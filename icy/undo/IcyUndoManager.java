@@ -20,6 +20,8 @@ package icy.undo;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import javax.swing.UIManager;
 import javax.swing.event.EventListenerList;
@@ -46,6 +48,118 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
 
     private static final int INITIAL_LIMIT = 64;
 
+    /**
+     * undo managers sharing the global memory limit (weak keys so managers can be released)
+     */
+    private static final Map<IcyUndoManager, Boolean> sharedManagers = new WeakHashMap<IcyUndoManager, Boolean>();
+    /**
+     * global memory limit (for all managers using it)
+     */
+    private static long sharedMemoryLimit = -1L;
+    /**
+     * serialize global trimming
+     */
+    private static final Object sharedTrimLock = new Object();
+
+    /**
+     * Returns the maximum memory (in bytes) retained by the edits of all undo managers using the
+     * global memory limit. A value less than 0 indicates the memory is not limited.
+     * 
+     * @see #setUseSharedMemoryLimit(boolean)
+     */
+    public static long getSharedMemoryLimit()
+    {
+        synchronized (sharedManagers)
+        {
+            return sharedMemoryLimit;
+        }
+    }
+
+    /**
+     * Sets the maximum memory (in bytes) retained by the edits of all undo managers using the
+     * global memory limit. A value less than 0 indicates the memory is not limited.<br>
+     * When the limit is exceeded the oldest edits of the manager retaining the most memory are
+     * discarded first (the last edit of each manager is always kept).
+     * 
+     * @see #setUseSharedMemoryLimit(boolean)
+     * @see AbstractIcyUndoableEdit#getMemorySize()
+     */
+    public static void setSharedMemoryLimit(long value)
+    {
+        synchronized (sharedManagers)
+        {
+            if (sharedMemoryLimit == value)
+                return;
+
+            sharedMemoryLimit = value;
+        }
+
+        trimForSharedMemoryLimit();
+    }
+
+    /**
+     * Removes the oldest edits of the managers using the global memory limit while the memory
+     * retained by their edits exceeds the global limit.<br>
+     * Should not be called while holding a manager lock (it locks the managers in turn).
+     */
+    protected static void trimForSharedMemoryLimit()
+    {
+        synchronized (sharedTrimLock)
+        {
+            final List<IcyUndoManager> managers;
+            final long limit;
+
+            synchronized (sharedManagers)
+            {
+                if (sharedMemoryLimit < 0)
+                    return;
+
+                limit = sharedMemoryLimit;
+                managers = new ArrayList<IcyUndoManager>(sharedManagers.keySet());
+            }
+
+            final int len = managers.size();
+            final long[] sizes = new long[len];
+            final boolean[] changed = new boolean[len];
+            long total = 0L;
+
+            for (int i = 0; i < len; i++)
+            {
+                sizes[i] = managers.get(i).getMemorySize();
+                total += sizes[i];
+            }
+
+            while (total > limit)
+            {
+                // trim the manager retaining the most memory first
+                int index = -1;
+
+                for (int i = 0; i < len; i++)
+                    if ((sizes[i] > 0L) && ((index == -1) || (sizes[i] > sizes[index])))
+                        index = i;
+
+                if (index == -1)
+                    break;
+
+                final long released = managers.get(index).trimOldestEdit();
+
+                // nothing more to remove from this one
+                if (released < 0L)
+                    sizes[index] = 0L;
+                else
+                {
+                    sizes[index] -= released;
+                    total -= released;
+                    changed[index] = true;
+                }
+            }
+
+            for (int i = 0; i < len; i++)
+                if (changed[i])
+                    managers.get(i).fireChangeEvent();
+        }
+    }
+
     /**
      * owner of UndoManager
      */
@@ -67,6 +181,7 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
      */
     protected int indexOfNextAdd;
     protected int limit;
+    protected long memoryLimit;
 
     public IcyUndoManager(Object owner, int limit)
     {
@@ -77,6 +192,7 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
         listeners = new EventListenerList();
         indexOfNextAdd = 0;
         this.limit = limit;
+        memoryLimit = -1L;
     }
 
     public IcyUndoManager(Object owner)
@@ -221,6 +337,54 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
         return result;
     }
 
+    /**
+     * Removes the oldest edits while the memory retained by edits exceeds the memory limit (the
+     * last edit is always kept).
+     */
+    protected boolean trimForMemoryLimit()
+    {
+        boolean result = false;
+
+        if (memoryLimit >= 0)
+        {
+            synchronized (edits)
+            {
+                long size = getMemorySize();
+                int count = 0;
+
+                while ((size > memoryLimit) && (count < (edits.size() - 1)))
+                {
+                    size -= edits.get(count).getMemorySize();
+                    count++;
+                }
+
+                if (trimEdits(0, count - 1))
+                    result = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Removes the oldest edit (the last edit is always kept) and returns the memory (in bytes) it
+     * retained, or <code>-1</code> if there is no edit to remove.
+     */
+    protected synchronized long trimOldestEdit()
+    {
+        synchronized (edits)
+        {
+            if (edits.size() < 2)
+                return -1L;
+
+            final long result = edits.get(0).getMemorySize();
+
+            trimEdits(0, 0);
+
+            return result;
+        }
+    }
+
     /**
      * Removes edits in the specified range.
      * All edits in the given range (inclusive, and in reverse order)
@@ -279,6 +443,83 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
             fireChangeEvent();
     }
 
+    /**
+     * Returns the maximum memory (in bytes) retained by the edits of this {@code UndoManager}. A
+     * value less than 0 indicates the memory is not limited.
+     * 
+     * @see #setMemoryLimit(long)
+     */
+    public synchronized long getMemoryLimit()
+    {
+        return memoryLimit;
+    }
+
+    /**
+     * Sets the maximum memory (in bytes) retained by the edits of this {@code UndoManager}. A value
+     * less than 0 indicates the memory is not limited. When the limit is exceeded the oldest edits
+     * are discarded (the last edit is always kept).
+     * 
+     * @see AbstractIcyUndoableEdit#getMemorySize()
+     */
+    public synchronized void setMemoryLimit(long value)
+    {
+        memoryLimit = value;
+
+        if (trimForMemoryLimit())
+            fireChangeEvent();
+    }
+
+    /**
+     * Returns <code>true</code> if the edits of this {@code UndoManager} are accounted in the
+     * global memory limit.
+     * 
+     * @see #setSharedMemoryLimit(long)
+     */
+    public boolean isUseSharedMemoryLimit()
+    {
+        synchronized (sharedManagers)
+        {
+            return sharedManagers.containsKey(this);
+        }
+    }
+
+    /**
+     * Sets whether the edits of this {@code UndoManager} are accounted in the global memory limit
+     * (shared by all managers using it) in addition to its own memory limit.
+     * 
+     * @see #setSharedMemoryLimit(long)
+     * @see #setMemoryLimit(long)
+     */
+    public void setUseSharedMemoryLimit(boolean value)
+    {
+        synchronized (sharedManagers)
+        {
+            if (value)
+                sharedManagers.put(this, Boolean.TRUE);
+            else
+                sharedManagers.remove(this);
+        }
+
+        if (value)
+            trimForSharedMemoryLimit();
+    }
+
+    /**
+     * Returns the memory (in bytes) currently retained by the edits of this {@code UndoManager}.
+     */
+    public long getMemorySize()
+    {
+        long result = 0L;
+
+        synchronized (edits)
+        {
+            for (AbstractIcyUndoableEdit edit : edits)
+                result += edit.getMemorySize();
+        }
+
+        return result;
+    }
+
     /**
      * Returns the the next significant edit to be undone if <code>undo</code> is invoked. This
      * returns <code>null</code> if there are no edits to be undone.
@@ -548,7 +789,16 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
      *        the edit to be added
      * @see CompoundEdit#addEdit
      */
-    public synchronized void addEdit(AbstractIcyUndoableEdit anEdit)
+    public void addEdit(AbstractIcyUndoableEdit anEdit)
+    {
+        addEditInternal(anEdit);
+
+        // enforce the global memory limit (outside the manager lock as it locks other managers)
+        if (isUseSharedMemoryLimit())
+            trimForSharedMemoryLimit();
+    }
+
+    private synchronized void addEditInternal(AbstractIcyUndoableEdit anEdit)
     {
         synchronized (edits)
         {
@@ -577,8 +827,9 @@ public class IcyUndoManager extends AbstractUndoableEdit implements UndoableEdit
             // make sure the indexOfNextAdd is pointed at the right place
             indexOfNextAdd = edits.size();
 
-            // enforce the limit
+            // enforce the limits
             trimForLimit();
+            trimForMemoryLimit();
         }
 
         // notify change
@@ -9,7 +9,7 @@ import icy.file.Loader;
 import icy.gui.dialog.LoaderDialog.AllImagesFileFilter;
 import icy.image.IcyBufferedImage;
 import icy.image.IcyBufferedImageUtil;
-import icy.image.IcyBufferedImageUtil.FilterType;
+import icy.image.cache.PyramidCache;
 import icy.image.colormap.IcyColorMap;
 import icy.image.colormap.LinearColorMap;
 import icy.plugin.abstract_.PluginSequenceFileImporter;
@@ -59,9 +59,61 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         }
     };
 
+    /**
+     * Pyramid source using the current reader
+     */
+    protected class LociPyramidSource implements PyramidCache.LevelSource
+    {
+        @Override
+        public int getBaseLevel(int serie, int level)
+        {
+            reader.setSeries(serie);
+            return Math.min(level, reader.getResolutionCount() - 1);
+        }
+
+        @Override
+        public int getSizeX(int serie, int baseLevel)
+        {
+            prepareReader(serie, baseLevel);
+            return reader.getSizeX();
+        }
+
+        @Override
+        public int getSizeY(int serie, int baseLevel)
+        {
+            prepareReader(serie, baseLevel);
+            return reader.getSizeY();
+        }
+
+        @Override
+        public IcyBufferedImage getImage(int serie, int baseLevel, Rectangle region, int z, int t, int c)
+                throws UnsupportedFormatException, IOException
+        {
+            try
+            {
+                prepareReader(serie, baseLevel);
+
+                if (c == -1)
+                    return LociImporterPlugin.getImage(reader, region, z, t);
+
+                return LociImporterPlugin.getImage(reader, region, z, t, c);
+            }
+            catch (FormatException e)
+            {
+                throw translateException(getOpened(), e);
+            }
+        }
+    }
+
     protected final ImageReader mainReader;
     protected IFormatReader reader;
 
+    /**
+     * Down scaled images cache (avoid full resolution decoding for low resolution requests)
+     */
+    protected final PyramidCache pyramidCache;
+    protected final LociPyramidSource pyramidSource;
+
     /**
      * Advanced settings
      */
@@ -79,6 +131,9 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         reader = null;
         originalMetadata = false;
         groupFiles = false;
+
+        pyramidCache = new PyramidCache();
+        pyramidSource = new LociPyramidSource();
     }
 
     protected void setReader(String path) throws FormatException, IOException
@@ -270,6 +325,9 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         // something to close ?
         if (getOpened() != null)
             reader.close();
+
+        // cached tiles are not anymore valid
+        pyramidCache.clear();
     }
 
     /**
@@ -339,17 +397,21 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
 
         try
         {
-            // prepare reader and get down scale factor
-            final double scale = prepareReader(serie, 0);
-            // get image
-            IcyBufferedImage result = getThumbnail(reader, reader.getSizeZ() / 2, reader.getSizeT() / 2);
-            // return down scaled version if needed
-            return downScale(result, scale);
+            // prepare reader
+            prepareReader(serie, 0);
+            // fast path: get native thumbnail
+            final IcyBufferedImage result = getThumbnail(reader, reader.getSizeZ() / 2, reader.getSizeT() / 2);
+
+            if (result != null)
+                return result;
         }
         catch (FormatException e)
         {
-            throw translateException(getOpened(), e);
+            // native thumbnail not available --> use the pyramid cache
         }
+
+        // fallback: use the down scaled image from the pyramid cache
+        return super.getThumbnail(serie);
     }
 
     @Override
@@ -368,10 +430,13 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
             if (scale == 1d)
                 return getPixels(reader, rectangle, z, t, c);
 
-            // get the image
-            IcyBufferedImage result = getImage(reader, rectangle, z, t, c);
-            // down scale it
-            result = downScale(result, scale);
+            // get the down scaled image from the pyramid cache
+            final IcyBufferedImage result = pyramidCache.getImage(pyramidSource, serie, resolution, rectangle, z, t,
+                    c);
+
+            // empty region
+            if (result == null)
+                return null;
 
             // and return internal data
             return result.getDataXY(0);
@@ -392,12 +457,18 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
 
         try
         {
+            // all channels wanted
+            if (c == -1)
+                return getImage(serie, resolution, rectangle, z, t);
+
             // prepare reader and get down scale factor
             final double scale = prepareReader(serie, resolution);
+            // need down scaling ? --> get it from the pyramid cache
+            if (scale != 1d)
+                return pyramidCache.getImage(pyramidSource, serie, resolution, rectangle, z, t, c);
+
             // get image
-            IcyBufferedImage result = getImage(reader, rectangle, z, t, c);
-            // return down scaled version if needed
-            return downScale(result, scale);
+            return getImage(reader, rectangle, z, t, c);
         }
         catch (FormatException e)
         {
@@ -417,10 +488,12 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         {
             // prepare reader and get down scale factor
             final double scale = prepareReader(serie, resolution);
+            // need down scaling ? --> get it from the pyramid cache
+            if (scale != 1d)
+                return pyramidCache.getImage(pyramidSource, serie, resolution, rectangle, z, t, -1);
+
             // get image
-            IcyBufferedImage result = getImage(reader, rectangle, z, t);
-            // return down scaled version if needed
-            return downScale(result, scale);
+            return getImage(reader, rectangle, z, t);
         }
         catch (FormatException e)
         {
@@ -440,10 +513,12 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         {
             // prepare reader and get down scale factor
             final double scale = prepareReader(serie, resolution);
+            // need down scaling ? --> get it from the pyramid cache
+            if (scale != 1d)
+                return pyramidCache.getImage(pyramidSource, serie, resolution, null, z, t, c);
+
             // get image
-            IcyBufferedImage result = getImage(reader, null, z, t, c);
-            // return down scaled version if needed
-            return downScale(result, scale);
+            return getImage(reader, null, z, t, c);
         }
         catch (FormatException e)
         {
@@ -463,10 +538,12 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         {
             // prepare reader and get down scale factor
             final double scale = prepareReader(serie, resolution);
+            // need down scaling ? --> get it from the pyramid cache
+            if (scale != 1d)
+                return pyramidCache.getImage(pyramidSource, serie, resolution, null, z, t, -1);
+
             // get image
-            IcyBufferedImage result = getImage(reader, null, z, t);
-            // return down scaled version if needed
-            return downScale(result, scale);
+            return getImage(reader, null, z, t);
         }
         catch (FormatException e)
         {
@@ -1018,20 +1095,6 @@ public class LociImporterPlugin extends PluginSequenceFileImporter
         return reader.openBytes(index, buffer);
     }
 
-    static IcyBufferedImage downScale(IcyBufferedImage source, double scale)
-    {
-        // need down scale ?
-        if (scale != 1d)
-        {
-            final int sizeX = (int) (Math.round(source.getSizeX() / scale));
-            final int sizeY = (int) (Math.round(source.getSizeY() / scale));
-            // down scale
-            return IcyBufferedImageUtil.scale(source, sizeX, sizeY, FilterType.BILINEAR);
-        }
-
-        return source;
-    }
-
     static UnsupportedFormatException translateException(String path, FormatException exception)
     {
         if (exception instanceof UnknownFormatException)
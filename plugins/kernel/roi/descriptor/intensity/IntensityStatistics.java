@@ -0,0 +1,733 @@
+/**
+ * 
+ */
+package plugins.kernel.roi.descriptor.intensity;
+
+import icy.image.IcyBufferedImage;
+import icy.image.ImageDataSpanIterator;
+import icy.roi.BooleanMask2D;
+import icy.roi.ROI;
+import icy.sequence.Sequence;
+import icy.system.SystemUtil;
+import icy.system.thread.Processor;
+import icy.system.thread.ThreadUtil;
+import icy.type.DataType;
+import icy.type.collection.array.Array1DUtil;
+import icy.type.rectangle.Rectangle5D;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Single pass intensity statistics (count, min, max, sum, mean and M2 = sum of squared
+ * differences from the mean) of a ROI.<br>
+ * The ROI bounds are split in (Z, T) planes which are computed in parallel by type specialized
+ * loops over the mask runs, partial results are then merged (Chan et al. pairwise update so the
+ * standard deviation remains accurate even with large mean / deviation ratio).<br>
+ * Internal use only.
+ *
+ * @author Stephane
+ */
+class IntensityStatistics
+{
+    long count;
+    double min;
+    double max;
+    double sum;
+    double mean;
+    double m2;
+
+    /**
+     * internals (shifted sums of the current plane)
+     */
+    private double shift;
+    private double shiftedSum;
+    private double shiftedSum2;
+    private long shiftedCount;
+
+    IntensityStatistics()
+    {
+        super();
+
+        count = 0;
+        min = Double.MAX_VALUE;
+        max = -Double.MAX_VALUE;
+        sum = 0d;
+        mean = 0d;
+        m2 = 0d;
+    }
+
+    /**
+     * Returns the (population) standard deviation.
+     */
+    double getDeviation()
+    {
+        if (count == 0)
+            return 0d;
+
+        return Math.sqrt(m2 / count);
+    }
+
+    /**
+     * Merge the specified statistics in this one.
+     */
+    void add(IntensityStatistics stats)
+    {
+        if (stats.count == 0)
+            return;
+
+        if (count == 0)
+        {
+            count = stats.count;
+            min = stats.min;
+            max = stats.max;
+            sum = stats.sum;
+            mean = stats.mean;
+            m2 = stats.m2;
+            return;
+        }
+
+        final long n = count + stats.count;
+        final double delta = stats.mean - mean;
+
+        mean += (delta * stats.count) / n;
+        m2 += stats.m2 + ((((delta * delta) * count) / n) * stats.count);
+        sum += stats.sum;
+        count = n;
+        if (stats.min < min)
+            min = stats.min;
+        if (stats.max > max)
+            max = stats.max;
+    }
+
+    /**
+     * Compute intensity statistics of the specified ROI on the given sequence.
+     *
+     * @param roi
+     *        the ROI we want to compute the statistics
+     * @param sequence
+     *        the sequence used to retrieve intensities
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels in the ROI are included.
+     * @throws InterruptedException
+     *         if computation was interrupted
+     */
+    static IntensityStatistics compute(ROI roi, Sequence sequence, boolean inclusive) throws InterruptedException
+    {
+        return compute(roi, sequence, inclusive, -1);
+    }
+
+    /**
+     * Compute intensity statistics of the specified ROI on the given sequence.
+     *
+     * @param roi
+     *        the ROI we want to compute the statistics
+     * @param sequence
+     *        the sequence used to retrieve intensities
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels in the ROI are included.
+     * @param channel
+     *        The specific C position (channel) we want to compute or <code>-1</code> to use the
+     *        whole ROI C dimension.
+     * @throws InterruptedException
+     *         if computation was interrupted
+     */
+    static IntensityStatistics compute(final ROI roi, final Sequence sequence, final boolean inclusive, int channel)
+            throws InterruptedException
+    {
+        final IntensityStatistics result = new IntensityStatistics();
+        final Rectangle5D bounds5D = roi.getBounds5D();
+
+        // force C position
+        if (channel != -1)
+        {
+            // ROI doesn't contain this channel
+            if (!containsC(bounds5D, channel))
+                return result;
+
+            bounds5D.setC(channel);
+            bounds5D.setSizeC(1d);
+        }
+
+        final Rectangle5D.Integer bounds = (Rectangle5D.Integer) sequence.getBounds5D().createIntersection(bounds5D);
+
+        if (bounds.isEmpty())
+            return result;
+
+        final int startC = bounds.c;
+        final int endC = (bounds.c + bounds.sizeC) - 1;
+        final int dim = roi.getDimension();
+        // 2D ROI --> same mask for all planes
+        final BooleanMask2D mask2D = (dim == 2) ? roi.getBooleanMask2D(-1, -1, -1, inclusive) : null;
+
+        if ((mask2D != null) && mask2D.isEmpty())
+            return result;
+
+        final List<Callable<IntensityStatistics>> tasks = new ArrayList<Callable<IntensityStatistics>>();
+
+        for (int t = bounds.t; t < (bounds.t + bounds.sizeT); t++)
+        {
+            for (int z = bounds.z; z < (bounds.z + bounds.sizeZ); z++)
+            {
+                final int fz = z;
+                final int ft = t;
+
+                tasks.add(new Callable<IntensityStatistics>()
+                {
+                    @Override
+                    public IntensityStatistics call() throws Exception
+                    {
+                        final IntensityStatistics stats = new IntensityStatistics();
+                        final IcyBufferedImage image = sequence.getImage(ft, fz);
+
+                        if (image == null)
+                            return stats;
+
+                        BooleanMask2D mask = mask2D;
+
+                        // ignore T and C roi informations for 3D ROI (wanted for fixed T and C positions)
+                        if (dim == 3)
+                            mask = roi.getBooleanMask2D(fz, -1, -1, inclusive);
+                        // ignore C roi information for 4D ROI (wanted for fixed C position)
+                        else if (dim == 4)
+                            mask = roi.getBooleanMask2D(fz, ft, -1, inclusive);
+
+                        for (int c = startC; c <= Math.min(endC, image.getSizeC() - 1); c++)
+                        {
+                            if (Thread.interrupted())
+                                throw new InterruptedException();
+
+                            // assume 5D
+                            if (dim > 4)
+                                mask = roi.getBooleanMask2D(fz, ft, c, inclusive);
+
+                            stats.addPlane(image, c, mask);
+                        }
+
+                        return stats;
+                    }
+                });
+            }
+        }
+
+        // single plane or already in a compute task --> compute in current thread
+        if ((tasks.size() == 1) || ThreadUtil.isComputeThread())
+        {
+            try
+            {
+                for (Callable<IntensityStatistics> task : tasks)
+                    result.add(task.call());
+            }
+            catch (InterruptedException e)
+            {
+                throw e;
+            }
+            catch (RuntimeException e)
+            {
+                throw e;
+            }
+            catch (Exception e)
+            {
+                throw new RuntimeException(e);
+            }
+
+            return result;
+        }
+
+        final Processor proc = ThreadUtil.getComputeProcessor();
+        final List<Future<IntensityStatistics>> futures = new ArrayList<Future<IntensityStatistics>>(tasks.size());
+
+        try
+        {
+            for (Callable<IntensityStatistics> task : tasks)
+                futures.add(proc.submit(task));
+
+            // merge partial results in plane order
+            for (Future<IntensityStatistics> future : futures)
+                result.add(future.get());
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            // cancel remaining tasks (interrupted or error)
+            for (Future<IntensityStatistics> future : futures)
+                future.cancel(true);
+        }
+
+        return result;
+    }
+
+    /**
+     * Compute intensity statistics of each ROI for each channel of the given sequence.<br>
+     * ROIs are grouped in spatially close batches (processed in parallel) and each sequence plane
+     * is retrieved only once per batch for all the ROIs it contains.
+     *
+     * @param rois
+     *        the ROIs we want to compute the statistics
+     * @param sequence
+     *        the sequence used to retrieve intensities
+     * @param inclusive
+     *        If true then all partially contained (intersected) pixels in the ROI are included.
+     * @return statistics for each ROI (same order than <i>rois</i>) and each channel
+     *         (<code>result[roi][c]</code>), statistics are <code>null</code> for channel not
+     *         contained in the ROI
+     * @throws InterruptedException
+     *         if computation was interrupted
+     */
+    static IntensityStatistics[][] compute(List<? extends ROI> rois, final Sequence sequence,
+            final boolean inclusive) throws InterruptedException
+    {
+        final int numRoi = rois.size();
+        final int sizeC = sequence.getSizeC();
+        final IntensityStatistics[][] result = new IntensityStatistics[numRoi][sizeC];
+        final int numCPU = SystemUtil.getNumberOfCPUs();
+
+        // few ROIs --> parallelize on ROI planes instead
+        if (numRoi < numCPU)
+        {
+            for (int i = 0; i < numRoi; i++)
+            {
+                final ROI roi = rois.get(i);
+                final Rectangle5D bounds5D = roi.getBounds5D();
+
+                for (int c = 0; c < sizeC; c++)
+                    if (containsC(bounds5D, c))
+                        result[i][c] = compute(roi, sequence, inclusive, c);
+            }
+
+            return result;
+        }
+
+        final Rectangle5D seqBounds = sequence.getBounds5D();
+        final ROI[] roiArray = rois.toArray(new ROI[numRoi]);
+        final Rectangle5D.Integer[] roiBounds = new Rectangle5D.Integer[numRoi];
+        final Integer[] order = new Integer[numRoi];
+
+        for (int i = 0; i < numRoi; i++)
+        {
+            roiBounds[i] = (Rectangle5D.Integer) seqBounds.createIntersection(roiArray[i].getBounds5D());
+            order[i] = Integer.valueOf(i);
+        }
+
+        // sort ROIs on their position so a batch works on a small part of the planes
+        Arrays.sort(order, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                final Rectangle5D.Integer b1 = roiBounds[o1.intValue()];
+                final Rectangle5D.Integer b2 = roiBounds[o2.intValue()];
+
+                if (b1.t != b2.t)
+                    return (b1.t < b2.t) ? -1 : 1;
+                if (b1.z != b2.z)
+                    return (b1.z < b2.z) ? -1 : 1;
+                if (b1.y != b2.y)
+                    return (b1.y < b2.y) ? -1 : 1;
+                if (b1.x != b2.x)
+                    return (b1.x < b2.x) ? -1 : 1;
+
+                return 0;
+            }
+        });
+
+        final int batchSize = Math.max(16, numRoi / (numCPU * 8));
+        final boolean inComputeThread = ThreadUtil.isComputeThread();
+        final Processor proc = ThreadUtil.getComputeProcessor();
+        final List<Future<?>> futures = new ArrayList<Future<?>>();
+
+        try
+        {
+            for (int start = 0; start < numRoi; start += batchSize)
+            {
+                final int[] batch = new int[Math.min(batchSize, numRoi - start)];
+
+                for (int i = 0; i < batch.length; i++)
+                    batch[i] = order[start + i].intValue();
+
+                // already in a compute task --> process batch in current thread
+                if (inComputeThread)
+                {
+                    computeBatch(batch, roiArray, roiBounds, sequence, inclusive, result);
+                    continue;
+                }
+
+                futures.add(proc.submit(new Callable<Object>()
+                {
+                    @Override
+                    public Object call() throws Exception
+                    {
+                        computeBatch(batch, roiArray, roiBounds, sequence, inclusive, result);
+                        return null;
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures)
+                future.get();
+        }
+        catch (ExecutionException e)
+        {
+            final Throwable cause = e.getCause();
+
+            if (cause instanceof InterruptedException)
+                throw (InterruptedException) cause;
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+
+            throw new RuntimeException(cause);
+        }
+        finally
+        {
+            // cancel remaining tasks (interrupted or error)
+            for (Future<?> future : futures)
+                future.cancel(true);
+        }
+
+        return result;
+    }
+
+    private static boolean containsC(Rectangle5D bounds, int c)
+    {
+        return (c >= bounds.getMinC()) && (c < bounds.getMaxC());
+    }
+
+    /**
+     * Compute statistics of a batch of ROIs (plane by plane).
+     */
+    static void computeBatch(int[] batch, ROI[] rois, Rectangle5D.Integer[] bounds, Sequence sequence,
+            boolean inclusive, IntensityStatistics[][] result) throws InterruptedException
+    {
+        // plane (T, Z) --> ROIs of the batch which are present in this plane
+        final Map<Long, List<Integer>> planes = new TreeMap<Long, List<Integer>>();
+        // 2D mask are the same for all planes
+        final BooleanMask2D[] masks2D = new BooleanMask2D[batch.length];
+
+        for (int i = 0; i < batch.length; i++)
+        {
+            final Rectangle5D.Integer b = bounds[batch[i]];
+
+            if (b.isEmpty())
+                continue;
+
+            // allocate statistics for channels contained in the ROI
+            for (int c = b.c; c < (b.c + b.sizeC); c++)
+                result[batch[i]][c] = new IntensityStatistics();
+
+            for (int t = b.t; t < (b.t + b.sizeT); t++)
+            {
+                for (int z = b.z; z < (b.z + b.sizeZ); z++)
+                {
+                    final Long key = Long.valueOf((((long) t) << 32) | z);
+                    List<Integer> list = planes.get(key);
+
+                    if (list == null)
+                    {
+                        list = new ArrayList<Integer>();
+                        planes.put(key, list);
+                    }
+
+                    list.add(Integer.valueOf(i));
+                }
+            }
+        }
+
+        for (Entry<Long, List<Integer>> entry : planes.entrySet())
+        {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+
+            final long key = entry.getKey().longValue();
+            final int t = (int) (key >> 32);
+            final int z = (int) key;
+            final IcyBufferedImage image = sequence.getImage(t, z);
+
+            if (image == null)
+                continue;
+
+            for (Integer index : entry.getValue())
+            {
+                final int i = index.intValue();
+                final ROI roi = rois[batch[i]];
+                final Rectangle5D.Integer b = bounds[batch[i]];
+                final IntensityStatistics[] stats = result[batch[i]];
+                final int dim = roi.getDimension();
+                BooleanMask2D mask;
+
+                if (dim == 2)
+                {
+                    if (masks2D[i] == null)
+                        masks2D[i] = roi.getBooleanMask2D(-1, -1, -1, inclusive);
+                    mask = masks2D[i];
+                }
+                // ignore T and C roi informations for 3D ROI (wanted for fixed T and C positions)
+                else if (dim == 3)
+                    mask = roi.getBooleanMask2D(z, -1, -1, inclusive);
+                // ignore C roi information for 4D ROI (wanted for fixed C position)
+                else if (dim == 4)
+                    mask = roi.getBooleanMask2D(z, t, -1, inclusive);
+                else
+                    mask = null;
+
+                for (int c = b.c; c <= Math.min((b.c + b.sizeC) - 1, image.getSizeC() - 1); c++)
+                {
+                    // assume 5D
+                    if (dim > 4)
+                        mask = roi.getBooleanMask2D(z, t, c, inclusive);
+
+                    stats[c].addPlane(image, c, mask);
+                }
+            }
+        }
+    }
+
+    /**
+     * Add intensities of the specified image channel contained in the mask.
+     */
+    void addPlane(IcyBufferedImage image, int c, BooleanMask2D mask)
+    {
+        final ImageDataSpanIterator it = new ImageDataSpanIterator(image, mask, c);
+
+        if (it.done())
+            return;
+
+        final Object data = it.getData();
+        final DataType dataType = it.getDataType();
+
+        shiftedCount = 0;
+        shiftedSum = 0d;
+        shiftedSum2 = 0d;
+
+        while (!it.done())
+        {
+            final int offset = it.getOffset();
+
+            addRun(data, dataType, offset, offset + it.getLength());
+            it.next();
+        }
+
+        if (shiftedCount == 0)
+            return;
+
+        // merge plane statistics
+        final IntensityStatistics plane = new IntensityStatistics();
+
+        plane.count = shiftedCount;
+        plane.min = min;
+        plane.max = max;
+        plane.sum = (shift * shiftedCount) + shiftedSum;
+        plane.mean = shift + (shiftedSum / shiftedCount);
+        plane.m2 = Math.max(0d, shiftedSum2 - ((shiftedSum * shiftedSum) / shiftedCount));
+
+        // min and max are already up to date (plane.min / max are the merged ones)
+        add(plane);
+    }
+
+    /**
+     * Add intensities in [from, to[ of the specified data array (type specialized loops).
+     */
+    private void addRun(Object data, DataType dataType, int from, int to)
+    {
+        // first run of the plane --> use its first value as shift so sums remain small
+        if (shiftedCount == 0)
+            shift = Array1DUtil.getValue(data, from, dataType);
+
+        final double sh = shift;
+        double mn = min;
+        double mx = max;
+        double s = 0d;
+        double s2 = 0d;
+
+        switch (dataType)
+        {
+            case UBYTE:
+            {
+                final byte[] array = (byte[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i] & 0xFF;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case BYTE:
+            {
+                final byte[] array = (byte[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case USHORT:
+            {
+                final short[] array = (short[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i] & 0xFFFF;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case SHORT:
+            {
+                final short[] array = (short[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case UINT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i] & 0xFFFFFFFFL;
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case INT:
+            {
+                final int[] array = (int[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case FLOAT:
+            {
+                final float[] array = (float[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            case DOUBLE:
+            {
+                final double[] array = (double[]) data;
+
+                for (int i = from; i < to; i++)
+                {
+                    final double value = array[i];
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+
+            default:
+            {
+                // generic (slower) path
+                for (int i = from; i < to; i++)
+                {
+                    final double value = Array1DUtil.getValue(data, i, dataType);
+                    if (value < mn)
+                        mn = value;
+                    if (value > mx)
+                        mx = value;
+                    final double d = value - sh;
+                    s += d;
+                    s2 += d * d;
+                }
+                break;
+            }
+        }
+
+        min = mn;
+        max = mx;
+        shiftedSum += s;
+        shiftedSum2 += s2;
+        shiftedCount += to - from;
+    }
+}
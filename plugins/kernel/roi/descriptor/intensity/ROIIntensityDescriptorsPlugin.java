@@ -8,9 +8,9 @@ import icy.plugin.interface_.PluginROIDescriptor;
 import icy.roi.ROI;
 import icy.roi.ROIDescriptor;
 import icy.sequence.Sequence;
-import icy.sequence.SequenceDataIterator;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -72,45 +72,63 @@ public class ROIIntensityDescriptorsPlugin extends Plugin implements PluginROIDe
             throw new UnsupportedOperationException(
                     "Not allowed to cannot compute intensity descriptor on a multi channel ROI (sizeC > 1).");
 
-        final IntensityDescriptorInfos result = new IntensityDescriptorInfos();
-
-        long numPixels = 0;
-        double min = Double.MAX_VALUE;
-        double max = -Double.MAX_VALUE;
-        double sum = 0;
-        double sum2 = 0;
-
         // TODO: we were using interior pixels only, now we also use edge pixels so we can have intensities info
         // for intersection only ROI --> see if that is a good idea...
-        final SequenceDataIterator it = new SequenceDataIterator(sequence, roi, true);
+        return createIntensityDescriptorInfos(IntensityStatistics.compute(roi, sequence, true));
+    }
 
-        while (!it.done())
+    /**
+     * Returns the pixel intensity information of each channel for all the specified ROIs.<br>
+     * This is much faster than calling {@link #computeIntensityDescriptors(ROI, Sequence, boolean)}
+     * for each ROI (and channel) when there is many ROIs as planes data are retrieved once for a
+     * group of ROIs and groups are processed in parallel.<br>
+     * Be careful: the returned result may be incorrect or exception may be thrown if a ROI change while the
+     * descriptors are being computed.
+     * 
+     * @param rois
+     *        the ROIs on which we want to compute the intensity descriptors
+     * @param sequence
+     *        the Sequence used to compute the intensity descriptors
+     * @return a map where each ROI is associated to its intensity information for each channel of the sequence
+     *         (<code>result.get(roi)[c]</code>), channel information is <code>null</code> if the ROI doesn't contain
+     *         the channel.
+     * @throws InterruptedException
+     *         if computation was interrupted
+     */
+    public static Map<ROI, IntensityDescriptorInfos[]> computeIntensityDescriptors(Collection<? extends ROI> rois,
+            Sequence sequence) throws InterruptedException
+    {
+        final List<ROI> roiList = new ArrayList<ROI>(rois);
+        final Map<ROI, IntensityDescriptorInfos[]> result = new HashMap<ROI, IntensityDescriptorInfos[]>(
+                roiList.size());
+        final IntensityStatistics[][] stats = IntensityStatistics.compute(roiList, sequence, true);
+
+        for (int i = 0; i < stats.length; i++)
         {
-            final double value = it.get();
+            final IntensityStatistics[] roiStats = stats[i];
+            final IntensityDescriptorInfos[] infos = new IntensityDescriptorInfos[roiStats.length];
 
-            if (min > value)
-                min = value;
-            if (max < value)
-                max = value;
-            sum += value;
-            sum2 += value * value;
-            numPixels++;
+            for (int c = 0; c < roiStats.length; c++)
+                if (roiStats[c] != null)
+                    infos[c] = createIntensityDescriptorInfos(roiStats[c]);
 
-            it.next();
+            result.put(roiList.get(i), infos);
         }
 
-        if (numPixels > 0)
-        {
-            result.min = min;
-            result.max = max;
-            result.sum = sum;
+        return result;
+    }
 
-            final double mean = sum / numPixels;
-            final double x1 = (sum2 / numPixels);
-            final double x2 = mean * mean;
+    private static IntensityDescriptorInfos createIntensityDescriptorInfos(IntensityStatistics stats)
+    {
+        final IntensityDescriptorInfos result = new IntensityDescriptorInfos();
 
-            result.mean = mean;
-            result.deviation = Math.sqrt(x1 - x2);
+        if (stats.count > 0)
+        {
+            result.min = stats.min;
+            result.max = stats.max;
+            result.sum = stats.sum;
+            result.mean = stats.mean;
+            result.deviation = stats.getDeviation();
         }
         else
         {
@@ -124,6 +142,23 @@ public class ROIIntensityDescriptorsPlugin extends Plugin implements PluginROIDe
         return result;
     }
 
+    /**
+     * Returns the descriptors results map (as returned by {@link #compute(ROI, Sequence)}) for the specified
+     * intensity information.
+     */
+    public static Map<ROIDescriptor, Object> getDescriptorResults(IntensityDescriptorInfos intensityInfos)
+    {
+        final Map<ROIDescriptor, Object> result = new HashMap<ROIDescriptor, Object>();
+
+        result.put(minIntensityDescriptor, Double.valueOf(intensityInfos.min));
+        result.put(meanIntensityDescriptor, Double.valueOf(intensityInfos.mean));
+        result.put(maxIntensityDescriptor, Double.valueOf(intensityInfos.max));
+        result.put(sumIntensityDescriptor, Double.valueOf(intensityInfos.sum));
+        result.put(standardDeviationDescriptor, Double.valueOf(intensityInfos.deviation));
+
+        return result;
+    }
+
     @Override
     public List<ROIDescriptor> getDescriptors()
     {
@@ -141,24 +176,15 @@ public class ROIIntensityDescriptorsPlugin extends Plugin implements PluginROIDe
     @Override
     public Map<ROIDescriptor, Object> compute(ROI roi, Sequence sequence) throws UnsupportedOperationException
     {
-        final Map<ROIDescriptor, Object> result = new HashMap<ROIDescriptor, Object>();
         try
         {
             // compute intensity descriptors
-            final IntensityDescriptorInfos intensityInfos = computeIntensityDescriptors(roi, sequence, false);
-
-            result.put(minIntensityDescriptor, Double.valueOf(intensityInfos.min));
-            result.put(meanIntensityDescriptor, Double.valueOf(intensityInfos.mean));
-            result.put(maxIntensityDescriptor, Double.valueOf(intensityInfos.max));
-            result.put(sumIntensityDescriptor, Double.valueOf(intensityInfos.sum));
-            result.put(standardDeviationDescriptor, Double.valueOf(intensityInfos.deviation));
+            return getDescriptorResults(computeIntensityDescriptors(roi, sequence, false));
         }
         catch (Exception e)
         {
             throw new UnsupportedOperationException(getClass().getSimpleName() + ": cannot compute descriptors for '"
                     + roi.getName() + "'", e);
         }
-
-        return result;
     }
 }
@@ -32,6 +32,7 @@ import icy.painter.VtkPainter;
 import icy.roi.ROI;
 import icy.roi.ROI2D;
 import icy.roi.ROIEvent;
+import icy.roi.ShapeRasterizer;
 import icy.roi.edit.Point2DAddedROIEdit;
 import icy.roi.edit.Point2DMovedROIEdit;
 import icy.roi.edit.Point2DRemovedROIEdit;
@@ -50,7 +51,6 @@ import java.awt.AlphaComposite;
 import java.awt.BasicStroke;
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.RenderingHints;
 import java.awt.Shape;
 import java.awt.event.InputEvent;
 import java.awt.event.KeyEvent;
@@ -59,8 +59,6 @@ import java.awt.geom.AffineTransform;
 import java.awt.geom.PathIterator;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.awt.image.BufferedImage;
-import java.awt.image.DataBufferByte;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -1666,44 +1664,8 @@ public abstract class ROI2DShape extends ROI2D implements Shape
     @Override
     public boolean[] getBooleanMask(int x, int y, int width, int height, boolean inclusive)
     {
-        if ((width <= 0) || (height <= 0))
-            return new boolean[0];
-
-        final BufferedImage img = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
-        final Graphics2D g = img.createGraphics();
-
-        // we want accurate rendering as we use the image for the mask
-        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
-        g.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_PURE);
-
-        // translate back to origin and pixel center
-        g.translate(-x, -y);
-
-        // fill content
-        g.setColor(Color.white);
-        // only fill closed shapes
-        g.fill(ShapeUtil.getClosedPath(shape));
-        // we want edge as well
-        if (inclusive)
-            g.draw(shape);
-        // TODO: do we really need that ??
-        else
-        {
-            // remove edge from content as fill operation may be a bit off
-            g.setColor(Color.black);
-            g.draw(shape);
-        }
-
-        g.dispose();
-
-        final byte[] buffer = ((DataBufferByte) img.getRaster().getDataBuffer()).getData();
-        final boolean[] result = new boolean[width * height];
-
-        // compute mask from image
-        for (int i = 0; i < result.length; i++)
-            result[i] = (buffer[i] != 0);
-
-        return result;
+        // pure java scanline rasterization (faster than Java2D rendering and JVM independent)
+        return ShapeRasterizer.getBooleanMask(shape, x, y, width, height, inclusive);
     }
 
     @Override